@@ -23,11 +23,21 @@ import org.apache.http.client.*;
 import org.apache.http.client.methods.*;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.cookie.Cookie;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.pool.ConnPoolControl;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.protocol.HttpContext;
+import org.apache.sling.testing.clients.cache.RequestCoalescer;
+import org.apache.sling.testing.clients.cache.ResponseCache;
 import org.apache.sling.testing.clients.exceptions.TestingIOException;
 import org.apache.sling.testing.clients.exceptions.TestingValidationException;
+import org.apache.sling.testing.clients.interceptors.RateLimitInterceptor;
 import org.apache.sling.testing.clients.util.HttpUtils;
 import org.slf4j.LoggerFactory;
 
@@ -36,14 +46,29 @@ import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.apache.sling.testing.Constants.EXPECTED_STATUS;
 
 /**
- * The abstract base client for all implementing integration test clients.
+ * <p>The abstract base client for all implementing integration test clients.</p>
+ *
+ * <p>The {@link HttpClient} methods, like {@link #execute(HttpUriRequest)}, execute the requests directly with the
+ * underlying http client, so the circuit breaker, the response cache and the request coalescer of the
+ * {@link SlingClientConfig} don't apply to them.</p>
  */
 @Contract(threading = ThreadingBehavior.IMMUTABLE)
 public class AbstractSlingClient implements HttpClient, Closeable {
@@ -290,6 +315,14 @@ public class AbstractSlingClient implements HttpClient, Closeable {
         return config.getCredsProvider();
     }
 
+    /**
+     * @return the paths known to exist or {@code null} if they are not recorded
+     * @since 3.2.0
+     */
+    public KnownPaths getKnownPaths() {
+        return config.getKnownPaths();
+    }
+
     //
     // HTTP convenience methods
     //
@@ -313,9 +346,31 @@ public class AbstractSlingClient implements HttpClient, Closeable {
     public SlingHttpResponse doStreamRequest(HttpUriRequest request, List<Header> headers, int... expectedStatus)
             throws ClientException {
         // create context from config
-        HttpClientContext context = createHttpClientContextFromConfig();
+        return doStreamRequest(request, headers, createHttpClientContextFromConfig(), expectedStatus);
+    }
+
+    /**
+     * <p>Same as {@link #doStreamRequest(HttpUriRequest, List, int...)}, with the given context. All the requests
+     * of the client, including the asynchronous ones, go through this method, except the raw requests, so it is the one to override
+     * for changing how the requests are executed, e.g. for routing them to another instance.</p>
+     *
+     * @param request the request to be executed
+     * @param headers optional headers to be added to the request
+     * @param context the context of the request, created from the config of the client
+     * @param expectedStatus if passed, the response status is checked against it/them, and has to match at least one of them
+     * @return the response, with the entity not consumed
+     * @throws ClientException if the request could not be executed
+     * @since 3.2.0
+     */
+    protected SlingHttpResponse doStreamRequest(HttpUriRequest request, List<Header> headers, HttpClientContext context,
+                                                int... expectedStatus) throws ClientException {
         context.setAttribute(EXPECTED_STATUS, expectedStatus);
 
+        // fail fast if the host is known to be down
+        final CircuitBreaker circuitBreaker = config.getCircuitBreaker();
+        final HttpHost host = circuitBreaker != null ? getTargetHost(request) : null;
+        final boolean probe = circuitBreaker != null && circuitBreaker.acquirePermission(host, request);
+
         // add headers
         if (headers != null) {
             request.setHeaders(headers.toArray(new Header[headers.size()]));
@@ -323,7 +378,7 @@ public class AbstractSlingClient implements HttpClient, Closeable {
         SlingHttpResponse response = null;
         try {
             log.debug("request {} {}", request.getMethod(), request.getURI());
-            response = new SlingHttpResponse(this.execute(request, context));
+            response = new SlingHttpResponse(executeRequest(request, context, circuitBreaker, host, probe));
             log.debug("response {}", HttpUtils.getHttpStatus(response));
             // Check the status and throw a ClientException if it doesn't match expectedStatus, but close the entity before
             if (expectedStatus != null && expectedStatus.length > 0) {
@@ -355,6 +410,9 @@ public class AbstractSlingClient implements HttpClient, Closeable {
      * <p>It behaves as {@link #doStreamRequest(HttpUriRequest, List, int...)}, so the entity is not consumed.</p>
      * <p>Adds the headers and checks the response against expected status</p>
      *
+     * <p>The request goes through the circuit breaker of the config, if any, but the uri is sent as it is and
+     * cannot be used as a key, so the request is never served by the response cache or the request coalescer.</p>
+     *
      * @param method the request to be executed
      * @param uri the uri to be sent as it is (will not prepend the context path)
      * @param headers optional headers to be added to the request
@@ -371,6 +429,11 @@ public class AbstractSlingClient implements HttpClient, Closeable {
         HttpHost host = new HttpHost(getUrl().getHost(), getUrl().getPort(), getUrl().getScheme());
         HttpRequest request = new BasicHttpRequest(method, uri);
 
+        // fail fast if the host is known to be down
+        final CircuitBreaker circuitBreaker = config.getCircuitBreaker();
+        final boolean probe = circuitBreaker != null
+                && circuitBreaker.acquirePermission(host, HttpRequestWrapper.wrap(request, host));
+
         // add headers
         if (headers != null) {
             request.setHeaders(headers.toArray(new Header[headers.size()]));
@@ -378,7 +441,8 @@ public class AbstractSlingClient implements HttpClient, Closeable {
 
         try {
             log.debug("request {} {}", method, uri);
-            SlingHttpResponse response = new SlingHttpResponse(this.execute(host, request, context));
+            SlingHttpResponse response = new SlingHttpResponse(reportOutcome(request, circuitBreaker, host, probe,
+                    () -> this.execute(host, request, context)));
             log.debug("response {}", HttpUtils.getHttpStatus(response));
             // Check the status and throw a ClientException if it doesn't match expectedStatus, but close the entity before
             if (expectedStatus != null && expectedStatus.length > 0) {
@@ -470,6 +534,9 @@ public class AbstractSlingClient implements HttpClient, Closeable {
      *
      * <p>This means the response entity SHOULD NOT BE USED to read the content, e.g. {@code response.getEntity().getContent()}</p>
      *
+     * <p>The content is captured according to the {@link ContentCapturePolicy} of the client,
+     * so large contents may be written to a temporary file instead of being kept in memory.</p>
+     *
      * @param request the request to be executed
      * @param headers optional headers to be added to the request
      * @param expectedStatus if passed, the response status will have to match one of them
@@ -480,11 +547,18 @@ public class AbstractSlingClient implements HttpClient, Closeable {
         SlingHttpResponse response = doStreamRequest(request, headers, expectedStatus);
 
         // Consume entity and cache the content so the connection is closed
-        response.getContent();
+        response.captureContent(config.getContentCapturePolicy());
 
         return response;
     }
 
+    private SlingHttpResponse doRequest(HttpUriRequest request, List<Header> headers, HttpClientContext context,
+                                        int... expectedStatus) throws ClientException {
+        SlingHttpResponse response = doStreamRequest(request, headers, context, expectedStatus);
+        response.captureContent(config.getContentCapturePolicy());
+        return response;
+    }
+
     /**
      * <p>Executes a GET request and consumes the entity in the response (so the connection is closed immediately)
      * The content is cached and can be retrieved using {@code response.getContent()}.</p>
@@ -503,7 +577,7 @@ public class AbstractSlingClient implements HttpClient, Closeable {
         SlingHttpResponse response = doStreamGet(requestPath, parameters, headers, expectedStatus);
 
         // Consume entity and cache the content so the connection is closed
-        response.getContent();
+        response.captureContent(config.getContentCapturePolicy());
 
         return response;
     }
@@ -660,18 +734,321 @@ public class AbstractSlingClient implements HttpClient, Closeable {
         return doRequest(request, headers, expectedStatus);
     }
 
+    //
+    // Asynchronous HTTP methods
+    //
+
+    /**
+     * <p>Executes an HTTP request asynchronously and consumes the entity in the response, exactly like
+     * {@link #doRequest(HttpUriRequest, List, int...)}. The request goes through the same http client, so the
+     * interceptors, the retry strategy, the cookies and the credentials of this client are all applied.</p>
+     *
+     * <p>This is not non-blocking I/O: the request is executed with the blocking http client, by a thread of the
+     * executor configured through {@link SlingClientConfig#getAsyncExecutor()} or of a shared default executor,
+     * and that thread is busy until the response is read. The default executor has as many threads as the
+     * default connection pool has connections, see {@link SystemPropertiesConfig#getHttpMaxConnTotal()}, and
+     * queues the other requests, so this method never executes the request in the calling thread. If the executor
+     * rejects the request, the returned future completes exceptionally.</p>
+     *
+     * <p>If the expected status doesn't match or the request cannot be executed, the returned future completes
+     * exceptionally with the {@link ClientException}. Cancelling the future aborts the request if it is still
+     * running.</p>
+     *
+     * <p>If the client has a {@link SlingClientConfig#getRateLimiter() rate limiter}, the request is scheduled once
+     * its token is available, so no thread is blocked while waiting.</p>
+     *
+     * @param request the request to be executed
+     * @param headers optional headers to be added to the request
+     * @param expectedStatus if passed, the response status will have to match one of them
+     * @return a future completed with the response, with the entity consumed and the content cached
+     * @since 3.2.0
+     */
+    public CompletableFuture<SlingHttpResponse> doRequestAsync(final HttpUriRequest request, final List<Header> headers,
+            final int... expectedStatus) {
+        final CompletableFuture<SlingHttpResponse> future = new CompletableFuture<>();
+        future.whenComplete((response, throwable) -> {
+            if (future.isCancelled() && request instanceof HttpRequestBase) {
+                ((HttpRequestBase) request).abort();
+            }
+        });
+
+        final HttpClientContext context = createHttpClientContextFromConfig();
+        final RateLimitInterceptor rateLimiter = config.getRateLimiter();
+        long wait = 0;
+        if (rateLimiter != null) {
+            wait = rateLimiter.reserve(getTargetHost(request));
+            RateLimitInterceptor.markReserved(context);
+        }
+
+        final Runnable submit = () -> {
+            try {
+                getAsyncExecutor().execute(() -> {
+                    if (future.isDone()) {
+                        return;
+                    }
+                    try {
+                        future.complete(doRequest(request, headers, context, expectedStatus));
+                    } catch (ClientException | RuntimeException e) {
+                        future.completeExceptionally(e);
+                    }
+                });
+            } catch (RuntimeException e) {
+                // e.g. the executor rejected the task
+                future.completeExceptionally(new TestingIOException("Could not schedule http request", e));
+            }
+        };
+
+        if (wait > 0) {
+            AsyncSchedulerHolder.SCHEDULER.schedule(submit, wait, TimeUnit.NANOSECONDS);
+        } else {
+            submit.run();
+        }
+
+        return future;
+    }
+
+    /**
+     * Executes the request through the request coalescer and the response cache, if any,
+     * and reports the outcome to the circuit breaker, if any
+     */
+    private CloseableHttpResponse executeRequest(HttpUriRequest request, HttpClientContext context,
+                                                 CircuitBreaker circuitBreaker, HttpHost host, boolean probe)
+            throws IOException {
+        ResponseCache cache = config.getResponseCache();
+        RequestCoalescer coalescer = config.getRequestCoalescer();
+        String caller = cache != null || coalescer != null ? getCaller(context) : null;
+        ResponseCache.RequestExecutor executor = cache != null
+                ? r -> cache.execute(r, caller, r2 -> this.execute(r2, context))
+                : r -> this.execute(r, context);
+        return reportOutcome(request, circuitBreaker, host, probe, () -> coalescer != null
+                ? coalescer.execute(request, caller, executor, config.getContentCapturePolicy())
+                : executor.execute(request));
+    }
+
+    /**
+     * Executes the request and reports the outcome to the circuit breaker, if any
+     */
+    private static CloseableHttpResponse reportOutcome(HttpRequest request, CircuitBreaker circuitBreaker,
+                                                       HttpHost host, boolean probe, Execution execution)
+            throws IOException {
+        long start = System.nanoTime();
+        CloseableHttpResponse response;
+        try {
+            response = execution.execute();
+        } catch (IOException | RuntimeException e) {
+            // an aborted request, e.g. one that lost against its hedge, says nothing about the host
+            boolean aborted = request instanceof HttpRequestBase && ((HttpRequestBase) request).isAborted();
+            if (circuitBreaker != null && !aborted) {
+                circuitBreaker.onFailure(host);
+            } else if (probe) {
+                // otherwise the circuit would stay half-open, waiting for the outcome of the probe
+                circuitBreaker.releaseProbe(host);
+            }
+            throw e;
+        }
+        if (circuitBreaker != null) {
+            circuitBreaker.onResponse(host, response.getStatusLine().getStatusCode(), System.nanoTime() - start);
+        }
+        return response;
+    }
+
+    /**
+     * A request execution, for reporting its outcome
+     */
+    @FunctionalInterface
+    private interface Execution {
+        CloseableHttpResponse execute() throws IOException;
+    }
+
+    /**
+     * Identifies the caller for the response cache and the request coalescer: the user, the impersonated user, if any,
+     * and the cookies the http client will add to the request
+     */
+    private String getCaller(HttpClientContext context) {
+        List<String> cookies = new ArrayList<>();
+        CookieStore cookieStore = context.getCookieStore();
+        if (cookieStore != null) {
+            for (Cookie cookie : cookieStore.getCookies()) {
+                cookies.add(cookie.getName() + "=" + cookie.getValue());
+            }
+            Collections.sort(cookies);
+        }
+        return config.getUser() + " " + getUser() + " " + cookies;
+    }
+
+    private HttpHost getTargetHost(HttpUriRequest request) {
+        HttpHost host = URIUtils.extractHost(request.getURI());
+        return host != null ? host : URIUtils.extractHost(getUrl());
+    }
+
+    /**
+     * <p>Executes a GET request asynchronously. Same as {@link #doGet(String, List, List, int...)}, but it returns
+     * immediately a future that completes with the response.</p>
+     *
+     * @param requestPath path relative to client url
+     * @param parameters optional url parameters to be added
+     * @param headers optional headers to be added
+     * @param expectedStatus if passed, the response status will have to match one of them
+     * @return a future completed with the response, with the entity consumed and the content cached
+     * @see #doRequestAsync(HttpUriRequest, List, int...)
+     * @since 3.2.0
+     */
+    public CompletableFuture<SlingHttpResponse> doGetAsync(String requestPath, List<NameValuePair> parameters,
+            List<Header> headers, int... expectedStatus) {
+        return doRequestAsync(new HttpGet(getUrl(requestPath, parameters)), headers, expectedStatus);
+    }
+
+    /**
+     * <p>Executes a GET request asynchronously. Same as {@link #doGet(String, int...)}, but it returns
+     * immediately a future that completes with the response.</p>
+     *
+     * @param requestPath path relative to client url
+     * @param expectedStatus if passed, the response status will have to match one of them
+     * @return a future completed with the response, with the entity consumed and the content cached
+     * @see #doRequestAsync(HttpUriRequest, List, int...)
+     * @since 3.2.0
+     */
+    public CompletableFuture<SlingHttpResponse> doGetAsync(String requestPath, int... expectedStatus) {
+        return doGetAsync(requestPath, null, null, expectedStatus);
+    }
+
+    /**
+     * <p>Executes a POST request asynchronously. Same as {@link #doPost(String, HttpEntity, List, int...)}, but it returns
+     * immediately a future that completes with the response.</p>
+     *
+     * @param requestPath path relative to client url
+     * @param entity the entity to be added to request
+     * @param headers optional headers to be added
+     * @param expectedStatus if passed, the response status will have to match one of them
+     * @return a future completed with the response, with the entity consumed and the content cached
+     * @see #doRequestAsync(HttpUriRequest, List, int...)
+     * @since 3.2.0
+     */
+    public CompletableFuture<SlingHttpResponse> doPostAsync(String requestPath, HttpEntity entity, List<Header> headers,
+            int... expectedStatus) {
+        HttpEntityEnclosingRequestBase request = new HttpPost(getUrl(requestPath));
+        if (entity != null) {
+            request.setEntity(entity);
+        }
+        return doRequestAsync(request, headers, expectedStatus);
+    }
+
+    /**
+     * <p>Executes a POST request asynchronously. Same as {@link #doPost(String, HttpEntity, int...)}, but it returns
+     * immediately a future that completes with the response.</p>
+     *
+     * @param requestPath path relative to client url
+     * @param entity the entity to be added to request
+     * @param expectedStatus if passed, the response status will have to match one of them
+     * @return a future completed with the response, with the entity consumed and the content cached
+     * @see #doRequestAsync(HttpUriRequest, List, int...)
+     * @since 3.2.0
+     */
+    public CompletableFuture<SlingHttpResponse> doPostAsync(String requestPath, HttpEntity entity, int... expectedStatus) {
+        return doPostAsync(requestPath, entity, null, expectedStatus);
+    }
+
+    /**
+     * Returns the executor running the asynchronous requests of this client
+     *
+     * @return the executor from the config or the shared default executor
+     * @since 3.2.0
+     */
+    protected Executor getAsyncExecutor() {
+        Executor executor = config.getAsyncExecutor();
+        return executor != null ? executor : DefaultAsyncExecutorHolder.EXECUTOR;
+    }
+
+    /**
+     * Lazy holder for the executor shared by all the clients without a custom async executor.
+     * It has one thread per connection of the default pool, since more threads would only wait for a connection,
+     * and an unbounded queue for the other requests, so the callers are never blocked by running a request themselves.
+     * The idle threads time out and they are daemons, so they never prevent the JVM from exiting.
+     */
+    private static final class DefaultAsyncExecutorHolder {
+        private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+        private static final ThreadPoolExecutor EXECUTOR = create(Math.max(1, SystemPropertiesConfig.getHttpMaxConnTotal()));
+
+        private static ThreadPoolExecutor create(int size) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), r -> {
+                        Thread t = new Thread(r, "sling-client-async-" + THREAD_COUNT.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+
+    /**
+     * Lazy holder for the scheduler delaying the asynchronous requests until their rate limit token is available.
+     * It only submits the requests to the async executor, so a single daemon thread is enough.
+     */
+    private static final class AsyncSchedulerHolder {
+        private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "sling-client-async-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
     @Override
     /**
      * <p>Closes the http client and makes sure all the underlying resources, like the connection manager, shut down </p>
+     * <p>If the connection manager is shared (see {@link ConnectionManagerRegistry}), the lease on it is released instead
+     * and the connection manager is only shut down when the last client using it is closed.</p>
      *
      */
     public void close() throws IOException {
-        this.http.close();
+        try {
+            this.http.close();
+        } finally {
+            ConnectionManagerRegistry.Lease lease = config.getConnectionManagerLease();
+            if (lease != null) {
+                lease.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the total statistics of the connection pool used by this client
+     *
+     * @return the pool statistics or {@code null} if the client does not use a pooling connection manager
+     * @since 3.2.0
+     */
+    public PoolStats getPoolStats() {
+        HttpClientConnectionManager cm = config.getConnectionManager();
+        if (cm instanceof ConnPoolControl) {
+            return ((ConnPoolControl<?>) cm).getTotalStats();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the statistics of the connection pool used by this client, for each route known to the pool
+     *
+     * @return the pool statistics per route, empty if the client does not use a pooling connection manager
+     * @since 3.2.0
+     */
+    public Map<HttpRoute, PoolStats> getRoutePoolStats() {
+        Map<HttpRoute, PoolStats> stats = new LinkedHashMap<>();
+        HttpClientConnectionManager cm = config.getConnectionManager();
+        if (cm instanceof PoolingHttpClientConnectionManager) {
+            PoolingHttpClientConnectionManager pcm = (PoolingHttpClientConnectionManager) cm;
+            for (HttpRoute route : pcm.getRoutes()) {
+                stats.put(route, pcm.getStats(route));
+            }
+        }
+        return stats;
     }
 
 
     //
     // HttpClient  base methods
+    // They execute the requests directly with the http client, without the circuit breaker,
+    // the response cache and the request coalescer of the config
     //
 
     @Deprecated
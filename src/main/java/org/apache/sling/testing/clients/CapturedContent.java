@@ -0,0 +1,458 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.protocol.HTTP;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Content of a response captured according to a {@link ContentCapturePolicy}, either in a heap array,
+ * in a pooled direct buffer or in a temporary file.
+ * Closing it deletes the temporary file or returns the buffer to the pool. The temporary file or the buffer of
+ * a content which is not closed is released once the content is garbage collected, the file at the latest when
+ * the JVM exits.
+ */
+final class CapturedContent implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CapturedContent.class);
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Buffer used to transfer the entity content, reused by the requests executed in the same thread
+     */
+    private static final ThreadLocal<byte[]> TRANSFER_BUFFER = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    private final byte[] bytes;
+
+    private final ByteBuffer pooled;
+
+    private final ContentBufferPool pool;
+
+    private final Path file;
+
+    private final long length;
+
+    private final Charset charset;
+
+    private final Resource resource;
+
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    private CapturedContent(byte[] bytes, ByteBuffer pooled, ContentBufferPool pool, Path file, long length,
+                            Charset charset) {
+        this.bytes = bytes;
+        this.pooled = pooled;
+        this.pool = pool;
+        this.file = file;
+        this.length = length;
+        this.charset = charset;
+        this.resource = file != null || pooled != null ? Resource.track(this, file, pool, pooled) : null;
+    }
+
+    /**
+     * Reads the entity, in a pooled buffer if the policy has a pool and the content fits in a buffer, otherwise
+     * keeping at most {@link ContentCapturePolicy#getMaxInMemoryBytes()} in memory.
+     * The entity stream is closed.
+     *
+     * @param entity the entity
+     * @param policy the capture policy
+     * @return the captured content
+     * @throws IOException if reading the entity or writing the temporary file fails
+     */
+    static CapturedContent capture(HttpEntity entity, ContentCapturePolicy policy) throws IOException {
+        Charset charset = getCharset(entity);
+        byte[] transfer = TRANSFER_BUFFER.get();
+
+        try (InputStream in = entity.getContent()) {
+            if (in == null) {
+                return new CapturedContent(new byte[0], null, null, null, 0, charset);
+            }
+
+            ContentBufferPool pool = policy.getBufferPool();
+            if (pool != null) {
+                // give the buffers of the responses garbage collected without being closed back to the pool
+                Resource.releaseCollected();
+            }
+            ByteBuffer buffer = pool != null && entity.getContentLength() <= pool.getBufferSize() ? pool.acquire() : null;
+            if (buffer == null) {
+                return readInMemoryOrSpill(new ByteArrayOutputStream(BUFFER_SIZE), transfer, 0, in, policy, charset);
+            }
+
+            boolean pooledContent = false;
+            try {
+                int n;
+                while ((n = in.read(transfer)) != -1) {
+                    if (n > buffer.remaining()) {
+                        // does not fit in the pooled buffer, continue in memory
+                        byte[] head = new byte[buffer.position()];
+                        buffer.flip();
+                        buffer.get(head);
+                        ByteArrayOutputStream memory = new ByteArrayOutputStream(head.length + n);
+                        memory.write(head);
+                        return readInMemoryOrSpill(memory, transfer, n, in, policy, charset);
+                    }
+                    buffer.put(transfer, 0, n);
+                }
+                buffer.flip();
+                pooledContent = true;
+                return new CapturedContent(null, buffer, pool, null, buffer.remaining(), charset);
+            } finally {
+                if (!pooledContent) {
+                    pool.release(buffer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the rest of the stream in memory, or in a temporary file once the content exceeds the policy limit
+     *
+     * @param memory the content read so far
+     * @param buffer the transfer buffer
+     * @param n the number of bytes already in the transfer buffer, not yet added to memory
+     */
+    private static CapturedContent readInMemoryOrSpill(ByteArrayOutputStream memory, byte[] buffer, int n,
+                                                       InputStream in, ContentCapturePolicy policy,
+                                                       Charset charset) throws IOException {
+        long max = policy.isSpillEnabled() ? policy.getMaxInMemoryBytes() : Long.MAX_VALUE;
+        do {
+            if (n > 0) {
+                if (memory.size() + n > max) {
+                    return spill(memory, buffer, n, in, policy, charset);
+                }
+                memory.write(buffer, 0, n);
+            }
+        } while ((n = in.read(buffer)) != -1);
+        return new CapturedContent(memory.toByteArray(), null, null, null, memory.size(), charset);
+    }
+
+    private static CapturedContent spill(ByteArrayOutputStream memory, byte[] buffer, int n, InputStream in,
+                                         ContentCapturePolicy policy, Charset charset) throws IOException {
+        Path file = policy.getSpillDirectory() != null
+                ? Files.createTempFile(policy.getSpillDirectory(), "sling-client-", ".content")
+                : Files.createTempFile("sling-client-", ".content");
+
+        long length = memory.size();
+        try (OutputStream out = Files.newOutputStream(file)) {
+            memory.writeTo(out);
+            do {
+                out.write(buffer, 0, n);
+                length += n;
+            } while ((n = in.read(buffer)) != -1);
+        } catch (IOException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        LOG.debug("Response content of {} bytes written to {}", length, file);
+        return new CapturedContent(null, null, null, file, length, charset);
+    }
+
+    /**
+     * Same logic as {@link org.apache.http.util.EntityUtils#toString(HttpEntity)}
+     */
+    static Charset getCharset(HttpEntity entity) {
+        Charset charset = null;
+        try {
+            ContentType contentType = ContentType.get(entity);
+            if (contentType != null) {
+                charset = contentType.getCharset();
+                if (charset == null) {
+                    ContentType defaultContentType = ContentType.getByMimeType(contentType.getMimeType());
+                    charset = defaultContentType != null ? defaultContentType.getCharset() : null;
+                }
+            }
+        } catch (RuntimeException e) {
+            // unsupported or invalid charset, use the default one
+        }
+        return charset != null ? charset : HTTP.DEF_CONTENT_CHARSET;
+    }
+
+    /**
+     * @return true if the content was written to a temporary file
+     */
+    boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * @return true if the content is in a pooled buffer
+     */
+    boolean isPooled() {
+        return pooled != null;
+    }
+
+    /**
+     * @return the temporary file or {@code null} if the content is in memory
+     */
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return the length of the content in bytes
+     */
+    long getLength() {
+        return length;
+    }
+
+    /**
+     * @return the charset used to decode the content
+     */
+    Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * @return a new stream on the content
+     * @throws IOException if the temporary file cannot be read
+     */
+    InputStream openStream() throws IOException {
+        checkNotClosed();
+        if (bytes != null) {
+            return new ByteArrayInputStream(bytes);
+        }
+        if (pooled != null) {
+            return new ByteBufferInputStream(pooled.duplicate(), this);
+        }
+        return new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE) {
+            // the file is not deleted while it is read, even if the content is no longer referenced
+            private final CapturedContent content = CapturedContent.this;
+        };
+    }
+
+    /**
+     * @return a new reader on the content, decoded with {@link #getCharset()}
+     * @throws IOException if the temporary file cannot be read
+     */
+    Reader openReader() throws IOException {
+        return new InputStreamReader(openStream(), charset);
+    }
+
+    /**
+     * @return the content as bytes. For content captured in a heap array, the array itself is returned
+     * @throws IOException if the temporary file cannot be read
+     */
+    byte[] getBytes() throws IOException {
+        checkNotClosed();
+        if (bytes != null) {
+            return bytes;
+        }
+        if (pooled != null) {
+            byte[] copy = new byte[pooled.remaining()];
+            pooled.duplicate().get(copy);
+            return copy;
+        }
+        return Files.readAllBytes(file);
+    }
+
+    /**
+     * @return a read-only buffer on the content. For pooled content, it is only valid until this is closed
+     * or no longer referenced
+     * @throws IOException if the temporary file cannot be read
+     */
+    ByteBuffer getByteBuffer() throws IOException {
+        checkNotClosed();
+        if (pooled != null) {
+            return pooled.asReadOnlyBuffer();
+        }
+        return ByteBuffer.wrap(getBytes()).asReadOnlyBuffer();
+    }
+
+    /**
+     * @return the whole content decoded as a String
+     * @throws IOException if the temporary file cannot be read
+     */
+    String asString() throws IOException {
+        checkNotClosed();
+        if (bytes != null) {
+            return new String(bytes, charset);
+        }
+        if (pooled != null) {
+            return charset.decode(pooled.duplicate()).toString();
+        }
+        return new String(Files.readAllBytes(file), charset);
+    }
+
+    /**
+     * Returns the beginning of the content, for logging
+     *
+     * @param maxChars the maximum number of chars to return
+     * @return the beginning of the content
+     * @throws IOException if the temporary file cannot be read
+     */
+    String preview(int maxChars) throws IOException {
+        char[] chars = new char[maxChars];
+        int total = 0;
+        try (Reader reader = openReader()) {
+            int n;
+            while (total < maxChars && (n = reader.read(chars, total, maxChars - total)) != -1) {
+                total += n;
+            }
+        }
+        return new String(chars, 0, total);
+    }
+
+    private void checkNotClosed() {
+        if (closed.get() && (pooled != null || file != null)) {
+            throw new IllegalStateException("The content was released when the response was closed");
+        }
+    }
+
+    /**
+     * Deletes the temporary file or returns the buffer to the pool, if any
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        if (resource != null) {
+            resource.release();
+        }
+    }
+
+    /**
+     * Tracks the temporary file or the pooled buffer of a content until it is released, either when the content
+     * is closed, once the content was garbage collected, or for the files by a single shutdown hook. Unlike
+     * {@link java.io.File#deleteOnExit()}, which keeps every file name until the JVM exits, nothing is kept for
+     * the resources already released.
+     */
+    private static final class Resource extends PhantomReference<CapturedContent> {
+
+        private static final ReferenceQueue<CapturedContent> COLLECTED = new ReferenceQueue<>();
+
+        private static final Set<Resource> RESOURCES = ConcurrentHashMap.newKeySet();
+
+        static {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                for (Resource resource : RESOURCES) {
+                    if (resource.file != null) {
+                        resource.release();
+                    }
+                }
+            }, "sling-client-content-cleanup"));
+        }
+
+        private final Path file;
+
+        private final ContentBufferPool pool;
+
+        private final ByteBuffer buffer;
+
+        private Resource(CapturedContent content, Path file, ContentBufferPool pool, ByteBuffer buffer) {
+            super(content, COLLECTED);
+            this.file = file;
+            this.pool = pool;
+            this.buffer = buffer;
+        }
+
+        /**
+         * Tracks the resource of a new content, after releasing the ones of the contents garbage collected so far
+         */
+        static Resource track(CapturedContent content, Path file, ContentBufferPool pool, ByteBuffer buffer) {
+            releaseCollected();
+            Resource resource = new Resource(content, file, pool, buffer);
+            RESOURCES.add(resource);
+            return resource;
+        }
+
+        static void releaseCollected() {
+            for (Reference<?> collected = COLLECTED.poll(); collected != null; collected = COLLECTED.poll()) {
+                ((Resource) collected).release();
+            }
+        }
+
+        void release() {
+            if (!RESOURCES.remove(this)) {
+                return;
+            }
+            clear();
+            if (buffer != null) {
+                pool.release(buffer);
+            }
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    LOG.warn("Could not delete {}", file, e);
+                }
+            }
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        /**
+         * The buffer is not released while it is read, even if the content is no longer referenced
+         */
+        private final CapturedContent content;
+
+        private ByteBufferInputStream(ByteBuffer buffer, CapturedContent content) {
+            this.buffer = buffer;
+            this.content = content;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
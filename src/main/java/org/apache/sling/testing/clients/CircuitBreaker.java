@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpStatus;
+import org.apache.http.annotation.Contract;
+import org.apache.http.annotation.ThreadingBehavior;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.sling.testing.clients.exceptions.TestingCircuitOpenException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Circuit breaker tracking the failures of the requests per target host, so the requests to a host that is down
+ * fail fast instead of each one waiting for the connection or socket timeout.</p>
+ *
+ * <p>A failure is an {@link java.io.IOException} (e.g. a timeout), a {@code 502}, {@code 503} or {@code 504} response
+ * or, if a slow call threshold is set, a response taking longer than it. After {@code failureThreshold} consecutive
+ * failures, the circuit of the host opens: the requests to it throw a {@link TestingCircuitOpenException}
+ * without being executed. After {@code openDurationMillis}, a single request is let through as a probe
+ * (half-open state): if it succeeds the circuit closes, otherwise it opens again.</p>
+ *
+ * <p>Installed with {@link SlingClient.InternalBuilder#setCircuitBreaker(CircuitBreaker)}. The same instance can be
+ * shared by several clients, so all of them stop hitting a host that is down.</p>
+ *
+ * @since 3.2.0
+ */
+@Contract(threading = ThreadingBehavior.SAFE)
+public class CircuitBreaker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    /**
+     * The state of the circuit of a host
+     */
+    public enum State {
+        /** The requests are executed */
+        CLOSED,
+        /** The requests fail fast */
+        OPEN,
+        /** A single probe request is executed, the others fail fast */
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+
+    private final long openDurationNanos;
+
+    private final long slowCallNanos;
+
+    private final ConcurrentMap<HttpHost, HostCircuit> circuits = new ConcurrentHashMap<>();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param failureThreshold the number of consecutive failures opening the circuit
+     * @param openDurationMillis how long the circuit stays open before a probe request is allowed
+     */
+    public CircuitBreaker(int failureThreshold, long openDurationMillis) {
+        this(failureThreshold, openDurationMillis, 0);
+    }
+
+    /**
+     * @param failureThreshold the number of consecutive failures opening the circuit
+     * @param openDurationMillis how long the circuit stays open before a probe request is allowed
+     * @param slowCallMillis the latency above which a request counts as a failure, 0 to ignore the latency
+     */
+    public CircuitBreaker(int failureThreshold, long openDurationMillis, long slowCallMillis) {
+        if (failureThreshold <= 0 || openDurationMillis < 0 || slowCallMillis < 0) {
+            throw new IllegalArgumentException("failureThreshold must be positive, the durations must not be negative");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMillis);
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+    }
+
+    /**
+     * Checks that a request to the host can be executed. If it returns, the caller must report the outcome
+     * with {@link #onResponse(HttpHost, int, long)} or {@link #onFailure(HttpHost)} or, if the request was
+     * aborted before its outcome was known, give the probe permit back with {@link #releaseProbe(HttpHost)}.
+     *
+     * @param host the target host
+     * @param request the request, for the exception
+     * @return true if the request is the probe of a half-open circuit
+     * @throws TestingCircuitOpenException if the circuit of the host is open
+     */
+    public boolean acquirePermission(HttpHost host, HttpUriRequest request) throws TestingCircuitOpenException {
+        State granted = getCircuit(host).tryAcquire();
+        if (granted == null) {
+            rejected.incrementAndGet();
+            throw new TestingCircuitOpenException("Circuit open for " + host + ", request not executed", host, request);
+        }
+        return granted == State.HALF_OPEN;
+    }
+
+    /**
+     * Gives back the permit of a probe request aborted before its outcome was known, e.g. a hedged request
+     * that lost or a cancelled asynchronous request. The circuit opens again without waiting, so the next
+     * request is the new probe.
+     *
+     * @param host the target host
+     */
+    public void releaseProbe(HttpHost host) {
+        getCircuit(host).releaseProbe();
+    }
+
+    /**
+     * Reports a response
+     *
+     * @param host the target host
+     * @param status the status code of the response
+     * @param latencyNanos the time until the response was received, in nanoseconds
+     */
+    public void onResponse(HttpHost host, int status, long latencyNanos) {
+        boolean failed = status == HttpStatus.SC_BAD_GATEWAY || status == HttpStatus.SC_SERVICE_UNAVAILABLE
+                || status == HttpStatus.SC_GATEWAY_TIMEOUT || (slowCallNanos > 0 && latencyNanos > slowCallNanos);
+        if (failed) {
+            onFailure(host);
+        } else {
+            getCircuit(host).onSuccess();
+        }
+    }
+
+    /**
+     * Reports a request that could not be executed, e.g. because of a timeout
+     *
+     * @param host the target host
+     */
+    public void onFailure(HttpHost host) {
+        getCircuit(host).onFailure();
+    }
+
+    /**
+     * @param host the target host
+     * @return the state of the circuit of the host
+     */
+    public State getState(HttpHost host) {
+        HostCircuit circuit = circuits.get(host);
+        return circuit != null ? circuit.getState() : State.CLOSED;
+    }
+
+    /**
+     * Closes the circuits of all the hosts
+     */
+    public void reset() {
+        circuits.clear();
+    }
+
+    /**
+     * @return the number of requests that failed fast because the circuit was open
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    private HostCircuit getCircuit(HttpHost host) {
+        return circuits.computeIfAbsent(host, HostCircuit::new);
+    }
+
+    private final class HostCircuit {
+
+        private final HttpHost host;
+
+        private State state = State.CLOSED;
+
+        private int failures;
+
+        private long openedAt;
+
+        private HostCircuit(HttpHost host) {
+            this.host = host;
+        }
+
+        /**
+         * @return the state the request is executed in, {@code null} if it must fail fast
+         */
+        private synchronized State tryAcquire() {
+            switch (state) {
+                case CLOSED:
+                    return State.CLOSED;
+                case OPEN:
+                    if (System.nanoTime() - openedAt < openDurationNanos) {
+                        return null;
+                    }
+                    // this request is the probe
+                    state = State.HALF_OPEN;
+                    LOG.info("Circuit half-open for {}, probing", host);
+                    return State.HALF_OPEN;
+                default:
+                    return null;
+            }
+        }
+
+        private synchronized void releaseProbe() {
+            if (state == State.HALF_OPEN) {
+                // openedAt is kept, so the open duration is already over
+                state = State.OPEN;
+            }
+        }
+
+        private synchronized void onSuccess() {
+            if (state != State.CLOSED) {
+                LOG.info("Circuit closed for {}", host);
+            }
+            state = State.CLOSED;
+            failures = 0;
+        }
+
+        private synchronized void onFailure() {
+            failures++;
+            if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+                LOG.warn("Circuit open for {} after {} consecutive failures", host, failures);
+                state = State.OPEN;
+                openedAt = System.nanoTime();
+            }
+        }
+
+        private synchronized State getState() {
+            return state;
+        }
+    }
+}
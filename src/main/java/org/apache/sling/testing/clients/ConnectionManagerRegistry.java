@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.annotation.Contract;
+import org.apache.http.annotation.ThreadingBehavior;
+import org.apache.http.impl.client.IdleConnectionEvictor;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Process-wide registry of pooling connection managers, shared by the clients built with
+ * {@link SlingClient.InternalBuilder#setSharedConnections(boolean)} enabled.</p>
+ *
+ * <p>One connection manager is kept for each target (scheme, host, port) and connection settings
+ * (pool sizes, SSL context and hostname verifier). Every client acquires a {@link Lease} when it is built
+ * and releases it when it is closed. The connection manager is shut down when the last lease is released.</p>
+ *
+ * <p>Only the connections are shared: each client keeps its own interceptors, cookie store and credentials.</p>
+ *
+ * @since 3.2.0
+ */
+@Contract(threading = ThreadingBehavior.SAFE)
+public final class ConnectionManagerRegistry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConnectionManagerRegistry.class);
+
+    private static final ConnectionManagerRegistry INSTANCE = new ConnectionManagerRegistry();
+
+    private final Map<Key, Entry> entries = new HashMap<>();
+
+    private ConnectionManagerRegistry() {
+    }
+
+    /**
+     * @return the registry instance
+     */
+    public static ConnectionManagerRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the number of connection managers currently in use
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized Lease acquire(URI url, SSLContext sslContext, HostnameVerifier hostnameVerifier,
+                               int maxConnPerRoute, int maxConnTotal, int validateAfterInactivity, long connMaxIdleTime,
+                               Supplier<PoolingHttpClientConnectionManager> factory) {
+        Key key = new Key(url, sslContext, hostnameVerifier, maxConnPerRoute, maxConnTotal, validateAfterInactivity,
+                connMaxIdleTime);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry(factory.get(), connMaxIdleTime);
+            entries.put(key, entry);
+            LOG.debug("Created shared connection manager for {}", key);
+        }
+        entry.references++;
+        return new Lease(key, entry.connectionManager);
+    }
+
+    private synchronized void release(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return;
+        }
+        if (--entry.references <= 0) {
+            entries.remove(key);
+            entry.shutdown();
+            LOG.debug("Shut down shared connection manager for {}", key);
+        }
+    }
+
+    /**
+     * Reference to a shared connection manager held by a client. Closing the lease more than once has no effect.
+     */
+    public final class Lease implements Closeable {
+
+        private final Key key;
+
+        private final PoolingHttpClientConnectionManager connectionManager;
+
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Lease(Key key, PoolingHttpClientConnectionManager connectionManager) {
+            this.key = key;
+            this.connectionManager = connectionManager;
+        }
+
+        /**
+         * @return the shared connection manager
+         */
+        public PoolingHttpClientConnectionManager getConnectionManager() {
+            return connectionManager;
+        }
+
+        /**
+         * @return {@code true} if the lease was already released
+         */
+        public boolean isReleased() {
+            return released.get();
+        }
+
+        /**
+         * Releases the lease. The connection manager is shut down if this was the last lease on it
+         */
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                release(key);
+            }
+        }
+    }
+
+    private static final class Entry {
+
+        private final PoolingHttpClientConnectionManager connectionManager;
+
+        private final IdleConnectionEvictor evictor;
+
+        private int references;
+
+        private Entry(PoolingHttpClientConnectionManager connectionManager, long connMaxIdleTime) {
+            this.connectionManager = connectionManager;
+            if (connMaxIdleTime > 0) {
+                this.evictor = new IdleConnectionEvictor(connectionManager, connMaxIdleTime, TimeUnit.MILLISECONDS);
+                this.evictor.start();
+            } else {
+                this.evictor = null;
+            }
+        }
+
+        private void shutdown() {
+            if (evictor != null) {
+                evictor.shutdown();
+            }
+            connectionManager.shutdown();
+        }
+    }
+
+    private static final class Key {
+
+        private final String scheme;
+
+        private final String host;
+
+        private final int port;
+
+        // compared by identity, they do not implement equals()
+        private final SSLContext sslContext;
+
+        private final HostnameVerifier hostnameVerifier;
+
+        private final int maxConnPerRoute;
+
+        private final int maxConnTotal;
+
+        private final int validateAfterInactivity;
+
+        private final long connMaxIdleTime;
+
+        private Key(URI url, SSLContext sslContext, HostnameVerifier hostnameVerifier, int maxConnPerRoute,
+                    int maxConnTotal, int validateAfterInactivity, long connMaxIdleTime) {
+            this.scheme = url.getScheme() != null ? url.getScheme().toLowerCase() : null;
+            this.host = url.getHost() != null ? url.getHost().toLowerCase() : null;
+            this.port = url.getPort();
+            this.sslContext = sslContext;
+            this.hostnameVerifier = hostnameVerifier;
+            this.maxConnPerRoute = maxConnPerRoute;
+            this.maxConnTotal = maxConnTotal;
+            this.validateAfterInactivity = validateAfterInactivity;
+            this.connMaxIdleTime = connMaxIdleTime;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return port == other.port
+                    && maxConnPerRoute == other.maxConnPerRoute
+                    && maxConnTotal == other.maxConnTotal
+                    && validateAfterInactivity == other.validateAfterInactivity
+                    && connMaxIdleTime == other.connMaxIdleTime
+                    && sslContext == other.sslContext
+                    && hostnameVerifier == other.hostnameVerifier
+                    && Objects.equals(scheme, other.scheme)
+                    && Objects.equals(host, other.host);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(scheme, host, port, System.identityHashCode(sslContext),
+                    System.identityHashCode(hostnameVerifier), maxConnPerRoute, maxConnTotal, validateAfterInactivity,
+                    connMaxIdleTime);
+        }
+
+        @Override
+        public String toString() {
+            return scheme + "://" + host + ":" + port;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.annotation.Contract;
+import org.apache.http.annotation.ThreadingBehavior;
+
+/**
+ * <p>Bounded pool of direct {@link ByteBuffer}s of a fixed size, used to capture the content of the responses
+ * without allocating new arrays for each request. See {@link ContentCapturePolicy#withBufferPool(ContentBufferPool)}.</p>
+ *
+ * <p>The buffers are allocated lazily, up to {@code maxBuffers}. When all of them are in use, {@link #acquire()}
+ * returns {@code null} and the content is captured in a regular heap array instead.
+ * A buffer goes back to the pool when the response holding it is closed, or once the response was garbage
+ * collected without being closed.</p>
+ *
+ * @since 3.2.0
+ */
+@Contract(threading = ThreadingBehavior.SAFE)
+public class ContentBufferPool {
+
+    private final int bufferSize;
+
+    private final int maxBuffers;
+
+    private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger allocated = new AtomicInteger();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param bufferSize the capacity of each buffer, in bytes
+     * @param maxBuffers the maximum number of buffers allocated by the pool
+     */
+    public ContentBufferPool(int bufferSize, int maxBuffers) {
+        if (bufferSize <= 0 || maxBuffers <= 0) {
+            throw new IllegalArgumentException("bufferSize and maxBuffers must be positive");
+        }
+        this.bufferSize = bufferSize;
+        this.maxBuffers = maxBuffers;
+    }
+
+    /**
+     * Takes a buffer from the pool, allocating it if needed
+     *
+     * @return a cleared buffer or {@code null} if all the buffers are in use
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+        if (allocated.incrementAndGet() <= maxBuffers) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        allocated.decrementAndGet();
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Returns a buffer to the pool
+     *
+     * @param buffer a buffer obtained with {@link #acquire()}
+     */
+    public void release(ByteBuffer buffer) {
+        buffer.clear();
+        free.offer(buffer);
+    }
+
+    /**
+     * @return the capacity of each buffer, in bytes
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return the maximum number of buffers allocated by the pool
+     */
+    public int getMaxBuffers() {
+        return maxBuffers;
+    }
+
+    /**
+     * @return the number of buffers allocated so far
+     */
+    public int getAllocated() {
+        return allocated.get();
+    }
+
+    /**
+     * @return the number of buffers currently in the pool, ready to be reused
+     */
+    public int getAvailable() {
+        return free.size();
+    }
+
+    /**
+     * @return the number of times no buffer was available
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+}
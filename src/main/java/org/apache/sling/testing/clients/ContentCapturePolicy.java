@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients;
+
+import java.nio.file.Path;
+
+import org.apache.http.annotation.Contract;
+import org.apache.http.annotation.ThreadingBehavior;
+
+/**
+ * <p>Defines how the content of the responses is captured by the methods consuming the entity,
+ * like {@link AbstractSlingClient#doRequest(org.apache.http.client.methods.HttpUriRequest, java.util.List, int...)}.</p>
+ *
+ * <p>By default, the whole content is kept in memory. With {@link #spillToDisk(long)}, the content larger
+ * than the given number of bytes is written to a temporary file instead, so the memory used by a response
+ * stays bounded. See {@link SlingHttpResponse#isContentSpilled()}.</p>
+ *
+ * <p>With {@link #withBufferPool(ContentBufferPool)}, the contents fitting in a buffer of the pool are captured
+ * in a pooled direct buffer, which is returned to the pool when the response is closed, or once it was garbage
+ * collected.</p>
+ *
+ * @since 3.2.0
+ */
+@Contract(threading = ThreadingBehavior.IMMUTABLE)
+public final class ContentCapturePolicy {
+
+    /**
+     * Keeps the whole content in memory
+     */
+    public static final ContentCapturePolicy IN_MEMORY = new ContentCapturePolicy(-1, null, null);
+
+    private final long maxInMemoryBytes;
+
+    private final Path spillDirectory;
+
+    private final ContentBufferPool bufferPool;
+
+    private ContentCapturePolicy(long maxInMemoryBytes, Path spillDirectory, ContentBufferPool bufferPool) {
+        this.maxInMemoryBytes = maxInMemoryBytes;
+        this.spillDirectory = spillDirectory;
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Captures the contents in buffers of the given pool when they fit, otherwise keeps them in memory
+     *
+     * @param bufferPool the pool of buffers
+     * @return the policy
+     */
+    public static ContentCapturePolicy pooled(ContentBufferPool bufferPool) {
+        return IN_MEMORY.withBufferPool(bufferPool);
+    }
+
+    /**
+     * Keeps the content in memory up to {@code maxInMemoryBytes}, larger contents are written
+     * to a temporary file in the default temporary directory
+     *
+     * @param maxInMemoryBytes the maximum number of bytes kept in memory
+     * @return the policy
+     */
+    public static ContentCapturePolicy spillToDisk(long maxInMemoryBytes) {
+        return spillToDisk(maxInMemoryBytes, null);
+    }
+
+    /**
+     * Keeps the content in memory up to {@code maxInMemoryBytes}, larger contents are written
+     * to a temporary file in the given directory
+     *
+     * @param maxInMemoryBytes the maximum number of bytes kept in memory
+     * @param spillDirectory the directory of the temporary files, {@code null} for the default temporary directory
+     * @return the policy
+     */
+    public static ContentCapturePolicy spillToDisk(long maxInMemoryBytes, Path spillDirectory) {
+        if (maxInMemoryBytes < 0) {
+            throw new IllegalArgumentException("maxInMemoryBytes must be positive");
+        }
+        return new ContentCapturePolicy(maxInMemoryBytes, spillDirectory, null);
+    }
+
+    /**
+     * Returns a copy of this policy capturing the contents in buffers of the given pool when they fit.
+     * The larger contents, or all of them when the pool is exhausted, are captured as defined by this policy.
+     *
+     * @param bufferPool the pool of buffers, {@code null} to not use pooled buffers
+     * @return the new policy
+     */
+    public ContentCapturePolicy withBufferPool(ContentBufferPool bufferPool) {
+        return new ContentCapturePolicy(maxInMemoryBytes, spillDirectory, bufferPool);
+    }
+
+    /**
+     * @return the maximum number of bytes kept in memory, -1 if unlimited
+     */
+    public long getMaxInMemoryBytes() {
+        return maxInMemoryBytes;
+    }
+
+    /**
+     * @return the directory of the temporary files or {@code null} for the default temporary directory
+     */
+    public Path getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * @return true if large contents are written to temporary files
+     */
+    public boolean isSpillEnabled() {
+        return maxInMemoryBytes >= 0;
+    }
+
+    /**
+     * @return the pool of buffers or {@code null} if the contents are not captured in pooled buffers
+     */
+    public ContentBufferPool getBufferPool() {
+        return bufferPool;
+    }
+}
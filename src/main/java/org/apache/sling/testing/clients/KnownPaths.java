@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.annotation.Contract;
+import org.apache.http.annotation.ThreadingBehavior;
+
+/**
+ * <p>Client-side record of the repository paths known to exist, so the fixtures creating nodes under the same
+ * paths again and again skip the existence checks, e.g. in {@link SlingClient#createNodeRecursive(String, String)}.</p>
+ *
+ * <p>The paths are added when {@link SlingClient#exists(String)} finds them or when the client creates them,
+ * and removed, with their descendants, when the client deletes or moves them. The changes made by other clients
+ * or by the server are not seen, so an instance should only be shared by the clients of a same test session,
+ * and {@link #clear()}ed when the content is reset.</p>
+ *
+ * <p>Enabled with {@link SlingClient.InternalBuilder#setKnownPaths(KnownPaths)}.</p>
+ *
+ * @since 3.2.0
+ */
+@Contract(threading = ThreadingBehavior.SAFE)
+public class KnownPaths {
+
+    private final Set<String> paths = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param path an absolute path
+     * @return true if the path is known to exist
+     */
+    public boolean contains(String path) {
+        return paths.contains(normalize(path));
+    }
+
+    /**
+     * Records a path as existing
+     *
+     * @param path an absolute path
+     */
+    public void add(String path) {
+        paths.add(normalize(path));
+    }
+
+    /**
+     * Forgets a path and all its descendants, e.g. after deleting it
+     *
+     * @param path an absolute path
+     */
+    public void remove(String path) {
+        String normalized = normalize(path);
+        String prefix = normalized + "/";
+        paths.removeIf(p -> p.equals(normalized) || p.startsWith(prefix));
+    }
+
+    /**
+     * Forgets all the paths
+     */
+    public void clear() {
+        paths.clear();
+    }
+
+    /**
+     * @return the number of paths known to exist
+     */
+    public int size() {
+        return paths.size();
+    }
+
+    /**
+     * Removes the trailing slashes, so {@code /a/b/} and {@code /a/b} are the same path
+     */
+    static String normalize(String path) {
+        String normalized = StringUtils.stripEnd(path, "/");
+        return normalized.isEmpty() ? "/" : normalized;
+    }
+}
@@ -20,14 +20,25 @@ import static org.apache.http.HttpStatus.SC_CREATED;
 import static org.apache.http.HttpStatus.SC_OK;
 
 import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
 import java.net.URI;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+
 import com.fasterxml.jackson.databind.JsonNode;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.HttpEntity;
@@ -39,19 +50,45 @@ import org.apache.http.annotation.ThreadingBehavior;
 import org.apache.http.client.CookieStore;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.RedirectStrategy;
+import org.apache.http.client.ServiceUnavailableRetryStrategy;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.impl.cookie.BasicClientCookie;
+import org.apache.http.ssl.SSLContexts;
+import org.apache.sling.testing.clients.batch.Batch;
+import org.apache.sling.testing.clients.batch.BulkPathOperations;
+import org.apache.sling.testing.clients.batch.BulkPathResult;
+import org.apache.sling.testing.clients.batch.BulkPropertyWriter;
+import org.apache.sling.testing.clients.batch.JsonTreeImporter;
+import org.apache.sling.testing.clients.batch.TreeUploadResult;
+import org.apache.sling.testing.clients.batch.TreeUploader;
+import org.apache.sling.testing.clients.cache.RequestCoalescer;
+import org.apache.sling.testing.clients.cache.ResponseCache;
 import org.apache.sling.testing.clients.exceptions.TestingValidationException;
 import org.apache.sling.testing.clients.interceptors.*;
+import org.apache.sling.testing.clients.tree.TreeSync;
+import org.apache.sling.testing.clients.tree.TreeSyncResult;
+import org.apache.sling.testing.clients.tree.TreeVisitor;
+import org.apache.sling.testing.clients.tree.TreeWalkResult;
+import org.apache.sling.testing.clients.tree.TreeWalker;
 import org.apache.sling.testing.clients.util.*;
 import org.apache.sling.testing.clients.util.poller.AbstractPoller;
 import org.apache.sling.testing.clients.util.poller.Polling;
 import org.apache.sling.testing.timeouts.TimeoutsProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 
 /**
@@ -67,6 +104,8 @@ public class SlingClient extends AbstractSlingClient {
     public static final String CLIENT_CONNECTION_TIMEOUT_PROP = "sling.client.connection.timeout.seconds";
     public static final String SUDO_COOKIE_NAME = "sling.sudo.cookie.name";
 
+    private static final Logger LOG = LoggerFactory.getLogger(SlingClient.class);
+
     /**
      * Constructor used by Builders and adaptTo(). <b>Should never be called directly from the code.</b>
      *
@@ -93,7 +132,187 @@ public class SlingClient extends AbstractSlingClient {
      * @throws ClientException never, kept for uniformity with the other constructors
      */
     public SlingClient(URI url, String user, String password) throws ClientException {
-        super(Builder.create(url, user, password).buildHttpClient(), Builder.create(url, user, password).buildSlingClientConfig());
+        this(Builder.create(url, user, password));
+    }
+
+    /**
+     * Constructor for clients built from an {@link InternalBuilder}. The http client and the config are built
+     * from the same builder, so the config can reference the resources of the http client (e.g. the connection pool)
+     *
+     * <p>If the config cannot be built, the http client is closed and its lease on a shared connection pool
+     * released. A subclass whose constructor may fail afterwards should rather be created with
+     * {@link InternalBuilder#buildClient(InternalBuilder.ClientFactory)}, which also covers its constructor.</p>
+     *
+     * @param builder the builder
+     * @throws ClientException if the client could not be created
+     * @since 3.2.0
+     */
+    protected SlingClient(InternalBuilder<?> builder) throws ClientException {
+        this(builder, builder.buildHttpClient());
+    }
+
+    private SlingClient(InternalBuilder<?> builder, CloseableHttpClient http) throws ClientException {
+        super(http, builder.buildSlingClientConfig(http));
+    }
+
+    /**
+     * <p>Creates a new batch of operations to be executed concurrently with this client.</p>
+     *
+     * <p>Example: {@code client.batch().createNode(path1, type).createNode(path2, type).execute(8)}</p>
+     *
+     * @return a new, empty batch
+     * @since 3.2.0
+     */
+    public Batch batch() {
+        return new Batch(this);
+    }
+
+    /**
+     * <p>Creates a new writer sending the properties of many nodes with a few requests, instead of one request per node.</p>
+     *
+     * <p>Example: {@code client.bulkPropertyWriter().setProperty(path1, "title", "A").setProperty(path2, "title", "B").execute(4)}</p>
+     *
+     * @return a new, empty writer
+     * @since 3.2.0
+     */
+    public BulkPropertyWriter bulkPropertyWriter() {
+        return new BulkPropertyWriter(this);
+    }
+
+    /**
+     * <p>Creates a new helper deleting or moving many paths with a few {@code :applyTo} requests.</p>
+     *
+     * <p>Example: {@code client.bulkPathOperations().setChunkSize(200).setRetries(2).delete(paths, 4)}</p>
+     *
+     * @return a new helper with the default chunk size
+     * @since 3.2.0
+     */
+    public BulkPathOperations bulkPathOperations() {
+        return new BulkPathOperations(this);
+    }
+
+    /**
+     * <p>Creates a new importer splitting a large JSON tree into chunks imported concurrently, instead of the single
+     * request of {@link #importJson(String, JsonNode, int...)}.</p>
+     *
+     * <p>Example: {@code client.jsonTreeImporter().setChunkSize(2000).importJson("/content/big", jsonFile, 8)}</p>
+     *
+     * @return a new importer with the default chunk size
+     * @since 3.2.0
+     */
+    public JsonTreeImporter jsonTreeImporter() {
+        return new JsonTreeImporter(this);
+    }
+
+    /**
+     * <p>Creates a new uploader of local directory trees, uploading the files concurrently and skipping
+     * the files already uploaded.</p>
+     *
+     * <p>Example: {@code client.treeUploader().setRetries(2).upload(Paths.get("assets"), "/content/assets", 8)}</p>
+     *
+     * @return a new uploader
+     * @since 3.2.0
+     */
+    public TreeUploader treeUploader() {
+        return new TreeUploader(this);
+    }
+
+    /**
+     * Uploads a local directory tree, 4 files at a time, skipping the files already uploaded with the same content.
+     * See {@link #treeUploader()} to change the defaults.
+     *
+     * @param localDir the local directory
+     * @param remoteRoot the path of the folder receiving the content of {@code localDir}
+     * @return the outcome of the upload
+     * @throws ClientException if the directory could not be read or the folders could not be created
+     * @throws InterruptedException if the thread was interrupted while waiting
+     * @since 3.2.0
+     */
+    public TreeUploadResult uploadTree(Path localDir, String remoteRoot) throws ClientException, InterruptedException {
+        return treeUploader().upload(localDir, remoteRoot, 4);
+    }
+
+    /**
+     * <p>Creates a new walker of repository trees, reading them breadth-first in slices of a fixed depth
+     * with concurrent requests.</p>
+     *
+     * <p>Example: {@code client.treeWalker().setSliceDepth(3).walk("/content", (path, properties) -> count++, 8)}</p>
+     *
+     * @return a new walker reading slices of depth 2
+     * @since 3.2.0
+     */
+    public TreeWalker treeWalker() {
+        return new TreeWalker(this);
+    }
+
+    /**
+     * Visits all the nodes under {@code root}, the root included, reading slices of depth 2 with 4 requests
+     * at the same time. See {@link #treeWalker()} to change the defaults or filter the walked subtrees.
+     *
+     * @param root the path of the root of the tree
+     * @param visitor the visitor of the nodes, called from the current thread only
+     * @return the outcome of the walk
+     * @throws ClientException if a slice could not be read or the visitor failed
+     * @throws InterruptedException if the thread was interrupted while waiting
+     * @since 3.2.0
+     */
+    public TreeWalkResult walkTree(String root, TreeVisitor visitor) throws ClientException, InterruptedException {
+        return treeWalker().walk(root, visitor, 4);
+    }
+
+    /**
+     * <p>Creates a new sync of remote trees with local JSON trees, sending only the nodes and properties
+     * which differ.</p>
+     *
+     * <p>Example: {@code client.treeSync().setRetries(2).sync("/content/fixtures", new File("fixtures.json"), 8)}</p>
+     *
+     * @return a new sync deleting the remote nodes missing from the local tree
+     * @since 3.2.0
+     */
+    public TreeSync treeSync() {
+        return new TreeSync(this);
+    }
+
+    /**
+     * Makes the remote tree at {@code path} the same as a local JSON file, executing 4 requests at the same time.
+     * Only the difference is sent, so e.g. a fixture is quickly restored after a test changed a few nodes.
+     * See {@link #treeSync()} to change the defaults.
+     *
+     * @param path the path of the root of the remote tree, its parent must exist
+     * @param json the file of the local tree, in the format of the Sling JSON import
+     * @return the outcome of the sync
+     * @throws ClientException if the file or the remote tree could not be read, or the changes could not be applied
+     * @throws InterruptedException if the thread was interrupted while waiting
+     * @since 3.2.0
+     */
+    public TreeSyncResult syncTree(String path, File json) throws ClientException, InterruptedException {
+        return treeSync().sync(path, json, 4).throwIfFailed();
+    }
+
+    /**
+     * Deletes many sling paths with {@code :applyTo} requests of 100 paths, executing 4 requests at the same time.
+     * See {@link #bulkPathOperations()} to change the defaults.
+     *
+     * @param paths the paths to delete
+     * @return the paths actually deleted
+     * @throws InterruptedException if the thread was interrupted while waiting
+     * @since 3.2.0
+     */
+    public BulkPathResult deletePaths(Collection<String> paths) throws InterruptedException {
+        return bulkPathOperations().delete(paths, 4);
+    }
+
+    /**
+     * Moves many sling paths with {@code :applyTo} requests of 100 paths, executing 4 requests at the same time.
+     * See {@link #bulkPathOperations()} to change the defaults.
+     *
+     * @param paths the source paths mapped to their destination paths
+     * @return the paths actually moved
+     * @throws InterruptedException if the thread was interrupted while waiting
+     * @since 3.2.0
+     */
+    public BulkPathResult movePaths(Map<String, String> paths) throws InterruptedException {
+        return bulkPathOperations().move(paths, 4);
     }
 
     /**
@@ -111,7 +330,9 @@ public class SlingClient extends AbstractSlingClient {
                 .addParameter(":dest", destPath)
                 .build();
 
-        return this.doPost(srcPath, entity, expectedStatus);
+        SlingHttpResponse response = this.doPost(srcPath, entity, expectedStatus);
+        forgetKnownPath(srcPath);
+        return response;
     }
 
     /**
@@ -125,25 +346,87 @@ public class SlingClient extends AbstractSlingClient {
     public SlingHttpResponse deletePath(String path, int... expectedStatus) throws ClientException {
         HttpEntity entity = FormEntityBuilder.create().addParameter(":operation", "delete").build();
 
-        return this.doPost(path, entity, expectedStatus);
+        SlingHttpResponse response = this.doPost(path, entity, expectedStatus);
+        forgetKnownPath(path);
+        return response;
+    }
+
+    private void forgetKnownPath(String path) {
+        KnownPaths knownPaths = getKnownPaths();
+        if (knownPaths != null) {
+            knownPaths.remove(path);
+        }
     }
 
     /**
-     * Recursively creates all the none existing nodes in the given path using the {@link SlingClient#createNode(String, String)} method.
-     * All the created nodes will have the given node type.
+     * <p>Recursively creates all the none existing nodes in the given path. All the created nodes will have the given
+     * node type, or {@value DEFAULT_NODE_TYPE} if it is {@code null}.</p>
+     *
+     * <p>The deepest existing ancestor is found bottom-up, and the missing levels are created by a single POST to it,
+     * with a {@code jcr:primaryType} parameter per level. Creating {@code /a/b/c/d/e/f} under {@code /a} takes
+     * 6 GET and 1 POST requests. Each level is checked, because an ancestor the user cannot read looks missing
+     * while its descendants exist: a type is only sent for the levels found missing, so an existing node is never
+     * typed again. If the client has {@link #getKnownPaths() known paths}, the levels known to exist are not
+     * checked again.</p>
      *
      * @param path the path to use for creating all the none existing nodes
      * @param nodeType the node type to use for the created nodes
-     * @return the response to the creation of the leaf node
+     * @return the response to the creation of the missing nodes or null if the path already existed
      * @throws ClientException if one of the nodes can't be created
      */
     public SlingHttpResponse createNodeRecursive(final String path, final String nodeType) throws ClientException {
-        final String parentPath = getParentPath(path);
-        if (!parentPath.isEmpty() && !exists(parentPath)) {
-            createNodeRecursive(parentPath, nodeType);
+        final List<String> levels = getPathLevels(path);
+        final KnownPaths knownPaths = getKnownPaths();
+
+        // index of the deepest level known to exist, -1 for the root
+        int existing = -1;
+        if (knownPaths != null) {
+            for (int i = levels.size() - 1; i >= 0 && existing < 0; i--) {
+                if (knownPaths.contains(levels.get(i))) {
+                    existing = i;
+                }
+            }
         }
+        // index of the shallowest level found missing, checked bottom-up: a binary search would take the existing
+        // levels below an unreadable ancestor for missing
+        int missing = levels.size();
+        while (missing - existing > 1 && !exists(levels.get(missing - 1))) {
+            missing--;
+        }
+        if (missing == levels.size()) {
+            return null;
+        }
+        existing = missing - 1;
+
+        final String parentPath = existing >= 0 ? levels.get(existing) : "/";
+        final String nodeTypeValue = nodeType != null ? nodeType : DEFAULT_NODE_TYPE;
+        final FormEntityBuilder form = FormEntityBuilder.create();
+        for (int i = missing; i < levels.size(); i++) {
+            // relative to the parent, e.g. b/c/jcr:primaryType, Sling uses it for each intermediate node it creates
+            String relativePath = StringUtils.removeStart(levels.get(i).substring(parentPath.length()), "/");
+            form.addParameter(relativePath + "/jcr:primaryType", nodeTypeValue);
+        }
+        SlingHttpResponse response = this.doPost(parentPath, form.build(), SC_OK, SC_CREATED);
 
-        return createNode(path, nodeType);
+        if (knownPaths != null) {
+            for (int i = missing; i < levels.size(); i++) {
+                knownPaths.add(levels.get(i));
+            }
+        }
+        return response;
+    }
+
+    /**
+     * @return the paths of the levels of an absolute path, e.g. {@code /a}, {@code /a/b} for {@code /a/b/}
+     */
+    private static List<String> getPathLevels(String path) {
+        List<String> levels = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String segment : StringUtils.split(path, '/')) {
+            current.append('/').append(segment);
+            levels.add(current.toString());
+        }
+        return levels;
     }
 
     /**
@@ -159,6 +442,10 @@ public class SlingClient extends AbstractSlingClient {
      * @throws ClientException if the node can't be created
      */
     public SlingHttpResponse createNode(final String path, final String nodeType) throws ClientException {
+        final KnownPaths knownPaths = getKnownPaths();
+        if (knownPaths != null && knownPaths.contains(path)) {
+            return null;
+        }
         if (!exists(path)) {
 
             String nodeTypeValue = nodeType;
@@ -172,7 +459,11 @@ public class SlingClient extends AbstractSlingClient {
             final String nodeName = getNodeNameFromPath(path);
             final String nodeParentPath = getParentPath(path);
             final HttpEntity entity = FormEntityBuilder.create().addParameter(nodeName + "/jcr:primaryType", nodeTypeValue).build();
-            return this.doPost(nodeParentPath, entity, SC_OK, SC_CREATED);
+            SlingHttpResponse response = this.doPost(nodeParentPath, entity, SC_OK, SC_CREATED);
+            if (knownPaths != null) {
+                knownPaths.add(path);
+            }
+            return response;
         } else {
             return null;
         }
@@ -201,6 +492,12 @@ public class SlingClient extends AbstractSlingClient {
     public boolean exists(String path) throws ClientException {
         SlingHttpResponse response = this.doGet(path + ".json");
         final int status = response.getStatusLine().getStatusCode();
+        // a missing path is not forgotten, only deleting or moving it does, since the removal
+        // would drop the descendants too, while a node can exist below an unreadable one
+        final KnownPaths knownPaths = getKnownPaths();
+        if (knownPaths != null && status == SC_OK) {
+            knownPaths.add(path);
+        }
         return status == SC_OK;
     }
 
@@ -425,9 +722,29 @@ public class SlingClient extends AbstractSlingClient {
             path += "." + depth + ".json";
         }
 
-        // request the JSON for the node
-        SlingHttpResponse response = this.doGet(path, HttpUtils.getExpectedStatus(SC_OK, expectedStatus));
-        return JsonUtils.getJsonNodeFromString(response.getContent());
+        // request the JSON for the node and parse it directly from the stream
+        SlingHttpResponse response = this.doStreamGet(path, null, null, HttpUtils.getExpectedStatus(SC_OK, expectedStatus));
+        return response.getJsonNode();
+    }
+
+    /**
+     * Binds the JSON of a content node to an object of the given type, directly from the response stream.
+     *
+     * @param path the path to the content node
+     * @param depth the number of levels to go down the tree, -1 for infinity
+     * @param type the type of the object to bind to
+     * @param expectedStatus list of allowed HTTP Status to be returned. If not set, 200 (OK) is assumed.
+     * @param <J> the type of the object
+     *
+     * @return the object bound to the JSON of the requested content node
+     * @throws ClientException if the path does not exist or something fails during request/response cycle
+     * @since 3.2.0
+     */
+    public <J> J doGetJson(String path, int depth, Class<J> type, int... expectedStatus) throws ClientException {
+        path += depth == -1 ? ".infinity.json" : "." + depth + ".json";
+
+        SlingHttpResponse response = this.doStreamGet(path, null, null, HttpUtils.getExpectedStatus(SC_OK, expectedStatus));
+        return response.readJson(type);
     }
 
     /**
@@ -471,6 +788,91 @@ public class SlingClient extends AbstractSlingClient {
         return this.doPost(toFolder, entity, HttpUtils.getExpectedStatus(SC_CREATED, expectedStatus));
     }
 
+    /**
+     * <p>Uploads a file in chunks of {@code chunkSize} bytes, using the chunked upload of the Sling POST servlet
+     * ({@code @Offset}, {@code @Length} and {@code @Completed}). Each chunk is sent from the file with
+     * a {@link FileRegionBody}, so the file is never read in memory.</p>
+     *
+     * <p>When a chunk fails, the length already committed by the server ({@code sling:length}) is read again and the
+     * upload resumes from there, up to {@code maxResumes} times. An upload interrupted by a previous call is resumed too.
+     * The server appends the chunks in order, so the chunks of a file are sent one after the other: use a
+     * {@link Batch} to upload several files concurrently.</p>
+     *
+     * @param file          the file to be uploaded
+     * @param mimeType      the MIME Type of the file
+     * @param toPath        the complete path of the file in the repository including file name
+     * @param createFolders if true, all non existing parent nodes will be created using node type {@code sling:OrderedFolder}
+     * @param chunkSize     the maximum number of bytes of each request
+     * @param maxResumes    how many times the upload resumes after a failed chunk before giving up
+     * @return the response of the last chunk
+     * @throws ClientException if a chunk still fails after {@code maxResumes} resumes
+     * @since 3.2.0
+     */
+    public SlingHttpResponse uploadChunked(File file, String mimeType, String toPath, boolean createFolders,
+                                           long chunkSize, int maxResumes) throws ClientException {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1");
+        }
+        final long length = file.length();
+        if (length <= chunkSize) {
+            return upload(file, mimeType, toPath, createFolders, SC_OK, SC_CREATED);
+        }
+
+        String toFileName;
+        String toFolder;
+        if (toPath.endsWith("/")) {
+            toFileName = file.getName();
+            toFolder = toPath;
+        } else {
+            toFileName = getNodeNameFromPath(toPath);
+            toFolder = getParentPath(toPath);
+        }
+        if (createFolders) {
+            createNodeRecursive(toFolder, "sling:OrderedFolder");
+        }
+        final ContentType contentType = ContentType.create(mimeType != null ? mimeType : "application/octet-stream");
+        final String filePath = StringUtils.removeEnd(toFolder, "/") + "/" + toFileName;
+
+        long offset = getUploadedLength(filePath, length);
+        int resumes = 0;
+        while (true) {
+            try {
+                SlingHttpResponse response = null;
+                while (offset < length) {
+                    long size = Math.min(chunkSize, length - offset);
+                    MultipartEntityBuilder builder = MultipartEntityBuilder.create()
+                            .addTextBody(toFileName + "@Offset", String.valueOf(offset))
+                            .addTextBody(toFileName + "@Length", String.valueOf(length))
+                            .addPart(toFileName, new FileRegionBody(file, offset, size, contentType, toFileName));
+                    if (offset + size == length) {
+                        builder.addTextBody(toFileName + "@Completed", "true");
+                    }
+                    response = this.doPost(toFolder, builder.build(), SC_OK, SC_CREATED);
+                    offset += size;
+                }
+                return response;
+            } catch (ClientException e) {
+                if (resumes++ >= maxResumes) {
+                    throw e;
+                }
+                offset = getUploadedLength(filePath, length);
+                LOG.warn("Chunk of {} failed, resuming at offset {} ({} of {})", filePath, offset, resumes, maxResumes, e);
+            }
+        }
+    }
+
+    /**
+     * @return the length committed by a pending chunked upload, or 0 if there is none
+     */
+    private long getUploadedLength(String filePath, long length) throws ClientException {
+        SlingHttpResponse response = this.doGet(filePath + ".json");
+        if (response.getStatusLine().getStatusCode() != SC_OK) {
+            return 0;
+        }
+        long uploaded = JsonUtils.getJsonNodeFromString(response.getContent()).path("sling:length").asLong(0);
+        return uploaded > 0 && uploaded < length ? uploaded : 0;
+    }
+
     /**
      * Creates a new Folder of type sling:OrderedFolder. Same as using {@code New Folder...} in the Site Admin.
      *
@@ -678,10 +1080,49 @@ public class SlingClient extends AbstractSlingClient {
      */
     public static abstract class InternalBuilder<T extends SlingClient> {
 
+        private static final ConcurrentMap<String, RateLimitInterceptor> SYSTEM_RATE_LIMITERS = new ConcurrentHashMap<>();
+
+        /**
+         * The settings of the HttpClientBuilder used to create its own connection manager, besides {@code connManager}
+         */
+        private static final String[] HTTP_CLIENT_BUILDER_CONNECTION_FIELDS = {"sslSocketFactory", "sslContext",
+                "hostnameVerifier", "dnsResolver", "defaultSocketConfig", "defaultConnectionConfig", "maxConnTotal",
+                "maxConnPerRoute", "connTimeToLive"};
+
         private final SlingClientConfig.Builder configBuilder;
 
         private final HttpClientBuilder httpClientBuilder;
 
+        private int maxConnPerRoute;
+
+        private int maxConnTotal;
+
+        private long connMaxIdleTime;
+
+        private int validateAfterInactivity;
+
+        private long keepAlive;
+
+        private SSLContext sslContext;
+
+        private HostnameVerifier hostnameVerifier;
+
+        private HttpClientConnectionManager connectionManager;
+
+        private boolean sharedConnections;
+
+        private RateLimitInterceptor rateLimiter;
+
+        /**
+         * The rate limiter added to the interceptors of the http client builder, by the first build
+         */
+        private RateLimitInterceptor addedRateLimiter;
+
+        /**
+         * The connection manager set on the http client builder by the last build
+         */
+        private HttpClientConnectionManager builtConnectionManager;
+
         protected InternalBuilder(URI url, String user, String password) {
             this.httpClientBuilder = HttpClientBuilder.create();
             this.configBuilder = SlingClientConfig.Builder.create().setUrl(url).setUser(user).setPassword(password);
@@ -719,20 +1160,456 @@ public class SlingClient extends AbstractSlingClient {
             return this;
         }
 
+        /**
+         * Sets the executor used to run the asynchronous requests, e.g. {@link AbstractSlingClient#doGetAsync(String, int...)}.
+         * If not set, a shared default executor is used, bounded by the default connection pool size.
+         * The requests block a thread of the executor until their response is read, so a bounded executor
+         * limits the requests in flight.
+         *
+         * @param executor the executor
+         * @return this
+         * @since 3.2.0
+         */
+        public InternalBuilder<T> setAsyncExecutor(Executor executor) {
+            this.configBuilder.setAsyncExecutor(executor);
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of pooled connections per route (host).
+         * Defaults to {@link SystemPropertiesConfig#getHttpMaxConnPerRoute()}
+         *
+         * @param maxConnPerRoute the maximum number of connections per route
+         * @return this
+         * @since 3.2.0
+         */
+        public InternalBuilder<T> setMaxConnPerRoute(int maxConnPerRoute) {
+            this.maxConnPerRoute = maxConnPerRoute;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of pooled connections in total.
+         * Defaults to {@link SystemPropertiesConfig#getHttpMaxConnTotal()}
+         *
+         * @param maxConnTotal the maximum number of connections
+         * @return this
+         * @since 3.2.0
+         */
+        public InternalBuilder<T> setMaxConnTotal(int maxConnTotal) {
+            this.maxConnTotal = maxConnTotal;
+            return this;
+        }
+
+        /**
+         * Sets the time after which idle connections are evicted from the pool by a background thread,
+         * 0 to disable the eviction. Defaults to {@link SystemPropertiesConfig#getHttpConnMaxIdleTime()}
+         *
+         * @param maxIdleTime the max idle time, in milliseconds
+         * @return this
+         * @since 3.2.0
+         */
+        public InternalBuilder<T> setConnMaxIdleTime(long maxIdleTime) {
+            this.connMaxIdleTime = maxIdleTime;
+            return this;
+        }
+
+        /**
+         * Sets the period of inactivity after which a pooled connection is validated before being reused,
+         * 0 to disable the validation. Defaults to {@link SystemPropertiesConfig#getHttpValidateAfterInactivity()}
+         *
+         * @param validateAfterInactivity the inactivity period, in milliseconds
+         * @return this
+         * @since 3.2.0
+         */
+        public InternalBuilder<T> setValidateAfterInactivity(int validateAfterInactivity) {
+            this.validateAfterInactivity = validateAfterInactivity;
+            return this;
+        }
+
+        /**
+         * Sets the maximum time a connection is kept alive for reuse, a negative value to keep it as long as
+         * the server allows it. Defaults to {@link SystemPropertiesConfig#getHttpKeepAlive()}
+         *
+         * @param keepAlive the max keep-alive duration, in milliseconds
+         * @return this
+         * @since 3.2.0
+         */
+        public InternalBuilder<T> setKeepAlive(long keepAlive) {
+            this.keepAlive = keepAlive;
+            return this;
+        }
+
+        /**
+         * Sets the SSL context used for https connections. If not set, the system default is used.
+         *
+         * @param sslContext the SSL context
+         * @return this
+         * @since 3.2.0
+         */
+        public InternalBuilder<T> setSSLContext(SSLContext sslContext) {
+            this.sslContext = sslContext;
+            return this;
+        }
+
+        /**
+         * Sets the hostname verifier used for https connections. If not set, the default verifier is used.
+         *
+         * @param hostnameVerifier the hostname verifier
+         * @return this
+         * @since 3.2.0
+         */
+        public InternalBuilder<T> setSSLHostnameVerifier(HostnameVerifier hostnameVerifier) {
+            this.hostnameVerifier = hostnameVerifier;
+            return this;
+        }
+
+        /**
+         * Sets a custom connection manager. The pool and SSL settings of this builder are ignored in this case.
+         *
+         * @param connectionManager the connection manager
+         * @return this
+         * @since 3.2.0
+         */
+        public InternalBuilder<T> setConnectionManager(HttpClientConnectionManager connectionManager) {
+            this.connectionManager = connectionManager;
+            return this;
+        }
+
+        /**
+         * Sets the policy for capturing the content of the responses consumed by the client, e.g. by
+         * {@link SlingClient#doGet(String, int...)}. Defaults to {@link SystemPropertiesConfig#getHttpMaxInMemoryContent()}
+         *
+         * @param contentCapturePolicy the policy
+         * @return this
+         * @since 3.2.0
+         */
+        public InternalBuilder<T> setContentCapturePolicy(ContentCapturePolicy contentCapturePolicy) {
+            this.configBuilder.setContentCapturePolicy(contentCapturePolicy);
+            return this;
+        }
+
+        /**
+         * Serves the GET requests from the given cache, revalidating the responses with the server
+         * when they have an ETag or Last-Modified header. Disabled by default
+         *
+         * @param responseCache the cache, {@code null} to disable caching
+         * @return this
+         * @since 3.2.0
+         */
+        public InternalBuilder<T> setResponseCache(ResponseCache responseCache) {
+            this.configBuilder.setResponseCache(responseCache);
+            return this;
+        }
+
+        /**
+         * Coalesces the identical GET requests executed concurrently, so only one of them reaches the server
+         * and the others share its response, see {@link RequestCoalescer}. Disabled by default
+         *
+         * @param requestCoalescer the coalescer, {@code null} to disable it
+         * @return this
+         * @since 3.2.0
+         */
+        public InternalBuilder<T> setRequestCoalescer(RequestCoalescer requestCoalescer) {
+            this.configBuilder.setRequestCoalescer(requestCoalescer);
+            return this;
+        }
+
+        /**
+         * Records the paths known to exist, so {@link SlingClient#createNodeRecursive(String, String)} and
+         * {@link SlingClient#createNode(String, String)} skip the existence checks for them, see {@link KnownPaths}.
+         * The same instance can be shared by the clients of a test session. Disabled by default
+         *
+         * @param knownPaths the known paths, {@code null} to always check the existence on the server
+         * @return this
+         * @since 3.2.0
+         */
+        public InternalBuilder<T> setKnownPaths(KnownPaths knownPaths) {
+            this.configBuilder.setKnownPaths(knownPaths);
+            return this;
+        }
+
+        /**
+         * Fails fast the requests to the hosts that keep failing, see {@link CircuitBreaker}.
+         * The same circuit breaker can be shared by several clients. Disabled by default
+         *
+         * @param circuitBreaker the circuit breaker, {@code null} to disable it
+         * @return this
+         * @since 3.2.0
+         */
+        public InternalBuilder<T> setCircuitBreaker(CircuitBreaker circuitBreaker) {
+            this.configBuilder.setCircuitBreaker(circuitBreaker);
+            return this;
+        }
+
+        /**
+         * Sets the strategy retrying the requests failing with a server error, e.g. a {@link ServerErrorRetryStrategy}
+         * with a custom {@link RetryBackoff} or a {@link RetryBudget} shared by several clients.
+         * Defaults to a {@link ServerErrorRetryStrategy} configured by the system properties
+         *
+         * @param retryStrategy the retry strategy
+         * @return this
+         * @since 3.2.0
+         */
+        public InternalBuilder<T> setRetryStrategy(ServiceUnavailableRetryStrategy retryStrategy) {
+            this.httpClientBuilder.setServiceUnavailableRetryStrategy(retryStrategy);
+            return this;
+        }
+
+        /**
+         * Limits the rate of the requests of the client. The same limiter can be shared by several clients,
+         * so the limit applies to all of them. Defaults to a limiter shared by all the clients of the JVM,
+         * configured by {@link SystemPropertiesConfig#getHttpRateLimit()} and
+         * {@link SystemPropertiesConfig#getHttpRateLimitPerHost()}, if any of them is set
+         *
+         * @param rateLimiter the rate limiter, {@code null} to not limit the requests
+         * @return this
+         * @since 3.2.0
+         */
+        public InternalBuilder<T> setRateLimiter(RateLimitInterceptor rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        /**
+         * Shares the connection pool with all the other clients built with this option and targeting
+         * the same server with the same pool and SSL settings, see {@link ConnectionManagerRegistry}.
+         * The pool is shut down when the last client using it is closed.
+         * Defaults to {@link SystemPropertiesConfig#isHttpSharedConnections()}
+         *
+         * @param sharedConnections true to share the connection pool
+         * @return this
+         * @since 3.2.0
+         */
+        public InternalBuilder<T> setSharedConnections(boolean sharedConnections) {
+            this.sharedConnections = sharedConnections;
+            return this;
+        }
+
+        /**
+         * <p>Returns the underlying {@link HttpClientBuilder} for customizing the client at http level.</p>
+         * <p>If a connection manager, or any of the SSL or pool settings (e.g. {@code setSSLContext},
+         * {@code setMaxConnTotal}) is set on the {@code HttpClientBuilder}, the connection manager is left to it:
+         * the pool and SSL settings of this builder are then ignored, the connections are not shared
+         * and the pool statistics are only available for a connection manager set explicitly.</p>
+         *
+         * @return the http client builder
+         */
         public HttpClientBuilder httpClientBuilder() {
             return httpClientBuilder;
         }
 
         public abstract T build() throws ClientException;
 
+        /**
+         * Builds a new http client. Each call creates a new connection pool, or a new lease on a shared pool,
+         * owned by the client created with the http client.
+         *
+         * @return the http client
+         */
         protected CloseableHttpClient buildHttpClient() {
+            ConnectionManagerRegistry.Lease lease = null;
+            if (isConnectionsConfigured()) {
+                // left to the HttpClientBuilder, which creates its own pool if no connection manager was set
+                LOG.debug("Connections configured on the HttpClientBuilder, the pool and SSL settings are ignored");
+                Object cm = getHttpClientBuilderField("connManager");
+                configBuilder.setConnectionManager(cm != builtConnectionManager ? (HttpClientConnectionManager) cm : null);
+            } else {
+                final HttpClientConnectionManager cm;
+                if (connectionManager != null) {
+                    cm = connectionManager;
+                } else if (sharedConnections) {
+                    lease = ConnectionManagerRegistry.getInstance().acquire(
+                            configBuilder.url, sslContext, hostnameVerifier, maxConnPerRoute, maxConnTotal,
+                            validateAfterInactivity, connMaxIdleTime, this::createConnectionManager);
+                    cm = lease.getConnectionManager();
+                } else {
+                    cm = createConnectionManager();
+                }
+                httpClientBuilder.setConnectionManager(cm);
+                // a shared pool is shut down by the registry, when the last lease is released
+                httpClientBuilder.setConnectionManagerShared(lease != null);
+                builtConnectionManager = cm;
+                configBuilder.setConnectionManager(cm);
+            }
+            configBuilder.setConnectionManagerLease(lease);
+
+            if (addedRateLimiter == null && rateLimiter != null) {
+                // the interceptors added before, e.g. a RequestMetricsInterceptor, run before the time spent
+                // waiting for a token, so they must exclude it themselves, see RateLimitInterceptor#getReleaseTime
+                httpClientBuilder.addInterceptorLast(rateLimiter);
+                addedRateLimiter = rateLimiter;
+            } else if (addedRateLimiter != rateLimiter) {
+                throw new IllegalStateException("The rate limiter cannot be changed once a client was built");
+            }
+            configBuilder.setRateLimiter(rateLimiter);
+
+            if (connMaxIdleTime > 0 && configBuilder.connectionManagerLease == null) {
+                httpClientBuilder.evictExpiredConnections();
+                httpClientBuilder.evictIdleConnections(connMaxIdleTime, TimeUnit.MILLISECONDS);
+            }
+
+            if (keepAlive >= 0) {
+                final long maxKeepAlive = keepAlive;
+                httpClientBuilder.setKeepAliveStrategy((response, context) -> {
+                    long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return (duration < 0 || duration > maxKeepAlive) ? maxKeepAlive : duration;
+                });
+            }
+
             return httpClientBuilder.build();
         }
 
+        /**
+         * @return true if a connection manager, other than the one of the last build, or any SSL or pool setting
+         * was set on the {@link HttpClientBuilder}
+         */
+        private boolean isConnectionsConfigured() {
+            Object cm = getHttpClientBuilderField("connManager");
+            if (cm != null && cm != builtConnectionManager) {
+                return true;
+            }
+            for (String name : HTTP_CLIENT_BUILDER_CONNECTION_FIELDS) {
+                Object value = getHttpClientBuilderField(name);
+                if (value instanceof Number ? ((Number) value).longValue() > 0 : value != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * The HttpClientBuilder has no getters, and its setters are final
+         */
+        private Object getHttpClientBuilderField(String name) {
+            try {
+                Field field = HttpClientBuilder.class.getDeclaredField(name);
+                field.setAccessible(true);
+                return field.get(httpClientBuilder);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                LOG.debug("Could not read {} of the HttpClientBuilder", name, e);
+                return null;
+            }
+        }
+
+        /**
+         * Creates the pooling connection manager according to the pool and SSL settings of this builder
+         *
+         * @return a new connection manager
+         * @since 3.2.0
+         */
+        protected PoolingHttpClientConnectionManager createConnectionManager() {
+            final SSLConnectionSocketFactory sslSocketFactory;
+            if (sslContext != null) {
+                sslSocketFactory = hostnameVerifier != null
+                        ? new SSLConnectionSocketFactory(sslContext, hostnameVerifier)
+                        : new SSLConnectionSocketFactory(sslContext);
+            } else if (hostnameVerifier != null) {
+                sslSocketFactory = new SSLConnectionSocketFactory(SSLContexts.createSystemDefault(), hostnameVerifier);
+            } else {
+                // same as HttpClientBuilder#useSystemProperties()
+                sslSocketFactory = SSLConnectionSocketFactory.getSystemSocketFactory();
+            }
+
+            Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+                    .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                    .register("https", sslSocketFactory)
+                    .build();
+
+            PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager(registry);
+            cm.setDefaultMaxPerRoute(maxConnPerRoute);
+            cm.setMaxTotal(maxConnTotal);
+            cm.setValidateAfterInactivity(validateAfterInactivity);
+            return cm;
+        }
+
         protected SlingClientConfig buildSlingClientConfig() throws ClientException {
             return configBuilder.build();
         }
 
+        /**
+         * Creates a client from a new http client and config built by this builder. If the config or the client
+         * cannot be created, the http client is closed and its lease on a shared connection pool released,
+         * so the pool is still shut down once all the other clients using it are closed.
+         *
+         * @param factory creates the client, typically its constructor
+         * @return the client
+         * @throws ClientException if the client could not be created
+         * @since 3.2.0
+         */
+        protected T buildClient(ClientFactory<T> factory) throws ClientException {
+            CloseableHttpClient http = buildHttpClient();
+            try {
+                return factory.create(http, buildSlingClientConfig());
+            } catch (ClientException | RuntimeException e) {
+                release(http, e);
+                throw e;
+            }
+        }
+
+        private SlingClientConfig buildSlingClientConfig(CloseableHttpClient http) throws ClientException {
+            try {
+                return buildSlingClientConfig();
+            } catch (ClientException | RuntimeException e) {
+                release(http, e);
+                throw e;
+            }
+        }
+
+        /**
+         * Closes the http client of a client that could not be created, and releases its lease, if any
+         */
+        private void release(CloseableHttpClient http, Exception failure) {
+            ConnectionManagerRegistry.Lease lease = configBuilder.connectionManagerLease;
+            configBuilder.setConnectionManagerLease(null);
+            try {
+                http.close();
+            } catch (IOException e) {
+                failure.addSuppressed(e);
+            } finally {
+                if (lease != null) {
+                    lease.close();
+                }
+            }
+        }
+
+        /**
+         * Creates a client with the http client and the config built by an {@link InternalBuilder}
+         *
+         * @param <T> the type of the client
+         * @since 3.2.0
+         */
+        @FunctionalInterface
+        protected interface ClientFactory<T extends SlingClient> {
+
+            /**
+             * @param http the http client
+             * @param config the config
+             * @return the client
+             * @throws ClientException if the client could not be created
+             */
+            T create(CloseableHttpClient http, SlingClientConfig config) throws ClientException;
+        }
+
+        /**
+         * Returns the rate limiter configured by the system properties. It is shared by all the clients
+         * as long as the properties do not change.
+         *
+         * @return the rate limiter or {@code null} if the requests are not limited
+         */
+        private static RateLimitInterceptor getSystemRateLimiter() {
+            double rate = SystemPropertiesConfig.getHttpRateLimit();
+            double perHostRate = SystemPropertiesConfig.getHttpRateLimitPerHost();
+            if (rate <= 0 && perHostRate <= 0) {
+                return null;
+            }
+            String key = rate + "/" + SystemPropertiesConfig.getHttpRateLimitBurst() + "/"
+                    + perHostRate + "/" + SystemPropertiesConfig.getHttpRateLimitPerHostBurst();
+            return SYSTEM_RATE_LIMITERS.computeIfAbsent(key, k -> new RateLimitInterceptor(
+                    rate, SystemPropertiesConfig.getHttpRateLimitBurst(),
+                    perHostRate, SystemPropertiesConfig.getHttpRateLimitPerHostBurst()));
+        }
+
         /**
          * Sets defaults to the builder.
          *
@@ -741,9 +1618,14 @@ public class SlingClient extends AbstractSlingClient {
         private InternalBuilder setDefaults() {
             httpClientBuilder.useSystemProperties();
             httpClientBuilder.setUserAgent(SystemPropertiesConfig.getDefaultUserAgent());
-            // Connection
-            httpClientBuilder.setMaxConnPerRoute(10);
-            httpClientBuilder.setMaxConnTotal(100);
+            // Connection pool
+            maxConnPerRoute = SystemPropertiesConfig.getHttpMaxConnPerRoute();
+            maxConnTotal = SystemPropertiesConfig.getHttpMaxConnTotal();
+            connMaxIdleTime = SystemPropertiesConfig.getHttpConnMaxIdleTime();
+            validateAfterInactivity = SystemPropertiesConfig.getHttpValidateAfterInactivity();
+            keepAlive = SystemPropertiesConfig.getHttpKeepAlive();
+            sharedConnections = SystemPropertiesConfig.isHttpSharedConnections();
+            rateLimiter = getSystemRateLimiter();
             // Interceptors
             httpClientBuilder.addInterceptorLast(new TestDescriptionInterceptor());
             httpClientBuilder.addInterceptorLast(new UserAgentInterceptor());
@@ -884,7 +1766,7 @@ public class SlingClient extends AbstractSlingClient {
 
         @Override
         public SlingClient build() throws ClientException {
-            return new SlingClient(buildHttpClient(), buildSlingClientConfig());
+            return buildClient(SlingClient::new);
         }
 
         public static Builder create(URI url, String user, String password) {
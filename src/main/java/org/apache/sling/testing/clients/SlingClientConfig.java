@@ -26,16 +26,21 @@ import org.apache.http.client.AuthCache;
 import org.apache.http.client.CookieStore;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.utils.URIUtils;
+import org.apache.http.conn.HttpClientConnectionManager;
 import org.apache.http.impl.auth.BasicScheme;
 import org.apache.http.impl.client.BasicAuthCache;
 import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.sling.testing.clients.cache.RequestCoalescer;
+import org.apache.sling.testing.clients.cache.ResponseCache;
 import org.apache.sling.testing.clients.exceptions.TestingSetupException;
+import org.apache.sling.testing.clients.interceptors.RateLimitInterceptor;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 @Contract(threading = ThreadingBehavior.SAFE)
 public class SlingClientConfig {
@@ -76,6 +81,51 @@ public class SlingClientConfig {
      */
     protected final Map<String, String> values;
 
+    /**
+     * Executor running the asynchronous requests, {@code null} to use the shared default one
+     */
+    protected final Executor asyncExecutor;
+
+    /**
+     * The connection manager of the http client, used for reporting the pool statistics
+     */
+    protected final HttpClientConnectionManager connectionManager;
+
+    /**
+     * The lease on the shared connection manager, released when the client is closed
+     */
+    protected final ConnectionManagerRegistry.Lease connectionManagerLease;
+
+    /**
+     * The policy for capturing the content of the responses consumed by the client
+     */
+    protected final ContentCapturePolicy contentCapturePolicy;
+
+    /**
+     * The cache of the GET responses or {@code null} if disabled
+     */
+    protected final ResponseCache responseCache;
+
+    /**
+     * The rate limiter of the http client or {@code null} if the requests are not limited
+     */
+    protected final RateLimitInterceptor rateLimiter;
+
+    /**
+     * The circuit breaker of the requests or {@code null} if disabled
+     */
+    protected final CircuitBreaker circuitBreaker;
+
+    /**
+     * The coalescer of the identical concurrent GET requests or {@code null} if disabled
+     */
+    protected final RequestCoalescer requestCoalescer;
+
+    /**
+     * The paths known to exist or {@code null} if they are not recorded
+     */
+    protected final KnownPaths knownPaths;
+
 
     protected SlingClientConfig(URI url, String user, String password,
                                 CookieStore cookieStore,
@@ -89,6 +139,43 @@ public class SlingClientConfig {
         this.authCache = authCache;
 
         this.values = new ConcurrentHashMap<String, String>();
+
+        this.asyncExecutor = null;
+        this.connectionManager = null;
+        this.connectionManagerLease = null;
+        this.contentCapturePolicy = ContentCapturePolicy.IN_MEMORY;
+        this.responseCache = null;
+        this.rateLimiter = null;
+        this.circuitBreaker = null;
+        this.requestCoalescer = null;
+        this.knownPaths = null;
+    }
+
+    /**
+     * Constructor used by {@link Builder#build()}, after all the defaults have been computed
+     *
+     * @param builder the builder holding the config values
+     */
+    protected SlingClientConfig(Builder builder) {
+        this.url = builder.url;
+        this.user = builder.user;
+        this.password = builder.password;
+
+        this.cookieStore = builder.cookieStore;
+        this.credsProvider = builder.credsProvider;
+        this.authCache = builder.authCache;
+
+        this.values = new ConcurrentHashMap<String, String>();
+
+        this.asyncExecutor = builder.asyncExecutor;
+        this.connectionManager = builder.connectionManager;
+        this.connectionManagerLease = builder.connectionManagerLease;
+        this.contentCapturePolicy = builder.contentCapturePolicy;
+        this.responseCache = builder.responseCache;
+        this.rateLimiter = builder.rateLimiter;
+        this.circuitBreaker = builder.circuitBreaker;
+        this.requestCoalescer = builder.requestCoalescer;
+        this.knownPaths = builder.knownPaths;
     }
 
     /**
@@ -143,6 +230,69 @@ public class SlingClientConfig {
         return authCache;
     }
 
+    /**
+     * @return the executor used for asynchronous requests or {@code null} if the default one should be used
+     */
+    public Executor getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * @return the connection manager of the http client or {@code null} if unknown
+     */
+    public HttpClientConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
+
+    /**
+     * @return the lease on the shared connection manager or {@code null} if the connection manager is not shared
+     */
+    public ConnectionManagerRegistry.Lease getConnectionManagerLease() {
+        return connectionManagerLease;
+    }
+
+    /**
+     * @return the policy for capturing the content of the responses consumed by the client
+     */
+    public ContentCapturePolicy getContentCapturePolicy() {
+        return contentCapturePolicy;
+    }
+
+    /**
+     * @return the cache of the GET responses or {@code null} if disabled
+     */
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * @return the rate limiter of the http client or {@code null} if the requests are not limited
+     */
+    public RateLimitInterceptor getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * @return the circuit breaker of the requests or {@code null} if disabled
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * @return the coalescer of the identical concurrent GET requests or {@code null} if disabled
+     */
+    public RequestCoalescer getRequestCoalescer() {
+        return requestCoalescer;
+    }
+
+    /**
+     * @return the paths known to exist or {@code null} if they are not recorded
+     */
+    public KnownPaths getKnownPaths() {
+        return knownPaths;
+    }
+
     public static class Builder {
         protected URI url;
 
@@ -158,6 +308,24 @@ public class SlingClientConfig {
 
         protected boolean preemptiveAuth = true;
 
+        protected Executor asyncExecutor;
+
+        protected HttpClientConnectionManager connectionManager;
+
+        protected ConnectionManagerRegistry.Lease connectionManagerLease;
+
+        protected ContentCapturePolicy contentCapturePolicy;
+
+        protected ResponseCache responseCache;
+
+        protected RateLimitInterceptor rateLimiter;
+
+        protected CircuitBreaker circuitBreaker;
+
+        protected RequestCoalescer requestCoalescer;
+
+        protected KnownPaths knownPaths;
+
         protected Builder() {
         }
 
@@ -208,6 +376,51 @@ public class SlingClientConfig {
             return this;
         }
 
+        public Builder setAsyncExecutor(Executor asyncExecutor) {
+            this.asyncExecutor = asyncExecutor;
+            return this;
+        }
+
+        public Builder setConnectionManager(HttpClientConnectionManager connectionManager) {
+            this.connectionManager = connectionManager;
+            return this;
+        }
+
+        public Builder setConnectionManagerLease(ConnectionManagerRegistry.Lease connectionManagerLease) {
+            this.connectionManagerLease = connectionManagerLease;
+            return this;
+        }
+
+        public Builder setContentCapturePolicy(ContentCapturePolicy contentCapturePolicy) {
+            this.contentCapturePolicy = contentCapturePolicy;
+            return this;
+        }
+
+        public Builder setResponseCache(ResponseCache responseCache) {
+            this.responseCache = responseCache;
+            return this;
+        }
+
+        public Builder setRateLimiter(RateLimitInterceptor rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        public Builder setCircuitBreaker(CircuitBreaker circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            return this;
+        }
+
+        public Builder setRequestCoalescer(RequestCoalescer requestCoalescer) {
+            this.requestCoalescer = requestCoalescer;
+            return this;
+        }
+
+        public Builder setKnownPaths(KnownPaths knownPaths) {
+            this.knownPaths = knownPaths;
+            return this;
+        }
+
         public SlingClientConfig build() throws ClientException {
             if (!this.url.isAbsolute()) {
                 throw new TestingSetupException("Url must be absolute: " + url);
@@ -244,7 +457,15 @@ public class SlingClientConfig {
                 cookieStore = new BasicCookieStore();
             }
 
-            return new SlingClientConfig(url, user, password, cookieStore, credsProvider, authCache);
+            // Spill large contents to disk only if configured
+            if (contentCapturePolicy == null) {
+                long maxInMemory = SystemPropertiesConfig.getHttpMaxInMemoryContent();
+                contentCapturePolicy = maxInMemory >= 0
+                        ? ContentCapturePolicy.spillToDisk(maxInMemory)
+                        : ContentCapturePolicy.IN_MEMORY;
+            }
+
+            return new SlingClientConfig(this);
         }
     }
 }
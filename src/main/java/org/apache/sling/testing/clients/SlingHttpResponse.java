@@ -16,14 +16,22 @@
  */
 package org.apache.sling.testing.clients;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Scanner;
+import java.util.Map;
 import java.util.StringTokenizer;
-import java.util.regex.Pattern;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
 import org.apache.http.Header;
 import org.apache.http.HeaderIterator;
 import org.apache.http.HttpEntity;
@@ -31,7 +39,10 @@ import org.apache.http.ProtocolVersion;
 import org.apache.http.StatusLine;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.util.EntityUtils;
+import org.apache.sling.testing.clients.exceptions.TestingIOException;
 import org.apache.sling.testing.clients.exceptions.TestingValidationException;
+import org.apache.sling.testing.clients.util.ContentMatcher;
+import org.apache.sling.testing.clients.util.JsonUtils;
 
 public class SlingHttpResponse implements CloseableHttpResponse {
 
@@ -43,8 +54,18 @@ public class SlingHttpResponse implements CloseableHttpResponse {
     public static final String REFERER = "Referer";
     public static final String CHANGE_LOG = "ChangeLog";
 
+    private static final String[] HTML_FIELD_IDS = {STATUS, MESSAGE, LOCATION, PARENT_LOCATION, PATH, REFERER, CHANGE_LOG};
+
     private final CloseableHttpResponse httpResponse;
     private String content;
+    private boolean streamed;
+    private CapturedContent captured;
+    private Map<String, String> slingFields;
+
+    /**
+     * Maximum number of chars of a spilled content included in the error messages
+     */
+    private static final int MAX_PREVIEW_CHARS = 4096;
 
     public SlingHttpResponse(CloseableHttpResponse response) {
         this.httpResponse = response;
@@ -54,10 +75,23 @@ public class SlingHttpResponse implements CloseableHttpResponse {
      * <p>Get the {@code String} content of the response.</p>
      * <p>The content is cached so it is safe to call this method several times.</p>
      * <p><b>Attention!</b> Calling this method consumes the entity, so it cannot be used as an InputStream later</p>
+     * <p>If the content was spilled to disk (see {@link #isContentSpilled()}), it is read from the temporary file
+     * on every call and not cached. Prefer {@link #getContentStream()} in this case.</p>
      *
      * @return the content as String
      */
     public String getContent() {
+        if (this.content == null && this.captured != null) {
+            try {
+                String s = this.captured.asString();
+                if (this.captured.isSpilled()) {
+                    return s;
+                }
+                this.content = s;
+            } catch (IOException e) {
+                throw new RuntimeException("Could not read content from " + this.captured.getFile(), e);
+            }
+        }
         if (!this.isConsumed()) {
             try {
                 this.content = EntityUtils.toString(this.getEntity());
@@ -71,7 +105,224 @@ public class SlingHttpResponse implements CloseableHttpResponse {
     }
 
     public boolean isConsumed() {
-        return this.content != null || this.getEntity() == null;
+        return this.content != null || this.streamed || this.captured != null || this.getEntity() == null;
+    }
+
+    /**
+     * <p>Consumes the entity according to the capture policy and releases the connection.</p>
+     * <p>Contents up to {@link ContentCapturePolicy#getMaxInMemoryBytes()} are cached in memory, like {@link #getContent()} does.
+     * Larger contents are written to a temporary file, which is deleted when the response is closed,
+     * once the response is garbage collected or when the JVM exits.
+     * If the policy has a {@link ContentBufferPool}, the contents fitting in a pooled buffer are captured in it and the
+     * buffer is returned to the pool when the response is closed, or once it was garbage collected.</p>
+     * <p>Does nothing if the entity was already consumed.</p>
+     *
+     * @param policy the capture policy, {@code null} to keep the whole content in memory
+     * @throws TestingIOException if the content could not be read or written to disk
+     * @since 3.2.0
+     */
+    public void captureContent(ContentCapturePolicy policy) throws TestingIOException {
+        if (this.isConsumed()) {
+            return;
+        }
+        if (policy == null || (!policy.isSpillEnabled() && policy.getBufferPool() == null)) {
+            getContent();
+            return;
+        }
+
+        this.captured = capture(policy);
+    }
+
+    private CapturedContent capture(ContentCapturePolicy policy) throws TestingIOException {
+        try {
+            return CapturedContent.capture(this.getEntity(), policy);
+        } catch (IOException e) {
+            throw new TestingIOException("Could not read content from response", e);
+        } finally {
+            // release the connection, but keep the captured content
+            try {
+                httpResponse.close();
+            } catch (IOException e) {
+                // the content was read already, nothing to do
+            }
+        }
+    }
+
+    /**
+     * @return true if the content was written to a temporary file by {@link #captureContent(ContentCapturePolicy)}
+     * @since 3.2.0
+     */
+    public boolean isContentSpilled() {
+        return this.captured != null && this.captured.isSpilled();
+    }
+
+    /**
+     * <p>Get the raw bytes of the content of the response, without decoding them.</p>
+     * <p>If the entity was not consumed yet, it is consumed and the bytes are cached, so it is safe to call this method
+     * several times. The returned array is the cached content and must not be modified.</p>
+     * <p>If the content was already read with {@link #getContent()} only, it is encoded back with the charset of the response.</p>
+     *
+     * @return the content as bytes or {@code null} if the response has no content
+     * @throws TestingIOException if the content could not be read
+     * @since 3.2.0
+     */
+    public byte[] getContentBytes() throws TestingIOException {
+        if (!this.isConsumed()) {
+            this.captured = capture(ContentCapturePolicy.IN_MEMORY);
+        }
+        try {
+            if (this.captured != null) {
+                return this.captured.getBytes();
+            }
+        } catch (IOException e) {
+            throw new TestingIOException("Could not read content from " + this.captured.getFile(), e);
+        }
+        return this.content != null ? this.content.getBytes(getContentCharset()) : null;
+    }
+
+    /**
+     * <p>Get the content of the response as a read-only {@link ByteBuffer}, consuming the entity if needed.</p>
+     * <p>If the content was captured in a pooled buffer (see {@link ContentCapturePolicy#withBufferPool(ContentBufferPool)}),
+     * the returned buffer is a view on it, which is only valid until the response is closed or garbage collected:
+     * keep a reference to the response while using it.</p>
+     *
+     * @return the content or {@code null} if the response has no content
+     * @throws TestingIOException if the content could not be read
+     * @since 3.2.0
+     */
+    public ByteBuffer getContentAsByteBuffer() throws TestingIOException {
+        if (this.captured != null) {
+            try {
+                return this.captured.getByteBuffer();
+            } catch (IOException e) {
+                throw new TestingIOException("Could not read content from " + this.captured.getFile(), e);
+            }
+        }
+        byte[] bytes = getContentBytes();
+        return bytes != null ? ByteBuffer.wrap(bytes).asReadOnlyBuffer() : null;
+    }
+
+    /**
+     * <p>Returns a new stream on the content of the response.</p>
+     * <p>If the content was captured (in memory or on disk), a new stream on the captured content is returned on each call,
+     * otherwise the entity stream is returned and the caller is responsible for closing it.</p>
+     *
+     * @return the content stream
+     * @throws TestingIOException if the content could not be read
+     * @since 3.2.0
+     */
+    public InputStream getContentStream() throws TestingIOException {
+        if (this.captured != null) {
+            try {
+                return this.captured.openStream();
+            } catch (IOException e) {
+                throw new TestingIOException("Could not read content from " + this.captured.getFile(), e);
+            }
+        }
+        if (this.content != null) {
+            return new ByteArrayInputStream(this.content.getBytes(getContentCharset()));
+        }
+        return openContent();
+    }
+
+    private Charset getContentCharset() {
+        if (this.captured != null) {
+            return this.captured.getCharset();
+        }
+        return this.getEntity() != null ? CapturedContent.getCharset(this.getEntity()) : StandardCharsets.UTF_8;
+    }
+
+    /**
+     * <p>Creates a streaming {@link JsonParser} directly on the content of the response,
+     * without reading it in a {@code String} first.</p>
+     * <p>The caller is responsible for closing the parser, which closes the content stream and releases the connection.
+     * If the content was already read with {@link #getContent()}, the parser reads the cached content.</p>
+     * <p><b>Attention!</b> Reading from the parser consumes the entity, so {@link #getContent()} returns {@code null} after that</p>
+     *
+     * @return the parser, positioned before the first token
+     * @throws TestingIOException if the content could not be read
+     * @since 3.2.0
+     */
+    public JsonParser getJsonParser() throws TestingIOException {
+        if (this.content != null) {
+            return JsonUtils.createParser(this.content);
+        }
+        if (this.captured != null) {
+            return JsonUtils.createParser(getContentStream());
+        }
+        return JsonUtils.createParser(openContent());
+    }
+
+    /**
+     * <p>Parses the content of the response as JSON, directly from the content stream,
+     * without reading it in a {@code String} first. The response is closed afterwards.</p>
+     * <p>If the content was already read with {@link #getContent()}, the cached content is parsed.</p>
+     * <p><b>Attention!</b> Calling this method consumes the entity, so {@link #getContent()} returns {@code null} after that</p>
+     *
+     * @return the root node of the JSON content
+     * @throws TestingIOException if the content could not be read or is not valid JSON
+     * @since 3.2.0
+     */
+    public JsonNode getJsonNode() throws TestingIOException {
+        if (this.content != null) {
+            return JsonUtils.getJsonNodeFromString(this.content);
+        }
+        if (this.captured != null) {
+            return JsonUtils.getJsonNodeFromStream(getContentStream());
+        }
+        try {
+            return JsonUtils.getJsonNodeFromStream(openContent());
+        } finally {
+            closeQuietly();
+        }
+    }
+
+    /**
+     * <p>Binds the JSON content of the response to an object of the given type, directly from the content stream.
+     * The response is closed afterwards.</p>
+     * <p>If the content was already read with {@link #getContent()}, the cached content is used.</p>
+     * <p><b>Attention!</b> Calling this method consumes the entity, so {@link #getContent()} returns {@code null} after that</p>
+     *
+     * @param type the type of the object to bind to
+     * @param <T> the type of the object
+     * @return the object
+     * @throws TestingIOException if the content could not be read or bound to the type
+     * @since 3.2.0
+     */
+    public <T> T readJson(Class<T> type) throws TestingIOException {
+        if (this.content != null) {
+            return JsonUtils.readValue(this.content, type);
+        }
+        if (this.captured != null) {
+            return JsonUtils.readValue(getContentStream(), type);
+        }
+        try {
+            return JsonUtils.readValue(openContent(), type);
+        } finally {
+            closeQuietly();
+        }
+    }
+
+    private InputStream openContent() throws TestingIOException {
+        HttpEntity entity = this.getEntity();
+        if (entity == null || this.streamed) {
+            throw new TestingIOException("Response has no content or the content was already consumed");
+        }
+        try {
+            InputStream stream = entity.getContent();
+            this.streamed = true;
+            return stream;
+        } catch (IOException e) {
+            throw new TestingIOException("Could not read content from response", e);
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            this.close();
+        } catch (IOException e) {
+            // the content was read already, nothing to do
+        }
     }
 
     /**
@@ -109,42 +360,78 @@ public class SlingHttpResponse implements CloseableHttpResponse {
     /**
      * <p>For each regular expression, assert that at least one line of the response matches the expression</p>
      * <p>The regular expressions are automatically prefixed and suffixed with .* it order to partial-match the lines</p>
+     * <p>All the expressions are evaluated in a single pass over the content, see {@link ContentMatcher}</p>
      *
      * @param regexp list of regular expressions
      * @throws TestingValidationException if the response content does not match one of the regexp
      */
     public void checkContentRegexp(String... regexp) throws TestingValidationException {
-        for(String expr : regexp) {
-            final Pattern p = Pattern.compile(".*" + expr + ".*");
-            boolean matched = false;
-            try (final Scanner scanner = new Scanner(this.getContent())) {
-                while (scanner.hasNextLine()) {
-                    String line = scanner.nextLine();
-                    if (p.matcher(line).matches()) {
-                        matched = true;
-                        break;
-                    }
-                }
-            }
-
-            if (!matched) {
-                throw new TestingValidationException("Pattern " + p + " didn't match any line in content. Content is: \n\n" + getContent());
-            }
+        ContentMatcher.Result result = matchContent(ContentMatcher.forRegexps(regexp));
+        if (!result.isMatched()) {
+            throw new TestingValidationException("Pattern " + result.getUnmatchedPatterns().get(0)
+                    + " didn't match any line in content. Content is: \n\n" + getContentPreview());
         }
     }
 
     /**
      * <p>Assert that all the provided {@code Strings} are contained in the response</p>
+     * <p>All the strings are searched in a single pass over the content, see {@link ContentMatcher}</p>
      *
      * @param expected list of expected strings
      * @throws TestingValidationException if the response content does not match one of the strings
      * 
      */
     public void checkContentContains(String... expected) throws TestingValidationException {
-        for (String s : expected) {
-            if (!this.getContent().contains(s)) {
-                throw new TestingValidationException("Content does not contain string " + s + ". Content is: \n\n" + getContent());
-            }
+        ContentMatcher.Result result = matchContent(ContentMatcher.forStrings(expected));
+        if (!result.isMatched()) {
+            throw new TestingValidationException("Content does not contain string " + result.getMissingStrings().get(0)
+                    + ". Content is: \n\n" + getContentPreview());
+        }
+    }
+
+    /**
+     * <p>Assert that the response contains all the strings of the matcher and, for each of its regular expressions,
+     * that at least one line matches the expression. All the checks are evaluated in a single pass over the content,
+     * streamed from disk if it was spilled.</p>
+     *
+     * <pre>{@code
+     * ContentMatcher matcher = ContentMatcher.of(Arrays.asList("<title>Home</title>", "footer"),
+     *         Arrays.asList("<h1>.*</h1>"));
+     * response.checkContent(matcher);
+     * }</pre>
+     *
+     * @param matcher the checks, typically built once and reused
+     * @throws TestingValidationException if one of the checks failed, with all the failed checks in the message
+     * @since 3.2.0
+     */
+    public void checkContent(ContentMatcher matcher) throws TestingValidationException {
+        ContentMatcher.Result result = matchContent(matcher);
+        if (!result.isMatched()) {
+            throw new TestingValidationException("Content does not match: " + result + ". Content is: \n\n"
+                    + getContentPreview());
+        }
+    }
+
+    private ContentMatcher.Result matchContent(ContentMatcher matcher) throws TestingValidationException {
+        if (this.captured == null || !this.captured.isSpilled()) {
+            return matcher.match(this.getContent());
+        }
+        try (Reader reader = this.captured.openReader()) {
+            return matcher.match(reader);
+        } catch (IOException e) {
+            throw new TestingValidationException("Could not read content from " + this.captured.getFile(), e);
+        }
+    }
+
+    private String getContentPreview() {
+        if (this.captured == null || !this.captured.isSpilled()) {
+            return getContent();
+        }
+        try {
+            return this.captured.preview(MAX_PREVIEW_CHARS) + "\n... (" + this.captured.getLength() + " bytes in "
+                    + this.captured.getFile() + ")";
+        } catch (IOException e) {
+            return "(content not readable from " + this.captured.getFile() + ")";
         }
     }
 
@@ -154,8 +441,7 @@ public class SlingHttpResponse implements CloseableHttpResponse {
      * @return Sling Status
      */
     public String getSlingStatus() {
-        String searchPattern = "id=\"" + STATUS + "\"";
-        return extractFromHTMLResponse(searchPattern);
+        return getSlingField(STATUS);
     }
 
     /**
@@ -175,8 +461,7 @@ public class SlingHttpResponse implements CloseableHttpResponse {
      * @return Sling Message
      */
     public String getSlingMessage() {
-        String searchPattern = "id=\"" + MESSAGE + "\"";
-        return extractFromHTMLResponse(searchPattern);
+        return getSlingField(MESSAGE);
     }
 
     /**
@@ -200,8 +485,7 @@ public class SlingHttpResponse implements CloseableHttpResponse {
      * @return Sling Location
      */
     public String getSlingLocation() {
-        String searchPattern = "id=\"" + LOCATION + "\"";
-        return extractFromHTMLResponse(searchPattern);
+        return getSlingField(LOCATION);
     }
 
     /**
@@ -210,8 +494,7 @@ public class SlingHttpResponse implements CloseableHttpResponse {
      * @return Sling Parent Location
      */
     public String getSlingParentLocation() {
-        String searchPattern = "id=\"" + PARENT_LOCATION + "\"";
-        return extractFromHTMLResponse(searchPattern);
+        return getSlingField(PARENT_LOCATION);
     }
 
     /**
@@ -220,8 +503,7 @@ public class SlingHttpResponse implements CloseableHttpResponse {
      * @return Sling Path
      */
     public String getSlingPath() {
-        String searchPattern = "id=\"" + PATH + "\"";
-        return extractFromHTMLResponse(searchPattern);
+        return getSlingField(PATH);
     }
 
     /**
@@ -230,8 +512,7 @@ public class SlingHttpResponse implements CloseableHttpResponse {
      * @return Sling Referer
      */
     public String getSlingReferer() {
-        String searchPattern = "id=\"" + REFERER + "\"";
-        return extractFromHTMLResponse(searchPattern);
+        return getSlingField(REFERER);
     }
 
     /**
@@ -240,17 +521,125 @@ public class SlingHttpResponse implements CloseableHttpResponse {
      * @return Sling Change Log
      */
     public String getSlingChangeLog() {
-        String searchPattern = "id=\"" + CHANGE_LOG + "\"";
-        return extractFromHTMLResponse(searchPattern);
+        return getSlingField(CHANGE_LOG);
     }
 
     /**
-     * Extract information from response
+     * <p>Returns a field of the response of the Sling POST servlet, e.g. {@link #PATH}.</p>
+     * <p>The response is parsed once, on the first call, and all the fields are kept in a map. Both the HTML
+     * response and the JSON one, returned when the request has an {@code Accept: application/json} header,
+     * are supported. For the JSON response, {@link #CHANGE_LOG} is the JSON array of the changes.</p>
+     * <p>The fields of the HTML response are read through {@link #extractFromHTMLResponse(String)}, so the
+     * subclasses overriding it still apply.</p>
+     *
+     * @param name the id of the field in the HTML response, one of the constants of this class
+     * @return the value of the field, not unescaped, or {@code null} if the response does not have it
+     * @since 3.2.0
+     */
+    public String getSlingField(String name) {
+        if (!isJsonContent()) {
+            return extractFromHTMLResponse("id=\"" + name + "\"");
+        }
+        if (slingFields == null) {
+            slingFields = parseJsonFields();
+        }
+        return slingFields.get(name);
+    }
+
+    private boolean isJsonContent() {
+        Header contentType = getFirstHeader("Content-Type");
+        return contentType != null && contentType.getValue().trim().startsWith("application/json");
+    }
+
+    /**
+     * Collects the text of the elements having one of the Sling ids, in a single scan of the content.
+     * Like {@link #extractFromHTMLResponse(String)}, the first occurrence of an id wins
+     */
+    private Map<String, String> parseHtmlFields() {
+        Map<String, String> fields = new HashMap<>(HTML_FIELD_IDS.length * 2);
+        String html = getContent();
+        if (html == null) {
+            return fields;
+        }
+        int from = 0;
+        int idStart;
+        while (fields.size() < HTML_FIELD_IDS.length && (idStart = html.indexOf("id=\"", from)) > 0) {
+            int nameStart = idStart + 4;
+            int nameEnd = html.indexOf('"', nameStart);
+            if (nameEnd < 0) {
+                break;
+            }
+            from = nameEnd + 1;
+            String name = getHtmlFieldId(html, nameStart, nameEnd);
+            if (name == null || fields.containsKey(name)) {
+                continue;
+            }
+            int valueStart = html.indexOf('>', from) + 1;
+            int valueEnd = valueStart > 0 ? html.indexOf('<', valueStart) : -1;
+            if (valueEnd < 0) {
+                break;
+            }
+            fields.put(name, html.substring(valueStart, valueEnd));
+        }
+        return fields;
+    }
+
+    private static String getHtmlFieldId(String html, int start, int end) {
+        for (String id : HTML_FIELD_IDS) {
+            if (id.length() == end - start && html.startsWith(id, start)) {
+                return id;
+            }
+        }
+        return null;
+    }
+
+    private Map<String, String> parseJsonFields() {
+        Map<String, String> fields = new HashMap<>(HTML_FIELD_IDS.length * 2);
+        String content = getContent();
+        JsonNode json;
+        try {
+            json = content != null ? JsonUtils.getJsonNodeFromString(content) : null;
+        } catch (TestingIOException e) {
+            json = null;
+        }
+        if (json == null || !json.isObject()) {
+            return fields;
+        }
+        putJsonField(fields, STATUS, json.get("status.code"));
+        putJsonField(fields, MESSAGE, json.get("status.message"));
+        putJsonField(fields, LOCATION, json.get("location"));
+        putJsonField(fields, PARENT_LOCATION, json.get("parentLocation"));
+        putJsonField(fields, PATH, json.get("path"));
+        putJsonField(fields, REFERER, json.get("referer"));
+        putJsonField(fields, CHANGE_LOG, json.get("changes"));
+        return fields;
+    }
+
+    private static void putJsonField(Map<String, String> fields, String name, JsonNode value) {
+        if (value != null && !value.isNull()) {
+            fields.put(name, value.isValueNode() ? value.asText() : value.toString());
+        }
+    }
+
+    /**
+     * <p>Extract information from response</p>
+     * <p>The getters of the Sling fields call it with {@code id="<field>"}, e.g. {@code id="Status"}. These
+     * patterns are served from a single parse of the content, the others search the whole content.</p>
      *
      * @param searchPattern search pattern to look for
      * @return Sling information
      */
     protected String extractFromHTMLResponse(String searchPattern) {
+        String id = searchPattern.startsWith("id=\"") && searchPattern.endsWith("\"") && searchPattern.length() > 5
+                ? getHtmlFieldId(searchPattern, 4, searchPattern.length() - 1)
+                : null;
+        if (id != null) {
+            if (slingFields == null) {
+                slingFields = parseHtmlFields();
+            }
+            return slingFields.get(id);
+        }
+
         String tmpResponse = null;
         int start = getContent().indexOf(searchPattern);
         if (start > 0) {
@@ -402,8 +791,19 @@ public class SlingHttpResponse implements CloseableHttpResponse {
         httpResponse.setParams(params);
     }
 
+    /**
+     * Closes the underlying response and deletes the temporary file of the content, if it was spilled to disk
+     *
+     * @throws IOException if the response could not be closed
+     */
     @Override
     public void close() throws IOException {
-        httpResponse.close();
+        try {
+            httpResponse.close();
+        } finally {
+            if (this.captured != null) {
+                this.captured.close();
+            }
+        }
     }
 }
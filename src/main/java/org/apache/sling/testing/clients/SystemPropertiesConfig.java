@@ -61,6 +61,96 @@ public class SystemPropertiesConfig {
      */
     public static final String HTTP_RETRIES_ERROR_CODES_PROP = "http.retriesErrorCodes";
 
+    /**
+     * System property for {@link SystemPropertiesConfig#getHttpRetriesBackoff()}
+     * Prefixed by {@link SystemPropertiesConfig#CONFIG_PROP_PREFIX}
+     */
+    public static final String HTTP_RETRIES_BACKOFF_PROP = "http.retriesBackoff";
+
+    /**
+     * System property for {@link SystemPropertiesConfig#getHttpRetriesMaxDelay()}
+     * Prefixed by {@link SystemPropertiesConfig#CONFIG_PROP_PREFIX}
+     */
+    public static final String HTTP_RETRIES_MAX_DELAY_PROP = "http.retriesMaxDelay";
+
+    /**
+     * System property for {@link SystemPropertiesConfig#getHttpRetriesBudget()}
+     * Prefixed by {@link SystemPropertiesConfig#CONFIG_PROP_PREFIX}
+     */
+    public static final String HTTP_RETRIES_BUDGET_PROP = "http.retriesBudget";
+
+    /**
+     * System property for {@link SystemPropertiesConfig#getHttpRetriesBudgetReserve()}
+     * Prefixed by {@link SystemPropertiesConfig#CONFIG_PROP_PREFIX}
+     */
+    public static final String HTTP_RETRIES_BUDGET_RESERVE_PROP = "http.retriesBudgetReserve";
+
+    /**
+     * System property for {@link SystemPropertiesConfig#getHttpMaxConnPerRoute()}
+     * Prefixed by {@link SystemPropertiesConfig#CONFIG_PROP_PREFIX}
+     */
+    public static final String HTTP_MAX_CONN_PER_ROUTE_PROP = "http.maxConnPerRoute";
+
+    /**
+     * System property for {@link SystemPropertiesConfig#getHttpMaxConnTotal()}
+     * Prefixed by {@link SystemPropertiesConfig#CONFIG_PROP_PREFIX}
+     */
+    public static final String HTTP_MAX_CONN_TOTAL_PROP = "http.maxConnTotal";
+
+    /**
+     * System property for {@link SystemPropertiesConfig#getHttpConnMaxIdleTime()}
+     * Prefixed by {@link SystemPropertiesConfig#CONFIG_PROP_PREFIX}
+     */
+    public static final String HTTP_CONN_MAX_IDLE_TIME_PROP = "http.connMaxIdleTime";
+
+    /**
+     * System property for {@link SystemPropertiesConfig#getHttpValidateAfterInactivity()}
+     * Prefixed by {@link SystemPropertiesConfig#CONFIG_PROP_PREFIX}
+     */
+    public static final String HTTP_VALIDATE_AFTER_INACTIVITY_PROP = "http.validateAfterInactivity";
+
+    /**
+     * System property for {@link SystemPropertiesConfig#getHttpKeepAlive()}
+     * Prefixed by {@link SystemPropertiesConfig#CONFIG_PROP_PREFIX}
+     */
+    public static final String HTTP_KEEP_ALIVE_PROP = "http.keepAlive";
+
+    /**
+     * System property for {@link SystemPropertiesConfig#isHttpSharedConnections()}
+     * Prefixed by {@link SystemPropertiesConfig#CONFIG_PROP_PREFIX}
+     */
+    public static final String HTTP_SHARED_CONNECTIONS_PROP = "http.sharedConnections";
+
+    /**
+     * System property for {@link SystemPropertiesConfig#getHttpMaxInMemoryContent()}
+     * Prefixed by {@link SystemPropertiesConfig#CONFIG_PROP_PREFIX}
+     */
+    public static final String HTTP_MAX_IN_MEMORY_CONTENT_PROP = "http.maxInMemoryContent";
+
+    /**
+     * System property for {@link SystemPropertiesConfig#getHttpRateLimit()}
+     * Prefixed by {@link SystemPropertiesConfig#CONFIG_PROP_PREFIX}
+     */
+    public static final String HTTP_RATE_LIMIT_PROP = "http.rateLimit";
+
+    /**
+     * System property for {@link SystemPropertiesConfig#getHttpRateLimitBurst()}
+     * Prefixed by {@link SystemPropertiesConfig#CONFIG_PROP_PREFIX}
+     */
+    public static final String HTTP_RATE_LIMIT_BURST_PROP = "http.rateLimitBurst";
+
+    /**
+     * System property for {@link SystemPropertiesConfig#getHttpRateLimitPerHost()}
+     * Prefixed by {@link SystemPropertiesConfig#CONFIG_PROP_PREFIX}
+     */
+    public static final String HTTP_RATE_LIMIT_PER_HOST_PROP = "http.rateLimitPerHost";
+
+    /**
+     * System property for {@link SystemPropertiesConfig#getHttpRateLimitPerHostBurst()}
+     * Prefixed by {@link SystemPropertiesConfig#CONFIG_PROP_PREFIX}
+     */
+    public static final String HTTP_RATE_LIMIT_PER_HOST_BURST_PROP = "http.rateLimitPerHostBurst";
+
     /**
      * System property for {@link SystemPropertiesConfig#getClientUserAgentName()}
      * Prefixed by {@link SystemPropertiesConfig#CONFIG_PROP_PREFIX}
@@ -146,6 +236,196 @@ public class SystemPropertiesConfig {
         }
     }
 
+    /**
+     * The backoff between the retries of {@link org.apache.sling.testing.clients.util.ServerErrorRetryStrategy}:
+     * {@code fixed} waits {@link #getHttpRetriesDelay()} between all the retries, {@code exponential} waits
+     * a random delay up to {@link #getHttpRetriesDelay()} doubled at each retry, capped by {@link #getHttpRetriesMaxDelay()}
+     * @return the name of the backoff, {@code fixed} by default
+     */
+    public static String getHttpRetriesBackoff() {
+        try {
+            return System.getProperty(getPrefixedPropertyName(HTTP_RETRIES_BACKOFF_PROP), "fixed");
+        } catch (Exception e) {
+            return "fixed";
+        }
+    }
+
+    /**
+     * Maximum delay between two retries in milliseconds, also applied to the {@code Retry-After} header
+     * @return the maximum delay
+     */
+    public static long getHttpRetriesMaxDelay() {
+        try {
+            return Long.getLong(getPrefixedPropertyName(HTTP_RETRIES_MAX_DELAY_PROP), 30000);
+        } catch (Exception e) {
+            return 30000;
+        }
+    }
+
+    /**
+     * Maximum ratio of retries to requests, shared by all the clients in the JVM, see
+     * {@link org.apache.sling.testing.clients.util.RetryBudget}. 0 means unlimited
+     * @return the ratio of retries allowed
+     */
+    public static double getHttpRetriesBudget() {
+        try {
+            return Double.parseDouble(System.getProperty(getPrefixedPropertyName(HTTP_RETRIES_BUDGET_PROP), "0"));
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Number of retries the budget allows in a row, before the ratio of {@link #getHttpRetriesBudget()} applies
+     * @return the number of retries in reserve
+     */
+    public static int getHttpRetriesBudgetReserve() {
+        try {
+            return Integer.getInteger(getPrefixedPropertyName(HTTP_RETRIES_BUDGET_RESERVE_PROP), 10);
+        } catch (Exception e) {
+            return 10;
+        }
+    }
+
+    /**
+     * Maximum number of pooled connections per route (host) of a {@link SlingClient}
+     * @return the maximum number of connections per route
+     */
+    public static int getHttpMaxConnPerRoute() {
+        try {
+            return Integer.getInteger(getPrefixedPropertyName(HTTP_MAX_CONN_PER_ROUTE_PROP), 10);
+        } catch (Exception e) {
+            return 10;
+        }
+    }
+
+    /**
+     * Maximum number of pooled connections in total of a {@link SlingClient}
+     * @return the maximum number of connections
+     */
+    public static int getHttpMaxConnTotal() {
+        try {
+            return Integer.getInteger(getPrefixedPropertyName(HTTP_MAX_CONN_TOTAL_PROP), 100);
+        } catch (Exception e) {
+            return 100;
+        }
+    }
+
+    /**
+     * Time in milliseconds after which idle pooled connections are evicted by a background thread.
+     * 0 or less disables the eviction
+     * @return the max idle time in milliseconds
+     */
+    public static long getHttpConnMaxIdleTime() {
+        try {
+            return Long.getLong(getPrefixedPropertyName(HTTP_CONN_MAX_IDLE_TIME_PROP), 0);
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Period of inactivity in milliseconds after which a pooled connection is validated before being reused.
+     * 0 or less disables the validation
+     * @return the inactivity period in milliseconds
+     */
+    public static int getHttpValidateAfterInactivity() {
+        try {
+            return Integer.getInteger(getPrefixedPropertyName(HTTP_VALIDATE_AFTER_INACTIVITY_PROP), 2000);
+        } catch (Exception e) {
+            return 2000;
+        }
+    }
+
+    /**
+     * Maximum time in milliseconds a connection is kept alive for reuse. A negative value means the connection is
+     * kept alive as long as the server allows it (through the {@code Keep-Alive} header)
+     * @return the max keep-alive duration in milliseconds
+     */
+    public static long getHttpKeepAlive() {
+        try {
+            return Long.getLong(getPrefixedPropertyName(HTTP_KEEP_ALIVE_PROP), -1);
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Whether the clients share their connection pool with all the other clients targeting the same server,
+     * see {@link ConnectionManagerRegistry}
+     * @return true if the connections are shared
+     */
+    public static boolean isHttpSharedConnections() {
+        try {
+            return Boolean.getBoolean(getPrefixedPropertyName(HTTP_SHARED_CONNECTIONS_PROP));
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Maximum number of bytes of a response content kept in memory, the larger contents are written
+     * to temporary files. A negative value keeps all the contents in memory
+     * @return the max number of bytes in memory
+     */
+    public static long getHttpMaxInMemoryContent() {
+        try {
+            return Long.getLong(getPrefixedPropertyName(HTTP_MAX_IN_MEMORY_CONTENT_PROP), -1);
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Maximum number of requests per second of all the clients in the JVM, see
+     * {@link org.apache.sling.testing.clients.interceptors.RateLimitInterceptor}. 0 means unlimited
+     * @return the max requests per second
+     */
+    public static double getHttpRateLimit() {
+        try {
+            return Double.parseDouble(System.getProperty(getPrefixedPropertyName(HTTP_RATE_LIMIT_PROP), "0"));
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Number of requests allowed at once after a pause, for {@link #getHttpRateLimit()}
+     * @return the burst size
+     */
+    public static int getHttpRateLimitBurst() {
+        try {
+            return Integer.getInteger(getPrefixedPropertyName(HTTP_RATE_LIMIT_BURST_PROP), 1);
+        } catch (Exception e) {
+            return 1;
+        }
+    }
+
+    /**
+     * Maximum number of requests per second to the same host, for all the clients in the JVM.
+     * 0 means unlimited
+     * @return the max requests per second per host
+     */
+    public static double getHttpRateLimitPerHost() {
+        try {
+            return Double.parseDouble(System.getProperty(getPrefixedPropertyName(HTTP_RATE_LIMIT_PER_HOST_PROP), "0"));
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Number of requests allowed at once after a pause, for {@link #getHttpRateLimitPerHost()}
+     * @return the burst size
+     */
+    public static int getHttpRateLimitPerHostBurst() {
+        try {
+            return Integer.getInteger(getPrefixedPropertyName(HTTP_RATE_LIMIT_PER_HOST_BURST_PROP), 1);
+        } catch (Exception e) {
+            return 1;
+        }
+    }
+
     /**
      * Returns the default user-agent name of the {@link SlingClient}
      * @return default name
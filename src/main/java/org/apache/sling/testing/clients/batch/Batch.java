@@ -0,0 +1,284 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.batch;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.NameValuePair;
+import org.apache.sling.testing.clients.ClientException;
+import org.apache.sling.testing.clients.SlingClient;
+import org.apache.sling.testing.clients.SlingHttpResponse;
+import org.apache.sling.testing.clients.exceptions.TestingIOException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Collects {@link SlingClient} operations and executes them concurrently, with a bounded number of operations
+ * in flight. Obtained through {@link SlingClient#batch()}:</p>
+ * <blockquote><pre>
+ * {@code
+ * BatchResult result = client.batch()
+ *         .createNode("/content/a", "sling:Folder")
+ *         .createNode("/content/b", "sling:Folder")
+ *         .setPropertyString("/content/c", "title", "C")
+ *         .execute(8);
+ * }
+ * </pre></blockquote>
+ *
+ * <p>All the operations share the http client (and so the connection pool) of the client the batch was created from,
+ * so the pool should allow at least {@code parallelism} connections per route.</p>
+ *
+ * <p>The operations run in no particular order, so operations depending on each other (e.g. creating a node and
+ * then its child) must go in separate batches. A failing operation does not stop the others: every outcome is
+ * collected in the returned {@link BatchResult}.</p>
+ *
+ * <p>A batch is not thread safe and should be filled by a single thread.</p>
+ *
+ * @since 1.0.0
+ */
+public class Batch {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Batch.class);
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final SlingClient client;
+
+    private final List<String> descriptions = new ArrayList<>();
+
+    private final List<BatchOperation> operations = new ArrayList<>();
+
+    private int retries = 0;
+
+    /**
+     * Creates an empty batch. Use {@link SlingClient#batch()} instead.
+     *
+     * @param client the client executing the operations
+     */
+    public Batch(SlingClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Sets how many times a failed operation is retried before giving up. Defaults to 0.
+     *
+     * @param retries the number of retries for each operation
+     * @return this
+     */
+    public Batch setRetries(int retries) {
+        if (retries < 0) {
+            throw new IllegalArgumentException("retries must not be negative");
+        }
+        this.retries = retries;
+        return this;
+    }
+
+    /**
+     * Adds a custom operation to the batch
+     *
+     * @param description the description used in the {@link BatchResult} and in the logs
+     * @param operation the operation
+     * @return this
+     */
+    public Batch add(String description, BatchOperation operation) {
+        if (operation == null) {
+            throw new IllegalArgumentException("operation must not be null");
+        }
+        descriptions.add(description);
+        operations.add(operation);
+        return this;
+    }
+
+    /**
+     * Adds a {@link SlingClient#createNode(String, String)} operation
+     *
+     * @param path the path to the node to create
+     * @param nodeType the type of the node to create
+     * @return this
+     */
+    public Batch createNode(String path, String nodeType) {
+        return add("createNode " + path, c -> c.createNode(path, nodeType));
+    }
+
+    /**
+     * Adds a {@link SlingClient#setPropertyString(String, String, String, int...)} operation
+     *
+     * @param nodePath path to the node to be edited
+     * @param propName name of the property to be edited
+     * @param propValue value of the property to be edited
+     * @param expectedStatus list of expected HTTP Status to be returned, if not set, 200 is assumed.
+     * @return this
+     */
+    public Batch setPropertyString(String nodePath, String propName, String propValue, int... expectedStatus) {
+        return add("setPropertyString " + nodePath + "/" + propName,
+                c -> c.setPropertyString(nodePath, propName, propValue, expectedStatus));
+    }
+
+    /**
+     * Adds a {@link SlingClient#setPropertyStringArray(String, String, List, int...)} operation
+     *
+     * @param nodePath path to the node to be edited
+     * @param propName name of the property to be edited
+     * @param propValueList list of String values
+     * @param expectedStatus list of expected HTTP Status to be returned, if not set, 200 is assumed.
+     * @return this
+     */
+    public Batch setPropertyStringArray(String nodePath, String propName, List<String> propValueList, int... expectedStatus) {
+        return add("setPropertyStringArray " + nodePath + "/" + propName,
+                c -> c.setPropertyStringArray(nodePath, propName, propValueList, expectedStatus));
+    }
+
+    /**
+     * Adds a {@link SlingClient#setPropertiesString(String, List, int...)} operation
+     *
+     * @param nodePath path to the node to be edited
+     * @param properties list of NameValue pairs with the name and value for each property
+     * @param expectedStatus list of expected HTTP Status to be returned, if not set, 200 is assumed.
+     * @return this
+     */
+    public Batch setPropertiesString(String nodePath, List<NameValuePair> properties, int... expectedStatus) {
+        return add("setPropertiesString " + nodePath, c -> c.setPropertiesString(nodePath, properties, expectedStatus));
+    }
+
+    /**
+     * Adds a {@link SlingClient#deletePath(String, int...)} operation
+     *
+     * @param path path to be deleted
+     * @param expectedStatus list of accepted status codes in response
+     * @return this
+     */
+    public Batch deletePath(String path, int... expectedStatus) {
+        return add("deletePath " + path, c -> c.deletePath(path, expectedStatus));
+    }
+
+    /**
+     * Adds a {@link SlingClient#move(String, String, int...)} operation
+     *
+     * @param srcPath source path
+     * @param destPath destination path
+     * @param expectedStatus list of accepted status codes in response
+     * @return this
+     */
+    public Batch move(String srcPath, String destPath, int... expectedStatus) {
+        return add("move " + srcPath + " to " + destPath, c -> c.move(srcPath, destPath, expectedStatus));
+    }
+
+    /**
+     * Adds a {@link SlingClient#uploadChunked(File, String, String, boolean, long, int)} operation, so several files
+     * are uploaded concurrently, the chunks of each file being sent in order
+     *
+     * @param file the file to be uploaded
+     * @param mimeType the MIME Type of the file
+     * @param toPath the complete path of the file in the repository including file name
+     * @param createFolders if true, all non existing parent nodes will be created
+     * @param chunkSize the maximum number of bytes of each request
+     * @param maxResumes how many times the upload resumes after a failed chunk before giving up
+     * @return this
+     * @since 1.0.0
+     */
+    public Batch uploadChunked(File file, String mimeType, String toPath, boolean createFolders, long chunkSize,
+                               int maxResumes) {
+        return add("uploadChunked " + file + " to " + toPath,
+                c -> c.uploadChunked(file, mimeType, toPath, createFolders, chunkSize, maxResumes));
+    }
+
+    /**
+     * @return the number of operations in the batch
+     */
+    public int size() {
+        return operations.size();
+    }
+
+    /**
+     * Executes all the operations, with at most {@code parallelism} of them in flight, and waits for all of them
+     * to complete. The batch can be executed again afterwards.
+     *
+     * @param parallelism the maximum number of operations executed at the same time
+     * @return the outcome of every operation
+     * @throws InterruptedException if the thread was interrupted while waiting; the running operations are aborted
+     */
+    public BatchResult execute(int parallelism) throws InterruptedException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+
+        final long start = System.currentTimeMillis();
+        final List<BatchResult.OperationResult> results = new ArrayList<>(operations.size());
+        if (operations.isEmpty()) {
+            return new BatchResult(results, 0);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, operations.size()), r -> {
+            Thread t = new Thread(r, "sling-client-batch-" + THREAD_COUNT.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<BatchResult.OperationResult>> futures = new ArrayList<>(operations.size());
+            for (int i = 0; i < operations.size(); i++) {
+                final String description = descriptions.get(i);
+                final BatchOperation operation = operations.get(i);
+                futures.add(executor.submit(() -> executeOperation(description, operation)));
+            }
+            for (Future<BatchResult.OperationResult> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    // executeOperation catches everything, so this is not expected
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        BatchResult result = new BatchResult(results, System.currentTimeMillis() - start);
+        LOG.debug("{}", result);
+        return result;
+    }
+
+    private BatchResult.OperationResult executeOperation(String description, BatchOperation operation) {
+        final long start = System.currentTimeMillis();
+        ClientException lastException = null;
+        int attempts = 0;
+        while (attempts <= retries) {
+            attempts++;
+            try {
+                SlingHttpResponse response = operation.execute(client);
+                return new BatchResult.OperationResult(description, response, null, attempts,
+                        System.currentTimeMillis() - start);
+            } catch (ClientException e) {
+                lastException = e;
+            } catch (RuntimeException e) {
+                lastException = new TestingIOException("Unexpected error in batch operation " + description, e);
+            }
+            LOG.debug("Batch operation {} failed (attempt {} of {})", description, attempts, retries + 1, lastException);
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+        }
+        return new BatchResult.OperationResult(description, null, lastException, attempts,
+                System.currentTimeMillis() - start);
+    }
+}
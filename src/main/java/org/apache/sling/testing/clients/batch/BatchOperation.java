@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.batch;
+
+import org.apache.sling.testing.clients.ClientException;
+import org.apache.sling.testing.clients.SlingClient;
+import org.apache.sling.testing.clients.SlingHttpResponse;
+
+/**
+ * A single operation of a {@link Batch}, executed with the client the batch was created from.
+ *
+ * @since 1.0.0
+ */
+@FunctionalInterface
+public interface BatchOperation {
+
+    /**
+     * Executes the operation
+     *
+     * @param client the client of the batch
+     * @return the response of the operation, can be {@code null} if no request was needed
+     * @throws ClientException if the operation failed
+     */
+    SlingHttpResponse execute(SlingClient client) throws ClientException;
+}
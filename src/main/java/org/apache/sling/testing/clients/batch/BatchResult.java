@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.batch;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.sling.testing.clients.ClientException;
+import org.apache.sling.testing.clients.SlingHttpResponse;
+
+/**
+ * The outcome of executing a {@link Batch}: one {@link OperationResult} per operation, in the order the operations
+ * were added to the batch.
+ *
+ * @since 1.0.0
+ */
+public class BatchResult {
+
+    private final List<OperationResult> results;
+
+    private final long durationMillis;
+
+    BatchResult(List<OperationResult> results, long durationMillis) {
+        this.results = Collections.unmodifiableList(results);
+        this.durationMillis = durationMillis;
+    }
+
+    /**
+     * @return the results of all the operations, in the order they were added to the batch
+     */
+    public List<OperationResult> getResults() {
+        return results;
+    }
+
+    /**
+     * @return the results of the operations that completed without error
+     */
+    public List<OperationResult> getSucceeded() {
+        return results.stream().filter(OperationResult::isSuccessful).collect(Collectors.toList());
+    }
+
+    /**
+     * @return the results of the operations that failed
+     */
+    public List<OperationResult> getFailed() {
+        return results.stream().filter(r -> !r.isSuccessful()).collect(Collectors.toList());
+    }
+
+    /**
+     * @return true if all the operations completed without error
+     */
+    public boolean isSuccessful() {
+        return results.stream().allMatch(OperationResult::isSuccessful);
+    }
+
+    /**
+     * @return the total execution time of the batch, in milliseconds
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * Throws the exception of the first failed operation, if any. The exceptions of the other failed operations
+     * are added as suppressed.
+     *
+     * @return this, if all the operations were successful
+     * @throws ClientException the exception of the first failed operation
+     */
+    public BatchResult throwIfFailed() throws ClientException {
+        ClientException first = null;
+        for (OperationResult result : results) {
+            if (result.isSuccessful()) {
+                continue;
+            }
+            if (first == null) {
+                first = result.getException();
+            } else {
+                first.addSuppressed(result.getException());
+            }
+        }
+        if (first != null) {
+            throw first;
+        }
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{operations=" + results.size() + ", failed=" + getFailed().size()
+                + ", durationMillis=" + durationMillis + "}";
+    }
+
+    /**
+     * The outcome of a single operation of the batch
+     */
+    public static class OperationResult {
+
+        private final String description;
+
+        private final SlingHttpResponse response;
+
+        private final ClientException exception;
+
+        private final int attempts;
+
+        private final long durationMillis;
+
+        OperationResult(String description, SlingHttpResponse response, ClientException exception, int attempts,
+                        long durationMillis) {
+            this.description = description;
+            this.response = response;
+            this.exception = exception;
+            this.attempts = attempts;
+            this.durationMillis = durationMillis;
+        }
+
+        /**
+         * @return the description of the operation, e.g. {@code createNode /content/a}
+         */
+        public String getDescription() {
+            return description;
+        }
+
+        /**
+         * @return the response of the operation or {@code null} if it failed or no request was needed
+         */
+        public SlingHttpResponse getResponse() {
+            return response;
+        }
+
+        /**
+         * @return the exception thrown by the operation or {@code null} if it was successful
+         */
+        public ClientException getException() {
+            return exception;
+        }
+
+        /**
+         * @return true if the operation completed without error
+         */
+        public boolean isSuccessful() {
+            return exception == null;
+        }
+
+        /**
+         * @return the number of times the operation was executed
+         */
+        public int getAttempts() {
+            return attempts;
+        }
+
+        /**
+         * @return the execution time of the operation including all the attempts, in milliseconds
+         */
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        @Override
+        public String toString() {
+            return description + (isSuccessful() ? " succeeded" : " failed: " + exception.getMessage());
+        }
+    }
+}
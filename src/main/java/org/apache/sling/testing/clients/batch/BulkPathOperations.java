@@ -0,0 +1,311 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.batch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.message.BasicHeader;
+import org.apache.sling.testing.clients.ClientException;
+import org.apache.sling.testing.clients.KnownPaths;
+import org.apache.sling.testing.clients.SlingClient;
+import org.apache.sling.testing.clients.SlingHttpResponse;
+import org.apache.sling.testing.clients.util.FormEntityBuilder;
+
+import static org.apache.http.HttpStatus.SC_CREATED;
+import static org.apache.http.HttpStatus.SC_OK;
+
+/**
+ * <p>Deletes or moves many paths with a few requests, using the {@code :applyTo} parameter of the Sling POST
+ * servlet: each request handles up to {@code chunkSize} paths. Obtained through
+ * {@link SlingClient#bulkPathOperations()}:</p>
+ * <blockquote><pre>
+ * {@code
+ * BulkPathResult result = client.bulkPathOperations()
+ *         .setChunkSize(200)
+ *         .setRetries(2)
+ *         .delete(fixturePaths, 4);
+ * }
+ * </pre></blockquote>
+ *
+ * <p>The chunks are executed concurrently through a {@link Batch}, and a failed chunk is retried on its own.
+ * The paths actually deleted or moved are taken from the change log of the responses, so the paths which did not
+ * exist, or which were already handled by a failed attempt of a retried chunk, are reported as missing.</p>
+ *
+ * <p>A path whose ancestor is deleted in the same call is not sent: it is reported with its ancestor.</p>
+ *
+ * @since 1.0.0
+ */
+public class BulkPathOperations {
+
+    private static final Header ACCEPT_JSON = new BasicHeader("Accept", "application/json");
+
+    private final SlingClient client;
+
+    private int chunkSize = 100;
+
+    private int retries = 0;
+
+    /**
+     * Creates a new instance. Use {@link SlingClient#bulkPathOperations()} instead.
+     *
+     * @param client the client executing the requests
+     */
+    public BulkPathOperations(SlingClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Sets the maximum number of paths handled by each request. Defaults to 100.
+     *
+     * @param chunkSize the number of paths per request
+     * @return this
+     */
+    public BulkPathOperations setChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1");
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Sets how many times a failed request is retried before giving up, see {@link Batch#setRetries(int)}. Defaults to 0.
+     *
+     * @param retries the number of retries for each request
+     * @return this
+     */
+    public BulkPathOperations setRetries(int retries) {
+        if (retries < 0) {
+            throw new IllegalArgumentException("retries must not be negative");
+        }
+        this.retries = retries;
+        return this;
+    }
+
+    /**
+     * Deletes the paths, with at most {@code parallelism} requests in flight, and waits for all of them to complete.
+     *
+     * @param paths the absolute paths to delete
+     * @param parallelism the maximum number of requests executed at the same time
+     * @return the paths actually deleted
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public BulkPathResult delete(Collection<String> paths, int parallelism) throws InterruptedException {
+        // sorted by depth, so the ancestors are seen before their descendants
+        TreeSet<String> sorted = new TreeSet<>(Comparator.comparingInt(BulkPathOperations::getDepth)
+                .thenComparing(Comparator.naturalOrder()));
+        sorted.addAll(normalize(paths));
+        Map<String, List<String>> descendants = new LinkedHashMap<>();
+        for (String path : sorted) {
+            String root = null;
+            for (String ancestor = path; root == null && !"/".equals(ancestor); ) {
+                ancestor = getParent(ancestor);
+                root = descendants.containsKey(ancestor) ? ancestor : null;
+            }
+            if (root != null) {
+                descendants.get(root).add(path);
+            } else {
+                descendants.put(path, new ArrayList<>());
+            }
+        }
+        List<String> roots = new ArrayList<>(descendants.keySet());
+
+        List<List<String>> chunks = split(roots);
+        Batch batch = client.batch().setRetries(retries);
+        for (List<String> chunk : chunks) {
+            FormEntityBuilder form = FormEntityBuilder.create().addParameter(":operation", "delete");
+            for (String path : chunk) {
+                form.addParameter(":applyTo", path);
+            }
+            add(batch, "delete " + chunk.size() + " paths from " + chunk.get(0), "/", form.build());
+        }
+        BatchResult requests = batch.execute(parallelism);
+
+        BulkPathResult result = new BulkPathResult(requests);
+        for (int i = 0; i < chunks.size(); i++) {
+            BatchResult.OperationResult operation = requests.getResults().get(i);
+            Set<String> deleted = new HashSet<>();
+            for (JsonNode change : getChanges(operation.getResponse())) {
+                if ("deleted".equals(change.path("type").asText())) {
+                    deleted.add(normalize(change.path("argument").asText()));
+                }
+            }
+            for (String path : chunks.get(i)) {
+                boolean done = deleted.contains(path);
+                result.add(path, null, done, operation.getException());
+                for (String descendant : descendants.get(path)) {
+                    result.add(descendant, null, done, operation.getException());
+                }
+                if (done) {
+                    forget(path);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * <p>Moves the paths, with at most {@code parallelism} requests in flight, and waits for all of them to complete.</p>
+     *
+     * <p>The paths keeping their name are grouped by destination folder and moved with {@code :applyTo}; the
+     * renamed paths (e.g. {@code /a/b} to {@code /c/d}) need a request each.</p>
+     *
+     * @param paths the absolute source paths mapped to their absolute destination paths
+     * @param parallelism the maximum number of requests executed at the same time
+     * @return the paths actually moved
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public BulkPathResult move(Map<String, String> paths, int parallelism) throws InterruptedException {
+        Map<String, List<String>> byFolder = new LinkedHashMap<>();
+        List<String> renamed = new ArrayList<>();
+        Map<String, String> destinations = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : paths.entrySet()) {
+            String src = absolute(entry.getKey());
+            // like with :applyTo, a destination ending with a slash is the folder to move into
+            String dest = entry.getValue();
+            dest = absolute(dest.endsWith("/") ? dest + getName(src) : dest);
+            destinations.put(src, dest);
+            if (getName(src).equals(getName(dest))) {
+                byFolder.computeIfAbsent(getParent(dest), f -> new ArrayList<>()).add(src);
+            } else {
+                renamed.add(src);
+            }
+        }
+
+        List<List<String>> chunks = new ArrayList<>();
+        Batch batch = client.batch().setRetries(retries);
+        for (Map.Entry<String, List<String>> folder : byFolder.entrySet()) {
+            String dest = "/".equals(folder.getKey()) ? "/" : folder.getKey() + "/";
+            for (List<String> chunk : split(folder.getValue())) {
+                FormEntityBuilder form = FormEntityBuilder.create()
+                        .addParameter(":operation", "move")
+                        .addParameter(":dest", dest);
+                for (String path : chunk) {
+                    form.addParameter(":applyTo", path);
+                }
+                chunks.add(chunk);
+                add(batch, "move " + chunk.size() + " paths to " + dest, "/", form.build());
+            }
+        }
+        for (String src : renamed) {
+            HttpEntity entity = FormEntityBuilder.create()
+                    .addParameter(":operation", "move")
+                    .addParameter(":dest", destinations.get(src))
+                    .build();
+            chunks.add(Collections.singletonList(src));
+            add(batch, "move " + src + " to " + destinations.get(src), src, entity);
+        }
+        BatchResult requests = batch.execute(parallelism);
+
+        BulkPathResult result = new BulkPathResult(requests);
+        for (int i = 0; i < chunks.size(); i++) {
+            BatchResult.OperationResult operation = requests.getResults().get(i);
+            Set<String> moved = new HashSet<>();
+            for (JsonNode change : getChanges(operation.getResponse())) {
+                JsonNode argument = change.path("argument");
+                if ("moved".equals(change.path("type").asText()) && argument.isArray() && argument.size() > 0) {
+                    moved.add(normalize(argument.get(0).asText()));
+                }
+            }
+            for (String src : chunks.get(i)) {
+                boolean done = moved.contains(src);
+                result.add(src, destinations.get(src), done, operation.getException());
+                if (done) {
+                    forget(src);
+                }
+            }
+        }
+        return result;
+    }
+
+    private void add(Batch batch, String description, String target, HttpEntity entity) {
+        batch.add(description, c -> c.doPost(target, entity, Collections.singletonList(ACCEPT_JSON), SC_OK, SC_CREATED));
+    }
+
+    private List<List<String>> split(List<String> paths) {
+        List<List<String>> chunks = new ArrayList<>();
+        for (int i = 0; i < paths.size(); i += chunkSize) {
+            chunks.add(paths.subList(i, Math.min(i + chunkSize, paths.size())));
+        }
+        return chunks;
+    }
+
+    private void forget(String path) {
+        KnownPaths knownPaths = client.getKnownPaths();
+        if (knownPaths != null) {
+            knownPaths.remove(path);
+        }
+    }
+
+    private static JsonNode getChanges(SlingHttpResponse response) {
+        if (response == null) {
+            return MissingNode.getInstance();
+        }
+        try {
+            return response.getJsonNode().path("changes");
+        } catch (ClientException e) {
+            return MissingNode.getInstance();
+        }
+    }
+
+    private static List<String> normalize(Collection<String> paths) {
+        List<String> normalized = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            normalized.add(absolute(path));
+        }
+        return normalized;
+    }
+
+    private static String absolute(String path) {
+        if (path == null || !path.startsWith("/")) {
+            throw new IllegalArgumentException("path must be absolute: " + path);
+        }
+        return normalize(path);
+    }
+
+    private static String normalize(String path) {
+        String normalized = StringUtils.stripEnd(path, "/");
+        return normalized.isEmpty() ? "/" : normalized;
+    }
+
+    private static int getDepth(String path) {
+        return "/".equals(path) ? 0 : StringUtils.countMatches(path, '/');
+    }
+
+    private static String getName(String path) {
+        return StringUtils.substringAfterLast(path, "/");
+    }
+
+    private static String getParent(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash > 0 ? path.substring(0, slash) : "/";
+    }
+}
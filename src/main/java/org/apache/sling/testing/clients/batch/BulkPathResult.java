@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.batch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.testing.clients.ClientException;
+
+/**
+ * The outcome of a {@link BulkPathOperations} delete or move: which paths were actually deleted or moved,
+ * which ones were not found and which ones were in a failed request.
+ *
+ * @since 1.0.0
+ */
+public class BulkPathResult {
+
+    private final BatchResult requests;
+
+    private final List<String> done = new ArrayList<>();
+
+    private final Map<String, String> destinations = new LinkedHashMap<>();
+
+    private final List<String> missing = new ArrayList<>();
+
+    private final Map<String, ClientException> failed = new LinkedHashMap<>();
+
+    BulkPathResult(BatchResult requests) {
+        this.requests = requests;
+    }
+
+    void add(String path, String destination, boolean isDone, ClientException exception) {
+        if (exception != null) {
+            failed.put(path, exception);
+        } else if (isDone) {
+            done.add(path);
+            if (destination != null) {
+                destinations.put(path, destination);
+            }
+        } else {
+            missing.add(path);
+        }
+    }
+
+    /**
+     * @return the paths actually deleted or moved, as reported by the change log
+     */
+    public List<String> getDone() {
+        return Collections.unmodifiableList(done);
+    }
+
+    /**
+     * @return the paths actually moved, mapped to their new path
+     */
+    public Map<String, String> getMoved() {
+        return Collections.unmodifiableMap(destinations);
+    }
+
+    /**
+     * @return the paths of the successful requests missing from the change log, e.g. because they did not exist
+     */
+    public List<String> getMissing() {
+        return Collections.unmodifiableList(missing);
+    }
+
+    /**
+     * @return the paths of the failed requests, mapped to the exception of their request
+     */
+    public Map<String, ClientException> getFailed() {
+        return Collections.unmodifiableMap(failed);
+    }
+
+    /**
+     * @return true if all the requests completed without error
+     */
+    public boolean isSuccessful() {
+        return requests.isSuccessful();
+    }
+
+    /**
+     * @return the outcome of the requests, one per chunk of paths
+     */
+    public BatchResult getRequests() {
+        return requests;
+    }
+
+    /**
+     * Throws the exception of the first failed request, if any, see {@link BatchResult#throwIfFailed()}
+     *
+     * @return this, if all the requests were successful
+     * @throws ClientException the exception of the first failed request
+     */
+    public BulkPathResult throwIfFailed() throws ClientException {
+        requests.throwIfFailed();
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkPathResult{done=" + done.size() + ", missing=" + missing.size() + ", failed=" + failed.size()
+                + ", requests=" + requests.getResults().size() + ", durationMillis=" + requests.getDurationMillis() + "}";
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.batch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.NameValuePair;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.sling.testing.clients.ClientException;
+import org.apache.sling.testing.clients.SlingClient;
+import org.apache.sling.testing.clients.SlingHttpResponse;
+import org.apache.sling.testing.clients.util.FormEntityBuilder;
+import org.apache.sling.testing.clients.util.SlingParameter;
+
+import static org.apache.http.HttpStatus.SC_CREATED;
+import static org.apache.http.HttpStatus.SC_OK;
+
+/**
+ * <p>Writes the properties of many nodes with a few requests: the properties of up to {@code chunkSize} nodes are
+ * sent in a single Sling POST request to the root, with parameter names relative to it
+ * (e.g. {@code content/a/jcr:title}). Obtained through {@link SlingClient#bulkPropertyWriter()}:</p>
+ * <blockquote><pre>
+ * {@code
+ * BulkWriteResult result = client.bulkPropertyWriter()
+ *         .setChunkSize(200)
+ *         .setProperty("/content/a", "jcr:title", "A")
+ *         .setParameter("/content/b", new SlingParameter("tags").values(new String[]{"x", "y"}).multiple())
+ *         .execute(4);
+ * }
+ * </pre></blockquote>
+ *
+ * <p>Like with the Sling POST servlet, the missing nodes are created. The chunks are executed concurrently through
+ * a {@link Batch}, so all the properties of a node always go in the same chunk, and the nodes are in no particular
+ * order across chunks. The outcome of every node is collected in the {@link BulkWriteResult}, from the change log
+ * of the response of its chunk.</p>
+ *
+ * <p>A writer is not thread safe and should be filled by a single thread.</p>
+ *
+ * @since 1.0.0
+ */
+public class BulkPropertyWriter {
+
+    private static final Header ACCEPT_JSON = new BasicHeader("Accept", "application/json");
+
+    private final SlingClient client;
+
+    private final Map<String, List<NameValuePair>> nodes = new LinkedHashMap<>();
+
+    private int chunkSize = 100;
+
+    private int retries = 0;
+
+    /**
+     * Creates an empty writer. Use {@link SlingClient#bulkPropertyWriter()} instead.
+     *
+     * @param client the client executing the requests
+     */
+    public BulkPropertyWriter(SlingClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Sets the maximum number of nodes written by each request. Defaults to 100.
+     *
+     * @param chunkSize the number of nodes per request
+     * @return this
+     */
+    public BulkPropertyWriter setChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1");
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Sets how many times a failed request is retried before giving up, see {@link Batch#setRetries(int)}. Defaults to 0.
+     *
+     * @param retries the number of retries for each request
+     * @return this
+     */
+    public BulkPropertyWriter setRetries(int retries) {
+        if (retries < 0) {
+            throw new IllegalArgumentException("retries must not be negative");
+        }
+        this.retries = retries;
+        return this;
+    }
+
+    /**
+     * Sets a String property, like {@link SlingClient#setPropertyString(String, String, String, int...)}
+     *
+     * @param nodePath absolute path to the node to be edited
+     * @param propName name of the property to be edited
+     * @param propValue value of the property to be edited
+     * @return this
+     */
+    public BulkPropertyWriter setProperty(String nodePath, String propName, String propValue) {
+        getParameters(nodePath).add(new BasicNameValuePair(propName, propValue));
+        return this;
+    }
+
+    /**
+     * Sets a String[] property, like {@link SlingClient#setPropertyStringArray(String, String, List, int...)}
+     *
+     * @param nodePath absolute path to the node to be edited
+     * @param propName name of the property to be edited
+     * @param propValueList list of String values
+     * @return this
+     */
+    public BulkPropertyWriter setPropertyArray(String nodePath, String propName, List<String> propValueList) {
+        List<NameValuePair> parameters = getParameters(nodePath);
+        for (String propValue : propValueList != null ? propValueList : Collections.<String>emptyList()) {
+            parameters.add(new BasicNameValuePair(propName, propValue));
+        }
+        return this;
+    }
+
+    /**
+     * Sets several String properties, like {@link SlingClient#setPropertiesString(String, List, int...)}
+     *
+     * @param nodePath absolute path to the node to be edited
+     * @param properties list of NameValue pairs with the name and value for each property
+     * @return this
+     */
+    public BulkPropertyWriter setProperties(String nodePath, List<NameValuePair> properties) {
+        getParameters(nodePath).addAll(properties);
+        return this;
+    }
+
+    /**
+     * Adds a parameter with its type hint, delete or multiple flags
+     *
+     * @param nodePath absolute path to the node to be edited
+     * @param parameter the parameter, named after the property
+     * @return this
+     */
+    public BulkPropertyWriter setParameter(String nodePath, SlingParameter parameter) {
+        getParameters(nodePath).addAll(parameter.toNameValuePairs());
+        return this;
+    }
+
+    /**
+     * @return the number of nodes to be written
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    private List<NameValuePair> getParameters(String nodePath) {
+        if (nodePath == null || !nodePath.startsWith("/")) {
+            throw new IllegalArgumentException("nodePath must be absolute: " + nodePath);
+        }
+        return nodes.computeIfAbsent(normalize(nodePath), p -> new ArrayList<>());
+    }
+
+    /**
+     * Sends all the properties, with at most {@code parallelism} requests in flight, and waits for all of them
+     * to complete. The writer can be executed again afterwards.
+     *
+     * @param parallelism the maximum number of requests executed at the same time
+     * @return the outcome of every node
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public BulkWriteResult execute(int parallelism) throws InterruptedException {
+        List<List<String>> chunks = new ArrayList<>();
+        List<String> chunk = null;
+        for (String nodePath : nodes.keySet()) {
+            if (chunk == null || chunk.size() == chunkSize) {
+                chunk = new ArrayList<>(chunkSize);
+                chunks.add(chunk);
+            }
+            chunk.add(nodePath);
+        }
+
+        Batch batch = client.batch().setRetries(retries);
+        for (int i = 0; i < chunks.size(); i++) {
+            final HttpEntity entity = buildEntity(chunks.get(i));
+            batch.add("bulk write of " + chunks.get(i).size() + " nodes from " + chunks.get(i).get(0),
+                    c -> c.doPost("/", entity, Collections.singletonList(ACCEPT_JSON), SC_OK, SC_CREATED));
+        }
+        BatchResult batchResult = batch.execute(parallelism);
+
+        List<BulkWriteResult.NodeResult> results = new ArrayList<>(nodes.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            BatchResult.OperationResult operation = batchResult.getResults().get(i);
+            Map<String, List<String>> changes = getChanges(chunks.get(i), operation.getResponse());
+            for (String nodePath : chunks.get(i)) {
+                results.add(new BulkWriteResult.NodeResult(nodePath, changes.get(nodePath), operation.getException()));
+            }
+        }
+        return new BulkWriteResult(results, batchResult);
+    }
+
+    private HttpEntity buildEntity(List<String> chunk) {
+        FormEntityBuilder form = FormEntityBuilder.create();
+        for (String nodePath : chunk) {
+            String prefix = "/".equals(nodePath) ? "" : nodePath.substring(1) + "/";
+            for (NameValuePair parameter : nodes.get(nodePath)) {
+                String name = StringUtils.removeStart(parameter.getName(), "./");
+                form.addParameter(prefix + name, parameter.getValue());
+            }
+        }
+        return form.build();
+    }
+
+    /**
+     * Assigns the changes of the change log to the nodes of the chunk: each change goes to the deepest node
+     * of the chunk that is, or is an ancestor of, its path
+     */
+    private static Map<String, List<String>> getChanges(List<String> chunk, SlingHttpResponse response) {
+        Map<String, List<String>> changes = new HashMap<>(chunk.size() * 2);
+        for (String nodePath : chunk) {
+            changes.put(nodePath, new ArrayList<>());
+        }
+        if (response == null) {
+            return changes;
+        }
+        JsonNode log;
+        try {
+            log = response.getJsonNode().get("changes");
+        } catch (ClientException e) {
+            return changes;
+        }
+        if (log == null || !log.isArray()) {
+            return changes;
+        }
+        for (JsonNode change : log) {
+            JsonNode argument = change.get("argument");
+            if (argument != null && argument.isArray()) {
+                argument = argument.get(0);
+            }
+            if (argument == null) {
+                continue;
+            }
+            String path = argument.asText();
+            String candidate = normalize(path);
+            while (!changes.containsKey(candidate) && !"/".equals(candidate)) {
+                int slash = candidate.lastIndexOf('/');
+                candidate = slash > 0 ? candidate.substring(0, slash) : "/";
+            }
+            List<String> nodeChanges = changes.get(candidate);
+            if (nodeChanges != null) {
+                nodeChanges.add(change.path("type").asText() + " " + path);
+            }
+        }
+        return changes;
+    }
+
+    private static String normalize(String path) {
+        String normalized = StringUtils.stripEnd(path, "/");
+        return normalized.isEmpty() ? "/" : normalized;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.batch;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.sling.testing.clients.ClientException;
+
+/**
+ * The outcome of executing a {@link BulkPropertyWriter}: one {@link NodeResult} per node, in the order the nodes
+ * were added to the writer.
+ *
+ * @since 1.0.0
+ */
+public class BulkWriteResult {
+
+    private final List<NodeResult> results;
+
+    private final BatchResult requests;
+
+    BulkWriteResult(List<NodeResult> results, BatchResult requests) {
+        this.results = Collections.unmodifiableList(results);
+        this.requests = requests;
+    }
+
+    /**
+     * @return the results of all the nodes, in the order they were added to the writer
+     */
+    public List<NodeResult> getResults() {
+        return results;
+    }
+
+    /**
+     * @return the results of the nodes whose request failed
+     */
+    public List<NodeResult> getFailed() {
+        return results.stream().filter(r -> !r.isSuccessful()).collect(Collectors.toList());
+    }
+
+    /**
+     * @return true if all the requests completed without error
+     */
+    public boolean isSuccessful() {
+        return requests.isSuccessful();
+    }
+
+    /**
+     * @return the outcome of the requests, one per chunk of nodes
+     */
+    public BatchResult getRequests() {
+        return requests;
+    }
+
+    /**
+     * Throws the exception of the first failed request, if any, see {@link BatchResult#throwIfFailed()}
+     *
+     * @return this, if all the requests were successful
+     * @throws ClientException the exception of the first failed request
+     */
+    public BulkWriteResult throwIfFailed() throws ClientException {
+        requests.throwIfFailed();
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkWriteResult{nodes=" + results.size() + ", requests=" + requests.getResults().size()
+                + ", failedNodes=" + getFailed().size() + ", durationMillis=" + requests.getDurationMillis() + "}";
+    }
+
+    /**
+     * The outcome of the writes of a single node
+     */
+    public static class NodeResult {
+
+        private final String path;
+
+        private final List<String> changes;
+
+        private final ClientException exception;
+
+        NodeResult(String path, List<String> changes, ClientException exception) {
+            this.path = path;
+            this.changes = changes != null ? Collections.unmodifiableList(changes) : Collections.<String>emptyList();
+            this.exception = exception;
+        }
+
+        /**
+         * @return the path of the node
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return the changes of the node reported by the change log, e.g. {@code modified /content/a/jcr:title}
+         */
+        public List<String> getChanges() {
+            return changes;
+        }
+
+        /**
+         * @return the exception of the request of the node or {@code null} if it was successful
+         */
+        public ClientException getException() {
+            return exception;
+        }
+
+        /**
+         * @return true if the request of the node completed without error
+         */
+        public boolean isSuccessful() {
+            return exception == null;
+        }
+
+        @Override
+        public String toString() {
+            return path + (isSuccessful() ? " " + changes : " failed: " + exception.getMessage());
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.batch;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.testing.clients.ClientException;
+
+/**
+ * The outcome of a {@link JsonTreeImporter} import: how many nodes were imported, how fast,
+ * and which chunks failed.
+ *
+ * @since 1.0.0
+ */
+public class JsonImportResult {
+
+    private final long nodeCount;
+
+    private final long importedNodeCount;
+
+    private final Map<String, ClientException> failed;
+
+    private final BatchResult requests;
+
+    private final long durationNanos;
+
+    JsonImportResult(long nodeCount, long importedNodeCount, Map<String, ClientException> failed,
+                     BatchResult requests, long durationNanos) {
+        this.nodeCount = nodeCount;
+        this.importedNodeCount = importedNodeCount;
+        this.failed = Collections.unmodifiableMap(failed);
+        this.requests = requests;
+        this.durationNanos = durationNanos;
+    }
+
+    /**
+     * @return the number of nodes of the tree
+     */
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return the number of nodes of the skeleton and of the successful chunks
+     */
+    public long getImportedNodeCount() {
+        return importedNodeCount;
+    }
+
+    /**
+     * @return the number of requests, the skeleton excluded
+     */
+    public int getChunkCount() {
+        return requests.getResults().size();
+    }
+
+    /**
+     * @return the paths of the roots of the subtrees of the failed chunks, mapped to the exception of their request
+     */
+    public Map<String, ClientException> getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return the outcome of the requests, one per chunk
+     */
+    public BatchResult getRequests() {
+        return requests;
+    }
+
+    /**
+     * @return the duration of the whole import, the splitting included
+     */
+    public long getDurationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(durationNanos);
+    }
+
+    /**
+     * @return the number of imported nodes per second, over the whole import
+     */
+    public double getNodesPerSecond() {
+        return durationNanos > 0 ? importedNodeCount * (double) TimeUnit.SECONDS.toNanos(1) / durationNanos : 0;
+    }
+
+    /**
+     * @return true if all the chunks were imported
+     */
+    public boolean isSuccessful() {
+        return failed.isEmpty();
+    }
+
+    /**
+     * Throws the exception of the first failed chunk, if any, see {@link BatchResult#throwIfFailed()}
+     *
+     * @return this, if all the chunks were imported
+     * @throws ClientException the exception of the first failed chunk
+     */
+    public JsonImportResult throwIfFailed() throws ClientException {
+        requests.throwIfFailed();
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("JsonImportResult{nodes=%d, imported=%d, chunks=%d, failedChunks=%d, durationMillis=%d, "
+                + "nodesPerSecond=%.1f}", nodeCount, importedNodeCount, getChunkCount(), requests.getFailed().size(),
+                getDurationMillis(), getNodesPerSecond());
+    }
+}
@@ -0,0 +1,421 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.batch;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpEntity;
+import org.apache.sling.testing.clients.ClientException;
+import org.apache.sling.testing.clients.SlingClient;
+import org.apache.sling.testing.clients.exceptions.TestingIOException;
+import org.apache.sling.testing.clients.util.FormEntityBuilder;
+import org.apache.sling.testing.clients.util.JsonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.apache.http.HttpStatus.SC_CREATED;
+import static org.apache.http.HttpStatus.SC_OK;
+
+/**
+ * <p>Imports a large JSON content tree with many {@code :operation=import} requests instead of a single one.
+ * Obtained through {@link SlingClient#jsonTreeImporter()}:</p>
+ * <blockquote><pre>
+ * {@code
+ * JsonImportResult result = client.jsonTreeImporter()
+ *         .setChunkSize(2000)
+ *         .setRetries(2)
+ *         .importJson("/content/synthetic", new File("synthetic.json"), 8)
+ *         .throwIfFailed();
+ * }
+ * </pre></blockquote>
+ *
+ * <p>The JSON is streamed and split into chunks of at most {@code chunkSize} nodes, which are written to temporary
+ * files, so the tree is never fully in memory. The nodes too large to fit in a chunk form the skeleton of the tree:
+ * they are imported first, with their properties only, in a single request. The chunks are then imported
+ * concurrently through a {@link Batch}. A chunk holds the subtrees of consecutive siblings, so a wide node with
+ * many small children costs about one request per {@code chunkSize} nodes, not one per child:</p>
+ * <ul>
+ *     <li>a chunk of a single subtree creates its root, so it is imported with {@code :replace=true};</li>
+ *     <li>a chunk of several subtrees is imported into their existing parent, without its properties, so the
+ *     import adds the subtrees to it. It is imported with {@code :replaceProperties=true}.</li>
+ * </ul>
+ * <p>Either way, a chunk which failed after being saved can be retried.</p>
+ *
+ * <p>The children of a skeleton node are created in the skeleton first, then in the order the chunks complete,
+ * so the order of the children of orderable nodes is not preserved.</p>
+ *
+ * @since 1.0.0
+ */
+public class JsonTreeImporter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JsonTreeImporter.class);
+
+    private final SlingClient client;
+
+    private int chunkSize = 1000;
+
+    private int retries = 0;
+
+    /**
+     * Creates a new importer. Use {@link SlingClient#jsonTreeImporter()} instead.
+     *
+     * @param client the client executing the requests
+     */
+    public JsonTreeImporter(SlingClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Sets the maximum number of nodes imported by each request. Defaults to 1000.
+     *
+     * @param chunkSize the number of nodes per request
+     * @return this
+     */
+    public JsonTreeImporter setChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1");
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Sets how many times a failed chunk is retried before giving up, see {@link Batch#setRetries(int)}. Defaults to 0.
+     *
+     * @param retries the number of retries for each chunk
+     * @return this
+     */
+    public JsonTreeImporter setRetries(int retries) {
+        if (retries < 0) {
+            throw new IllegalArgumentException("retries must not be negative");
+        }
+        this.retries = retries;
+        return this;
+    }
+
+    /**
+     * Imports the JSON tree of a file, see {@link #importJson(String, InputStream, int)}
+     *
+     * @param path the path of the root node of the tree, its parent must exist
+     * @param json the file containing the tree, in the format of the Sling JSON import
+     * @param parallelism the maximum number of chunks imported at the same time
+     * @return the outcome of the import
+     * @throws ClientException if the file could not be read or the skeleton could not be imported
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public JsonImportResult importJson(String path, File json, int parallelism)
+            throws ClientException, InterruptedException {
+        try (InputStream in = new FileInputStream(json)) {
+            return importJson(path, in, parallelism);
+        } catch (IOException e) {
+            throw new TestingIOException("Could not read " + json, e);
+        }
+    }
+
+    /**
+     * Imports a JSON tree, with at most {@code parallelism} requests in flight, and waits for all of them to complete.
+     * The stream is not closed.
+     *
+     * @param path the path of the root node of the tree, its parent must exist
+     * @param json the tree, in the format of the Sling JSON import
+     * @param parallelism the maximum number of chunks imported at the same time
+     * @return the outcome of the import
+     * @throws ClientException if the stream could not be read or the skeleton could not be imported
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public JsonImportResult importJson(String path, InputStream json, int parallelism)
+            throws ClientException, InterruptedException {
+        if (path == null || !path.startsWith("/") || StringUtils.stripEnd(path, "/").isEmpty()) {
+            throw new IllegalArgumentException("path must be absolute and not the root: " + path);
+        }
+        String root = StringUtils.stripEnd(path, "/");
+        long start = System.nanoTime();
+
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("sling-import-");
+            Splitter splitter = new Splitter(directory);
+            Subtree tree;
+            try (JsonParser parser = JsonUtils.createParser(json)) {
+                parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    throw new TestingIOException("The json tree must be an object");
+                }
+                tree = splitter.read(parser, root);
+            }
+
+            if (tree.skeleton == null) {
+                // small enough for a single request
+                splitter.write(root, tree.content, tree.count);
+            } else {
+                LOG.debug("Importing the skeleton of {} nodes of {}", tree.count, root);
+                client.doPost(getParent(root), entity(getName(root), tree.skeleton.toString(), false), SC_OK, SC_CREATED);
+            }
+
+            Batch batch = client.batch().setRetries(retries);
+            for (Chunk chunk : splitter.chunks) {
+                batch.add("import " + chunk.count + " nodes to " + chunk.path, c -> c.doPost(getParent(chunk.path),
+                        entity(chunk, root), SC_OK, SC_CREATED));
+            }
+            BatchResult requests = batch.execute(parallelism);
+
+            long imported = tree.skeleton == null ? 0 : tree.count;
+            long total = imported;
+            Map<String, ClientException> failed = new LinkedHashMap<>();
+            for (int i = 0; i < splitter.chunks.size(); i++) {
+                Chunk chunk = splitter.chunks.get(i);
+                BatchResult.OperationResult operation = requests.getResults().get(i);
+                total += chunk.count;
+                if (operation.isSuccessful()) {
+                    imported += chunk.count;
+                } else {
+                    for (String subtree : chunk.subtrees) {
+                        failed.put(subtree, operation.getException());
+                    }
+                }
+            }
+            return new JsonImportResult(total, imported, failed, requests, System.nanoTime() - start);
+        } catch (IOException e) {
+            throw new TestingIOException("Could not split the json tree of " + root, e);
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private static HttpEntity entity(String name, String content, boolean replace) {
+        return form(name, content, replace).build();
+    }
+
+    private static FormEntityBuilder form(String name, String content, boolean replace) {
+        FormEntityBuilder form = FormEntityBuilder.create()
+                .addParameter(":operation", "import")
+                .addParameter(":contentType", "json")
+                .addParameter(":name", name)
+                .addParameter(":content", content);
+        if (replace) {
+            form.addParameter(":replace", "true");
+        }
+        return form;
+    }
+
+    /**
+     * Reads the chunk when its request is executed, so at most {@code parallelism} chunks are in memory
+     */
+    private static HttpEntity entity(Chunk chunk, String root) throws ClientException {
+        try {
+            String content = new String(Files.readAllBytes(chunk.file.toPath()), StandardCharsets.UTF_8);
+            if (chunk.merge) {
+                return form(getName(chunk.path), content, false).addParameter(":replaceProperties", "true").build();
+            }
+            return entity(getName(chunk.path), content, !chunk.path.equals(root));
+        } catch (IOException e) {
+            throw new TestingIOException("Could not read the chunk of " + chunk.path, e);
+        }
+    }
+
+    private static void delete(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        File[] files = directory.toFile().listFiles();
+        for (File file : files != null ? files : new File[0]) {
+            if (!file.delete()) {
+                LOG.warn("Could not delete {}", file);
+            }
+        }
+        if (!directory.toFile().delete()) {
+            LOG.warn("Could not delete {}", directory);
+        }
+    }
+
+    private static String getName(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    private static String getParent(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash > 0 ? path.substring(0, slash) : "/";
+    }
+
+    /**
+     * A parsed subtree: either its whole content, if it fits in a chunk, or the skeleton of the nodes
+     * which did not fit, the rest having been written to chunks
+     */
+    private static final class Subtree {
+        private final ObjectNode content;
+        private final ObjectNode skeleton;
+        private final int count;
+
+        private Subtree(ObjectNode content, ObjectNode skeleton, int count) {
+            this.content = content;
+            this.skeleton = skeleton;
+            this.count = count;
+        }
+    }
+
+    /**
+     * The content imported by a request: a single subtree rooted at {@code path}, or several subtrees
+     * merged into their parent at {@code path}
+     */
+    private static final class Chunk {
+        private final String path;
+        private final File file;
+        private final int count;
+        private final boolean merge;
+        private final List<String> subtrees;
+
+        private Chunk(String path, File file, int count, boolean merge, List<String> subtrees) {
+            this.path = path;
+            this.file = file;
+            this.count = count;
+            this.merge = merge;
+            this.subtrees = subtrees;
+        }
+    }
+
+    private final class Splitter {
+
+        private final Path directory;
+
+        private final List<Chunk> chunks = new ArrayList<>();
+
+        private Splitter(Path directory) {
+            this.directory = directory;
+        }
+
+        /**
+         * Reads the node starting at the current {@code START_OBJECT}. The complete children are kept in memory
+         * while the node fits in a chunk; once it does not, they are grouped into chunks of at most
+         * {@code chunkSize} nodes, and so are the next ones. At most {@code chunkSize} nodes per level of the
+         * current path are kept in memory.
+         */
+        private Subtree read(JsonParser parser, String path) throws IOException, ClientException {
+            ObjectNode content = JsonNodeFactory.instance.objectNode();
+            Map<String, Subtree> children = new LinkedHashMap<>();
+            int count = 1;
+            boolean split = false;
+            Group group = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    content.set(name, parser.<JsonNode>readValueAsTree());
+                    continue;
+                }
+                Subtree child = read(parser, path + "/" + name);
+                if (!split && child.skeleton == null && count + child.count <= chunkSize) {
+                    children.put(name, child);
+                    count += child.count;
+                    continue;
+                }
+                if (!split) {
+                    split = true;
+                    group = new Group(path);
+                    for (Map.Entry<String, Subtree> buffered : children.entrySet()) {
+                        group.add(buffered.getKey(), buffered.getValue());
+                    }
+                    children.clear();
+                    count = 1;
+                }
+                if (child.skeleton != null) {
+                    children.put(name, child);
+                    count += child.count;
+                } else {
+                    group.add(name, child);
+                }
+            }
+            if (group != null) {
+                group.flush();
+            }
+
+            for (Map.Entry<String, Subtree> child : children.entrySet()) {
+                content.set(child.getKey(), split ? child.getValue().skeleton : child.getValue().content);
+            }
+            return split ? new Subtree(null, content, count) : new Subtree(content, null, count);
+        }
+
+        private void write(String path, ObjectNode content, int count) throws IOException, ClientException {
+            chunks.add(new Chunk(path, write(content), count, false, Collections.singletonList(path)));
+        }
+
+        private File write(ObjectNode content) throws IOException, ClientException {
+            Path file = Files.createTempFile(directory, "chunk-", ".json");
+            try (OutputStream out = Files.newOutputStream(file)) {
+                JsonUtils.writeValue(out, content);
+            }
+            return file.toFile();
+        }
+
+        /**
+         * The complete subtrees of consecutive siblings, written as a chunk once the next one does not fit
+         */
+        private final class Group {
+
+            private final String parent;
+
+            private final Map<String, Subtree> subtrees = new LinkedHashMap<>();
+
+            private int count;
+
+            private Group(String parent) {
+                this.parent = parent;
+            }
+
+            private void add(String name, Subtree subtree) throws IOException, ClientException {
+                if (count + subtree.count > chunkSize) {
+                    flush();
+                }
+                subtrees.put(name, subtree);
+                count += subtree.count;
+            }
+
+            private void flush() throws IOException, ClientException {
+                if (subtrees.size() == 1) {
+                    Map.Entry<String, Subtree> subtree = subtrees.entrySet().iterator().next();
+                    write(parent + "/" + subtree.getKey(), subtree.getValue().content, count);
+                } else if (subtrees.size() > 1) {
+                    ObjectNode content = JsonNodeFactory.instance.objectNode();
+                    List<String> paths = new ArrayList<>(subtrees.size());
+                    for (Map.Entry<String, Subtree> subtree : subtrees.entrySet()) {
+                        content.set(subtree.getKey(), subtree.getValue().content);
+                        paths.add(parent + "/" + subtree.getKey());
+                    }
+                    chunks.add(new Chunk(parent, write(content), count, true, paths));
+                }
+                subtrees.clear();
+                count = 0;
+            }
+        }
+    }
+}
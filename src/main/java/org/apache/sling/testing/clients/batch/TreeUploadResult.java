@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.batch;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.testing.clients.ClientException;
+
+/**
+ * The outcome of a {@link TreeUploader} upload: which files were uploaded, skipped or failed, and how fast.
+ *
+ * @since 1.0.0
+ */
+public class TreeUploadResult {
+
+    private final int folderCount;
+
+    private final List<String> uploaded;
+
+    private final List<String> skipped;
+
+    private final Map<String, ClientException> failed;
+
+    private final long uploadedBytes;
+
+    private final BatchResult requests;
+
+    private final long durationNanos;
+
+    TreeUploadResult(int folderCount, List<String> uploaded, List<String> skipped, Map<String, ClientException> failed,
+                     long uploadedBytes, BatchResult requests, long durationNanos) {
+        this.folderCount = folderCount;
+        this.uploaded = Collections.unmodifiableList(uploaded);
+        this.skipped = Collections.unmodifiableList(skipped);
+        this.failed = Collections.unmodifiableMap(failed);
+        this.uploadedBytes = uploadedBytes;
+        this.requests = requests;
+        this.durationNanos = durationNanos;
+    }
+
+    /**
+     * @return the number of folders of the tree, the root included
+     */
+    public int getFolderCount() {
+        return folderCount;
+    }
+
+    /**
+     * @return the remote paths of the uploaded files
+     */
+    public List<String> getUploaded() {
+        return uploaded;
+    }
+
+    /**
+     * @return the remote paths of the files skipped because they were unchanged
+     */
+    public List<String> getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return the remote paths of the files which could not be uploaded, mapped to the exception of their upload
+     */
+    public Map<String, ClientException> getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return the number of bytes of the uploaded files
+     */
+    public long getUploadedBytes() {
+        return uploadedBytes;
+    }
+
+    /**
+     * @return the outcome of the uploads, one per file not skipped
+     */
+    public BatchResult getRequests() {
+        return requests;
+    }
+
+    /**
+     * @return the duration of the whole upload, the remote checks included
+     */
+    public long getDurationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(durationNanos);
+    }
+
+    /**
+     * @return the number of uploaded files per second, over the whole upload
+     */
+    public double getFilesPerSecond() {
+        return perSecond(uploaded.size());
+    }
+
+    /**
+     * @return the number of uploaded bytes per second, over the whole upload
+     */
+    public double getBytesPerSecond() {
+        return perSecond(uploadedBytes);
+    }
+
+    private double perSecond(long count) {
+        return durationNanos > 0 ? count * (double) TimeUnit.SECONDS.toNanos(1) / durationNanos : 0;
+    }
+
+    /**
+     * @return true if all the files were uploaded or skipped
+     */
+    public boolean isSuccessful() {
+        return failed.isEmpty();
+    }
+
+    /**
+     * Throws the exception of the first failed upload, if any, see {@link BatchResult#throwIfFailed()}
+     *
+     * @return this, if all the files were uploaded or skipped
+     * @throws ClientException the exception of the first failed upload
+     */
+    public TreeUploadResult throwIfFailed() throws ClientException {
+        requests.throwIfFailed();
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TreeUploadResult{folders=%d, uploaded=%d, skipped=%d, failed=%d, bytes=%d, "
+                + "durationMillis=%d, filesPerSecond=%.1f, bytesPerSecond=%.0f}", folderCount, uploaded.size(),
+                skipped.size(), failed.size(), uploadedBytes, getDurationMillis(), getFilesPerSecond(),
+                getBytesPerSecond());
+    }
+}
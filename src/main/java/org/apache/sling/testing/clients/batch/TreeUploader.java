@@ -0,0 +1,321 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.batch;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.testing.clients.ClientException;
+import org.apache.sling.testing.clients.KnownPaths;
+import org.apache.sling.testing.clients.SlingClient;
+import org.apache.sling.testing.clients.SlingHttpResponse;
+import org.apache.sling.testing.clients.exceptions.TestingIOException;
+
+import static org.apache.http.HttpStatus.SC_NOT_FOUND;
+import static org.apache.http.HttpStatus.SC_OK;
+
+/**
+ * <p>Uploads a local directory tree to the repository. Obtained through {@link SlingClient#treeUploader()}:</p>
+ * <blockquote><pre>
+ * {@code
+ * TreeUploadResult result = client.treeUploader()
+ *         .setRetries(2)
+ *         .upload(Paths.get("assets"), "/content/dam/assets", 8)
+ *         .throwIfFailed();
+ * }
+ * </pre></blockquote>
+ *
+ * <p>The upload is done in three steps:</p>
+ * <ol>
+ *     <li>the remote state of every folder is read with a single {@code .2.json} request per folder, or a
+ *     {@code .json} request if the unchanged files are not skipped</li>
+ *     <li>the missing folders are created as {@code sling:OrderedFolder}, with a {@link BulkPropertyWriter}</li>
+ *     <li>the files are uploaded concurrently through a {@link Batch}, with
+ *     {@link SlingClient#uploadChunked(java.io.File, String, String, boolean, long, int)}</li>
+ * </ol>
+ *
+ * <p>A file whose remote {@code jcr:data} has the same size and whose remote {@code jcr:lastModified} is after
+ * the last modification of the local file is skipped. Nothing else is written to the uploaded files: their
+ * {@code jcr:content} is an {@code nt:resource}, which does not accept other properties. Since the remote date
+ * is rendered to the second, a file modified in the second of its upload is uploaded again once.</p>
+ *
+ * @since 1.0.0
+ */
+public class TreeUploader {
+
+    private static final String FOLDER_TYPE = "sling:OrderedFolder";
+
+    /**
+     * The default date format of the JSON rendering of Sling, the ISO 8601 one is also accepted
+     */
+    private static final DateTimeFormatter ECMA_DATE_FORMAT =
+            DateTimeFormatter.ofPattern("EEE MMM dd yyyy HH:mm:ss 'GMT'Z", Locale.US);
+
+    private final SlingClient client;
+
+    private boolean skipUnchanged = true;
+
+    private long chunkSize = 64 * 1024 * 1024;
+
+    private int retries = 0;
+
+    /**
+     * Creates a new uploader. Use {@link SlingClient#treeUploader()} instead.
+     *
+     * @param client the client executing the requests
+     */
+    public TreeUploader(SlingClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Sets whether the files already uploaded with the same content are skipped. Defaults to true.
+     *
+     * @param skipUnchanged false to upload all the files
+     * @return this
+     */
+    public TreeUploader setSkipUnchanged(boolean skipUnchanged) {
+        this.skipUnchanged = skipUnchanged;
+        return this;
+    }
+
+    /**
+     * Sets the size of the chunks of the files uploaded in chunks, see
+     * {@link SlingClient#uploadChunked(java.io.File, String, String, boolean, long, int)}. Defaults to 64MB.
+     *
+     * @param chunkSize the maximum number of bytes of each request
+     * @return this
+     */
+    public TreeUploader setChunkSize(long chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1");
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Sets how many times a failed file is retried, or resumed if uploaded in chunks, before giving up. Defaults to 0.
+     *
+     * @param retries the number of retries for each file
+     * @return this
+     */
+    public TreeUploader setRetries(int retries) {
+        if (retries < 0) {
+            throw new IllegalArgumentException("retries must not be negative");
+        }
+        this.retries = retries;
+        return this;
+    }
+
+    /**
+     * Uploads all the files under {@code localDir}, with at most {@code parallelism} requests in flight,
+     * and waits for all of them to complete.
+     *
+     * @param localDir the local directory
+     * @param remoteRoot the path of the folder receiving the content of {@code localDir}
+     * @param parallelism the maximum number of requests executed at the same time
+     * @return the outcome of the upload
+     * @throws ClientException if the directory could not be read or the folders could not be created
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public TreeUploadResult upload(Path localDir, String remoteRoot, int parallelism)
+            throws ClientException, InterruptedException {
+        long start = System.nanoTime();
+        String root = StringUtils.stripEnd(remoteRoot, "/");
+
+        List<String> folders = new ArrayList<>();
+        Map<String, Path> files = new TreeMap<>();
+        try (Stream<Path> walk = Files.walk(localDir)) {
+            for (Path local : walk.sorted().collect(Collectors.toList())) {
+                String relative = localDir.relativize(local).toString().replace(local.getFileSystem().getSeparator(), "/");
+                String remote = relative.isEmpty() ? root : root + "/" + relative;
+                if (Files.isDirectory(local)) {
+                    folders.add(remote);
+                } else if (Files.isRegularFile(local)) {
+                    files.put(remote, local);
+                }
+            }
+        } catch (IOException e) {
+            throw new TestingIOException("Could not read " + localDir, e);
+        }
+
+        // 1. remote state
+        // the folders are always read, so the existing ones are not created again with another type
+        Set<String> existingFolders = new HashSet<>();
+        Map<String, JsonNode> remoteFiles = readRemoteFiles(folders, existingFolders, parallelism);
+
+        // 2. folders
+        createFolders(folders, existingFolders);
+
+        // 3. files
+        List<String> skipped = new ArrayList<>();
+        List<String> toUpload = new ArrayList<>();
+        for (Map.Entry<String, Path> file : files.entrySet()) {
+            if (isUnchanged(file.getValue(), remoteFiles.get(file.getKey()))) {
+                skipped.add(file.getKey());
+            } else {
+                toUpload.add(file.getKey());
+            }
+        }
+        Batch batch = client.batch().setRetries(retries);
+        for (String remote : toUpload) {
+            Path local = files.get(remote);
+            batch.add("upload " + local + " to " + remote, c -> {
+                String mimeType = probeContentType(local);
+                return c.uploadChunked(local.toFile(), mimeType, remote, false, chunkSize, retries);
+            });
+        }
+        BatchResult requests = batch.execute(parallelism);
+
+        List<String> uploaded = new ArrayList<>();
+        Map<String, ClientException> failed = new HashMap<>();
+        long bytes = 0;
+        for (int i = 0; i < toUpload.size(); i++) {
+            BatchResult.OperationResult operation = requests.getResults().get(i);
+            String remote = toUpload.get(i);
+            if (operation.isSuccessful()) {
+                uploaded.add(remote);
+                bytes += files.get(remote).toFile().length();
+            } else {
+                failed.put(remote, operation.getException());
+            }
+        }
+        return new TreeUploadResult(folders.size(), uploaded, skipped, failed, bytes, requests,
+                System.nanoTime() - start);
+    }
+
+    /**
+     * Reads the files of every remote folder, with their {@code jcr:content}, or only whether the folders exist
+     * if the unchanged files are not skipped
+     *
+     * @param existingFolders filled with the folders found
+     * @return the file paths mapped to their {@code jcr:content}
+     */
+    private Map<String, JsonNode> readRemoteFiles(List<String> folders, Set<String> existingFolders, int parallelism)
+            throws ClientException, InterruptedException {
+        String selector = skipUnchanged ? ".2.json" : ".json";
+        Batch batch = client.batch().setRetries(retries);
+        for (String folder : folders) {
+            batch.add("read " + folder, c -> c.doGet(folder + selector, SC_OK, SC_NOT_FOUND));
+        }
+        BatchResult result = batch.execute(parallelism).throwIfFailed();
+
+        Map<String, JsonNode> remoteFiles = new HashMap<>();
+        for (int i = 0; i < folders.size(); i++) {
+            SlingHttpResponse response = result.getResults().get(i).getResponse();
+            if (response.getStatusLine().getStatusCode() != SC_OK) {
+                continue;
+            }
+            existingFolders.add(folders.get(i));
+            if (!skipUnchanged) {
+                continue;
+            }
+            JsonNode folder = response.getJsonNode();
+            for (Map.Entry<String, JsonNode> child : (Iterable<Map.Entry<String, JsonNode>>) folder::fields) {
+                JsonNode content = child.getValue().path("jcr:content");
+                if (content.isObject()) {
+                    remoteFiles.put(folders.get(i) + "/" + child.getKey(), content);
+                }
+            }
+        }
+        return remoteFiles;
+    }
+
+    private void createFolders(List<String> folders, Set<String> existingFolders)
+            throws ClientException, InterruptedException {
+        KnownPaths knownPaths = client.getKnownPaths();
+        String root = folders.get(0);
+        if (!existingFolders.contains(root)) {
+            client.createNodeRecursive(root, FOLDER_TYPE);
+        }
+        BulkPropertyWriter writer = new BulkPropertyWriter(client).setRetries(retries);
+        for (String folder : folders.subList(1, folders.size())) {
+            if (!existingFolders.contains(folder) && (knownPaths == null || !knownPaths.contains(folder))) {
+                writer.setProperty(folder, "jcr:primaryType", FOLDER_TYPE);
+            }
+        }
+        if (writer.size() > 0) {
+            // in a single thread, so the parents are created with their type before their children
+            writer.execute(1).throwIfFailed();
+        }
+        if (knownPaths != null) {
+            folders.forEach(knownPaths::add);
+        }
+    }
+
+    private static boolean isUnchanged(Path local, JsonNode remoteContent) throws ClientException {
+        if (remoteContent == null) {
+            return false;
+        }
+        Instant remoteModified = parseDate(remoteContent.path("jcr:lastModified").asText());
+        if (remoteModified == null) {
+            return false;
+        }
+        try {
+            // the binary properties are rendered as their length, with a colon prefix
+            return remoteContent.path(":jcr:data").asLong(-1) == Files.size(local)
+                    && remoteModified.isAfter(Files.getLastModifiedTime(local).toInstant());
+        } catch (IOException e) {
+            throw new TestingIOException("Could not read " + local, e);
+        }
+    }
+
+    /**
+     * @return the date rendered by the JSON servlet, or {@code null} if missing or not parsable
+     */
+    private static Instant parseDate(String date) {
+        if (date.isEmpty()) {
+            return null;
+        }
+        try {
+            return ZonedDateTime.parse(date, ECMA_DATE_FORMAT).toInstant();
+        } catch (DateTimeParseException e) {
+            try {
+                return OffsetDateTime.parse(date).toInstant();
+            } catch (DateTimeParseException e2) {
+                return null;
+            }
+        }
+    }
+
+    private static String probeContentType(Path file) {
+        try {
+            return Files.probeContentType(file);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
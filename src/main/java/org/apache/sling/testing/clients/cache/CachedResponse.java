@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.annotation.Contract;
+import org.apache.http.annotation.ThreadingBehavior;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.message.BasicHttpResponse;
+
+/**
+ * <p>Immutable snapshot of a response: status line, headers and content.</p>
+ *
+ * <p>{@link #toHttpResponse()} creates a new response on each call, so the same snapshot can be served
+ * to several callers.</p>
+ *
+ * @since 1.0.0
+ */
+@Contract(threading = ThreadingBehavior.IMMUTABLE)
+public final class CachedResponse {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final StatusLine statusLine;
+
+    private final Header[] headers;
+
+    private final byte[] content;
+
+    private final Header contentType;
+
+    private final Header contentEncoding;
+
+    /**
+     * @param statusLine the status line
+     * @param headers the headers
+     * @param content the content, not copied, so it must not be modified afterwards
+     * @param entity the original entity, for the content type and encoding, or {@code null}
+     */
+    public CachedResponse(StatusLine statusLine, Header[] headers, byte[] content, HttpEntity entity) {
+        this.statusLine = statusLine;
+        this.headers = headers.clone();
+        this.content = content;
+        this.contentType = entity != null ? entity.getContentType() : null;
+        this.contentEncoding = entity != null ? entity.getContentEncoding() : null;
+    }
+
+    /**
+     * Creates a snapshot of a response, reading its entity completely
+     *
+     * @param response the response, the entity is consumed but the response is not closed
+     * @return the snapshot
+     * @throws IOException if the entity could not be read
+     */
+    public static CachedResponse of(HttpResponse response) throws IOException {
+        return of(response, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a snapshot of a response, unless its content turns out to be larger than {@code maxBytes}: the entity
+     * of the response is then replaced by one returning the bytes already read followed by the rest of the stream.
+     *
+     * @param response the response, the entity is consumed if it fits but the response is not closed
+     * @param maxBytes the maximum length of the content
+     * @return the snapshot or {@code null} if the content is too large
+     * @throws IOException if the entity could not be read
+     */
+    static CachedResponse of(HttpResponse response, long maxBytes) throws IOException {
+        HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            return new CachedResponse(response.getStatusLine(), response.getAllHeaders(), null, null);
+        }
+        if (entity.getContentLength() > maxBytes) {
+            return null;
+        }
+        InputStream in = entity.getContent();
+        if (in == null) {
+            return new CachedResponse(response.getStatusLine(), response.getAllHeaders(), null, entity);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+                entity.getContentLength() > 0 ? (int) entity.getContentLength() : BUFFER_SIZE);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+            if (out.size() > maxBytes) {
+                InputStreamEntity remaining = new InputStreamEntity(
+                        new SequenceInputStream(new ByteArrayInputStream(out.toByteArray()), in),
+                        entity.getContentLength(), ContentType.get(entity));
+                remaining.setContentType(entity.getContentType());
+                remaining.setContentEncoding(entity.getContentEncoding());
+                response.setEntity(remaining);
+                return null;
+            }
+        }
+        in.close();
+        return new CachedResponse(response.getStatusLine(), response.getAllHeaders(), out.toByteArray(), entity);
+    }
+
+    /**
+     * @return the status line
+     */
+    public StatusLine getStatusLine() {
+        return statusLine;
+    }
+
+    /**
+     * @return a copy of the headers
+     */
+    public Header[] getHeaders() {
+        return headers.clone();
+    }
+
+    /**
+     * @param name the name of the header
+     * @return the first header with that name or {@code null}
+     */
+    public Header getFirstHeader(String name) {
+        for (Header header : headers) {
+            if (header.getName().equalsIgnoreCase(name)) {
+                return header;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the value of the ETag header or {@code null}
+     */
+    public String getETag() {
+        Header header = getFirstHeader(HttpHeaders.ETAG);
+        return header != null ? header.getValue() : null;
+    }
+
+    /**
+     * @return the value of the Last-Modified header or {@code null}
+     */
+    public String getLastModified() {
+        Header header = getFirstHeader(HttpHeaders.LAST_MODIFIED);
+        return header != null ? header.getValue() : null;
+    }
+
+    /**
+     * @return true if the response can be revalidated with a conditional request
+     */
+    public boolean hasValidators() {
+        return getETag() != null || getLastModified() != null;
+    }
+
+    /**
+     * @return the length of the content, 0 if there is no content
+     */
+    public int getContentLength() {
+        return content != null ? content.length : 0;
+    }
+
+    /**
+     * @return a new response with the same status, headers and content
+     */
+    public CloseableHttpResponse toHttpResponse() {
+        SnapshotHttpResponse response = new SnapshotHttpResponse(statusLine);
+        response.setHeaders(headers);
+        if (content != null) {
+            ByteArrayEntity entity = new ByteArrayEntity(content);
+            entity.setContentType(contentType);
+            entity.setContentEncoding(contentEncoding);
+            response.setEntity(entity);
+        }
+        return response;
+    }
+
+    private static final class SnapshotHttpResponse extends BasicHttpResponse implements CloseableHttpResponse {
+
+        private SnapshotHttpResponse(StatusLine statusLine) {
+            super(statusLine);
+        }
+
+        @Override
+        public void close() {
+            // nothing to release
+        }
+    }
+}
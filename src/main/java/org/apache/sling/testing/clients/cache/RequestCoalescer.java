@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.cache;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.Header;
+import org.apache.http.annotation.Contract;
+import org.apache.http.annotation.ThreadingBehavior;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.sling.testing.clients.ContentCapturePolicy;
+
+/**
+ * <p>Coalesces the identical GET requests executed concurrently, e.g. by the threads of a parallel test suite
+ * polling the same OSGi console page: while a request is in flight, the identical ones wait for its response
+ * instead of being executed too.</p>
+ *
+ * <p>Two requests are identical if they have the same URI, user and headers. The response is read completely
+ * and every caller, including the one that executed the request, receives its own copy of it, holding the content
+ * in memory. If the request fails, all the callers waiting for it fail with an {@link IOException}.</p>
+ *
+ * <p>The shared copy is bounded by the {@link ContentCapturePolicy} of the client: a content larger than
+ * {@link ContentCapturePolicy#getMaxInMemoryBytes()} is not shared, the caller that executed the request
+ * receives the response as it is and the waiting callers execute their own request, so that each of them
+ * captures the content as defined by the policy.</p>
+ *
+ * <p>Nothing is cached: once the response is received, the next identical request is executed again.
+ * The other methods are never coalesced.</p>
+ *
+ * <p>Enabled with {@link org.apache.sling.testing.clients.SlingClient.InternalBuilder#setRequestCoalescer(RequestCoalescer)}.
+ * The same instance can be shared by several clients.</p>
+ *
+ * @since 1.0.0
+ */
+@Contract(threading = ThreadingBehavior.SAFE)
+public class RequestCoalescer {
+
+    private final ConcurrentMap<String, CompletableFuture<CachedResponse>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong executed = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Executes the request, or waits for the identical request in flight, sharing the contents of any size
+     *
+     * @param request the request
+     * @param user the user executing the request, part of the key
+     * @param executor executes the request against the server
+     * @return the response; for GET requests, a new response holding the content in memory
+     * @throws IOException if the request could not be executed
+     */
+    public CloseableHttpResponse execute(HttpUriRequest request, String user, ResponseCache.RequestExecutor executor)
+            throws IOException {
+        return execute(request, user, executor, ContentCapturePolicy.IN_MEMORY);
+    }
+
+    /**
+     * Executes the request, or waits for the identical request in flight
+     *
+     * @param request the request
+     * @param user the user executing the request, part of the key
+     * @param executor executes the request against the server
+     * @param policy the capture policy bounding the content shared in memory
+     * @return the response; for GET requests, a new response holding the content in memory,
+     * unless the content is too large to be shared
+     * @throws IOException if the request could not be executed
+     */
+    public CloseableHttpResponse execute(HttpUriRequest request, String user, ResponseCache.RequestExecutor executor,
+                                         ContentCapturePolicy policy) throws IOException {
+        if (!HttpGet.METHOD_NAME.equals(request.getMethod())) {
+            return executor.execute(request);
+        }
+
+        String key = getKey(request, user);
+        CompletableFuture<CachedResponse> flight = new CompletableFuture<>();
+        CompletableFuture<CachedResponse> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            CachedResponse shared = await(existing);
+            if (shared != null) {
+                return shared.toHttpResponse();
+            }
+            // too large to be shared
+            executed.incrementAndGet();
+            return executor.execute(request);
+        }
+
+        executed.incrementAndGet();
+        long maxBytes = policy != null && policy.isSpillEnabled() ? policy.getMaxInMemoryBytes() : Long.MAX_VALUE;
+        try {
+            CloseableHttpResponse httpResponse = executor.execute(request);
+            CachedResponse response;
+            try {
+                response = CachedResponse.of(httpResponse, maxBytes);
+            } catch (IOException | RuntimeException e) {
+                httpResponse.close();
+                throw e;
+            }
+            flight.complete(response);
+            if (response == null) {
+                return httpResponse;
+            }
+            httpResponse.close();
+            return response.toHttpResponse();
+        } catch (IOException | RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    private static CachedResponse await(CompletableFuture<CachedResponse> flight) throws IOException {
+        try {
+            return flight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the coalesced request");
+        } catch (ExecutionException e) {
+            throw new IOException("Coalesced request failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * @return the number of requests currently in flight
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * @return the number of requests executed against the server, including the ones that waited for a content
+     * too large to be shared
+     */
+    public long getExecutedCount() {
+        return executed.get();
+    }
+
+    /**
+     * @return the number of requests that waited for an identical request instead of being executed
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    private static String getKey(HttpUriRequest request, String user) {
+        List<String> headers = new ArrayList<>();
+        for (Header header : request.getAllHeaders()) {
+            headers.add(header.getName().toLowerCase() + ": " + header.getValue());
+        }
+        Collections.sort(headers);
+        return (user != null ? user : "") + " " + request.getURI().toString() + " " + headers;
+    }
+}
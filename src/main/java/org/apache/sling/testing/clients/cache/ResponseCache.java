@@ -0,0 +1,449 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.annotation.Contract;
+import org.apache.http.annotation.ThreadingBehavior;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpOptions;
+import org.apache.http.client.methods.HttpTrace;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.message.BasicHeader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Client-side cache for the GET requests, meant for read-mostly endpoints polled by the tests,
+ * like the bundles and components information of the OSGi console.</p>
+ *
+ * <p>The entries are keyed by URI, user and the request headers the content usually depends on: {@code Accept},
+ * {@code Accept-Language} and {@code Cookie}. The response is only served for the requests having the same
+ * values of the headers listed in its {@code Vary} header; responses with {@code Vary: *} are not stored.</p>
+ *
+ * <p>The entries are revalidated or expired as follows:</p>
+ * <ul>
+ *     <li>responses having an {@code ETag} or {@code Last-Modified} header are revalidated on every request
+ *     with {@code If-None-Match} or {@code If-Modified-Since}; on {@code 304 Not Modified} the cached
+ *     content is served and only the headers were transferred</li>
+ *     <li>responses without validators are served from the cache for {@code ttlMillis}, then requested again</li>
+ * </ul>
+ *
+ * <p>Only {@code 200} responses without {@code Cache-Control: no-store} are stored, and only if they are smaller than
+ * {@code maxBytes}. The least recently used entries are evicted when the cache exceeds {@code maxEntries}
+ * or {@code maxBytes}. Any request other than GET, HEAD, OPTIONS or TRACE executed through the cache invalidates
+ * all the entries, since it might have changed the state of the server.</p>
+ *
+ * <p>Enabled with {@link org.apache.sling.testing.clients.SlingClient.InternalBuilder#setResponseCache(ResponseCache)}.
+ * The same instance can be shared by several clients.</p>
+ *
+ * @since 1.0.0
+ */
+@Contract(threading = ThreadingBehavior.SAFE)
+public class ResponseCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResponseCache.class);
+
+    /**
+     * The request headers part of the cache key
+     */
+    private static final String[] KEY_HEADERS = {HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_LANGUAGE, "Cookie"};
+
+    private static final String VARY = "Vary";
+
+    private final int maxEntries;
+
+    private final long maxBytes;
+
+    private final long ttlMillis;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long totalBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong revalidations = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong savedBytes = new AtomicLong();
+
+    /**
+     * Executes a request, typically through the http client of a {@link org.apache.sling.testing.clients.SlingClient}
+     */
+    @FunctionalInterface
+    public interface RequestExecutor {
+
+        /**
+         * @param request the request
+         * @return the response
+         * @throws IOException if the request could not be executed
+         */
+        CloseableHttpResponse execute(HttpUriRequest request) throws IOException;
+    }
+
+    /**
+     * @param maxEntries the maximum number of entries
+     * @param maxBytes the maximum total size of the cached contents, in bytes
+     * @param ttlMillis how long the responses without validators are served from the cache, in milliseconds
+     */
+    public ResponseCache(int maxEntries, long maxBytes, long ttlMillis) {
+        if (maxEntries <= 0 || maxBytes <= 0 || ttlMillis < 0) {
+            throw new IllegalArgumentException("maxEntries and maxBytes must be positive, ttlMillis must not be negative");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Executes the request, or serves it from the cache
+     *
+     * @param request the request
+     * @param user the user executing the request, part of the cache key, along with anything identifying the caller
+     *             that is not in the request headers, like the cookies added by the http client
+     * @param executor executes the request against the server
+     * @return the response; for cached contents, a new response holding the content in memory
+     * @throws IOException if the request could not be executed
+     */
+    public CloseableHttpResponse execute(HttpUriRequest request, String user, RequestExecutor executor)
+            throws IOException {
+        String method = request.getMethod();
+        if (!HttpGet.METHOD_NAME.equals(method)) {
+            if (!isSafe(method)) {
+                invalidateAll();
+            }
+            return executor.execute(request);
+        }
+        if (request.containsHeader(HttpHeaders.IF_NONE_MATCH) || request.containsHeader(HttpHeaders.IF_MODIFIED_SINCE)
+                || request.containsHeader(HttpHeaders.RANGE)) {
+            // conditional requests from the caller are not served from the cache
+            return executor.execute(request);
+        }
+
+        String key = getKey(request, user);
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+
+        if (entry != null && !entry.matches(request)) {
+            // stored for another value of a header listed in Vary
+            remove(key, entry);
+            entry = null;
+        }
+
+        if (entry != null) {
+            CachedResponse cached = entry.response;
+            if (!cached.hasValidators()) {
+                if (System.currentTimeMillis() - entry.storedAt < ttlMillis) {
+                    hits.incrementAndGet();
+                    savedBytes.addAndGet(cached.getContentLength());
+                    return cached.toHttpResponse();
+                }
+            } else {
+                CloseableHttpResponse response = revalidate(request, cached, executor);
+                if (response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+                    response.close();
+                    revalidations.incrementAndGet();
+                    savedBytes.addAndGet(cached.getContentLength());
+                    return cached.toHttpResponse();
+                }
+                remove(key, entry);
+                misses.incrementAndGet();
+                return store(key, request, response);
+            }
+            remove(key, entry);
+        }
+
+        misses.incrementAndGet();
+        return store(key, request, executor.execute(request));
+    }
+
+    private static CloseableHttpResponse revalidate(HttpUriRequest request, CachedResponse cached,
+                                                    RequestExecutor executor) throws IOException {
+        Header ifNoneMatch = cached.getETag() != null
+                ? new BasicHeader(HttpHeaders.IF_NONE_MATCH, cached.getETag()) : null;
+        Header ifModifiedSince = cached.getLastModified() != null
+                ? new BasicHeader(HttpHeaders.IF_MODIFIED_SINCE, cached.getLastModified()) : null;
+        if (ifNoneMatch != null) {
+            request.addHeader(ifNoneMatch);
+        }
+        if (ifModifiedSince != null) {
+            request.addHeader(ifModifiedSince);
+        }
+        try {
+            return executor.execute(request);
+        } finally {
+            // leave the request as it was, it might be executed again
+            if (ifNoneMatch != null) {
+                request.removeHeader(ifNoneMatch);
+            }
+            if (ifModifiedSince != null) {
+                request.removeHeader(ifModifiedSince);
+            }
+        }
+    }
+
+    /**
+     * Reads the response and stores it if it can be cached. If the content turns out to be too large, the
+     * response is returned with the bytes already read followed by the rest of the stream.
+     */
+    private CloseableHttpResponse store(String key, HttpUriRequest request, CloseableHttpResponse response)
+            throws IOException {
+        HttpEntity entity = response.getEntity();
+        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK || entity == null || isNoStore(response)
+                || entity.getContentLength() > maxBytes) {
+            return response;
+        }
+        Map<String, String> vary = getVary(request, response);
+        if (vary == null) {
+            return response;
+        }
+
+        try {
+            CachedResponse cached = CachedResponse.of(response, maxBytes);
+            if (cached == null) {
+                return response;
+            }
+            response.close();
+            put(key, new Entry(cached, System.currentTimeMillis(), vary));
+            return cached.toHttpResponse();
+        } catch (IOException | RuntimeException e) {
+            response.close();
+            throw e;
+        }
+    }
+
+    private synchronized void put(String key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            totalBytes -= previous.response.getContentLength();
+        }
+        totalBytes += entry.response.getContentLength();
+
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || totalBytes > maxBytes) && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            it.remove();
+            totalBytes -= eldest.getValue().response.getContentLength();
+            evictions.incrementAndGet();
+            LOG.debug("Evicted {} from the response cache", eldest.getKey());
+        }
+    }
+
+    private synchronized void remove(String key, Entry entry) {
+        if (entries.remove(key, entry)) {
+            totalBytes -= entry.response.getContentLength();
+        }
+    }
+
+    /**
+     * Removes the entries of an URI, for all the users
+     *
+     * @param uri the absolute URI of the request
+     */
+    public synchronized void invalidate(String uri) {
+        String suffix = " " + uri;
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Entry> e = it.next();
+            if (e.getKey().endsWith(suffix)) {
+                it.remove();
+                totalBytes -= e.getValue().response.getContentLength();
+            }
+        }
+    }
+
+    /**
+     * Removes all the entries
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the total size of the cached contents, in bytes
+     */
+    public synchronized long getSizeInBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return the number of requests served from the cache without contacting the server
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of requests served from the cache after the server answered {@code 304 Not Modified}
+     */
+    public long getRevalidationCount() {
+        return revalidations.get();
+    }
+
+    /**
+     * @return the number of requests for which the content was transferred by the server
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of entries evicted because the cache was full
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * @return the number of content bytes served from the cache instead of being transferred
+     */
+    public long getSavedBytes() {
+        return savedBytes.get();
+    }
+
+    /**
+     * @return the maximum number of entries
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @return the maximum total size of the cached contents, in bytes
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return how long the responses without validators are served from the cache, in milliseconds
+     */
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    /**
+     * The URI comes last, see {@link #invalidate(String)}
+     */
+    private static String getKey(HttpUriRequest request, String user) {
+        StringBuilder key = new StringBuilder(user != null ? user : "");
+        for (String name : KEY_HEADERS) {
+            key.append(' ').append(getHeaderValues(request, name));
+        }
+        return key.append(' ').append(request.getURI().toString()).toString();
+    }
+
+    /**
+     * @return the values of the request headers listed in the Vary header of the response,
+     * or {@code null} if the response varies on anything
+     */
+    private static Map<String, String> getVary(HttpUriRequest request, CloseableHttpResponse response) {
+        Map<String, String> vary = new LinkedHashMap<>();
+        for (Header header : response.getHeaders(VARY)) {
+            for (HeaderElement element : header.getElements()) {
+                String name = element.getName().trim();
+                if ("*".equals(name)) {
+                    return null;
+                }
+                if (!name.isEmpty()) {
+                    vary.put(name, getHeaderValues(request, name));
+                }
+            }
+        }
+        return vary;
+    }
+
+    private static String getHeaderValues(HttpUriRequest request, String name) {
+        List<String> values = new ArrayList<>();
+        for (Header header : request.getHeaders(name)) {
+            values.add(header.getValue());
+        }
+        return String.join(", ", values);
+    }
+
+    private static boolean isSafe(String method) {
+        return HttpHead.METHOD_NAME.equals(method) || HttpOptions.METHOD_NAME.equals(method)
+                || HttpTrace.METHOD_NAME.equals(method);
+    }
+
+    private static boolean isNoStore(CloseableHttpResponse response) {
+        for (Header header : response.getHeaders(HttpHeaders.CACHE_CONTROL)) {
+            for (HeaderElement element : header.getElements()) {
+                if ("no-store".equalsIgnoreCase(element.getName())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static final class Entry {
+
+        private final CachedResponse response;
+
+        private final long storedAt;
+
+        /**
+         * The values of the request headers listed in the Vary header of the response
+         */
+        private final Map<String, String> vary;
+
+        private Entry(CachedResponse response, long storedAt, Map<String, String> vary) {
+            this.response = response;
+            this.storedAt = storedAt;
+            this.vary = vary.isEmpty() ? Collections.emptyMap() : vary;
+        }
+
+        private boolean matches(HttpUriRequest request) {
+            for (Map.Entry<String, String> header : vary.entrySet()) {
+                if (!header.getValue().equals(getHeaderValues(request, header.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.clients.exceptions;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+ * Thrown without executing the request when the circuit breaker of the target host is open,
+ * see {@link org.apache.sling.testing.clients.CircuitBreaker}
+ *
+ * @since 1.1.0
+ */
+public class TestingCircuitOpenException extends TestingIOException {
+
+    private final HttpHost host;
+
+    public TestingCircuitOpenException(String message, HttpHost host, HttpUriRequest request) {
+        super(message, null, request, null);
+        this.host = host;
+    }
+
+    /**
+     * @return the host for which the circuit is open
+     */
+    public HttpHost getHost() {
+        return host;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.instance;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.annotation.Contract;
+import org.apache.http.annotation.ThreadingBehavior;
+import org.apache.sling.testing.clients.metrics.LatencyHistogram;
+import org.apache.sling.testing.clients.util.RetryBudget;
+
+/**
+ * <p>Decides when a {@link LoadBalancedSlingClient} hedges a read request: if no response arrived after the given
+ * percentile of the recently observed latencies, a duplicate request is sent to another instance. The first
+ * response wins and the other request is aborted.</p>
+ *
+ * <p>The percentile is computed over the last {@value #WINDOW} latencies or so. There is no hedging until
+ * {@code minSamples} latencies have been observed.</p>
+ *
+ * <p>The extra load is capped by a {@link RetryBudget}: every read request adds its ratio to the budget
+ * and every hedge takes 1 from it, e.g. a ratio of 0.05 allows at most 5% more requests.</p>
+ *
+ * @since 1.2.0
+ */
+@Contract(threading = ThreadingBehavior.SAFE)
+public class HedgingPolicy {
+
+    /**
+     * Number of latencies after which the histogram is cleared, so the percentile follows the recent latencies
+     */
+    static final int WINDOW = 1024;
+
+    /**
+     * The percentile is computed again every {@code REFRESH_INTERVAL} latencies, not for every request
+     */
+    private static final int REFRESH_INTERVAL = 16;
+
+    private final double percentile;
+
+    private final long minDelayNanos;
+
+    private final int minSamples;
+
+    private final RetryBudget budget;
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    private final AtomicLong samples = new AtomicLong();
+
+    private final AtomicLong hedges = new AtomicLong();
+
+    private final AtomicLong hedgesWon = new AtomicLong();
+
+    private volatile long delayNanos = -1;
+
+    /**
+     * @param percentile the percentile of the latency after which a request is hedged, e.g. 95
+     * @param budget the budget capping the extra requests, {@code null} for no limit
+     */
+    public HedgingPolicy(double percentile, RetryBudget budget) {
+        this(percentile, 0, 20, budget);
+    }
+
+    /**
+     * @param percentile the percentile of the latency after which a request is hedged, e.g. 95
+     * @param minDelayMillis the minimum delay before hedging a request, in milliseconds
+     * @param minSamples the number of latencies observed before the first hedge
+     * @param budget the budget capping the extra requests, {@code null} for no limit
+     */
+    public HedgingPolicy(double percentile, long minDelayMillis, int minSamples, RetryBudget budget) {
+        if (percentile <= 0 || percentile > 100 || minDelayMillis < 0 || minSamples <= 0) {
+            throw new IllegalArgumentException("percentile must be in ]0, 100], minDelayMillis must not be negative"
+                    + " and minSamples must be positive");
+        }
+        this.percentile = percentile;
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+        this.minSamples = minSamples;
+        this.budget = budget;
+    }
+
+    /**
+     * Records the latency of a successful read request
+     *
+     * @param latencyNanos the latency in nanoseconds
+     */
+    public void record(long latencyNanos) {
+        histogram.recordNanos(latencyNanos);
+        long count = samples.incrementAndGet();
+        if (count == minSamples || (count > minSamples && count % REFRESH_INTERVAL == 0)) {
+            refresh();
+        }
+    }
+
+    private synchronized void refresh() {
+        // right after a reset, keep the previous delay until enough latencies are observed again
+        if (histogram.getCount() >= minSamples) {
+            delayNanos = Math.max(minDelayNanos, TimeUnit.MICROSECONDS.toNanos(histogram.getValueAtPercentile(percentile)));
+        }
+        if (histogram.getCount() >= WINDOW) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Records a new read request, adding to the budget
+     */
+    public void onRequest() {
+        if (budget != null) {
+            budget.onRequest();
+        }
+    }
+
+    /**
+     * @return the delay after which a request is hedged, in nanoseconds, or -1 if not enough latencies were observed
+     */
+    public long getDelayNanos() {
+        return delayNanos;
+    }
+
+    /**
+     * Takes a hedge from the budget
+     *
+     * @return true if the hedge can be sent
+     */
+    public boolean tryHedge() {
+        if (budget != null && !budget.tryRetry()) {
+            return false;
+        }
+        hedges.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Records a hedge that responded before the original request
+     */
+    public void onHedgeWon() {
+        hedgesWon.incrementAndGet();
+    }
+
+    /**
+     * @return the percentile of the latency after which a request is hedged
+     */
+    public double getPercentile() {
+        return percentile;
+    }
+
+    /**
+     * @return the budget capping the extra requests or {@code null}
+     */
+    public RetryBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return the number of hedges sent
+     */
+    public long getHedgeCount() {
+        return hedges.get();
+    }
+
+    /**
+     * @return the number of hedges that responded before the original request
+     */
+    public long getHedgeWonCount() {
+        return hedgesWon.get();
+    }
+}
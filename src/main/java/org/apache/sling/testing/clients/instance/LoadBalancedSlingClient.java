@@ -0,0 +1,582 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.instance;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.Header;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.sling.testing.clients.ClientException;
+import org.apache.sling.testing.clients.SlingClient;
+import org.apache.sling.testing.clients.SlingClientConfig;
+import org.apache.sling.testing.clients.SlingHttpResponse;
+import org.apache.sling.testing.clients.exceptions.TestingIOException;
+import org.apache.sling.testing.clients.exceptions.TestingSetupException;
+import org.apache.sling.testing.clients.util.RetryBudget;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>{@link SlingClient} spreading the read requests (GET and HEAD) across several instances, e.g. all the
+ * instances of a run mode configured in {@link InstanceSetup}. The other requests are executed by the first
+ * instance, like a regular {@link SlingClient} built for its url.</p>
+ *
+ * <pre>{@code
+ * LoadBalancedSlingClient client = LoadBalancedSlingClient.Builder.create("publish", "admin", "admin")
+ *         .setStrategy(LoadBalancingStrategy.leastOutstanding())
+ *         .build();
+ * client.doGet("/content/page.html", 200);
+ * }</pre>
+ *
+ * <p>The instance is chosen by a {@link LoadBalancingStrategy}, round-robin by default. An instance failing
+ * {@code ejectionThreshold} times in a row, with an {@link java.io.IOException} or a 5XX response, is ejected for
+ * {@code ejectionMillis}: it does not receive any read request until then. If all the instances are ejected,
+ * the requests are spread across all of them anyway.</p>
+ *
+ * <p>All the instances share the http client of this client, so its connection pool, interceptors and
+ * retry strategy, as well as the cookies and the credentials.</p>
+ *
+ * <p>With a {@link HedgingPolicy}, a read request still waiting for its response after a percentile of the recent
+ * latencies is sent again to another instance. The first response wins and the other request is aborted.
+ * The hedged requests are executed by the {@link #getAsyncExecutor() async executor} of the client.</p>
+ *
+ * @since 1.2.0
+ */
+public class LoadBalancedSlingClient extends SlingClient {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoadBalancedSlingClient.class);
+
+    private final List<Member> members;
+
+    private final LoadBalancingStrategy strategy;
+
+    private final int ejectionThreshold;
+
+    private final long ejectionNanos;
+
+    private final HedgingPolicy hedging;
+
+    /**
+     * Constructor used by the {@link Builder}, the http client and the config are built from it
+     *
+     * @param builder the builder
+     * @param http the http client shared by all the instances
+     * @param config the config of the first instance
+     * @throws ClientException if the client could not be created
+     */
+    protected LoadBalancedSlingClient(Builder builder, CloseableHttpClient http, SlingClientConfig config)
+            throws ClientException {
+        super(http, config);
+        this.strategy = builder.strategy;
+        this.ejectionThreshold = builder.ejectionThreshold;
+        this.ejectionNanos = TimeUnit.MILLISECONDS.toNanos(builder.ejectionMillis);
+        this.hedging = builder.hedging;
+
+        List<Member> list = new ArrayList<>();
+        list.add(new Member(new MemberClient(http, config)));
+        for (URI url : builder.urls.subList(1, builder.urls.size())) {
+            SlingClientConfig memberConfig = SlingClientConfig.Builder.create()
+                    .setUrl(url)
+                    .setUser(config.getUser())
+                    .setPassword(config.getPassword())
+                    .setCookieStore(config.getCookieStore())
+                    .setAsyncExecutor(config.getAsyncExecutor())
+                    .setConnectionManager(config.getConnectionManager())
+                    .setContentCapturePolicy(config.getContentCapturePolicy())
+                    .setResponseCache(config.getResponseCache())
+                    .setRateLimiter(config.getRateLimiter())
+                    .setCircuitBreaker(config.getCircuitBreaker())
+                    .setRequestCoalescer(config.getRequestCoalescer())
+                    .setKnownPaths(config.getKnownPaths())
+                    .build();
+            list.add(new Member(new MemberClient(http, memberConfig)));
+        }
+        this.members = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * @return the instances of the client, the first one also executes the requests other than GET and HEAD
+     */
+    public List<Member> getMembers() {
+        return members;
+    }
+
+    /**
+     * @return the strategy choosing the instance of each read request
+     */
+    public LoadBalancingStrategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * @return the policy hedging the read requests or {@code null} if they are not hedged
+     */
+    public HedgingPolicy getHedgingPolicy() {
+        return hedging;
+    }
+
+    @Override
+    protected SlingHttpResponse doStreamRequest(HttpUriRequest request, List<Header> headers, HttpClientContext context,
+                                                int... expectedStatus) throws ClientException {
+        HttpUriRequest routed = null;
+        Member member = null;
+        if (isRead(request)) {
+            member = selectMember();
+            routed = route(request, member.getClient().getUrl());
+        }
+        if (routed == null) {
+            return super.doStreamRequest(request, headers, context, expectedStatus);
+        }
+        if (hedging != null && members.size() > 1) {
+            return executeHedged(member, request, routed, headers, context, expectedStatus);
+        }
+        return executeOn(member, routed, headers, context, expectedStatus);
+    }
+
+    /**
+     * Executes the request on the given instance and, if it did not respond after the hedging delay,
+     * on another one as well. Returns the first successful response and aborts the other request.
+     */
+    private SlingHttpResponse executeHedged(Member primary, HttpUriRequest original, HttpUriRequest routed,
+                                            List<Header> headers, HttpClientContext context, int... expectedStatus)
+            throws ClientException {
+        hedging.onRequest();
+        long delay = hedging.getDelayNanos();
+        if (delay < 0) {
+            return executeOn(primary, routed, headers, context, expectedStatus);
+        }
+
+        CompletableFuture<SlingHttpResponse> first = submit(primary, routed, headers, context, expectedStatus);
+        HttpUriRequest hedge = null;
+        try {
+            try {
+                return first.get(delay, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                // no response yet, hedge below
+            }
+
+            Member other = selectMember(primary);
+            if (other == null || !hedging.tryHedge()) {
+                return first.get();
+            }
+            hedge = route(original, other.getClient().getUrl());
+            LOG.debug("Hedging {} on {}", original.getURI(), other.getClient().getUrl());
+            // a context of its own, as both requests may run at the same time
+            CompletableFuture<SlingHttpResponse> second = submit(other, hedge, headers, null, expectedStatus);
+
+            CompletableFuture<SlingHttpResponse> winner = new CompletableFuture<>();
+            AtomicInteger pending = new AtomicInteger(2);
+            first.whenComplete((response, t) -> complete(winner, pending, response, t));
+            second.whenComplete((response, t) -> complete(winner, pending, response, t));
+
+            SlingHttpResponse response = winner.get();
+            if (second.isDone() && !second.isCompletedExceptionally() && second.join() == response) {
+                hedging.onHedgeWon();
+                abort(routed);
+            } else {
+                abort(hedge);
+            }
+            return response;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort(routed);
+            abort(hedge);
+            throw new TestingIOException("Interrupted while waiting for the response", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ClientException) {
+                throw (ClientException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new TestingIOException("Could not execute http request", e.getCause());
+        }
+    }
+
+    /**
+     * Completes the winner with the first successful response and closes the responses arriving too late.
+     * If all the requests failed, the winner completes with the last failure.
+     */
+    private static void complete(CompletableFuture<SlingHttpResponse> winner, AtomicInteger pending,
+                                 SlingHttpResponse response, Throwable t) {
+        if (t == null) {
+            if (!winner.complete(response)) {
+                try {
+                    response.close();
+                } catch (IOException e) {
+                    LOG.debug("Could not close the losing response", e);
+                }
+            }
+        } else if (pending.decrementAndGet() == 0) {
+            winner.completeExceptionally(t);
+        }
+    }
+
+    private CompletableFuture<SlingHttpResponse> submit(Member member, HttpUriRequest request, List<Header> headers,
+                                                        HttpClientContext context, int... expectedStatus) {
+        CompletableFuture<SlingHttpResponse> future = new CompletableFuture<>();
+        try {
+            getAsyncExecutor().execute(() -> {
+                try {
+                    future.complete(executeOn(member, request, headers, context, expectedStatus));
+                } catch (ClientException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            // e.g. the executor rejected the task
+            future.completeExceptionally(new TestingIOException("Could not schedule http request", e));
+        }
+        return future;
+    }
+
+    private static void abort(HttpUriRequest request) {
+        if (request instanceof HttpRequestBase) {
+            ((HttpRequestBase) request).abort();
+        }
+    }
+
+    private static boolean isAborted(HttpUriRequest request) {
+        return request instanceof HttpRequestBase && ((HttpRequestBase) request).isAborted();
+    }
+
+    /**
+     * Executes the request with the client of the given instance, recording its latency and outcome.
+     * Nothing is recorded for a request aborted because its hedge won.
+     *
+     * @param member the instance
+     * @param request the request, already targeting the instance
+     * @param headers optional headers to be added to the request
+     * @param context the context of the request, with its attributes, or {@code null} to create a new one
+     * @param expectedStatus if passed, the response status will have to match one of them
+     * @return the response, with the entity not consumed
+     * @throws ClientException if the request could not be executed
+     */
+    protected SlingHttpResponse executeOn(Member member, HttpUriRequest request, List<Header> headers,
+                                          HttpClientContext context, int... expectedStatus) throws ClientException {
+        member.outstanding.incrementAndGet();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            SlingHttpResponse response = member.client.execute(request, headers, context, expectedStatus);
+            failed = response.getStatusLine().getStatusCode() >= 500;
+            return response;
+        } catch (TestingIOException e) {
+            throw e;
+        } catch (ClientException e) {
+            failed = e.getHttpStatusCode() >= 500;
+            throw e;
+        } finally {
+            member.outstanding.decrementAndGet();
+            if (!isAborted(request)) {
+                onResult(member, System.nanoTime() - start, failed);
+            }
+        }
+    }
+
+    /**
+     * @return the instance chosen by the strategy among the instances not ejected
+     */
+    protected Member selectMember() {
+        List<Member> candidates = getCandidates(null);
+        return strategy.select(candidates.isEmpty() ? members : candidates);
+    }
+
+    /**
+     * @param excluded the instance already executing the request
+     * @return the instance chosen by the strategy among the other instances not ejected, or {@code null} if none
+     */
+    protected Member selectMember(Member excluded) {
+        List<Member> candidates = getCandidates(excluded);
+        return candidates.isEmpty() ? null : strategy.select(candidates);
+    }
+
+    private List<Member> getCandidates(Member excluded) {
+        long now = System.nanoTime();
+        List<Member> candidates = new ArrayList<>(members.size());
+        for (Member member : members) {
+            if (member != excluded && !member.isEjected(now)) {
+                candidates.add(member);
+            }
+        }
+        return candidates;
+    }
+
+    private void onResult(Member member, long latencyNanos, boolean failed) {
+        member.requests.incrementAndGet();
+        member.recordLatency(latencyNanos);
+        if (!failed) {
+            member.consecutiveFailures.set(0);
+            if (hedging != null) {
+                hedging.record(latencyNanos);
+            }
+            return;
+        }
+        member.failures.incrementAndGet();
+        if (member.consecutiveFailures.incrementAndGet() >= ejectionThreshold) {
+            member.consecutiveFailures.set(0);
+            member.ejectedUntil.set(System.nanoTime() + ejectionNanos);
+            LOG.warn("Ejecting {} for {} ms after {} consecutive failures", member.getClient().getUrl(),
+                    TimeUnit.NANOSECONDS.toMillis(ejectionNanos), ejectionThreshold);
+        }
+    }
+
+    private static boolean isRead(HttpUriRequest request) {
+        return HttpGet.METHOD_NAME.equals(request.getMethod()) || HttpHead.METHOD_NAME.equals(request.getMethod());
+    }
+
+    /**
+     * Copies the request for the instance with the given url
+     *
+     * @return the copy or {@code null} if the request does not target this client
+     */
+    private HttpUriRequest route(HttpUriRequest request, URI memberUrl) {
+        String base = getUrl().toString();
+        String uri = request.getURI().toString();
+        if (!uri.startsWith(base)) {
+            return null;
+        }
+        URI target = URI.create(memberUrl.toString() + uri.substring(base.length()));
+        HttpRequestBase copy = HttpHead.METHOD_NAME.equals(request.getMethod()) ? new HttpHead(target) : new HttpGet(target);
+        copy.setHeaders(request.getAllHeaders());
+        if (request instanceof HttpRequestBase) {
+            copy.setConfig(((HttpRequestBase) request).getConfig());
+        }
+        return copy;
+    }
+
+    /**
+     * An instance of a {@link LoadBalancedSlingClient}, with its statistics
+     */
+    public static final class Member {
+
+        /**
+         * Weight of the last latency in the moving average
+         */
+        private static final double EWMA_ALPHA = 0.3;
+
+        private final MemberClient client;
+
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+        private final AtomicLong requests = new AtomicLong();
+
+        private final AtomicLong failures = new AtomicLong();
+
+        private final AtomicLong ejectedUntil = new AtomicLong(Long.MIN_VALUE);
+
+        private volatile double latencyEwmaNanos;
+
+        private Member(MemberClient client) {
+            this.client = client;
+        }
+
+        private synchronized void recordLatency(long latencyNanos) {
+            latencyEwmaNanos = latencyEwmaNanos == 0
+                    ? latencyNanos
+                    : EWMA_ALPHA * latencyNanos + (1 - EWMA_ALPHA) * latencyEwmaNanos;
+        }
+
+        private boolean isEjected(long now) {
+            long until = ejectedUntil.get();
+            return until != Long.MIN_VALUE && now - until < 0;
+        }
+
+        /**
+         * @return the client targeting this instance
+         */
+        public SlingClient getClient() {
+            return client;
+        }
+
+        /**
+         * @return the number of requests in progress
+         */
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        /**
+         * @return the moving average of the latency until the response headers, in nanoseconds, 0 if unknown
+         */
+        public double getLatencyEwmaNanos() {
+            return latencyEwmaNanos;
+        }
+
+        /**
+         * @return the number of read requests executed by the instance
+         */
+        public long getRequestCount() {
+            return requests.get();
+        }
+
+        /**
+         * @return the number of failed read requests
+         */
+        public long getFailureCount() {
+            return failures.get();
+        }
+
+        /**
+         * @return true if the instance is currently ejected
+         */
+        public boolean isEjected() {
+            return isEjected(System.nanoTime());
+        }
+    }
+
+    /**
+     * The client of an instance, executing the requests with the context of the load-balanced client
+     */
+    private static final class MemberClient extends SlingClient {
+
+        private final SlingClientConfig config;
+
+        private MemberClient(CloseableHttpClient http, SlingClientConfig config) throws ClientException {
+            super(http, config);
+            this.config = config;
+        }
+
+        /**
+         * Executes the request with the given context, so its attributes like the reserved token of the rate
+         * limiter are kept, but with the credentials of this instance
+         */
+        private SlingHttpResponse execute(HttpUriRequest request, List<Header> headers, HttpClientContext context,
+                                          int... expectedStatus) throws ClientException {
+            if (context == null) {
+                return doStreamRequest(request, headers, expectedStatus);
+            }
+            context.setCredentialsProvider(config.getCredsProvider());
+            context.setAuthCache(config.getAuthCache());
+            if (config.getCookieStore() != null) {
+                context.setCookieStore(config.getCookieStore());
+            }
+            return doStreamRequest(request, headers, context, expectedStatus);
+        }
+    }
+
+    public static final class Builder extends InternalBuilder<LoadBalancedSlingClient> {
+
+        private final List<URI> urls;
+
+        private LoadBalancingStrategy strategy = LoadBalancingStrategy.roundRobin();
+
+        private int ejectionThreshold = 3;
+
+        private long ejectionMillis = 30000;
+
+        private HedgingPolicy hedging;
+
+        private Builder(List<URI> urls, String user, String password) {
+            super(urls.get(0), user, password);
+            this.urls = urls;
+        }
+
+        /**
+         * @param instances the instances, at least one
+         * @param user username for basic authentication
+         * @param password password for basic authentication
+         * @return a new builder
+         * @throws TestingSetupException if there is no instance
+         */
+        public static Builder create(List<InstanceConfiguration> instances, String user, String password)
+                throws TestingSetupException {
+            if (instances == null || instances.isEmpty()) {
+                throw new TestingSetupException("At least one instance is required");
+            }
+            List<URI> urls = new ArrayList<>(instances.size());
+            for (InstanceConfiguration instance : instances) {
+                urls.add(instance.getUrl());
+            }
+            return new Builder(urls, user, password);
+        }
+
+        /**
+         * @param runmode the run mode of the instances in {@link InstanceSetup}, {@code null} for all the instances
+         * @param user username for basic authentication
+         * @param password password for basic authentication
+         * @return a new builder
+         * @throws TestingSetupException if there is no instance with this run mode
+         */
+        public static Builder create(String runmode, String user, String password) throws TestingSetupException {
+            return create(InstanceSetup.get().getConfigurations(runmode), user, password);
+        }
+
+        /**
+         * @param strategy the strategy choosing the instance of each read request
+         * @return this
+         */
+        public Builder setStrategy(LoadBalancingStrategy strategy) {
+            this.strategy = strategy;
+            return this;
+        }
+
+        /**
+         * @param ejectionThreshold the number of consecutive failures after which an instance is ejected
+         * @param ejectionMillis how long an instance stays ejected, in milliseconds
+         * @return this
+         */
+        public Builder setEjection(int ejectionThreshold, long ejectionMillis) {
+            this.ejectionThreshold = ejectionThreshold;
+            this.ejectionMillis = ejectionMillis;
+            return this;
+        }
+
+        /**
+         * @param hedging the policy hedging the read requests, {@code null} to disable hedging
+         * @return this
+         */
+        public Builder setHedging(HedgingPolicy hedging) {
+            this.hedging = hedging;
+            return this;
+        }
+
+        /**
+         * Enables hedging after the given percentile of the latency, with the extra requests capped to
+         * {@code maxExtraLoad} of the read requests
+         *
+         * @param percentile the percentile of the latency after which a request is hedged, e.g. 95
+         * @param maxExtraLoad the maximum ratio of hedges to read requests, e.g. 0.05 for 5%
+         * @return this
+         */
+        public Builder setHedging(double percentile, double maxExtraLoad) {
+            return setHedging(new HedgingPolicy(percentile, new RetryBudget(maxExtraLoad, 10)));
+        }
+
+        @Override
+        public LoadBalancedSlingClient build() throws ClientException {
+            return buildClient((http, config) -> new LoadBalancedSlingClient(this, http, config));
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.instance;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Helpers of the {@link LoadBalancingStrategy} implementations
+ */
+final class LoadBalancingStrategies {
+
+    private LoadBalancingStrategies() {
+    }
+
+    /**
+     * Returns the candidate with the lowest score, starting at a random position so the ties are spread
+     */
+    static LoadBalancedSlingClient.Member selectMin(List<LoadBalancedSlingClient.Member> candidates,
+                                                   ToDoubleFunction<LoadBalancedSlingClient.Member> score) {
+        int size = candidates.size();
+        int start = ThreadLocalRandom.current().nextInt(size);
+        LoadBalancedSlingClient.Member best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            LoadBalancedSlingClient.Member member = candidates.get((start + i) % size);
+            double s = score.applyAsDouble(member);
+            if (best == null || s < bestScore) {
+                best = member;
+                bestScore = s;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.instance;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chooses the instance executing a request of a {@link LoadBalancedSlingClient}
+ *
+ * @since 1.2.0
+ */
+@FunctionalInterface
+public interface LoadBalancingStrategy {
+
+    /**
+     * @param candidates the instances that can execute the request, never empty
+     * @return the chosen instance
+     */
+    LoadBalancedSlingClient.Member select(List<LoadBalancedSlingClient.Member> candidates);
+
+    /**
+     * @return a strategy choosing the instances in turn
+     */
+    static LoadBalancingStrategy roundRobin() {
+        final AtomicInteger next = new AtomicInteger();
+        return candidates -> candidates.get(Math.floorMod(next.getAndIncrement(), candidates.size()));
+    }
+
+    /**
+     * @return a strategy choosing the instance with the fewest requests in progress
+     */
+    static LoadBalancingStrategy leastOutstanding() {
+        return candidates -> LoadBalancingStrategies.selectMin(candidates, member -> member.getOutstanding());
+    }
+
+    /**
+     * <p>Chooses the instance with the lowest exponentially weighted moving average of the latency,
+     * multiplied by its number of requests in progress plus one, so a fast instance is not overloaded.</p>
+     *
+     * <p>The instances without any latency observed yet are chosen first.</p>
+     *
+     * @return the strategy
+     */
+    static LoadBalancingStrategy ewmaLatency() {
+        return candidates -> LoadBalancingStrategies.selectMin(candidates,
+                member -> member.getLatencyEwmaNanos() * (member.getOutstanding() + 1));
+    }
+}
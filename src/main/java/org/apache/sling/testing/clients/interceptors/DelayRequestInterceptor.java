@@ -24,6 +24,10 @@ import org.apache.http.protocol.HttpContext;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 
+/**
+ * Waits a fixed delay before every request. It slows down each thread, but does not limit the total rate
+ * of the requests; see {@link RateLimitInterceptor} for that.
+ */
 public class DelayRequestInterceptor implements HttpRequestInterceptor {
 
     private final long milliseconds;
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.interceptors;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.annotation.Contract;
+import org.apache.http.annotation.ThreadingBehavior;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * <p>Limits the rate of the requests with token buckets: one for all the requests and/or one per target host.
+ * Unlike {@link DelayRequestInterceptor}, the limit applies to all the threads sharing the interceptor, and
+ * a single thread is not slowed down as long as it stays under the limit.</p>
+ *
+ * <p>The threads are served in the order they reach the interceptor. Every execution is limited, including
+ * the retries of the {@link org.apache.sling.testing.clients.util.ServerErrorRetryStrategy}.</p>
+ *
+ * <p>The asynchronous requests of the client reserve their token with {@link #reserve(HttpHost)} and are
+ * scheduled once it is available, instead of blocking a thread.
+ * Such requests are marked with {@link #markReserved(HttpContext)} so they are not limited twice.</p>
+ *
+ * @since 1.4.0
+ */
+@Contract(threading = ThreadingBehavior.SAFE)
+public class RateLimitInterceptor implements HttpRequestInterceptor {
+
+    private static final String RESERVED_ATTRIBUTE = RateLimitInterceptor.class.getName() + ".reserved";
+
+    private static final String RELEASED_ATTRIBUTE = RateLimitInterceptor.class.getName() + ".released";
+
+    private final TokenBucket global;
+
+    private final double perHostPermitsPerSecond;
+
+    private final int perHostBurst;
+
+    private final ConcurrentMap<HttpHost, TokenBucket> perHost = new ConcurrentHashMap<>();
+
+    /**
+     * @param permitsPerSecond the maximum rate of all the requests, 0 for no global limit
+     * @param burst the number of requests allowed at once after a pause, for the global limit
+     * @param perHostPermitsPerSecond the maximum rate of the requests to the same host, 0 for no limit per host
+     * @param perHostBurst the number of requests allowed at once after a pause, for the limit per host
+     */
+    public RateLimitInterceptor(double permitsPerSecond, int burst, double perHostPermitsPerSecond, int perHostBurst) {
+        this.global = permitsPerSecond > 0 ? new TokenBucket(permitsPerSecond, Math.max(1, burst)) : null;
+        this.perHostPermitsPerSecond = perHostPermitsPerSecond;
+        this.perHostBurst = Math.max(1, perHostBurst);
+    }
+
+    /**
+     * Reserves a token for a request to the given host
+     *
+     * @param host the target host or {@code null} if unknown, in which case only the global limit applies
+     * @return the time to wait before executing the request, in nanoseconds
+     */
+    public long reserve(HttpHost host) {
+        long wait = global != null ? global.reserve() : 0;
+        if (host != null && perHostPermitsPerSecond > 0) {
+            TokenBucket bucket = perHost.computeIfAbsent(host,
+                    h -> new TokenBucket(perHostPermitsPerSecond, perHostBurst));
+            wait = Math.max(wait, bucket.reserve());
+        }
+        return wait;
+    }
+
+    /**
+     * Marks the next execution in the context as already limited, after the caller reserved a token with
+     * {@link #reserve(HttpHost)} and waited for it
+     *
+     * @param context the context of the request
+     */
+    public static void markReserved(HttpContext context) {
+        context.setAttribute(RESERVED_ATTRIBUTE, Boolean.TRUE);
+    }
+
+    /**
+     * Returns when the last execution in the context stopped waiting for its token. The interceptors running
+     * before this one, and so measuring the wait, can use it to exclude the wait from their timings.
+     *
+     * @param context the context of the request
+     * @return the {@link System#nanoTime()} when the wait ended or {@code null} if the execution did not wait
+     * @since 1.4.0
+     */
+    public static Long getReleaseTime(HttpContext context) {
+        Object released = context.getAttribute(RELEASED_ATTRIBUTE);
+        return released instanceof Long ? (Long) released : null;
+    }
+
+    @Override
+    public void process(HttpRequest request, HttpContext context) throws HttpException, IOException {
+        if (context.removeAttribute(RESERVED_ATTRIBUTE) != null) {
+            return;
+        }
+
+        long wait = reserve(HttpClientContext.adapt(context).getTargetHost());
+        if (wait <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        context.setAttribute(RELEASED_ATTRIBUTE, System.nanoTime());
+    }
+
+    /**
+     * @return the maximum rate of all the requests, 0 if unlimited
+     */
+    public double getPermitsPerSecond() {
+        return global != null ? global.getPermitsPerSecond() : 0;
+    }
+
+    /**
+     * @return the maximum rate of the requests to the same host, 0 if unlimited
+     */
+    public double getPerHostPermitsPerSecond() {
+        return perHostPermitsPerSecond;
+    }
+}
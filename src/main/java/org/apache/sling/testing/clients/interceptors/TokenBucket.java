@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.interceptors;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.annotation.Contract;
+import org.apache.http.annotation.ThreadingBehavior;
+
+/**
+ * <p>Token bucket refilled at a fixed rate, holding at most {@code burst} tokens.</p>
+ *
+ * <p>Tokens are reserved rather than waited for: {@link #reserve()} immediately books the next free token and
+ * returns how long the caller has to wait before using it. The callers are thus served in the order of
+ * their reservations, and the waiting itself happens outside of any lock, either by sleeping
+ * ({@link #acquire()}) or by scheduling the work later.</p>
+ *
+ * @since 1.4.0
+ */
+@Contract(threading = ThreadingBehavior.SAFE)
+public class TokenBucket {
+
+    private final double permitsPerSecond;
+
+    private final int burst;
+
+    private final long intervalNanos;
+
+    private double storedPermits;
+
+    private long nextFreeNanos;
+
+    /**
+     * @param permitsPerSecond the refill rate
+     * @param burst the maximum number of tokens stored, i.e. the number of requests allowed at once after a pause
+     */
+    public TokenBucket(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond and burst must be positive");
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        this.storedPermits = burst;
+        this.nextFreeNanos = System.nanoTime();
+    }
+
+    /**
+     * Reserves one token
+     *
+     * @return the time to wait before using the token, in nanoseconds, 0 if it can be used immediately
+     */
+    public synchronized long reserve() {
+        long now = System.nanoTime();
+        if (now > nextFreeNanos) {
+            storedPermits = Math.min(burst, storedPermits + (double) (now - nextFreeNanos) / intervalNanos);
+            nextFreeNanos = now;
+        }
+        if (storedPermits >= 1) {
+            storedPermits -= 1;
+            return nextFreeNanos - now;
+        }
+        // book the token after the ones already reserved
+        nextFreeNanos += (long) ((1 - storedPermits) * intervalNanos);
+        storedPermits = 0;
+        return nextFreeNanos - now;
+    }
+
+    /**
+     * Reserves one token and waits until it can be used
+     *
+     * @return the time waited, in nanoseconds
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public long acquire() throws InterruptedException {
+        long wait = reserve();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+        return wait;
+    }
+
+    /**
+     * @return the refill rate, in tokens per second
+     */
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    /**
+     * @return the maximum number of tokens stored
+     */
+    public int getBurst() {
+        return burst;
+    }
+}
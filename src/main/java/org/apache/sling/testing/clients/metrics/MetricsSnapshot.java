@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.metrics;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * <p>Immutable snapshot of {@link RequestMetrics}, that can be exported as JSON or CSV
+ * to compare the latencies between builds.</p>
+ *
+ * <p>All the durations are in microseconds.</p>
+ *
+ * @since 1.0.0
+ */
+public class MetricsSnapshot {
+
+    private static final String[] CSV_HEADER = {
+            "method", "path", "count",
+            "latency_p50", "latency_p95", "latency_p99", "latency_max", "latency_mean",
+            "ttfb_p50", "ttfb_p95", "ttfb_p99", "ttfb_max", "ttfb_mean",
+            "transfer_p50", "transfer_p95", "transfer_p99", "transfer_max", "transfer_mean"
+    };
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final List<Entry> entries;
+
+    MetricsSnapshot(List<Entry> entries) {
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * @return the entries, sorted by path template and method
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Returns the entry of a method and path template
+     *
+     * @param method the http method
+     * @param path the path template
+     * @return the entry or {@code null} if nothing was recorded for them
+     */
+    public Entry getEntry(String method, String path) {
+        for (Entry entry : entries) {
+            if (entry.method.equals(method) && entry.path.equals(path)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes the snapshot as a JSON array, with one object per entry
+     *
+     * @param writer the writer, left open
+     * @throws IOException if writing fails
+     */
+    public void writeJson(Writer writer) throws IOException {
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(writer)) {
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            json.useDefaultPrettyPrinter();
+            json.writeStartArray();
+            for (Entry entry : entries) {
+                json.writeStartObject();
+                json.writeStringField("method", entry.method);
+                json.writeStringField("path", entry.path);
+                json.writeNumberField("count", entry.count);
+                writeStats(json, "latency", entry.latency);
+                writeStats(json, "ttfb", entry.timeToFirstByte);
+                writeStats(json, "transfer", entry.transfer);
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+        }
+    }
+
+    /**
+     * Writes the snapshot as CSV, with a header line and one line per entry
+     *
+     * @param writer the writer, left open
+     * @throws IOException if writing fails
+     */
+    public void writeCsv(Writer writer) throws IOException {
+        writer.write(String.join(",", CSV_HEADER));
+        writer.write('\n');
+        for (Entry entry : entries) {
+            writer.write(entry.method);
+            writer.write(',');
+            writer.write(escapeCsv(entry.path));
+            writer.write(',');
+            writer.write(Long.toString(entry.count));
+            for (Stats stats : new Stats[]{entry.latency, entry.timeToFirstByte, entry.transfer}) {
+                writer.write(',' + Long.toString(stats.p50));
+                writer.write(',' + Long.toString(stats.p95));
+                writer.write(',' + Long.toString(stats.p99));
+                writer.write(',' + Long.toString(stats.max));
+                writer.write(',' + Long.toString(Math.round(stats.mean)));
+            }
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    /**
+     * @return the snapshot as JSON
+     */
+    public String toJson() {
+        StringWriter writer = new StringWriter();
+        try {
+            writeJson(writer);
+        } catch (IOException e) {
+            // cannot happen with a StringWriter
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * @return the snapshot as CSV
+     */
+    public String toCsv() {
+        StringWriter writer = new StringWriter();
+        try {
+            writeCsv(writer);
+        } catch (IOException e) {
+            // cannot happen with a StringWriter
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+
+    private static void writeStats(JsonGenerator json, String name, Stats stats) throws IOException {
+        json.writeObjectFieldStart(name);
+        json.writeNumberField("p50", stats.p50);
+        json.writeNumberField("p95", stats.p95);
+        json.writeNumberField("p99", stats.p99);
+        json.writeNumberField("max", stats.max);
+        json.writeNumberField("mean", Math.round(stats.mean));
+        json.writeEndObject();
+    }
+
+    private static String escapeCsv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Timings of a method and path template
+     */
+    public static final class Entry {
+
+        private final String method;
+
+        private final String path;
+
+        private final long count;
+
+        private final Stats latency;
+
+        private final Stats timeToFirstByte;
+
+        private final Stats transfer;
+
+        Entry(RequestMetrics.Timings timings) {
+            this.method = timings.getMethod();
+            this.path = timings.getPath();
+            this.count = timings.getLatency().getCount();
+            this.latency = new Stats(timings.getLatency());
+            this.timeToFirstByte = new Stats(timings.getTimeToFirstByte());
+            this.transfer = new Stats(timings.getTransfer());
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public Stats getLatency() {
+            return latency;
+        }
+
+        public Stats getTimeToFirstByte() {
+            return timeToFirstByte;
+        }
+
+        public Stats getTransfer() {
+            return transfer;
+        }
+    }
+
+    /**
+     * Percentiles of a histogram, in microseconds
+     */
+    public static final class Stats {
+
+        private final long p50;
+
+        private final long p95;
+
+        private final long p99;
+
+        private final long max;
+
+        private final double mean;
+
+        Stats(LatencyHistogram histogram) {
+            this.p50 = histogram.getValueAtPercentile(50);
+            this.p95 = histogram.getValueAtPercentile(95);
+            this.p99 = histogram.getValueAtPercentile(99);
+            this.max = histogram.getMax();
+            this.mean = histogram.getMean();
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP95() {
+            return p95;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.metrics;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.http.annotation.Contract;
+import org.apache.http.annotation.ThreadingBehavior;
+
+/**
+ * <p>Reduces request paths to path templates, so the metrics of similar requests are aggregated together.</p>
+ *
+ * <p>The templates registered with {@link #addTemplate(String)} are tried first, in the order they were added.
+ * A template is a path where the variable segments, or parts of segments, are written as {@code {name}},
+ * e.g. {@code /system/console/bundles/{bsn}.json}. A variable never matches a {@code /}.</p>
+ *
+ * <p>If no template matches, the query string is dropped and the segments looking like generated ids
+ * (numbers, UUIDs and long hex strings) are replaced by {@code {id}}.</p>
+ *
+ * <p>The normalized paths are cached without their query string, so the paths only differing by their query
+ * share an entry. Once the cache holds {@link #MAX_CACHED_PATHS} paths, the other paths are normalized on each
+ * request without being cached.</p>
+ *
+ * @since 1.0.0
+ */
+@Contract(threading = ThreadingBehavior.SAFE)
+public class PathTemplateNormalizer {
+
+    /**
+     * Maximum number of normalized paths kept in the cache
+     */
+    public static final int MAX_CACHED_PATHS = 10000;
+
+    private static final Pattern VARIABLE = Pattern.compile("\\{[^}/]*}");
+
+    private static final Pattern ID_SEGMENT = Pattern.compile(
+            "\\d+|[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}|[0-9a-fA-F]{16,}");
+
+    private final List<Template> templates = new CopyOnWriteArrayList<>();
+
+    private final Map<PathKey, String> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a path template
+     *
+     * @param template the template, e.g. {@code /system/console/bundles/{bsn}.json}
+     * @return this
+     */
+    public PathTemplateNormalizer addTemplate(String template) {
+        StringBuilder regex = new StringBuilder();
+        Matcher m = VARIABLE.matcher(template);
+        int last = 0;
+        while (m.find()) {
+            regex.append(Pattern.quote(template.substring(last, m.start()))).append("[^/]+");
+            last = m.end();
+        }
+        regex.append(Pattern.quote(template.substring(last)));
+
+        templates.add(new Template(template, Pattern.compile(regex.toString())));
+        cache.clear();
+        return this;
+    }
+
+    /**
+     * Returns the template of a request path
+     *
+     * @param path the request path, with or without query string
+     * @return the path template
+     */
+    public String normalize(String path) {
+        if (path == null || path.isEmpty()) {
+            return "/";
+        }
+        int queryStart = path.indexOf('?');
+        PathKey key = new PathKey(path, queryStart >= 0 ? queryStart : path.length());
+        String template = cache.get(key);
+        if (template == null) {
+            String p = key.toString();
+            template = computeTemplate(p);
+            if (cache.size() < MAX_CACHED_PATHS) {
+                cache.put(new PathKey(p, p.length()), template);
+            }
+        }
+        return template;
+    }
+
+    /**
+     * @return the number of paths in the cache
+     */
+    int getCachedCount() {
+        return cache.size();
+    }
+
+    private String computeTemplate(String p) {
+        for (Template template : templates) {
+            if (template.pattern.matcher(p).matches()) {
+                return template.template;
+            }
+        }
+
+        StringBuilder result = new StringBuilder(p.length());
+        int start = 0;
+        while (start <= p.length()) {
+            int end = p.indexOf('/', start);
+            if (end < 0) {
+                end = p.length();
+            }
+            String segment = p.substring(start, end);
+            int dot = segment.indexOf('.');
+            String name = dot >= 0 ? segment.substring(0, dot) : segment;
+            if (!name.isEmpty() && ID_SEGMENT.matcher(name).matches()) {
+                result.append("{id}").append(dot >= 0 ? segment.substring(dot) : "");
+            } else {
+                result.append(segment);
+            }
+            if (end < p.length()) {
+                result.append('/');
+            }
+            start = end + 1;
+        }
+        return result.toString();
+    }
+
+    /**
+     * A prefix of a request path, used as cache key so the query string doesn't need to be cut off before the lookup
+     */
+    private static final class PathKey {
+
+        private final String path;
+
+        private final int length;
+
+        private final int hash;
+
+        private PathKey(String path, int length) {
+            this.path = path;
+            this.length = length;
+            int h = 0;
+            for (int i = 0; i < length; i++) {
+                h = 31 * h + path.charAt(i);
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PathKey)) {
+                return false;
+            }
+            PathKey other = (PathKey) o;
+            return length == other.length && hash == other.hash && path.regionMatches(0, other.path, 0, length);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return length == path.length() ? path : path.substring(0, length);
+        }
+    }
+
+    private static final class Template {
+
+        private final String template;
+
+        private final Pattern pattern;
+
+        private Template(String template, Pattern pattern) {
+            this.template = template;
+            this.pattern = pattern;
+        }
+    }
+}
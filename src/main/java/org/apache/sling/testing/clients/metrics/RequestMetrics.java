@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.http.annotation.Contract;
+import org.apache.http.annotation.ThreadingBehavior;
+
+/**
+ * <p>Latency histograms of the requests, aggregated by method and path template.</p>
+ *
+ * <p>For each method and path template, three durations are recorded:</p>
+ * <ul>
+ *     <li>latency: from sending the request until the response body was fully read (or the response closed)</li>
+ *     <li>time to first byte: from sending the request until the response headers were received</li>
+ *     <li>transfer: from receiving the response headers until the response body was fully read</li>
+ * </ul>
+ *
+ * @since 1.0.0
+ */
+@Contract(threading = ThreadingBehavior.SAFE)
+public class RequestMetrics {
+
+    /**
+     * The timings by method, then by path template, so no key is built for each request
+     */
+    private final Map<String, Map<String, Timings>> timings = new ConcurrentHashMap<>();
+
+    private final PathTemplateNormalizer normalizer;
+
+    public RequestMetrics() {
+        this(new PathTemplateNormalizer());
+    }
+
+    /**
+     * @param normalizer the normalizer computing the path templates
+     */
+    public RequestMetrics(PathTemplateNormalizer normalizer) {
+        this.normalizer = normalizer;
+    }
+
+    /**
+     * @return the normalizer computing the path templates
+     */
+    public PathTemplateNormalizer getNormalizer() {
+        return normalizer;
+    }
+
+    /**
+     * Returns the timings for a method and request path, creating them if needed
+     *
+     * @param method the http method
+     * @param path the request path, normalized with {@link #getNormalizer()}
+     * @return the timings
+     */
+    public Timings getTimings(String method, String path) {
+        String template = normalizer.normalize(path);
+        Map<String, Timings> byTemplate = timings.get(method);
+        if (byTemplate == null) {
+            byTemplate = timings.computeIfAbsent(method, m -> new ConcurrentHashMap<>());
+        }
+        Timings t = byTemplate.get(template);
+        if (t == null) {
+            t = byTemplate.computeIfAbsent(template, k -> new Timings(method, template));
+        }
+        return t;
+    }
+
+    /**
+     * @return an immutable snapshot of all the timings recorded so far
+     */
+    public MetricsSnapshot snapshot() {
+        List<MetricsSnapshot.Entry> entries = new ArrayList<>();
+        for (Map<String, Timings> byTemplate : timings.values()) {
+            for (Timings t : byTemplate.values()) {
+                entries.add(new MetricsSnapshot.Entry(t));
+            }
+        }
+        entries.sort((a, b) -> {
+            int c = a.getPath().compareTo(b.getPath());
+            return c != 0 ? c : a.getMethod().compareTo(b.getMethod());
+        });
+        return new MetricsSnapshot(entries);
+    }
+
+    /**
+     * Clears all the recorded timings
+     */
+    public void reset() {
+        timings.clear();
+    }
+
+    /**
+     * Histograms of a method and path template
+     */
+    public static final class Timings {
+
+        private final String method;
+
+        private final String path;
+
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private final LatencyHistogram timeToFirstByte = new LatencyHistogram();
+
+        private final LatencyHistogram transfer = new LatencyHistogram();
+
+        Timings(String method, String path) {
+            this.method = method;
+            this.path = path;
+        }
+
+        /**
+         * Records the durations of a request, measured with {@link System#nanoTime()}
+         *
+         * @param timeToFirstByteNanos the time until the response headers were received
+         * @param transferNanos the time spent reading the response body
+         */
+        public void record(long timeToFirstByteNanos, long transferNanos) {
+            timeToFirstByte.recordNanos(timeToFirstByteNanos);
+            transfer.recordNanos(transferNanos);
+            latency.recordNanos(timeToFirstByteNanos + transferNanos);
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public LatencyHistogram getTimeToFirstByte() {
+            return timeToFirstByte;
+        }
+
+        public LatencyHistogram getTransfer() {
+            return transfer;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+import org.apache.sling.testing.clients.interceptors.HttpRequestResponseInterceptor;
+import org.apache.sling.testing.clients.interceptors.RateLimitInterceptor;
+
+/**
+ * <p>Interceptor recording the latency, time to first byte and body transfer time of every request
+ * in a {@link RequestMetrics}.</p>
+ *
+ * <p>It should be added first, so the time spent in the other interceptors is included, except the time spent
+ * waiting for a token of a {@link RateLimitInterceptor}:</p>
+ * <pre>{@code
+ * RequestMetrics metrics = new RequestMetrics();
+ * SlingClient client = SlingClient.Builder.create(url, user, password)
+ *         .addInterceptorFirst(new RequestMetricsInterceptor(metrics))
+ *         .build();
+ * // ...
+ * metrics.snapshot().writeCsv(writer);
+ * }</pre>
+ *
+ * <p>The transfer time is recorded when the response body was fully read or the response was closed.
+ * If the body is never read nor closed, the request is not recorded.</p>
+ *
+ * @since 1.0.0
+ */
+public class RequestMetricsInterceptor implements HttpRequestResponseInterceptor {
+
+    private static final String START_ATTRIBUTE = RequestMetricsInterceptor.class.getName() + ".start";
+
+    private final RequestMetrics metrics;
+
+    /**
+     * @param metrics the metrics where the timings are recorded
+     */
+    public RequestMetricsInterceptor(RequestMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the metrics where the timings are recorded
+     */
+    public RequestMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void process(HttpRequest request, HttpContext context) throws HttpException, IOException {
+        context.setAttribute(START_ATTRIBUTE, System.nanoTime());
+    }
+
+    @Override
+    public void process(HttpResponse response, HttpContext context) throws HttpException, IOException {
+        long headersReceived = System.nanoTime();
+        Object start = context.removeAttribute(START_ATTRIBUTE);
+        HttpRequest request = HttpCoreContext.adapt(context).getRequest();
+        if (!(start instanceof Long) || request == null) {
+            return;
+        }
+
+        // the throttling is not part of the latency of the request, even if the limiter ran after this
+        Long released = RateLimitInterceptor.getReleaseTime(context);
+        long sent = released != null && released - (Long) start > 0 ? released : (Long) start;
+        long timeToFirstByte = headersReceived - sent;
+        RequestMetrics.Timings timings = metrics.getTimings(request.getRequestLine().getMethod(),
+                getPath(request.getRequestLine().getUri()));
+
+        HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            timings.record(timeToFirstByte, 0);
+        } else {
+            response.setEntity(new TimedEntity(entity, timings, headersReceived, timeToFirstByte));
+        }
+    }
+
+    private static String getPath(String uri) {
+        if (uri.startsWith("/")) {
+            return uri;
+        }
+        try {
+            String path = URI.create(uri).getRawPath();
+            return path != null ? path : uri;
+        } catch (IllegalArgumentException e) {
+            return uri;
+        }
+    }
+
+    private static final class TimedEntity extends HttpEntityWrapper {
+
+        private final RequestMetrics.Timings timings;
+
+        private final long headersReceived;
+
+        private final long timeToFirstByte;
+
+        private final AtomicBoolean recorded = new AtomicBoolean(false);
+
+        private TimedEntity(HttpEntity entity, RequestMetrics.Timings timings, long headersReceived,
+                            long timeToFirstByte) {
+            super(entity);
+            this.timings = timings;
+            this.headersReceived = headersReceived;
+            this.timeToFirstByte = timeToFirstByte;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            InputStream content = super.getContent();
+            return content != null ? new TimedInputStream(content) : null;
+        }
+
+        @Override
+        public void writeTo(OutputStream outStream) throws IOException {
+            try {
+                super.writeTo(outStream);
+            } finally {
+                record();
+            }
+        }
+
+        private void record() {
+            if (recorded.compareAndSet(false, true)) {
+                timings.record(timeToFirstByte, System.nanoTime() - headersReceived);
+            }
+        }
+
+        private final class TimedInputStream extends FilterInputStream {
+
+            private TimedInputStream(InputStream in) {
+                super(in);
+            }
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b < 0) {
+                    record();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n < 0) {
+                    record();
+                }
+                return n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    record();
+                }
+            }
+        }
+    }
+}
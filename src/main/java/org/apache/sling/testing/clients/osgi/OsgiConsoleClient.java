@@ -124,9 +124,10 @@ public class OsgiConsoleClient extends SlingClient {
      */
     public BundlesInfo getBundlesInfo(int... expectedStatus) throws ClientException {
         // request the bundles information
-        SlingHttpResponse resp = this.doGet(URL_BUNDLES + ".json", HttpUtils.getExpectedStatus(SC_OK, expectedStatus));
-        // return the wrapper
-        return new BundlesInfo(JsonUtils.getJsonNodeFromString(resp.getContent()));
+        SlingHttpResponse resp = this.doStreamGet(URL_BUNDLES + ".json", null, null,
+                HttpUtils.getExpectedStatus(SC_OK, expectedStatus));
+        // return the wrapper, parsing the json directly from the stream
+        return new BundlesInfo(resp.getJsonNode());
     }
 
     /**
@@ -138,9 +139,9 @@ public class OsgiConsoleClient extends SlingClient {
      * @throws ClientException if the response status does not match any of the expectedStatus
      */
     public BundleInfo getBundleInfo(String id, int... expectedStatus) throws ClientException {
-        SlingHttpResponse resp = this.doGet(URL_BUNDLES + "/" + id + ".json");
-        HttpUtils.verifyHttpStatus(resp, HttpUtils.getExpectedStatus(SC_OK, expectedStatus));
-        return new BundleInfo(JsonUtils.getJsonNodeFromString(resp.getContent()));
+        SlingHttpResponse resp = this.doStreamGet(URL_BUNDLES + "/" + id + ".json", null, null,
+                HttpUtils.getExpectedStatus(SC_OK, expectedStatus));
+        return new BundleInfo(resp.getJsonNode());
     }
 
     /**
@@ -151,9 +152,9 @@ public class OsgiConsoleClient extends SlingClient {
      * @throws ClientException if the response status does not match any of the expectedStatus
      */
     public ComponentsInfo getComponentsInfo(int... expectedStatus) throws ClientException {
-        SlingHttpResponse resp = this.doGet(URL_COMPONENTS + ".json");
-        HttpUtils.verifyHttpStatus(resp, HttpUtils.getExpectedStatus(SC_OK, expectedStatus));
-        return new ComponentsInfo(JsonUtils.getJsonNodeFromString(resp.getContent()));
+        SlingHttpResponse resp = this.doStreamGet(URL_COMPONENTS + ".json", null, null,
+                HttpUtils.getExpectedStatus(SC_OK, expectedStatus));
+        return new ComponentsInfo(resp.getJsonNode());
     }
 
     /**
@@ -17,7 +17,7 @@
  * under the License.
  */
 
-@Version("3.1.0")
+@Version("3.2.0")
 package org.apache.sling.testing.clients;
 
 import org.osgi.annotation.versioning.Version;
@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.tree;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Selects the nodes walked by a {@link TreeWalker}. A rejected node is neither visited nor descended into,
+ * so no request is sent for its subtree.
+ *
+ * @since 1.0.0
+ */
+@FunctionalInterface
+public interface TreeFilter {
+
+    /**
+     * A filter accepting all the nodes
+     */
+    TreeFilter ALL = (path, properties) -> true;
+
+    /**
+     * @param path the path of the node
+     * @param properties the properties of the node, without its child nodes
+     * @return false to skip the node and its whole subtree
+     */
+    boolean accept(String path, JsonNode properties);
+}
@@ -0,0 +1,422 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.tree;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpEntity;
+import org.apache.sling.testing.clients.ClientException;
+import org.apache.sling.testing.clients.KnownPaths;
+import org.apache.sling.testing.clients.SlingClient;
+import org.apache.sling.testing.clients.batch.Batch;
+import org.apache.sling.testing.clients.batch.BatchResult;
+import org.apache.sling.testing.clients.batch.BulkPathOperations;
+import org.apache.sling.testing.clients.batch.BulkPathResult;
+import org.apache.sling.testing.clients.batch.BulkPropertyWriter;
+import org.apache.sling.testing.clients.batch.BulkWriteResult;
+import org.apache.sling.testing.clients.exceptions.TestingIOException;
+import org.apache.sling.testing.clients.util.FormEntityBuilder;
+import org.apache.sling.testing.clients.util.JsonUtils;
+import org.apache.sling.testing.clients.util.SlingParameter;
+
+import static org.apache.http.HttpStatus.SC_CREATED;
+import static org.apache.http.HttpStatus.SC_NOT_FOUND;
+import static org.apache.http.HttpStatus.SC_OK;
+
+/**
+ * <p>Makes a remote subtree the same as a local JSON tree, sending only the difference.
+ * Obtained through {@link SlingClient#treeSync()}:</p>
+ * <blockquote><pre>
+ * {@code
+ * TreeSyncResult result = client.treeSync()
+ *         .setRetries(2)
+ *         .sync("/content/fixtures", new File("fixtures.json"), 8)
+ *         .throwIfFailed();
+ * }
+ * </pre></blockquote>
+ *
+ * <p>The local tree uses the format of the Sling JSON import: the objects are the child nodes, the other
+ * values their properties. The remote tree is read with a {@link TreeWalker} and the properties of each node
+ * are compared through a hash of their canonical form, so only the nodes with a different hash are compared
+ * property by property. The delta is then applied in three steps:</p>
+ * <ol>
+ *     <li>the remote nodes missing from the local tree, and the nodes with another {@code jcr:primaryType},
+ *     are deleted with {@link BulkPathOperations}; their subtrees are never read</li>
+ *     <li>the missing subtrees are imported concurrently, with one {@code :operation=import} request each</li>
+ *     <li>the changed properties are written with a {@link BulkPropertyWriter}, with their type hints</li>
+ * </ol>
+ *
+ * <p>Only the properties of the local tree are compared: the properties only set remotely, like
+ * {@code jcr:created}, are kept. A {@code null} local value deletes the remote property. The order of
+ * the child nodes is not synced.</p>
+ *
+ * <p>The remote nodes whose name starts with one of the {@link #PROTECTED_NODE_PREFIXES}, like the access control
+ * lists ({@code rep:policy}) and the indexes ({@code oak:index}), are never deleted nor walked, even if they are
+ * missing from the local tree.</p>
+ *
+ * @since 1.0.0
+ */
+public class TreeSync {
+
+    /**
+     * The properties never compared nor written, because they are protected or set by the repository
+     */
+    public static final Set<String> PROTECTED_PROPERTIES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "jcr:primaryType", "jcr:uuid", "jcr:created", "jcr:createdBy", "jcr:baseVersion", "jcr:predecessors",
+            "jcr:versionHistory", "jcr:isCheckedOut", "jcr:lockOwner", "jcr:lockIsDeep")));
+
+    /**
+     * The prefixes of the names of the remote nodes never deleted, because they are managed by the repository,
+     * like {@code rep:policy} or {@code oak:index}
+     */
+    public static final List<String> PROTECTED_NODE_PREFIXES = Collections.unmodifiableList(
+            Arrays.asList("rep:", "oak:"));
+
+    /**
+     * The canonical form of a missing or {@code null} value
+     */
+    private static final String ABSENT = "-";
+
+    private final SlingClient client;
+
+    private int sliceDepth = 2;
+
+    private int retries = 0;
+
+    private boolean deleteRemoteOnly = true;
+
+    /**
+     * Creates a new sync. Use {@link SlingClient#treeSync()} instead.
+     *
+     * @param client the client executing the requests
+     */
+    public TreeSync(SlingClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Sets the depth of the slices of the remote tree read with each request, see
+     * {@link TreeWalker#setSliceDepth(int)}. Defaults to 2.
+     *
+     * @param sliceDepth the number of levels read below each slice root, at least 2
+     * @return this
+     */
+    public TreeSync setSliceDepth(int sliceDepth) {
+        if (sliceDepth < 2) {
+            throw new IllegalArgumentException("sliceDepth must be at least 2");
+        }
+        this.sliceDepth = sliceDepth;
+        return this;
+    }
+
+    /**
+     * Sets how many times a failed request applying the delta is retried before giving up. Defaults to 0.
+     *
+     * @param retries the number of retries for each request
+     * @return this
+     */
+    public TreeSync setRetries(int retries) {
+        if (retries < 0) {
+            throw new IllegalArgumentException("retries must not be negative");
+        }
+        this.retries = retries;
+        return this;
+    }
+
+    /**
+     * Sets whether the remote nodes missing from the local tree are deleted. Defaults to true. The nodes
+     * named with one of the {@link #PROTECTED_NODE_PREFIXES} are never deleted.
+     *
+     * @param deleteRemoteOnly false to keep the remote nodes missing from the local tree, and their subtrees
+     * @return this
+     */
+    public TreeSync setDeleteRemoteOnly(boolean deleteRemoteOnly) {
+        this.deleteRemoteOnly = deleteRemoteOnly;
+        return this;
+    }
+
+    /**
+     * Syncs the remote tree at {@code path} with a local JSON file, see {@link #sync(String, JsonNode, int)}
+     *
+     * @param path the path of the root of the remote tree, its parent must exist
+     * @param json the file of the local tree, in the format of the Sling JSON import
+     * @param parallelism the maximum number of requests executed at the same time
+     * @return the outcome of the sync
+     * @throws ClientException if the file or the remote tree could not be read
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public TreeSyncResult sync(String path, File json, int parallelism) throws ClientException, InterruptedException {
+        JsonNode tree;
+        try (InputStream in = new FileInputStream(json)) {
+            tree = JsonUtils.getJsonNodeFromStream(in);
+        } catch (IOException e) {
+            throw new TestingIOException("Could not read " + json, e);
+        }
+        return sync(path, tree, parallelism);
+    }
+
+    /**
+     * Makes the remote tree at {@code path} the same as {@code tree}, with at most {@code parallelism} requests
+     * in flight, and waits until the delta is applied.
+     *
+     * @param path the path of the root of the remote tree, its parent must exist
+     * @param tree the local tree, in the format of the Sling JSON import
+     * @param parallelism the maximum number of requests executed at the same time
+     * @return the outcome of the sync
+     * @throws ClientException if the remote tree could not be read
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public TreeSyncResult sync(String path, JsonNode tree, int parallelism)
+            throws ClientException, InterruptedException {
+        if (path == null || !path.startsWith("/") || StringUtils.stripEnd(path, "/").isEmpty()) {
+            throw new IllegalArgumentException("path must be absolute and not the root: " + path);
+        }
+        if (tree == null || !tree.isObject()) {
+            throw new IllegalArgumentException("tree must be a json object");
+        }
+        long start = System.nanoTime();
+        String root = StringUtils.stripEnd(path, "/");
+
+        Map<String, LocalNode> locals = new LinkedHashMap<>();
+        flatten(root, tree, locals);
+
+        // 1. diff, while walking the remote tree
+        List<String> deleted = new ArrayList<>();
+        Map<String, List<String>> updated = new LinkedHashMap<>();
+        BulkPropertyWriter writer = new BulkPropertyWriter(client).setRetries(retries);
+        long[] unchanged = new long[1];
+        TreeWalker walker = new TreeWalker(client).setSliceDepth(sliceDepth).setFilter((nodePath, properties) -> {
+            // called from the walking thread only
+            LocalNode local = locals.get(nodePath);
+            if (local == null) {
+                if (deleteRemoteOnly && !isProtectedNode(nodePath)) {
+                    deleted.add(nodePath);
+                }
+                return false;
+            }
+            JsonNode type = local.json.get("jcr:primaryType");
+            if (type != null && !type.asText().equals(properties.path("jcr:primaryType").asText())) {
+                // recreated with its subtree
+                deleted.add(nodePath);
+                return false;
+            }
+            return true;
+        });
+        TreeWalkResult walk;
+        try {
+            walk = walker.walk(root, (nodePath, properties) -> {
+                LocalNode local = locals.get(nodePath);
+                local.exists = true;
+                if (Arrays.equals(local.hash, hash(local.properties, properties))) {
+                    unchanged[0]++;
+                    return;
+                }
+                List<String> changed = new ArrayList<>();
+                for (Map.Entry<String, JsonNode> property : local.properties.entrySet()) {
+                    String name = property.getKey();
+                    JsonNode value = property.getValue();
+                    if (!canonical(value).equals(canonical(properties.get(name)))) {
+                        writer.setParameter(nodePath, parameter(name, value));
+                        changed.add(name);
+                    }
+                }
+                updated.put(nodePath, changed);
+            }, parallelism);
+        } catch (ClientException e) {
+            if (e.getHttpStatusCode() != SC_NOT_FOUND || locals.get(root).exists) {
+                throw e;
+            }
+            // no remote tree yet, imported at once
+            walk = null;
+        }
+
+        // 2. deletes
+        BulkPathResult deletes = new BulkPathOperations(client).setRetries(retries).delete(deleted, parallelism);
+
+        // 3. creates, the topmost missing nodes with their subtrees
+        List<String> created = new ArrayList<>();
+        Batch batch = client.batch().setRetries(retries);
+        for (Map.Entry<String, LocalNode> local : locals.entrySet()) {
+            String nodePath = local.getKey();
+            if (!local.getValue().exists && (nodePath.equals(root) || locals.get(getParent(nodePath)).exists)) {
+                created.add(nodePath);
+                HttpEntity entity = importEntity(nodePath, local.getValue().json);
+                batch.add("import " + nodePath, c -> c.doPost(getParent(nodePath), entity, SC_OK, SC_CREATED));
+            }
+        }
+        BatchResult creates = batch.execute(parallelism);
+        KnownPaths knownPaths = client.getKnownPaths();
+        if (knownPaths != null) {
+            created.forEach(knownPaths::add);
+        }
+
+        // 4. property updates
+        BulkWriteResult updates = writer.execute(parallelism);
+
+        return new TreeSyncResult(created, updated, deleted, unchanged[0], walk, deletes, creates, updates,
+                System.nanoTime() - start);
+    }
+
+    private static boolean isProtectedNode(String path) {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        for (String prefix : PROTECTED_NODE_PREFIXES) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Collects the nodes of the local tree, the parents before their children
+     */
+    private static void flatten(String path, JsonNode json, Map<String, LocalNode> locals) {
+        LocalNode local = new LocalNode(json);
+        locals.put(path, local);
+        for (Map.Entry<String, JsonNode> field : (Iterable<Map.Entry<String, JsonNode>>) json::fields) {
+            if (field.getValue().isObject()) {
+                flatten(path + "/" + field.getKey(), field.getValue(), locals);
+            } else if (!PROTECTED_PROPERTIES.contains(field.getKey())) {
+                local.properties.put(field.getKey(), field.getValue());
+            }
+        }
+        local.hash = hash(local.properties, null);
+    }
+
+    /**
+     * Hashes the canonical values of the local properties, taken from {@code remote} if not {@code null}
+     */
+    private static byte[] hash(Map<String, JsonNode> local, JsonNode remote) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Map.Entry<String, JsonNode> property : local.entrySet()) {
+                JsonNode value = remote != null ? remote.get(property.getKey()) : property.getValue();
+                digest.update((property.getKey() + "=" + canonical(value) + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    /**
+     * The value with its type, so e.g. {@code 5} and {@code "5"} are different
+     */
+    private static String canonical(JsonNode value) {
+        if (value == null || value.isNull()) {
+            return ABSENT;
+        }
+        if (value.isArray()) {
+            StringBuilder array = new StringBuilder("[");
+            for (JsonNode element : value) {
+                array.append(canonical(element)).append('\u0000');
+            }
+            return array.append(']').toString();
+        }
+        if (value.isBoolean()) {
+            return "b:" + value.asText();
+        }
+        if (value.isIntegralNumber()) {
+            return "l:" + value.bigIntegerValue();
+        }
+        if (value.isNumber()) {
+            return "d:" + new BigDecimal(value.asText()).stripTrailingZeros().toPlainString();
+        }
+        return "s:" + value.asText();
+    }
+
+    private static SlingParameter parameter(String name, JsonNode value) {
+        SlingParameter parameter = new SlingParameter(name);
+        if (value.isNull()) {
+            return parameter.delete();
+        }
+        if (value.isArray()) {
+            List<String> values = new ArrayList<>();
+            for (JsonNode element : value) {
+                values.add(element.asText());
+            }
+            String type = value.size() > 0 ? typeHint(value.get(0)) : null;
+            return parameter.values(values.toArray(new String[0])).multiple()
+                    .typeHint((type != null ? type : "String") + "[]");
+        }
+        return parameter.value(value.asText()).typeHint(typeHint(value));
+    }
+
+    private static String typeHint(JsonNode value) {
+        if (value.isBoolean()) {
+            return "Boolean";
+        }
+        if (value.isIntegralNumber()) {
+            return "Long";
+        }
+        if (value.isNumber()) {
+            return "Double";
+        }
+        return null;
+    }
+
+    private static HttpEntity importEntity(String path, JsonNode json) {
+        return FormEntityBuilder.create()
+                .addParameter(":operation", "import")
+                .addParameter(":contentType", "json")
+                .addParameter(":name", path.substring(path.lastIndexOf('/') + 1))
+                .addParameter(":content", json.toString())
+                .addParameter(":replace", "true")
+                .build();
+    }
+
+    private static String getParent(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash > 0 ? path.substring(0, slash) : "/";
+    }
+
+    private static final class LocalNode {
+
+        private final JsonNode json;
+
+        /**
+         * The compared properties, sorted by name so the hashes don't depend on their order
+         */
+        private final Map<String, JsonNode> properties = new TreeMap<>();
+
+        private byte[] hash;
+
+        private boolean exists;
+
+        private LocalNode(JsonNode json) {
+            this.json = json;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.tree;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.testing.clients.ClientException;
+import org.apache.sling.testing.clients.batch.BatchResult;
+import org.apache.sling.testing.clients.batch.BulkPathResult;
+import org.apache.sling.testing.clients.batch.BulkWriteResult;
+
+/**
+ * The outcome of a {@link TreeSync} sync: the delta applied to the remote tree and the requests applying it.
+ *
+ * @since 1.0.0
+ */
+public class TreeSyncResult {
+
+    private final List<String> created;
+
+    private final Map<String, List<String>> updated;
+
+    private final List<String> deleted;
+
+    private final long unchangedCount;
+
+    private final TreeWalkResult walk;
+
+    private final BulkPathResult deletes;
+
+    private final BatchResult creates;
+
+    private final BulkWriteResult updates;
+
+    private final long durationNanos;
+
+    TreeSyncResult(List<String> created, Map<String, List<String>> updated, List<String> deleted, long unchangedCount,
+                   TreeWalkResult walk, BulkPathResult deletes, BatchResult creates, BulkWriteResult updates,
+                   long durationNanos) {
+        this.created = Collections.unmodifiableList(created);
+        this.updated = Collections.unmodifiableMap(updated);
+        this.deleted = Collections.unmodifiableList(deleted);
+        this.unchangedCount = unchangedCount;
+        this.walk = walk;
+        this.deletes = deletes;
+        this.creates = creates;
+        this.updates = updates;
+        this.durationNanos = durationNanos;
+    }
+
+    /**
+     * @return the roots of the subtrees imported, because they were missing or had another primary type
+     */
+    public List<String> getCreated() {
+        return created;
+    }
+
+    /**
+     * @return the paths of the nodes with changed properties, mapped to the names of these properties
+     */
+    public Map<String, List<String>> getUpdated() {
+        return updated;
+    }
+
+    /**
+     * @return the roots of the subtrees deleted, because they were not in the local tree or had another primary type
+     */
+    public List<String> getDeleted() {
+        return deleted;
+    }
+
+    /**
+     * @return the number of nodes found with the same properties
+     */
+    public long getUnchangedCount() {
+        return unchangedCount;
+    }
+
+    /**
+     * @return true if the remote tree already was the same as the local tree
+     */
+    public boolean isUnchanged() {
+        return created.isEmpty() && updated.isEmpty() && deleted.isEmpty();
+    }
+
+    /**
+     * @return the walk of the remote tree, or {@code null} if the remote tree did not exist
+     */
+    public TreeWalkResult getWalk() {
+        return walk;
+    }
+
+    /**
+     * @return the outcome of the deletes
+     */
+    public BulkPathResult getDeletes() {
+        return deletes;
+    }
+
+    /**
+     * @return the outcome of the imports, one per created subtree
+     */
+    public BatchResult getCreates() {
+        return creates;
+    }
+
+    /**
+     * @return the outcome of the property updates
+     */
+    public BulkWriteResult getUpdates() {
+        return updates;
+    }
+
+    /**
+     * @return the duration of the whole sync, the walk included
+     */
+    public long getDurationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(durationNanos);
+    }
+
+    /**
+     * @return true if all the changes were applied
+     */
+    public boolean isSuccessful() {
+        return deletes.isSuccessful() && creates.isSuccessful() && updates.isSuccessful();
+    }
+
+    /**
+     * Throws the exception of the first failed request, if any
+     *
+     * @return this, if all the changes were applied
+     * @throws ClientException the exception of the first failed request
+     */
+    public TreeSyncResult throwIfFailed() throws ClientException {
+        deletes.throwIfFailed();
+        creates.throwIfFailed();
+        updates.throwIfFailed();
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TreeSyncResult{created=%d, updated=%d, deleted=%d, unchanged=%d, durationMillis=%d}",
+                created.size(), updated.size(), deleted.size(), unchangedCount, getDurationMillis());
+    }
+}
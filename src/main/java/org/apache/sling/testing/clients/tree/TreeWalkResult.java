@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.tree;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outcome of a {@link TreeWalker} walk: how many nodes were visited, with how many requests, and how fast.
+ *
+ * @since 1.0.0
+ */
+public class TreeWalkResult {
+
+    private final long visitedCount;
+
+    private final long prunedCount;
+
+    private final int requestCount;
+
+    private final long durationNanos;
+
+    TreeWalkResult(long visitedCount, long prunedCount, int requestCount, long durationNanos) {
+        this.visitedCount = visitedCount;
+        this.prunedCount = prunedCount;
+        this.requestCount = requestCount;
+        this.durationNanos = durationNanos;
+    }
+
+    /**
+     * @return the number of visited nodes
+     */
+    public long getVisitedCount() {
+        return visitedCount;
+    }
+
+    /**
+     * @return the number of nodes rejected by the filter, their subtrees not included
+     */
+    public long getPrunedCount() {
+        return prunedCount;
+    }
+
+    /**
+     * @return the number of requests sent
+     */
+    public int getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * @return the duration of the whole walk
+     */
+    public long getDurationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(durationNanos);
+    }
+
+    /**
+     * @return the number of visited nodes per second, over the whole walk
+     */
+    public double getNodesPerSecond() {
+        return durationNanos > 0 ? visitedCount * (double) TimeUnit.SECONDS.toNanos(1) / durationNanos : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TreeWalkResult{visited=%d, pruned=%d, requests=%d, durationMillis=%d, nodesPerSecond=%.1f}",
+                visitedCount, prunedCount, requestCount, getDurationMillis(), getNodesPerSecond());
+    }
+}
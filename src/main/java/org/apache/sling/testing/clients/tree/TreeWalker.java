@@ -0,0 +1,255 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.tree;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.testing.clients.ClientException;
+import org.apache.sling.testing.clients.SlingClient;
+import org.apache.sling.testing.clients.SlingHttpResponse;
+import org.apache.sling.testing.clients.exceptions.TestingIOException;
+
+import static org.apache.http.HttpStatus.SC_OK;
+
+/**
+ * <p>Walks a repository tree breadth-first, reading it in slices of a fixed depth with concurrent
+ * {@code .<depth>.json} requests. Obtained through {@link SlingClient#treeWalker()}:</p>
+ * <blockquote><pre>
+ * {@code
+ * TreeWalkResult result = client.treeWalker()
+ *         .setSliceDepth(3)
+ *         .setFilter((path, properties) -> !path.endsWith("/jcr:content"))
+ *         .walk("/content/site", (path, properties) -> LOG.info("{}", path), 8);
+ * }
+ * </pre></blockquote>
+ *
+ * <p>Each request reads {@code depth} levels below its slice root. The nodes of the levels {@code 0} to
+ * {@code depth - 1} are visited, the last level is only used to find out which nodes of the level
+ * {@code depth - 1} have children: these become the roots of the next slices, while the leaves cost
+ * no further request.</p>
+ *
+ * <p>The responses are parsed by the threads of the async executor, see
+ * {@link SlingClient#doGetAsync(String, int...)}, but the filter and the visitor are only called from the
+ * walking thread. Only the responses in flight and the paths of the slices still to read are held in
+ * memory, never the whole tree. The slices are requested in breadth-first order, but visited in the order
+ * their responses arrive, so the nodes of different slices may be interleaved.</p>
+ *
+ * <p>A too deep slice may exceed the maximum number of results of the JSON rendering, in which case
+ * the server answers {@code 300 Multiple Choices} and the walk fails: use a smaller slice depth.</p>
+ *
+ * @since 1.0.0
+ */
+public class TreeWalker {
+
+    private final SlingClient client;
+
+    private int sliceDepth = 2;
+
+    private TreeFilter filter = TreeFilter.ALL;
+
+    /**
+     * Creates a new walker. Use {@link SlingClient#treeWalker()} instead.
+     *
+     * @param client the client executing the requests
+     */
+    public TreeWalker(SlingClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Sets the depth of the slices read with each request, their last level included. Defaults to 2.
+     *
+     * @param sliceDepth the number of levels read below each slice root, at least 2
+     * @return this
+     */
+    public TreeWalker setSliceDepth(int sliceDepth) {
+        if (sliceDepth < 2) {
+            throw new IllegalArgumentException("sliceDepth must be at least 2");
+        }
+        this.sliceDepth = sliceDepth;
+        return this;
+    }
+
+    /**
+     * Sets the filter selecting the visited nodes. Defaults to {@link TreeFilter#ALL}.
+     *
+     * @param filter the filter, rejecting whole subtrees
+     * @return this
+     */
+    public TreeWalker setFilter(TreeFilter filter) {
+        this.filter = filter != null ? filter : TreeFilter.ALL;
+        return this;
+    }
+
+    /**
+     * Walks the tree under {@code root}, the root included, with at most {@code parallelism} requests
+     * in flight, and waits until all the nodes are visited. The requests still in flight are cancelled
+     * if a request or the visitor fails.
+     *
+     * @param root the path of the root of the tree
+     * @param visitor the visitor of the accepted nodes
+     * @param parallelism the maximum number of requests executed at the same time
+     * @return the outcome of the walk
+     * @throws ClientException if a slice could not be read or the visitor failed
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public TreeWalkResult walk(String root, TreeVisitor visitor, int parallelism)
+            throws ClientException, InterruptedException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        long start = System.nanoTime();
+        String rootPath = "/".equals(root) ? root : StringUtils.stripEnd(root, "/");
+
+        Deque<String> pending = new ArrayDeque<>();
+        pending.add(rootPath);
+        Set<CompletableFuture<SlingHttpResponse>> inFlight = new HashSet<>();
+        BlockingQueue<Slice> completed = new LinkedBlockingQueue<>();
+        long visited = 0;
+        long pruned = 0;
+        int requests = 0;
+        boolean rootSlice = true;
+        try {
+            while (!pending.isEmpty() || !inFlight.isEmpty()) {
+                while (inFlight.size() < parallelism && !pending.isEmpty()) {
+                    inFlight.add(fetch(pending.poll(), completed));
+                    requests++;
+                }
+
+                Slice slice = completed.take();
+                inFlight.remove(slice.future);
+                if (slice.exception != null) {
+                    throw slice.exception;
+                }
+
+                // breadth-first inside the slice too
+                Deque<Entry> entries = new ArrayDeque<>();
+                entries.add(new Entry(slice.path, slice.json, 0));
+                for (Entry entry = entries.poll(); entry != null; entry = entries.poll()) {
+                    // the slice roots were visited as the last level of their parent slice
+                    if (entry.level > 0 || rootSlice) {
+                        ObjectNode properties = properties(entry.node);
+                        if (!filter.accept(entry.path, properties)) {
+                            pruned++;
+                            continue;
+                        }
+                        visitor.visit(entry.path, properties);
+                        visited++;
+                    }
+                    for (Map.Entry<String, JsonNode> child : (Iterable<Map.Entry<String, JsonNode>>) entry.node::fields) {
+                        if (!child.getValue().isObject()) {
+                            continue;
+                        }
+                        if (entry.level + 1 < sliceDepth) {
+                            entries.add(new Entry(childPath(entry.path, child.getKey()), child.getValue(), entry.level + 1));
+                        } else {
+                            // only the lookahead level, the node is the root of a next slice
+                            pending.add(entry.path);
+                            break;
+                        }
+                    }
+                }
+                rootSlice = false;
+            }
+        } finally {
+            for (CompletableFuture<SlingHttpResponse> future : inFlight) {
+                future.cancel(true);
+            }
+        }
+        return new TreeWalkResult(visited, pruned, requests, System.nanoTime() - start);
+    }
+
+    private CompletableFuture<SlingHttpResponse> fetch(String path, BlockingQueue<Slice> completed) {
+        CompletableFuture<SlingHttpResponse> future = client.doGetAsync(path + "." + sliceDepth + ".json", SC_OK);
+        future.whenComplete((response, throwable) -> {
+            Slice slice = new Slice(path, future);
+            if (throwable == null) {
+                try {
+                    slice.json = response.getJsonNode();
+                } catch (ClientException e) {
+                    slice.exception = e;
+                }
+            } else {
+                Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                        ? throwable.getCause()
+                        : throwable;
+                slice.exception = cause instanceof ClientException
+                        ? (ClientException) cause
+                        : new TestingIOException("Could not read " + path, cause);
+            }
+            completed.add(slice);
+        });
+        return future;
+    }
+
+    private static ObjectNode properties(JsonNode node) {
+        ObjectNode properties = JsonNodeFactory.instance.objectNode();
+        for (Map.Entry<String, JsonNode> field : (Iterable<Map.Entry<String, JsonNode>>) node::fields) {
+            if (!field.getValue().isObject()) {
+                properties.set(field.getKey(), field.getValue());
+            }
+        }
+        return properties;
+    }
+
+    private static String childPath(String parent, String name) {
+        return parent.endsWith("/") ? parent + name : parent + "/" + name;
+    }
+
+    private static class Slice {
+
+        private final String path;
+
+        private final CompletableFuture<SlingHttpResponse> future;
+
+        private JsonNode json;
+
+        private ClientException exception;
+
+        Slice(String path, CompletableFuture<SlingHttpResponse> future) {
+            this.path = path;
+            this.future = future;
+        }
+    }
+
+    private static class Entry {
+
+        private final String path;
+
+        private final JsonNode node;
+
+        private final int level;
+
+        Entry(String path, JsonNode node, int level) {
+            this.path = path;
+            this.node = node;
+            this.level = level;
+        }
+    }
+}
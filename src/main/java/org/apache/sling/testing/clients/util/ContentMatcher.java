@@ -0,0 +1,411 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.http.annotation.Contract;
+import org.apache.http.annotation.ThreadingBehavior;
+
+/**
+ * <p>Checks that a content contains a set of strings and has, for each of a set of regular expressions,
+ * at least one matching line. All the checks are evaluated in a single pass over the content, which can be read
+ * from a {@link Reader}, so a large content does not have to be loaded in memory.</p>
+ *
+ * <ul>
+ *     <li>the strings are searched all at once with an Aho-Corasick automaton</li>
+ *     <li>the regular expressions are prefixed and suffixed with {@code .*} and matched against each line, like in
+ *     {@link org.apache.sling.testing.clients.SlingHttpResponse#checkContentRegexp(String...)}; a pattern is no
+ *     longer evaluated once it matched a line</li>
+ * </ul>
+ *
+ * <p>The pass stops as soon as all the strings and expressions are found. Matchers are immutable and the recently
+ * used ones are cached, so the patterns and the automaton are only compiled once for the same checks.</p>
+ *
+ * @since 3.2.0
+ */
+@Contract(threading = ThreadingBehavior.IMMUTABLE)
+public final class ContentMatcher {
+
+    private static final int CACHE_SIZE = 256;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final Map<String, ContentMatcher> CACHE = Collections.synchronizedMap(
+            new LinkedHashMap<String, ContentMatcher>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ContentMatcher> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            });
+
+    private final List<String> strings;
+
+    private final List<String> regexps;
+
+    private final Pattern[] patterns;
+
+    // Aho-Corasick automaton over the strings: sorted transition chars and targets per state,
+    // failure links and the indices of the strings ending in each state
+    private final char[][] keys;
+
+    private final int[][] targets;
+
+    private final int[] fail;
+
+    private final int[][] output;
+
+    private ContentMatcher(List<String> strings, List<String> regexps) {
+        this.strings = Collections.unmodifiableList(new ArrayList<>(strings));
+        this.regexps = Collections.unmodifiableList(new ArrayList<>(regexps));
+        this.patterns = new Pattern[regexps.size()];
+        for (int i = 0; i < patterns.length; i++) {
+            patterns[i] = Pattern.compile(".*" + regexps.get(i) + ".*");
+        }
+
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<List<Integer>> outputs = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        outputs.add(new ArrayList<>());
+        for (int i = 0; i < this.strings.size(); i++) {
+            String s = this.strings.get(i);
+            int state = 0;
+            for (int j = 0; j < s.length(); j++) {
+                Integer next = trie.get(state).get(s.charAt(j));
+                if (next == null) {
+                    next = trie.size();
+                    trie.get(state).put(s.charAt(j), next);
+                    trie.add(new TreeMap<>());
+                    outputs.add(new ArrayList<>());
+                }
+                state = next;
+            }
+            outputs.get(state).add(i);
+        }
+
+        int size = trie.size();
+        this.keys = new char[size][];
+        this.targets = new int[size][];
+        for (int state = 0; state < size; state++) {
+            TreeMap<Character, Integer> children = trie.get(state);
+            keys[state] = new char[children.size()];
+            targets[state] = new int[children.size()];
+            int k = 0;
+            for (Map.Entry<Character, Integer> child : children.entrySet()) {
+                keys[state][k] = child.getKey();
+                targets[state][k++] = child.getValue();
+            }
+        }
+
+        // breadth first, so the failure state of a state is always computed before it
+        this.fail = new int[size];
+        Queue<Integer> queue = new ArrayDeque<>();
+        queue.add(0);
+        while (!queue.isEmpty()) {
+            int state = queue.remove();
+            for (int k = 0; k < keys[state].length; k++) {
+                int child = targets[state][k];
+                if (state != 0) {
+                    int f = fail[state];
+                    while (f != 0 && next(f, keys[state][k]) < 0) {
+                        f = fail[f];
+                    }
+                    int target = next(f, keys[state][k]);
+                    fail[child] = target >= 0 ? target : 0;
+                    outputs.get(child).addAll(outputs.get(fail[child]));
+                }
+                queue.add(child);
+            }
+        }
+        this.output = new int[size][];
+        for (int state = 0; state < size; state++) {
+            List<Integer> out = outputs.get(state);
+            output[state] = new int[out.size()];
+            for (int k = 0; k < out.size(); k++) {
+                output[state][k] = out.get(k);
+            }
+        }
+    }
+
+    /**
+     * @param strings the strings the content must contain
+     * @return the matcher, possibly cached
+     */
+    public static ContentMatcher forStrings(String... strings) {
+        return of(Arrays.asList(strings), Collections.<String>emptyList());
+    }
+
+    /**
+     * @param regexps the regular expressions that must each match at least one line of the content
+     * @return the matcher, possibly cached
+     */
+    public static ContentMatcher forRegexps(String... regexps) {
+        return of(Collections.<String>emptyList(), Arrays.asList(regexps));
+    }
+
+    /**
+     * @param strings the strings the content must contain
+     * @param regexps the regular expressions that must each match at least one line of the content
+     * @return the matcher, possibly cached
+     * @throws java.util.regex.PatternSyntaxException if one of the expressions is invalid
+     */
+    public static ContentMatcher of(List<String> strings, List<String> regexps) {
+        StringBuilder key = new StringBuilder();
+        for (String s : strings) {
+            key.append('s').append(s.length()).append(':').append(s);
+        }
+        for (String r : regexps) {
+            key.append('r').append(r.length()).append(':').append(r);
+        }
+        String k = key.toString();
+        ContentMatcher matcher = CACHE.get(k);
+        if (matcher == null) {
+            matcher = new ContentMatcher(strings, regexps);
+            CACHE.put(k, matcher);
+        }
+        return matcher;
+    }
+
+    /**
+     * @return the strings the content must contain
+     */
+    public List<String> getStrings() {
+        return strings;
+    }
+
+    /**
+     * @return the regular expressions that must each match at least one line of the content
+     */
+    public List<String> getRegexps() {
+        return regexps;
+    }
+
+    /**
+     * @param content the content
+     * @return the result of the checks
+     */
+    public Result match(CharSequence content) {
+        Scan scan = new Scan();
+        scan.feed(content, 0, content.length());
+        scan.end();
+        return scan.result();
+    }
+
+    /**
+     * Reads the content until all the checks passed or the end of the content. The reader is not closed
+     *
+     * @param reader the content
+     * @return the result of the checks
+     * @throws IOException if the content could not be read
+     */
+    public Result match(Reader reader) throws IOException {
+        Scan scan = new Scan();
+        char[] buffer = new char[BUFFER_SIZE];
+        int n;
+        while (!scan.isDone() && (n = reader.read(buffer)) != -1) {
+            // the chunk is wrapped, not copied
+            scan.feed(CharBuffer.wrap(buffer, 0, n), 0, n);
+        }
+        scan.end();
+        return scan.result();
+    }
+
+    private int next(int state, char c) {
+        int k = Arrays.binarySearch(keys[state], c);
+        return k >= 0 ? targets[state][k] : -1;
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /**
+     * The state of a single pass
+     */
+    private final class Scan {
+
+        private final boolean[] foundStrings = new boolean[strings.size()];
+
+        private final boolean[] matchedRegexps = new boolean[patterns.length];
+
+        private final Matcher[] matchers = new Matcher[patterns.length];
+
+        private final StringBuilder line = new StringBuilder();
+
+        private int remainingStrings;
+
+        private int remainingRegexps;
+
+        private int state;
+
+        private boolean lastWasCR;
+
+        private boolean pendingLine;
+
+        private Scan() {
+            remainingStrings = foundStrings.length;
+            remainingRegexps = matchedRegexps.length;
+            for (int i = 0; i < foundStrings.length; i++) {
+                if (strings.get(i).isEmpty()) {
+                    foundStrings[i] = true;
+                    remainingStrings--;
+                }
+            }
+        }
+
+        private boolean isDone() {
+            return remainingStrings == 0 && remainingRegexps == 0;
+        }
+
+        private void feed(CharSequence text, int from, int to) {
+            int lineStart = from;
+            for (int i = from; i < to && !isDone(); i++) {
+                char c = text.charAt(i);
+                if (remainingStrings > 0) {
+                    searchString(c);
+                }
+                if (remainingRegexps == 0) {
+                    continue;
+                }
+                if (isLineTerminator(c)) {
+                    if (!(c == '\n' && lastWasCR)) {
+                        line.append(text, lineStart, i);
+                        matchLine();
+                    }
+                    lineStart = i + 1;
+                    lastWasCR = c == '\r';
+                } else {
+                    lastWasCR = false;
+                    pendingLine = true;
+                }
+            }
+            if (remainingRegexps > 0 && lineStart < to) {
+                line.append(text, lineStart, to);
+            }
+        }
+
+        private void searchString(char c) {
+            int next;
+            while ((next = next(state, c)) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = next >= 0 ? next : 0;
+            for (int index : output[state]) {
+                if (!foundStrings[index]) {
+                    foundStrings[index] = true;
+                    remainingStrings--;
+                }
+            }
+        }
+
+        private void matchLine() {
+            for (int i = 0; i < patterns.length; i++) {
+                if (matchedRegexps[i]) {
+                    continue;
+                }
+                if (matchers[i] == null) {
+                    matchers[i] = patterns[i].matcher(line);
+                } else {
+                    matchers[i].reset(line);
+                }
+                if (matchers[i].matches()) {
+                    matchedRegexps[i] = true;
+                    remainingRegexps--;
+                }
+            }
+            line.setLength(0);
+            pendingLine = false;
+        }
+
+        private void end() {
+            // like Scanner, the chars after the last line terminator are a line, but not an empty string
+            if (remainingRegexps > 0 && pendingLine) {
+                matchLine();
+            }
+        }
+
+        private Result result() {
+            List<String> missingStrings = new ArrayList<>();
+            for (int i = 0; i < foundStrings.length; i++) {
+                if (!foundStrings[i]) {
+                    missingStrings.add(strings.get(i));
+                }
+            }
+            List<String> missingPatterns = new ArrayList<>();
+            for (int i = 0; i < matchedRegexps.length; i++) {
+                if (!matchedRegexps[i]) {
+                    missingPatterns.add(patterns[i].pattern());
+                }
+            }
+            return new Result(missingStrings, missingPatterns);
+        }
+    }
+
+    /**
+     * The result of the checks of a content
+     */
+    public static final class Result {
+
+        private final List<String> missingStrings;
+
+        private final List<String> unmatchedPatterns;
+
+        private Result(List<String> missingStrings, List<String> unmatchedPatterns) {
+            this.missingStrings = Collections.unmodifiableList(missingStrings);
+            this.unmatchedPatterns = Collections.unmodifiableList(unmatchedPatterns);
+        }
+
+        /**
+         * @return true if the content contains all the strings and each pattern matched a line
+         */
+        public boolean isMatched() {
+            return missingStrings.isEmpty() && unmatchedPatterns.isEmpty();
+        }
+
+        /**
+         * @return the strings not found in the content, in the order of the matcher
+         */
+        public List<String> getMissingStrings() {
+            return missingStrings;
+        }
+
+        /**
+         * @return the patterns, including the {@code .*} prefix and suffix, that did not match any line
+         */
+        public List<String> getUnmatchedPatterns() {
+            return unmatchedPatterns;
+        }
+
+        @Override
+        public String toString() {
+            return "missing strings " + missingStrings + ", unmatched patterns " + unmatchedPatterns;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.content.AbstractContentBody;
+
+/**
+ * <p>Multipart body with a region of a file, e.g. a chunk of a chunked upload. The region is copied with
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, without reading the file in a stream
+ * nor loading the region in memory.</p>
+ *
+ * <p>The file is opened each time the body is written, so a request with such a body can be retried.</p>
+ *
+ * @since 3.2.0
+ */
+public class FileRegionBody extends AbstractContentBody {
+
+    private final File file;
+
+    private final long offset;
+
+    private final long length;
+
+    private final String filename;
+
+    /**
+     * @param file the file
+     * @param offset the position of the first byte of the region
+     * @param length the number of bytes of the region
+     * @param contentType the content type of the file
+     * @param filename the file name sent with the body
+     */
+    public FileRegionBody(File file, long offset, long length, ContentType contentType, String filename) {
+        super(contentType);
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("offset and length must not be negative");
+        }
+        this.file = file;
+        this.offset = offset;
+        this.length = length;
+        this.filename = filename;
+    }
+
+    @Override
+    public String getFilename() {
+        return filename;
+    }
+
+    @Override
+    public long getContentLength() {
+        return length;
+    }
+
+    @Override
+    public String getTransferEncoding() {
+        return "binary";
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long position = offset;
+            long end = offset + length;
+            while (position < end) {
+                long transferred = channel.transferTo(position, end - position, target);
+                if (transferred <= 0) {
+                    throw new IOException("Unexpected end of " + file + " at " + position + ", expected " + end);
+                }
+                position += transferred;
+            }
+        }
+        out.flush();
+    }
+}
@@ -16,14 +16,26 @@
  */
 package org.apache.sling.testing.clients.util;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import org.apache.sling.testing.clients.ClientException;
 import org.apache.sling.testing.clients.exceptions.TestingIOException;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 public class JsonUtils {
+
+    /**
+     * Shared mapper and reader, thread safe as long as the mapper is not reconfigured
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final ObjectReader READER = MAPPER.reader();
+
     /**
      * Get {@link JsonNode} from a a String containing JSON.
      *
@@ -33,10 +45,111 @@ public class JsonUtils {
      */
     public static JsonNode getJsonNodeFromString(String jsonString) throws TestingIOException {
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            return mapper.readTree(jsonString);
+            return MAPPER.readTree(jsonString);
+        } catch (IOException e) {
+            throw new TestingIOException("Could not read json node.", e);
+        }
+    }
+
+    /**
+     * Get {@link JsonNode} from a stream containing JSON, without reading the whole stream in a String first.
+     * The stream is closed after reading.
+     *
+     * @param stream A stream containing JSON
+     * @return A {@link JsonNode} that is the root node of the JSON structure.
+     * @throws TestingIOException if error occurs while reading the stream
+     * @since 3.2.0
+     */
+    public static JsonNode getJsonNodeFromStream(InputStream stream) throws TestingIOException {
+        try {
+            return MAPPER.readTree(stream);
         } catch (IOException e) {
             throw new TestingIOException("Could not read json node.", e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Binds the JSON content of a stream to an object of the given type, without building a tree first.
+     * The stream is closed after reading.
+     *
+     * @param stream A stream containing JSON
+     * @param type the type of the object to bind to
+     * @param <T> the type of the object
+     * @return the object
+     * @throws TestingIOException if error occurs while reading the stream
+     * @since 3.2.0
+     */
+    public static <T> T readValue(InputStream stream, Class<T> type) throws TestingIOException {
+        try {
+            return READER.forType(type).readValue(stream);
+        } catch (IOException e) {
+            throw new TestingIOException("Could not bind json to " + type.getName(), e);
+        }
+    }
+
+    /**
+     * Binds the JSON content of a string to an object of the given type
+     *
+     * @param jsonString A string containing JSON
+     * @param type the type of the object to bind to
+     * @param <T> the type of the object
+     * @return the object
+     * @throws TestingIOException if error occurs while reading json string
+     * @since 3.2.0
+     */
+    public static <T> T readValue(String jsonString, Class<T> type) throws TestingIOException {
+        try {
+            return READER.forType(type).readValue(jsonString);
+        } catch (IOException e) {
+            throw new TestingIOException("Could not bind json to " + type.getName(), e);
+        }
+    }
+
+    /**
+     * Creates a streaming {@link JsonParser} on a stream containing JSON. Closing the parser closes the stream.
+     *
+     * @param stream A stream containing JSON
+     * @return the parser, positioned before the first token
+     * @throws TestingIOException if the parser could not be created
+     * @since 3.2.0
+     */
+    public static JsonParser createParser(InputStream stream) throws TestingIOException {
+        try {
+            return MAPPER.getFactory().createParser(stream);
+        } catch (IOException e) {
+            throw new TestingIOException("Could not create json parser.", e);
+        }
+    }
+
+    /**
+     * Creates a streaming {@link JsonParser} on a string containing JSON
+     *
+     * @param jsonString A string containing JSON
+     * @return the parser, positioned before the first token
+     * @throws TestingIOException if the parser could not be created
+     * @since 3.2.0
+     */
+    public static JsonParser createParser(String jsonString) throws TestingIOException {
+        try {
+            return MAPPER.getFactory().createParser(jsonString);
+        } catch (IOException e) {
+            throw new TestingIOException("Could not create json parser.", e);
+        }
+    }
+
+    /**
+     * Writes an object, e.g. a {@link JsonNode}, as JSON to a stream. The stream is closed after writing.
+     *
+     * @param stream the stream to write to
+     * @param value the object to write
+     * @throws TestingIOException if error occurs while writing the stream
+     * @since 3.2.0
+     */
+    public static void writeValue(OutputStream stream, Object value) throws TestingIOException {
+        try {
+            MAPPER.writeValue(stream, value);
+        } catch (IOException e) {
+            throw new TestingIOException("Could not write json.", e);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Computes the delay before a retry of {@link ServerErrorRetryStrategy}
+ *
+ * @since 3.2.0
+ */
+@FunctionalInterface
+public interface RetryBackoff {
+
+    /**
+     * @param retry the number of the retry, starting at 1
+     * @return the delay before the retry, in milliseconds
+     */
+    long getDelay(int retry);
+
+    /**
+     * Waits the same delay before every retry
+     *
+     * @param delay the delay in milliseconds
+     * @return the backoff
+     */
+    static RetryBackoff fixed(final long delay) {
+        return retry -> delay;
+    }
+
+    /**
+     * <p>Exponential backoff with full jitter: waits a random delay between 0 and {@code baseDelay * 2^(retry - 1)},
+     * capped by {@code maxDelay}.</p>
+     *
+     * <p>The randomness spreads the retries of the clients failing at the same time, instead of
+     * hitting the server again all together.</p>
+     *
+     * @param baseDelay the upper bound of the first delay, in milliseconds
+     * @param maxDelay the upper bound of all the delays, in milliseconds
+     * @return the backoff
+     */
+    static RetryBackoff exponentialWithJitter(final long baseDelay, final long maxDelay) {
+        return retry -> {
+            int shift = Math.min(Math.max(retry - 1, 0), 30);
+            long bound = baseDelay > maxDelay >> shift ? maxDelay : baseDelay << shift;
+            return bound > 0 ? ThreadLocalRandom.current().nextLong(bound + 1) : 0;
+        };
+    }
+}
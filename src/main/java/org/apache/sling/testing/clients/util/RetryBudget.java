@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.util;
+
+import org.apache.http.annotation.Contract;
+import org.apache.http.annotation.ThreadingBehavior;
+
+/**
+ * <p>Caps the retries to a fraction of the requests. Every request adds {@code ratio} to the budget
+ * and every retry takes 1 from it, so when all the requests fail, at most {@code ratio} retries per request
+ * are made. The budget starts with, and never holds more than, {@code reserve} retries.</p>
+ *
+ * <p>The same budget can be shared by several {@link ServerErrorRetryStrategy}, so an overloaded server is not
+ * flooded with the retries of all the clients.</p>
+ *
+ * @since 3.2.0
+ */
+@Contract(threading = ThreadingBehavior.SAFE)
+public class RetryBudget {
+
+    private final double ratio;
+
+    private final double maxBalance;
+
+    private double balance;
+
+    private long requests;
+
+    private long retries;
+
+    private long rejected;
+
+    /**
+     * @param ratio the maximum ratio of retries to requests, e.g. 0.1 for 10%
+     * @param reserve the number of retries allowed in a row, before the ratio applies
+     */
+    public RetryBudget(double ratio, int reserve) {
+        if (ratio < 0 || reserve < 0) {
+            throw new IllegalArgumentException("ratio and reserve must not be negative");
+        }
+        this.ratio = ratio;
+        this.maxBalance = Math.max(reserve, 1);
+        this.balance = reserve;
+    }
+
+    /**
+     * Records a new request, i.e. its first execution
+     */
+    public synchronized void onRequest() {
+        requests++;
+        balance = Math.min(maxBalance, balance + ratio);
+    }
+
+    /**
+     * Takes a retry from the budget
+     *
+     * @return true if the retry is allowed
+     */
+    public synchronized boolean tryRetry() {
+        if (balance >= 1) {
+            balance -= 1;
+            retries++;
+            return true;
+        }
+        rejected++;
+        return false;
+    }
+
+    /**
+     * @return the maximum ratio of retries to requests
+     */
+    public double getRatio() {
+        return ratio;
+    }
+
+    /**
+     * @return the number of requests recorded
+     */
+    public synchronized long getRequestCount() {
+        return requests;
+    }
+
+    /**
+     * @return the number of retries allowed
+     */
+    public synchronized long getRetryCount() {
+        return retries;
+    }
+
+    /**
+     * @return the number of retries denied because the budget was exhausted
+     */
+    public synchronized long getRejectedCount() {
+        return rejected;
+    }
+}
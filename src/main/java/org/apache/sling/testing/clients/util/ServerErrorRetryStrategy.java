@@ -16,8 +16,11 @@
  */
 package org.apache.sling.testing.clients.util;
 
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.ServiceUnavailableRetryStrategy;
+import org.apache.http.client.utils.DateUtils;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 import org.apache.sling.testing.clients.SystemPropertiesConfig;
@@ -27,26 +30,78 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import static org.apache.http.HttpStatus.*;
 import static org.apache.sling.testing.Constants.EXPECTED_STATUS;
 
 /**
- * {code ServiceUnavailableRetryStrategy} strategy for retrying request in case of a 5XX response code
+ * <p>{code ServiceUnavailableRetryStrategy} strategy for retrying request in case of a 5XX response code</p>
+ *
+ * <p>The delay before each retry is given by a {@link RetryBackoff}, unless the response has a {@code Retry-After}
+ * header, which is then honored up to {@link SystemPropertiesConfig#getHttpRetriesMaxDelay()}.
+ * An optional {@link RetryBudget} caps the retries to a fraction of the requests.</p>
+ *
+ * <p>By default, the backoff and the budget are configured by the system properties, see
+ * {@link SystemPropertiesConfig#getHttpRetriesBackoff()} and {@link SystemPropertiesConfig#getHttpRetriesBudget()}.
+ * The default budget is shared by all the clients of the JVM.</p>
  */
 public class ServerErrorRetryStrategy implements ServiceUnavailableRetryStrategy {
 
     private static final Logger LOG = LoggerFactory.getLogger(ServerErrorRetryStrategy.class);
 
+    private static final ConcurrentMap<String, RetryBudget> SYSTEM_BUDGETS = new ConcurrentHashMap<>();
+
+    private final RetryBackoff backoff;
+
+    private final RetryBudget budget;
+
+    /**
+     * The interval computed by {@link #retryRequest(HttpResponse, int, HttpContext)}, read right after by
+     * {@link #getRetryInterval()} in the same thread
+     */
+    private final ThreadLocal<Long> retryInterval = new ThreadLocal<>();
+
+    private final ConcurrentMap<Integer, LongAdder> retriesPerStatus = new ConcurrentHashMap<>();
+
     public ServerErrorRetryStrategy() {
+        this(null, getSystemRetryBudget());
+    }
+
+    /**
+     * @param backoff the backoff between the retries, {@code null} to use the one configured by the system properties
+     * @param budget the retry budget, possibly shared with other strategies, {@code null} for no budget
+     * @since 3.2.0
+     */
+    public ServerErrorRetryStrategy(RetryBackoff backoff, RetryBudget budget) {
         super();
+        this.backoff = backoff;
+        this.budget = budget;
     }
 
     @Override
     public boolean retryRequest(final HttpResponse response, final int executionCount, final HttpContext context) {
+        if (budget != null && executionCount == 1) {
+            budget.onRequest();
+        }
+
         int[] expectedStatus = (int[]) context.getAttribute(EXPECTED_STATUS);
         boolean needsRetry = executionCount <= SystemPropertiesConfig.getHttpRetries() && responseRetryCondition(response, expectedStatus);
 
+        if (needsRetry && budget != null && !budget.tryRetry()) {
+            LOG.debug("Retry budget exhausted, not retrying");
+            needsRetry = false;
+        }
+        if (needsRetry) {
+            retriesPerStatus.computeIfAbsent(response.getStatusLine().getStatusCode(), k -> new LongAdder()).increment();
+            retryInterval.set(computeRetryInterval(response, executionCount));
+        }
+
         if (SystemPropertiesConfig.isHttpLogRetries() && needsRetry && LOG.isWarnEnabled()) {
             LOG.warn("Request retry needed due to service unavailable response");
             LOG.warn("Response headers contained:");
@@ -63,7 +118,80 @@ public class ServerErrorRetryStrategy implements ServiceUnavailableRetryStrategy
 
     @Override
     public long getRetryInterval() {
-        return SystemPropertiesConfig.getHttpRetriesDelay();
+        Long interval = retryInterval.get();
+        retryInterval.remove();
+        return interval != null ? interval : getBackoff().getDelay(1);
+    }
+
+    /**
+     * @return the number of retries per status code of the response that triggered them
+     * @since 3.2.0
+     */
+    public Map<Integer, Long> getRetryCounts() {
+        Map<Integer, Long> counts = new TreeMap<>();
+        retriesPerStatus.forEach((status, count) -> counts.put(status, count.sum()));
+        return counts;
+    }
+
+    /**
+     * @return the total number of retries
+     * @since 3.2.0
+     */
+    public long getRetryCount() {
+        return retriesPerStatus.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    /**
+     * @return the retry budget or {@code null} if the retries are only limited by {@link SystemPropertiesConfig#getHttpRetries()}
+     * @since 3.2.0
+     */
+    public RetryBudget getRetryBudget() {
+        return budget;
+    }
+
+    private long computeRetryInterval(final HttpResponse response, final int executionCount) {
+        long maxDelay = SystemPropertiesConfig.getHttpRetriesMaxDelay();
+        long retryAfter = getRetryAfter(response);
+        long delay = retryAfter >= 0 ? retryAfter : getBackoff().getDelay(executionCount);
+        return Math.min(delay, maxDelay);
+    }
+
+    private RetryBackoff getBackoff() {
+        if (backoff != null) {
+            return backoff;
+        }
+        long delay = SystemPropertiesConfig.getHttpRetriesDelay();
+        return "exponential".equalsIgnoreCase(SystemPropertiesConfig.getHttpRetriesBackoff())
+                ? RetryBackoff.exponentialWithJitter(delay, SystemPropertiesConfig.getHttpRetriesMaxDelay())
+                : RetryBackoff.fixed(delay);
+    }
+
+    /**
+     * Parses the {@code Retry-After} header, either a number of seconds or an http date
+     *
+     * @return the delay in milliseconds or -1 if the header is absent or invalid
+     */
+    static long getRetryAfter(final HttpResponse response) {
+        Header header = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+        if (header == null || header.getValue() == null) {
+            return -1;
+        }
+        String value = header.getValue().trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            Date date = DateUtils.parseDate(value);
+            return date != null ? Math.max(0, date.getTime() - System.currentTimeMillis()) : -1;
+        }
+    }
+
+    private static RetryBudget getSystemRetryBudget() {
+        double ratio = SystemPropertiesConfig.getHttpRetriesBudget();
+        if (ratio <= 0) {
+            return null;
+        }
+        int reserve = SystemPropertiesConfig.getHttpRetriesBudgetReserve();
+        return SYSTEM_BUDGETS.computeIfAbsent(ratio + "/" + reserve, k -> new RetryBudget(ratio, reserve));
     }
 
     private boolean responseRetryCondition(final HttpResponse response, int... expectedStatus) {
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.entity.StringEntity;
+import org.apache.sling.testing.clients.exceptions.TestingIOException;
+import org.apache.sling.testing.clients.exceptions.TestingValidationException;
+import org.apache.sling.testing.clients.util.FormEntityBuilder;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SlingClientAsyncTest {
+    private static final String GET_PATH = "/test/async/get";
+    private static final String POST_PATH = "/test/async/post";
+    private static final String BLOCKED_PATH = "/test/async/blocked";
+    private static final String GET_RESPONSE = "TEST_GET";
+    private static final String POST_RESPONSE = "TEST_POST";
+
+    private static final CountDownLatch UNBLOCK = new CountDownLatch(1);
+
+    @ClassRule
+    public static HttpServerRule httpServer = new HttpServerRule() {
+        @Override
+        protected void registerHandlers() throws IOException {
+            serverBootstrap.registerHandler(GET_PATH, (request, response, context) -> {
+                response.setEntity(new StringEntity(GET_RESPONSE));
+            });
+            serverBootstrap.registerHandler(POST_PATH, (request, response, context) -> {
+                response.setEntity(new StringEntity(POST_RESPONSE));
+                response.setStatusCode(201);
+            });
+            serverBootstrap.registerHandler(BLOCKED_PATH, (request, response, context) -> {
+                try {
+                    UNBLOCK.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                response.setEntity(new StringEntity(GET_RESPONSE));
+            });
+        }
+    };
+
+    @Test
+    public void testDoGetAsync() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        List<CompletableFuture<SlingHttpResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(c.doGetAsync(GET_PATH, 200));
+        }
+        for (CompletableFuture<SlingHttpResponse> future : futures) {
+            assertEquals(GET_RESPONSE, future.get().getContent());
+        }
+    }
+
+    @Test
+    public void testDoPostAsync() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        SlingHttpResponse response = c.doPostAsync(POST_PATH, FormEntityBuilder.create().build(), 201).get();
+        assertEquals(POST_RESPONSE, response.getContent());
+    }
+
+    @Test
+    public void testUnexpectedStatusCompletesExceptionally() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        try {
+            c.doGetAsync(GET_PATH, 404).get();
+            fail("Expected the future to complete exceptionally");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TestingValidationException);
+        }
+    }
+
+    @Test
+    public void testCustomExecutor() throws Exception {
+        AtomicInteger executed = new AtomicInteger();
+        Executor executor = r -> {
+            executed.incrementAndGet();
+            new Thread(r).start();
+        };
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass").setAsyncExecutor(executor).build();
+        assertEquals(GET_RESPONSE, c.doGetAsync(GET_PATH, 200).get().getContent());
+        assertEquals(1, executed.get());
+    }
+
+    @Test
+    public void testRequestsAreNeverExecutedByTheCaller() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        int count = 2 * SystemPropertiesConfig.getHttpMaxConnTotal() + 1;
+        List<CompletableFuture<SlingHttpResponse>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < count; i++) {
+                // would block until the server is unblocked if the caller executed the request
+                futures.add(c.doGetAsync(BLOCKED_PATH, 200));
+            }
+            for (CompletableFuture<SlingHttpResponse> future : futures) {
+                assertFalse(future.isDone());
+            }
+        } finally {
+            UNBLOCK.countDown();
+        }
+        for (CompletableFuture<SlingHttpResponse> future : futures) {
+            assertEquals(GET_RESPONSE, future.get().getContent());
+        }
+    }
+
+    @Test
+    public void testRejectedRequestCompletesExceptionally() throws Exception {
+        Executor executor = r -> {
+            throw new RejectedExecutionException("rejected");
+        };
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass").setAsyncExecutor(executor).build();
+        try {
+            c.doGetAsync(GET_PATH, 200).get();
+            fail("Expected the future to complete exceptionally");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TestingIOException);
+            assertTrue(e.getCause().getCause() instanceof RejectedExecutionException);
+        }
+    }
+}
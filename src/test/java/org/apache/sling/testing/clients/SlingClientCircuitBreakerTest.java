@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.entity.StringEntity;
+import org.apache.sling.testing.clients.exceptions.TestingCircuitOpenException;
+import org.apache.sling.testing.clients.exceptions.TestingIOException;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SlingClientCircuitBreakerTest {
+    private static final String UNAVAILABLE_PATH = "/test/circuit/unavailable";
+    private static final String OK_PATH = "/test/circuit/ok";
+
+    private static final AtomicInteger requestCount = new AtomicInteger();
+
+    @ClassRule
+    public static HttpServerRule httpServer = new HttpServerRule() {
+        @Override
+        protected void registerHandlers() throws IOException {
+            serverBootstrap.registerHandler(UNAVAILABLE_PATH, (request, response, context) -> {
+                requestCount.incrementAndGet();
+                response.setStatusCode(503);
+            });
+            serverBootstrap.registerHandler(OK_PATH, (request, response, context) -> {
+                requestCount.incrementAndGet();
+                response.setEntity(new StringEntity("ok"));
+            });
+        }
+    };
+
+    @Test
+    public void testOpensAndFailsFast() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(2, 60000);
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setCircuitBreaker(breaker)
+                .build();
+        HttpHost host = URIUtils.extractHost(httpServer.getURI());
+        requestCount.set(0);
+
+        // 503 is expected, so it is not retried, but it still counts as a failure
+        c.doGet(UNAVAILABLE_PATH, 503);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(host));
+        c.doGet(UNAVAILABLE_PATH, 503);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(host));
+
+        try {
+            c.doGet(OK_PATH, 200);
+            fail("Expected TestingCircuitOpenException");
+        } catch (TestingCircuitOpenException e) {
+            assertEquals(host, e.getHost());
+        }
+        assertEquals(2, requestCount.get());
+        assertEquals(1, breaker.getRejectedCount());
+    }
+
+    @Test
+    public void testRawRequests() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(2, 60000);
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setCircuitBreaker(breaker)
+                .build();
+        HttpHost host = URIUtils.extractHost(httpServer.getURI());
+        requestCount.set(0);
+
+        c.doRawRequest("GET", UNAVAILABLE_PATH, null, 503).close();
+        c.doRawRequest("GET", UNAVAILABLE_PATH, null, 503).close();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(host));
+
+        try {
+            c.doRawRequest("GET", OK_PATH, null, 200);
+            fail("Expected TestingCircuitOpenException");
+        } catch (TestingCircuitOpenException e) {
+            assertEquals(host, e.getHost());
+        }
+        assertEquals(2, requestCount.get());
+    }
+
+    @Test
+    public void testHalfOpenProbe() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(1, 100);
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setCircuitBreaker(breaker)
+                .build();
+        HttpHost host = URIUtils.extractHost(httpServer.getURI());
+
+        c.doGet(UNAVAILABLE_PATH, 503);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(host));
+        Thread.sleep(150);
+
+        // the probe fails, the circuit opens again
+        c.doGet(UNAVAILABLE_PATH, 503);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(host));
+        Thread.sleep(150);
+
+        // the probe succeeds, the circuit closes
+        assertEquals("ok", c.doGet(OK_PATH, 200).getContent());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(host));
+    }
+
+    @Test
+    public void testSingleProbeInHalfOpenState() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0);
+        HttpHost host = new HttpHost("localhost", 1234);
+        breaker.onFailure(host);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(host));
+
+        breaker.acquirePermission(host, null);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(host));
+        try {
+            breaker.acquirePermission(host, null);
+            fail("Expected TestingCircuitOpenException");
+        } catch (TestingCircuitOpenException e) {
+            // only one probe at a time
+        }
+        breaker.onResponse(host, 200, 0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(host));
+    }
+
+    @Test
+    public void testConnectionFailures() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        CircuitBreaker breaker = new CircuitBreaker(1, 60000);
+        SlingClient c = SlingClient.Builder.create(URI.create("http://localhost:" + port + "/"), "user", "pass")
+                .setCircuitBreaker(breaker)
+                .build();
+
+        try {
+            c.doGet(OK_PATH, 200);
+            fail("Expected TestingIOException");
+        } catch (TestingIOException e) {
+            assertFalse(e instanceof TestingCircuitOpenException);
+        }
+        try {
+            c.doGet(OK_PATH, 200);
+            fail("Expected TestingCircuitOpenException");
+        } catch (TestingCircuitOpenException e) {
+            assertTrue(e.getMessage().contains(String.valueOf(port)));
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.sling.testing.clients.exceptions.TestingValidationException;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SlingClientContentCaptureTest {
+    private static final String LARGE_PATH = "/test/capture/large";
+    private static final String SMALL_PATH = "/test/capture/small";
+    private static final String BINARY_PATH = "/test/capture/binary";
+    private static final byte[] BINARY_CONTENT = {0, (byte) 0xff, (byte) 0xc3, 0x28, 42, (byte) 0x80};
+    private static final String LARGE_CONTENT;
+
+    static {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            sb.append("line ").append(i).append(" éè\n");
+        }
+        sb.append("THE-END");
+        LARGE_CONTENT = sb.toString();
+    }
+
+    @ClassRule
+    public static HttpServerRule httpServer = new HttpServerRule() {
+        @Override
+        protected void registerHandlers() throws IOException {
+            serverBootstrap.registerHandler(LARGE_PATH, (request, response, context) -> {
+                response.setEntity(new StringEntity(LARGE_CONTENT, ContentType.create("text/plain", "UTF-8")));
+            });
+            serverBootstrap.registerHandler(SMALL_PATH, (request, response, context) -> {
+                response.setEntity(new StringEntity("small"));
+            });
+            serverBootstrap.registerHandler(BINARY_PATH, (request, response, context) -> {
+                response.setEntity(new ByteArrayEntity(BINARY_CONTENT, ContentType.APPLICATION_OCTET_STREAM));
+            });
+        }
+    };
+
+    @Test
+    public void testLargeContentIsSpilled() throws Exception {
+        Path dir = Files.createTempDirectory("capture-test");
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setContentCapturePolicy(ContentCapturePolicy.spillToDisk(1024, dir))
+                .build();
+
+        SlingHttpResponse response = c.doGet(LARGE_PATH, 200);
+        assertTrue(response.isContentSpilled());
+        assertEquals(1, countFiles(dir));
+        assertEquals(0, c.getPoolStats().getLeased());
+
+        response.checkContentContains("line 0 éè", "line 9999", "THE-END");
+        response.checkContentRegexp("^line 5000 .*$");
+        try {
+            response.checkContentContains("missing");
+            fail("Expected TestingValidationException");
+        } catch (TestingValidationException e) {
+            assertTrue(e.getMessage().length() < 10000);
+        }
+
+        assertEquals(LARGE_CONTENT, response.getContent());
+        try (InputStream in = response.getContentStream()) {
+            long count = 0;
+            while (in.read() != -1) {
+                count++;
+            }
+            assertEquals(LARGE_CONTENT.getBytes("UTF-8").length, count);
+        }
+
+        response.close();
+        assertEquals(0, countFiles(dir));
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testUnclosedSpilledContentIsDeleted() throws Exception {
+        Path dir = Files.createTempDirectory("capture-test");
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setContentCapturePolicy(ContentCapturePolicy.spillToDisk(1024, dir))
+                .build();
+
+        assertTrue(c.doGet(LARGE_PATH, 200).isContentSpilled());
+        long deadline = System.currentTimeMillis() + 10000;
+        SlingHttpResponse last;
+        do {
+            System.gc();
+            // the files of the collected responses are deleted when the next one is spilled
+            last = c.doGet(LARGE_PATH, 200);
+        } while (countFiles(dir) > 1 && System.currentTimeMillis() < deadline);
+        assertEquals(1, countFiles(dir));
+
+        last.close();
+        assertEquals(0, countFiles(dir));
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testUnclosedPooledContentIsReleased() throws Exception {
+        ContentBufferPool pool = new ContentBufferPool(1024, 2);
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setContentCapturePolicy(ContentCapturePolicy.pooled(pool))
+                .build();
+
+        c.doGet(BINARY_PATH, 200);
+        c.doGet(BINARY_PATH, 200);
+        assertFalse(c.doGet(BINARY_PATH, 200).getContentAsByteBuffer().isDirect());
+        assertEquals(1, pool.getMisses());
+
+        long deadline = System.currentTimeMillis() + 10000;
+        SlingHttpResponse last;
+        do {
+            System.gc();
+            // the buffers of the collected responses go back to the pool before the next capture
+            last = c.doGet(BINARY_PATH, 200);
+        } while (!last.getContentAsByteBuffer().isDirect() && System.currentTimeMillis() < deadline);
+        assertTrue(last.getContentAsByteBuffer().isDirect());
+        assertArrayEquals(BINARY_CONTENT, last.getContentBytes());
+        assertEquals(2, pool.getAllocated());
+    }
+
+    @Test
+    public void testSmallContentStaysInMemory() throws Exception {
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setContentCapturePolicy(ContentCapturePolicy.spillToDisk(1024))
+                .build();
+
+        SlingHttpResponse response = c.doGet(SMALL_PATH, 200);
+        assertFalse(response.isContentSpilled());
+        assertEquals("small", response.getContent());
+        response.checkContentContains("small");
+    }
+
+    @Test
+    public void testInMemoryByDefault() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        SlingHttpResponse response = c.doGet(LARGE_PATH, 200);
+        assertFalse(response.isContentSpilled());
+        assertEquals(LARGE_CONTENT, response.getContent());
+    }
+
+    @Test
+    public void testContentBytes() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        SlingHttpResponse response = c.doStreamGet(BINARY_PATH, null, null, 200);
+        assertArrayEquals(BINARY_CONTENT, response.getContentBytes());
+        assertArrayEquals(BINARY_CONTENT, response.getContentBytes());
+        assertEquals(BINARY_CONTENT.length, response.getContentAsByteBuffer().remaining());
+        assertEquals(0, c.getPoolStats().getLeased());
+    }
+
+    @Test
+    public void testPooledBuffers() throws Exception {
+        ContentBufferPool pool = new ContentBufferPool(1024, 2);
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setContentCapturePolicy(ContentCapturePolicy.pooled(pool))
+                .build();
+
+        for (int i = 0; i < 5; i++) {
+            try (SlingHttpResponse response = c.doGet(BINARY_PATH, 200)) {
+                ByteBuffer buffer = response.getContentAsByteBuffer();
+                assertTrue(buffer.isDirect());
+                assertTrue(buffer.isReadOnly());
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                assertArrayEquals(BINARY_CONTENT, bytes);
+                assertArrayEquals(BINARY_CONTENT, response.getContentBytes());
+                assertEquals(0, pool.getAvailable());
+            }
+            assertEquals(1, pool.getAvailable());
+        }
+        assertEquals(1, pool.getAllocated());
+
+        // too large for the pooled buffers
+        SlingHttpResponse large = c.doGet(LARGE_PATH, 200);
+        assertEquals(LARGE_CONTENT, large.getContent());
+        assertEquals(1, pool.getAvailable());
+
+        SlingHttpResponse small = c.doGet(SMALL_PATH, 200);
+        small.close();
+        try {
+            small.getContentBytes();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    private static int countFiles(Path dir) {
+        File[] files = dir.toFile().listFiles();
+        return files != null ? files.length : 0;
+    }
+}
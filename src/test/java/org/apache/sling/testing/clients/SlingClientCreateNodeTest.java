@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SlingClientCreateNodeTest {
+
+    /**
+     * Path to primary type of the nodes of the fake repository
+     */
+    private static final Map<String, String> nodes = new ConcurrentHashMap<>();
+
+    /**
+     * The existing paths the user cannot read
+     */
+    private static final Set<String> unreadable = ConcurrentHashMap.newKeySet();
+
+    private static final AtomicInteger gets = new AtomicInteger();
+
+    private static final AtomicInteger posts = new AtomicInteger();
+
+    @ClassRule
+    public static HttpServerRule httpServer = new HttpServerRule() {
+        @Override
+        protected void registerHandlers() throws IOException {
+            serverBootstrap.registerHandler("*", (request, response, context) -> {
+                String path = request.getRequestLine().getUri();
+                if ("GET".equals(request.getRequestLine().getMethod())) {
+                    gets.incrementAndGet();
+                    String nodePath = path.substring(0, path.length() - ".json".length());
+                    boolean readable = nodes.containsKey(nodePath) && !unreadable.contains(nodePath);
+                    response.setStatusCode(readable || "/".equals(nodePath) ? 200 : 404);
+                    response.setEntity(new StringEntity("{}"));
+                    return;
+                }
+                posts.incrementAndGet();
+                String parent = path.endsWith("/") ? path : path + "/";
+                String body = EntityUtils.toString(((HttpEntityEnclosingRequest) request).getEntity());
+                List<NameValuePair> params = URLEncodedUtils.parse(body, StandardCharsets.UTF_8);
+                for (NameValuePair param : params) {
+                    if (param.getName().endsWith(":operation") && "delete".equals(param.getValue())) {
+                        nodes.keySet().removeIf(p -> p.equals(path) || p.startsWith(path + "/"));
+                    } else if (param.getName().endsWith("/jcr:primaryType")) {
+                        String relative = param.getName().substring(0, param.getName().length() - "/jcr:primaryType".length());
+                        nodes.put(parent + relative, param.getValue());
+                    }
+                }
+                response.setStatusCode(201);
+            });
+        }
+    };
+
+    @Before
+    public void reset() {
+        nodes.clear();
+        nodes.put("/a", "sling:Folder");
+        unreadable.clear();
+        gets.set(0);
+        posts.set(0);
+    }
+
+    @Test
+    public void testCreatesMissingLevelsInOneRequest() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        assertNotNull(c.createNodeRecursive("/a/b/c/d/e/f", "sling:OrderedFolder"));
+
+        assertEquals(1, posts.get());
+        assertEquals(6, gets.get());
+        for (String path : new String[] {"/a/b", "/a/b/c", "/a/b/c/d", "/a/b/c/d/e", "/a/b/c/d/e/f"}) {
+            assertEquals(path, "sling:OrderedFolder", nodes.get(path));
+        }
+        // the existing node is not touched
+        assertEquals("sling:Folder", nodes.get("/a"));
+
+        // already there
+        assertNull(c.createNodeRecursive("/a/b/c/d/e/f/", "sling:OrderedFolder"));
+        assertEquals(1, posts.get());
+    }
+
+    @Test
+    public void testKeepsNodesBelowUnreadableAncestor() throws Exception {
+        nodes.put("/a/b", "rep:Unstructured");
+        nodes.put("/a/b/c", "sling:Folder");
+        unreadable.add("/a/b");
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        assertNotNull(c.createNodeRecursive("/a/b/c/d", "nt:unstructured"));
+
+        assertEquals("nt:unstructured", nodes.get("/a/b/c/d"));
+        assertEquals("sling:Folder", nodes.get("/a/b/c"));
+        assertEquals("rep:Unstructured", nodes.get("/a/b"));
+        assertEquals(2, gets.get());
+    }
+
+    @Test
+    public void testCreatesFromRoot() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        c.createNodeRecursive("/x/y", null);
+        assertEquals(SlingClient.DEFAULT_NODE_TYPE, nodes.get("/x"));
+        assertEquals(SlingClient.DEFAULT_NODE_TYPE, nodes.get("/x/y"));
+    }
+
+    @Test
+    public void testKnownPathsSkipChecks() throws Exception {
+        KnownPaths knownPaths = new KnownPaths();
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setKnownPaths(knownPaths)
+                .build();
+        c.createNodeRecursive("/a/b/c", "nt:unstructured");
+        assertTrue(knownPaths.contains("/a/b/c"));
+        gets.set(0);
+        posts.set(0);
+
+        // the fixture is built again: nothing is checked nor created
+        assertNull(c.createNodeRecursive("/a/b/c", "nt:unstructured"));
+        assertNull(c.createNode("/a/b", "nt:unstructured"));
+        assertEquals(0, gets.get());
+
+        // only the missing level is checked and created
+        c.createNodeRecursive("/a/b/c/d", "nt:unstructured");
+        assertEquals(1, gets.get());
+        assertEquals(1, posts.get());
+
+        // deleting forgets the path and its descendants
+        c.deletePath("/a/b", 201);
+        assertFalse(knownPaths.contains("/a/b/c/d"));
+        assertTrue(knownPaths.contains("/a"));
+        c.createNodeRecursive("/a/b/c", "nt:unstructured");
+        assertEquals("nt:unstructured", nodes.get("/a/b/c"));
+    }
+
+    @Test
+    public void testExistsKeepsKnownDescendants() throws Exception {
+        KnownPaths knownPaths = new KnownPaths();
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setKnownPaths(knownPaths)
+                .build();
+        c.createNodeRecursive("/a/b/c", "nt:unstructured");
+        unreadable.add("/a/b");
+
+        assertFalse(c.exists("/a/b"));
+        assertTrue(knownPaths.contains("/a/b/c"));
+        assertTrue(c.exists("/a/b/c"));
+        assertTrue(knownPaths.contains("/a/b/c"));
+    }
+}
@@ -16,6 +16,8 @@
  */
 package org.apache.sling.testing.clients;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import org.apache.http.HttpException;
 import org.apache.http.HttpRequest;
@@ -27,8 +29,10 @@ import org.junit.ClassRule;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class SlingClientDoGetJsonTest {
     private static final String GET_JSON_PATH = "/test/json/resource";
@@ -68,4 +72,34 @@ public class SlingClientDoGetJsonTest {
         JsonNode res = c.doGetJson(GET_JSON_PATH, -1, 200);
         assertEquals("admin-infinity", res.get("jcr:createdBy").textValue());
     }
+
+    @Test
+    public void testDoGetJsonTyped() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        Map<?, ?> res = c.doGetJson(GET_JSON_PATH, 1, Map.class, 200);
+        assertEquals("admin-json", res.get("jcr:createdBy"));
+        // the connection was released
+        assertEquals(0, c.getPoolStats().getLeased());
+    }
+
+    @Test
+    public void testJsonParser() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        SlingHttpResponse response = c.doStreamGet(GET_JSON_PATH + ".infinity.json", null, null, 200);
+        try (JsonParser parser = response.getJsonParser()) {
+            assertEquals(JsonToken.START_OBJECT, parser.nextToken());
+            assertEquals(JsonToken.FIELD_NAME, parser.nextToken());
+            assertEquals("jcr:primaryType", parser.getCurrentName());
+        }
+        assertTrue(response.isConsumed());
+        assertEquals(0, c.getPoolStats().getLeased());
+    }
+
+    @Test
+    public void testJsonNodeFromCachedContent() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        SlingHttpResponse response = c.doGet(GET_JSON_PATH + ".1.json", 200);
+        assertEquals("admin-json", response.getJsonNode().get("jcr:createdBy").textValue());
+        assertEquals(JSON_RESPONSE, response.getContent());
+    }
 }
@@ -17,10 +17,16 @@
 package org.apache.sling.testing.clients;
 
 import java.io.IOException;
+import java.util.Collections;
+
+import org.apache.http.Header;
 import org.apache.http.HttpException;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHeader;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.HttpRequestHandler;
 import org.apache.sling.testing.clients.util.FormEntityBuilder;
@@ -28,10 +34,24 @@ import org.junit.ClassRule;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 public class SlingClientDoPostTest {
     private static final String POST_PATH = "/test/a/b/c";
     private static final String HTML_RESPONSE = "<div id=\"Path\">/a/b/c</div>";
+    private static final String FULL_POST_PATH = "/test/full";
+    private static final String FULL_HTML_RESPONSE = "<html><body><table>"
+            + "<tr><td>Status</td><td><div id=\"Status\">201</div></td></tr>"
+            + "<tr><td>Message</td><td><div id=\"Message\">Created</div></td></tr>"
+            + "<tr><td>Location</td><td><a href=\"/a/b/c\" id=\"Location\">/a/b/c</a></td></tr>"
+            + "<tr><td>Parent Location</td><td><a href=\"/a/b\" id=\"ParentLocation\">/a/b</a></td></tr>"
+            + "<tr><td>Path</td><td><div id=\"Path\">/a/b/c</div></td></tr>"
+            + "<tr><td>Referer</td><td><a href=\"\" id=\"Referer\"></a></td></tr>"
+            + "<tr><td>ChangeLog</td><td><div id=\"ChangeLog\">&lt;pre&gt;created(&quot;/a/b/c&quot;);&lt;/pre&gt;</div></td></tr>"
+            + "</table></body></html>";
+    private static final String JSON_RESPONSE = "{\"changes\":[{\"type\":\"created\",\"argument\":\"/a/b/c\"}],"
+            + "\"path\":\"/a/b/c\",\"location\":\"/a/b/c\",\"parentLocation\":\"/a/b\",\"status.code\":201,"
+            + "\"status.message\":\"Created\",\"title\":\"Content created /a/b/c\",\"referer\":\"\"}";
 
     @ClassRule
     public static HttpServerRule httpServer = new HttpServerRule() {
@@ -43,6 +63,14 @@ public class SlingClientDoPostTest {
                     response.setEntity(new StringEntity(HTML_RESPONSE));
                 }
             });
+            serverBootstrap.registerHandler(FULL_POST_PATH, (request, response, context) -> {
+                Header accept = request.getFirstHeader("Accept");
+                if (accept != null && accept.getValue().contains("application/json")) {
+                    response.setEntity(new StringEntity(JSON_RESPONSE, ContentType.APPLICATION_JSON));
+                } else {
+                    response.setEntity(new StringEntity(FULL_HTML_RESPONSE, ContentType.TEXT_HTML));
+                }
+            });
         }
     };
 
@@ -53,4 +81,49 @@ public class SlingClientDoPostTest {
         assertEquals("/a/b/c", res.getSlingPath());
     }
 
+    @Test
+    public void testSlingFieldsFromHtml() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        SlingHttpResponse res = c.doPost(FULL_POST_PATH, FormEntityBuilder.create().build(), 200);
+        assertEquals(201, res.getSlingStatusAsInt());
+        assertEquals("Created", res.getSlingMessage());
+        assertEquals("/a/b/c", res.getSlingLocation());
+        assertEquals("/a/b", res.getSlingParentLocation());
+        assertEquals("/a/b/c", res.getSlingPath());
+        assertEquals("", res.getSlingReferer());
+        assertEquals("&lt;pre&gt;created(&quot;/a/b/c&quot;);&lt;/pre&gt;", res.getSlingChangeLog());
+        // same values as the former extraction
+        assertEquals("/a/b/c", res.extractFromHTMLResponse("href=\"/a/b/c\""));
+        assertNull(res.getSlingField("Missing"));
+    }
+
+    @Test
+    public void testOverriddenHtmlExtraction() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        SlingHttpResponse res = new SlingHttpResponse(c.doStreamRequest(new HttpPost(c.getUrl(FULL_POST_PATH)), null, 200)) {
+            @Override
+            protected String extractFromHTMLResponse(String searchPattern) {
+                return searchPattern.equals("id=\"Path\"") ? "/overridden" : super.extractFromHTMLResponse(searchPattern);
+            }
+        };
+        assertEquals("/overridden", res.getSlingPath());
+        assertEquals("Created", res.getSlingMessage());
+    }
+
+    @Test
+    public void testSlingFieldsFromJson() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        SlingHttpResponse res = c.doPost(FULL_POST_PATH, FormEntityBuilder.create().build(),
+                Collections.<Header>singletonList(new BasicHeader("Accept", "application/json")), 200);
+        assertEquals(201, res.getSlingStatusAsInt());
+        assertEquals("Created", res.getSlingMessage());
+        assertEquals("/a/b/c", res.getSlingLocation());
+        assertEquals("/a/b", res.getSlingParentLocation());
+        assertEquals("/a/b/c", res.getSlingPath());
+        assertEquals("", res.getSlingReferer());
+        assertEquals("[{\"type\":\"created\",\"argument\":\"/a/b/c\"}]", res.getSlingChangeLog());
+        // the content is still available
+        assertEquals(JSON_RESPONSE, res.getContent());
+    }
+
 }
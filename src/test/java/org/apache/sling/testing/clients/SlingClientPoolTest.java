@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.sling.testing.clients.interceptors.RateLimitInterceptor;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SlingClientPoolTest {
+    private static final String GET_PATH = "/test/pool/get";
+
+    @ClassRule
+    public static HttpServerRule httpServer = new HttpServerRule() {
+        @Override
+        protected void registerHandlers() throws IOException {
+            serverBootstrap.registerHandler(GET_PATH, (request, response, context) -> {
+                response.setEntity(new StringEntity("OK"));
+            });
+        }
+    };
+
+    @Test
+    public void testDefaultPoolSettings() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        PoolStats stats = c.getPoolStats();
+        assertNotNull(stats);
+        assertEquals(SystemPropertiesConfig.getHttpMaxConnTotal(), stats.getMax());
+    }
+
+    @Test
+    public void testCustomPoolSettings() throws Exception {
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setMaxConnPerRoute(3)
+                .setMaxConnTotal(7)
+                .build();
+        c.doGet(GET_PATH, 200);
+
+        assertEquals(7, c.getPoolStats().getMax());
+        Map<HttpRoute, PoolStats> routeStats = c.getRoutePoolStats();
+        assertEquals(1, routeStats.size());
+        PoolStats stats = routeStats.values().iterator().next();
+        assertEquals(3, stats.getMax());
+        assertEquals(0, stats.getLeased());
+        assertEquals(1, stats.getAvailable());
+    }
+
+    @Test
+    public void testCustomConnectionManager() throws Exception {
+        PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager();
+        cm.setMaxTotal(5);
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setConnectionManager(cm)
+                .build();
+        c.doGet(GET_PATH, 200);
+
+        assertEquals(5, c.getPoolStats().getMax());
+    }
+
+    @Test
+    public void testAdaptedClientSharesPool() throws Exception {
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass").build();
+        SlingClient adapted = c.adaptTo(SlingClient.class);
+        adapted.doGet(GET_PATH, 200);
+        assertTrue(c.getPoolStats().getAvailable() > 0);
+    }
+
+    @Test
+    public void testConnectionManagerOfHttpClientBuilder() throws Exception {
+        PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager();
+        cm.setMaxTotal(5);
+        SlingClient.Builder builder = SlingClient.Builder.create(httpServer.getURI(), "user", "pass");
+        builder.httpClientBuilder().setConnectionManager(cm);
+        SlingClient c = builder.build();
+        c.doGet(GET_PATH, 200);
+
+        assertEquals(5, c.getPoolStats().getMax());
+        assertEquals(1, cm.getTotalStats().getAvailable());
+    }
+
+    @Test
+    public void testPoolSettingsOfHttpClientBuilder() throws Exception {
+        SlingClient.Builder builder = SlingClient.Builder.create(httpServer.getURI(), "user", "pass");
+        builder.httpClientBuilder().setMaxConnTotal(9);
+        SlingClient c = builder.build();
+        c.doGet(GET_PATH, 200);
+
+        // the pool is created by the HttpClientBuilder itself
+        assertNull(c.getPoolStats());
+    }
+
+    @Test
+    public void testBuildTwice() throws Exception {
+        AtomicInteger reservations = new AtomicInteger();
+        RateLimitInterceptor rateLimiter = new RateLimitInterceptor(1000, 100, 0, 1) {
+            @Override
+            public long reserve(HttpHost host) {
+                reservations.incrementAndGet();
+                return super.reserve(host);
+            }
+        };
+        SlingClient.InternalBuilder<SlingClient> builder = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setRateLimiter(rateLimiter);
+        SlingClient first = builder.build();
+        SlingClient second = builder.build();
+        second.doGet(GET_PATH, 200);
+
+        assertEquals(1, reservations.get());
+        assertTrue(first.getPoolStats() != second.getPoolStats());
+        assertEquals(0, first.getPoolStats().getAvailable());
+        assertEquals(1, second.getPoolStats().getAvailable());
+    }
+}
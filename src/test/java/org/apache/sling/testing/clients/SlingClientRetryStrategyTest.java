@@ -17,6 +17,9 @@
 package org.apache.sling.testing.clients;
 
 import org.apache.http.entity.StringEntity;
+import org.apache.sling.testing.clients.util.RetryBackoff;
+import org.apache.sling.testing.clients.util.RetryBudget;
+import org.apache.sling.testing.clients.util.ServerErrorRetryStrategy;
 import org.hamcrest.CoreMatchers;
 import org.junit.ClassRule;
 import org.junit.Test;
@@ -27,12 +30,14 @@ import static org.apache.sling.testing.clients.SystemPropertiesConfig.CONFIG_PRO
 import static org.apache.sling.testing.clients.SystemPropertiesConfig.HTTP_RETRIES_ERROR_CODES_PROP;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 public class SlingClientRetryStrategyTest {
     private static final String GET_UNAVAILABLE_PATH = "/test/unavailable/resource";
     private static final String GET_INEXISTENT_PATH = "/test/inexistent/resource";
     private static final String GET_INTERNAL_ERROR_PATH = "/test/internalerror/resource";
     private static final String GET_505_PATH = "/test/unsupportedversion/resource";
+    private static final String GET_RETRY_AFTER_PATH = "/test/retryafter/resource";
     private static final String NOK_RESPONSE = "TEST_NOK";
     private static final String OK_RESPONSE = "TEST_OK";
 
@@ -80,6 +85,18 @@ public class SlingClientRetryStrategyTest {
                 response.setStatusCode(404);
             });
 
+            serverBootstrap.registerHandler(GET_RETRY_AFTER_PATH, (request, response, context) -> {
+                requestCount++;
+                if (requestCount == availableAtRequestCount) {
+                    response.setEntity(new StringEntity(OK_RESPONSE));
+                    response.setStatusCode(200);
+                } else {
+                    response.setEntity(new StringEntity(NOK_RESPONSE));
+                    response.setHeader("Retry-After", "0");
+                    response.setStatusCode(503);
+                }
+            });
+
             serverBootstrap.registerHandler(GET_505_PATH, (request, response, context) -> {
                 requestCount++;
                 if (requestCount == availableAtRequestCount) {
@@ -184,4 +201,69 @@ public class SlingClientRetryStrategyTest {
 
     }
 
+    @Test
+    public void testRetryCountsPerStatus() throws Exception {
+        requestCount = 0;
+        availableAtRequestCount = 3;
+        ServerErrorRetryStrategy strategy = new ServerErrorRetryStrategy(RetryBackoff.fixed(10), null);
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setRetryStrategy(strategy)
+                .build();
+        c.doGet(GET_INTERNAL_ERROR_PATH, 200);
+        requestCount = 0;
+        c.doGet(GET_UNAVAILABLE_PATH, 200);
+        assertEquals(2L, (long) strategy.getRetryCounts().get(500));
+        assertEquals(2L, (long) strategy.getRetryCounts().get(503));
+        assertEquals(4, strategy.getRetryCount());
+    }
+
+    @Test
+    public void testRetryAfterIsHonored() throws Exception {
+        requestCount = 0;
+        availableAtRequestCount = 3;
+        // the backoff would wait 10s, but the server asks to retry immediately
+        ServerErrorRetryStrategy strategy = new ServerErrorRetryStrategy(RetryBackoff.fixed(10000), null);
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setRetryStrategy(strategy)
+                .build();
+        long start = System.currentTimeMillis();
+        SlingHttpResponse slingHttpResponse = c.doGet(GET_RETRY_AFTER_PATH, 200);
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertEquals(OK_RESPONSE, slingHttpResponse.getContent());
+    }
+
+    @Test
+    public void testRetryBudget() throws Exception {
+        requestCount = 0;
+        availableAtRequestCount = Integer.MAX_VALUE; // never available
+        RetryBudget budget = new RetryBudget(0.5, 1);
+        ServerErrorRetryStrategy strategy = new ServerErrorRetryStrategy(RetryBackoff.fixed(10), budget);
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setRetryStrategy(strategy)
+                .build();
+        // the budget holds a single retry
+        c.doGet(GET_UNAVAILABLE_PATH);
+        c.doGet(GET_UNAVAILABLE_PATH);
+        assertEquals(1, budget.getRetryCount());
+        assertTrue(budget.getRejectedCount() > 0);
+        assertEquals(3, requestCount);
+
+        // two more requests earn one more retry
+        requestCount = 0;
+        c.doGet(GET_UNAVAILABLE_PATH);
+        c.doGet(GET_UNAVAILABLE_PATH);
+        assertEquals(2, budget.getRetryCount());
+        assertEquals(3, requestCount);
+    }
+
+    @Test
+    public void testExponentialBackoffWithJitter() {
+        RetryBackoff backoff = RetryBackoff.exponentialWithJitter(100, 1000);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(backoff.getDelay(1) <= 100);
+            assertTrue(backoff.getDelay(3) <= 400);
+            assertTrue(backoff.getDelay(10) <= 1000);
+            assertTrue(backoff.getDelay(100) >= 0);
+        }
+    }
 }
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients;
+
+import java.io.IOException;
+
+import org.apache.http.Header;
+import org.apache.http.entity.StringEntity;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class SlingClientSharedConnectionsTest {
+    private static final String GET_PATH = "/test/shared/get";
+
+    @ClassRule
+    public static HttpServerRule httpServer = new HttpServerRule() {
+        @Override
+        protected void registerHandlers() throws IOException {
+            serverBootstrap.registerHandler(GET_PATH, (request, response, context) -> {
+                Header auth = request.getFirstHeader("Authorization");
+                response.setEntity(new StringEntity(auth != null ? auth.getValue() : ""));
+            });
+        }
+    };
+
+    @Test
+    public void testClientsSharePool() throws Exception {
+        int initialSize = ConnectionManagerRegistry.getInstance().size();
+
+        SlingClient c1 = SlingClient.Builder.create(httpServer.getURI(), "user1", "pass").setSharedConnections(true).build();
+        SlingClient c2 = SlingClient.Builder.create(httpServer.getURI(), "user2", "pass").setSharedConnections(true).build();
+        assertEquals(initialSize + 1, ConnectionManagerRegistry.getInstance().size());
+
+        String auth1 = c1.doGet(GET_PATH, 200).getContent();
+        assertEquals(1, c2.getPoolStats().getAvailable());
+        String auth2 = c2.doGet(GET_PATH, 200).getContent();
+        assertEquals(1, c1.getPoolStats().getAvailable());
+
+        // credentials are still isolated
+        assertFalse(auth1.equals(auth2));
+
+        c1.close();
+        c1.close();
+        assertEquals(initialSize + 1, ConnectionManagerRegistry.getInstance().size());
+        assertEquals(200, c2.doGet(GET_PATH, 200).getStatusLine().getStatusCode());
+
+        c2.close();
+        assertEquals(initialSize, ConnectionManagerRegistry.getInstance().size());
+    }
+
+    @Test
+    public void testAdaptedClientsShareLease() throws Exception {
+        int initialSize = ConnectionManagerRegistry.getInstance().size();
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass").setSharedConnections(true).build();
+        SlingClient other = SlingClient.Builder.create(httpServer.getURI(), "user", "pass").setSharedConnections(true).build();
+        SlingClient adapted = c.adaptTo(SlingClient.class);
+
+        // the lease is released only once for the adapted clients
+        adapted.close();
+        c.close();
+        assertEquals(initialSize + 1, ConnectionManagerRegistry.getInstance().size());
+        other.close();
+        assertEquals(initialSize, ConnectionManagerRegistry.getInstance().size());
+    }
+
+    @Test
+    public void testNotSharedByDefault() throws Exception {
+        int initialSize = ConnectionManagerRegistry.getInstance().size();
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass").build();
+        assertEquals(initialSize, ConnectionManagerRegistry.getInstance().size());
+        c.close();
+    }
+
+    @Test
+    public void testFailedBuildReleasesLease() throws Exception {
+        int initialSize = ConnectionManagerRegistry.getInstance().size();
+        SlingClient.InternalBuilder<SlingClient> failingClient = new SlingClient.InternalBuilder<SlingClient>(
+                httpServer.getURI(), "user", "pass") {
+            @Override
+            public SlingClient build() throws ClientException {
+                return buildClient((http, config) -> {
+                    throw new ClientException("member config");
+                });
+            }
+        };
+        failingClient.setSharedConnections(true);
+        try {
+            failingClient.build();
+            fail("the client should not be created");
+        } catch (ClientException e) {
+            assertEquals("member config", e.getMessage());
+        }
+        assertEquals(initialSize, ConnectionManagerRegistry.getInstance().size());
+
+        SlingClient.InternalBuilder<SlingClient> failingConfig = new SlingClient.InternalBuilder<SlingClient>(
+                httpServer.getURI(), "user", "pass") {
+            @Override
+            public SlingClient build() throws ClientException {
+                return new SlingClient(this) { };
+            }
+
+            @Override
+            protected SlingClientConfig buildSlingClientConfig() throws ClientException {
+                throw new ClientException("config");
+            }
+        };
+        failingConfig.setSharedConnections(true);
+        try {
+            failingConfig.build();
+            fail("the client should not be created");
+        } catch (ClientException e) {
+            assertEquals("config", e.getMessage());
+        }
+        assertEquals(initialSize, ConnectionManagerRegistry.getInstance().size());
+    }
+}
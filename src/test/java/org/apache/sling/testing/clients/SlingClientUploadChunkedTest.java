@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ServiceUnavailableRetryStrategy;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SlingClientUploadChunkedTest {
+
+    private static final String FILE_PATH = "/content/files/data.bin";
+
+    /**
+     * The bytes committed by the server for {@link #FILE_PATH}
+     */
+    private static final ByteArrayOutputStream uploaded = new ByteArrayOutputStream();
+
+    private static volatile boolean completed;
+
+    private static final List<String> offsets = new ArrayList<>();
+
+    private static final AtomicInteger posts = new AtomicInteger();
+
+    /**
+     * The number of the POST failing, before committing its chunk
+     */
+    private static volatile int failingPost;
+
+    @ClassRule
+    public static HttpServerRule httpServer = new HttpServerRule() {
+        @Override
+        protected void registerHandlers() throws IOException {
+            serverBootstrap.registerHandler(FILE_PATH + ".json", (request, response, context) -> {
+                if (uploaded.size() == 0 && !completed) {
+                    response.setStatusCode(404);
+                    return;
+                }
+                response.setStatusCode(200);
+                response.setEntity(new StringEntity(completed ? "{}" : "{\"sling:length\":" + uploaded.size() + "}"));
+            });
+            serverBootstrap.registerHandler("/content/files", (request, response, context) -> {
+                int post = posts.incrementAndGet();
+                if (failingPost == post || failingPost < 0) {
+                    response.setStatusCode(500);
+                    return;
+                }
+                Map<String, byte[]> parts = parseMultipart(request.getFirstHeader("Content-Type").getValue(),
+                        EntityUtils.toByteArray(((HttpEntityEnclosingRequest) request).getEntity()));
+                String offset = new String(parts.get("data.bin@Offset"), StandardCharsets.UTF_8);
+                offsets.add(offset);
+                if (Long.parseLong(offset) != uploaded.size()) {
+                    response.setStatusCode(500);
+                    return;
+                }
+                byte[] chunk = parts.get("data.bin");
+                uploaded.write(chunk, 0, chunk.length);
+                completed = parts.containsKey("data.bin@Completed");
+                response.setStatusCode(200);
+            });
+        }
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Map<String, byte[]> parseMultipart(String contentType, byte[] body) {
+        String boundary = "--" + contentType.substring(contentType.indexOf("boundary=") + "boundary=".length());
+        // ISO-8859-1 keeps one char per byte
+        String content = new String(body, StandardCharsets.ISO_8859_1);
+        Map<String, byte[]> parts = new HashMap<>();
+        for (String part : content.split(boundary)) {
+            int nameStart = part.indexOf("name=\"");
+            if (nameStart < 0) {
+                continue;
+            }
+            String name = part.substring(nameStart + 6, part.indexOf('"', nameStart + 6));
+            String value = part.substring(part.indexOf("\r\n\r\n") + 4, part.length() - 2);
+            parts.put(name, value.getBytes(StandardCharsets.ISO_8859_1));
+        }
+        return parts;
+    }
+
+    @Before
+    public void reset() {
+        uploaded.reset();
+        completed = false;
+        offsets.clear();
+        posts.set(0);
+        failingPost = 0;
+    }
+
+    /**
+     * A client not retrying the 5xx responses, so the failed chunks reach the resume logic
+     */
+    private static SlingClient client() throws ClientException {
+        return SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setRetryStrategy(new ServiceUnavailableRetryStrategy() {
+                    @Override
+                    public boolean retryRequest(HttpResponse response, int executionCount, HttpContext context) {
+                        return false;
+                    }
+
+                    @Override
+                    public long getRetryInterval() {
+                        return 0;
+                    }
+                })
+                .build();
+    }
+
+    private File createFile(int length) throws IOException {
+        byte[] data = new byte[length];
+        new Random(42).nextBytes(data);
+        File file = folder.newFile("data.bin");
+        Files.write(file.toPath(), data);
+        return file;
+    }
+
+    @Test
+    public void testUploadsInChunks() throws Exception {
+        File file = createFile(10000);
+        SlingClient c = client();
+        c.uploadChunked(file, "application/octet-stream", FILE_PATH, false, 3000, 0);
+
+        assertEquals(Arrays.asList("0", "3000", "6000", "9000"), offsets);
+        assertTrue(completed);
+        assertArrayEquals(Files.readAllBytes(file.toPath()), uploaded.toByteArray());
+    }
+
+    @Test
+    public void testResumesAfterFailedChunk() throws Exception {
+        File file = createFile(10000);
+        failingPost = 3;
+        SlingClient c = client();
+        c.uploadChunked(file, null, FILE_PATH, false, 3000, 1);
+
+        assertEquals(5, posts.get());
+        assertEquals(Arrays.asList("0", "3000", "6000", "9000"), offsets);
+        assertArrayEquals(Files.readAllBytes(file.toPath()), uploaded.toByteArray());
+    }
+
+    @Test
+    public void testResumesPreviousUpload() throws Exception {
+        File file = createFile(10000);
+        byte[] data = Files.readAllBytes(file.toPath());
+        uploaded.write(data, 0, 4000);
+
+        SlingClient c = client();
+        c.uploadChunked(file, null, FILE_PATH, false, 3000, 0);
+
+        assertEquals(Arrays.asList("4000", "7000"), offsets);
+        assertArrayEquals(data, uploaded.toByteArray());
+    }
+
+    @Test
+    public void testGivesUp() throws Exception {
+        File file = createFile(10000);
+        failingPost = -1;
+        SlingClient c = client();
+        try {
+            c.uploadChunked(file, null, FILE_PATH, false, 3000, 2);
+            fail("the upload should fail");
+        } catch (ClientException e) {
+            assertEquals(3, posts.get());
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.batch;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.entity.StringEntity;
+import org.apache.sling.testing.clients.ClientException;
+import org.apache.sling.testing.clients.HttpServerRule;
+import org.apache.sling.testing.clients.SlingClient;
+import org.apache.sling.testing.clients.exceptions.TestingValidationException;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BatchTest {
+    private static final String OK_PATH = "/test/batch/ok";
+    private static final String MISSING_PATH = "/test/batch/missing";
+
+    private static final AtomicInteger inFlight = new AtomicInteger();
+    private static final AtomicInteger maxInFlight = new AtomicInteger();
+    private static final AtomicInteger missingCount = new AtomicInteger();
+
+    @ClassRule
+    public static HttpServerRule httpServer = new HttpServerRule() {
+        @Override
+        protected void registerHandlers() throws IOException {
+            serverBootstrap.registerHandler(OK_PATH + "/*", (request, response, context) -> {
+                int current = inFlight.incrementAndGet();
+                maxInFlight.accumulateAndGet(current, Math::max);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+                response.setEntity(new StringEntity("OK"));
+            });
+            serverBootstrap.registerHandler(MISSING_PATH, (request, response, context) -> {
+                missingCount.incrementAndGet();
+                response.setStatusCode(404);
+                response.setEntity(new StringEntity("NOK"));
+            });
+        }
+    };
+
+    @Test
+    public void testExecuteWithBoundedParallelism() throws Exception {
+        maxInFlight.set(0);
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        Batch batch = c.batch();
+        for (int i = 0; i < 30; i++) {
+            batch.setPropertyString(OK_PATH + "/node" + i, "prop", "value" + i);
+        }
+        BatchResult result = batch.execute(4);
+
+        assertTrue(result.isSuccessful());
+        assertEquals(30, result.getResults().size());
+        assertEquals("setPropertyString " + OK_PATH + "/node7/prop", result.getResults().get(7).getDescription());
+        assertEquals("OK", result.getResults().get(7).getResponse().getContent());
+        assertTrue("Too many requests in flight: " + maxInFlight.get(), maxInFlight.get() <= 4);
+    }
+
+    @Test
+    public void testFailuresAreCollected() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        BatchResult result = c.batch()
+                .setPropertyString(OK_PATH + "/a", "prop", "value")
+                .deletePath(MISSING_PATH, 200)
+                .setPropertyString(OK_PATH + "/b", "prop", "value")
+                .execute(2);
+
+        assertFalse(result.isSuccessful());
+        assertEquals(2, result.getSucceeded().size());
+        assertEquals(1, result.getFailed().size());
+        assertTrue(result.getFailed().get(0).getException() instanceof TestingValidationException);
+        try {
+            result.throwIfFailed();
+            fail("Expected the failure to be thrown");
+        } catch (ClientException e) {
+            assertEquals(404, e.getHttpStatusCode());
+        }
+    }
+
+    @Test
+    public void testRetries() throws Exception {
+        missingCount.set(0);
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        BatchResult result = c.batch().setRetries(2).deletePath(MISSING_PATH, 200).execute(1);
+        assertEquals(3, result.getFailed().get(0).getAttempts());
+        assertEquals(3, missingCount.get());
+    }
+
+    @Test
+    public void testEmptyBatch() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        assertTrue(c.batch().execute(1).getResults().isEmpty());
+    }
+}
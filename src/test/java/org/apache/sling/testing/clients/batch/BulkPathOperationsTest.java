@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.batch;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.apache.sling.testing.clients.HttpServerRule;
+import org.apache.sling.testing.clients.SlingClient;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BulkPathOperationsTest {
+
+    /**
+     * The paths of the fake repository
+     */
+    private static final Set<String> nodes = ConcurrentHashMap.newKeySet();
+
+    private static final AtomicInteger posts = new AtomicInteger();
+
+    /**
+     * How many times the requests containing /content/flaky still fail
+     */
+    private static final AtomicInteger flakyFailures = new AtomicInteger();
+
+    @ClassRule
+    public static HttpServerRule httpServer = new HttpServerRule() {
+        @Override
+        protected void registerHandlers() throws IOException {
+            serverBootstrap.registerHandler("*", (request, response, context) -> {
+                posts.incrementAndGet();
+                String body = EntityUtils.toString(((HttpEntityEnclosingRequest) request).getEntity());
+                String operation = null;
+                String dest = null;
+                List<String> applyTo = new ArrayList<>();
+                for (NameValuePair param : URLEncodedUtils.parse(body, StandardCharsets.UTF_8)) {
+                    if (":operation".equals(param.getName())) {
+                        operation = param.getValue();
+                    } else if (":dest".equals(param.getName())) {
+                        dest = param.getValue();
+                    } else if (":applyTo".equals(param.getName())) {
+                        applyTo.add(param.getValue());
+                    }
+                }
+                if (applyTo.isEmpty()) {
+                    applyTo.add(request.getRequestLine().getUri());
+                }
+                if (applyTo.contains("/content/flaky") && flakyFailures.getAndDecrement() > 0) {
+                    response.setStatusCode(500);
+                    return;
+                }
+
+                StringBuilder changes = new StringBuilder();
+                for (String path : applyTo) {
+                    if (!nodes.contains(path)) {
+                        continue;
+                    }
+                    changes.append(changes.length() > 0 ? "," : "");
+                    List<String> removed = new ArrayList<>();
+                    for (String node : nodes) {
+                        if (node.equals(path) || node.startsWith(path + "/")) {
+                            removed.add(node);
+                        }
+                    }
+                    nodes.removeAll(removed);
+                    if ("delete".equals(operation)) {
+                        changes.append("{\"type\":\"deleted\",\"argument\":\"").append(path).append("\"}");
+                    } else {
+                        String target = dest.endsWith("/") ? dest + path.substring(path.lastIndexOf('/') + 1) : dest;
+                        for (String node : removed) {
+                            nodes.add(target + node.substring(path.length()));
+                        }
+                        changes.append("{\"type\":\"moved\",\"argument\":[\"").append(path).append("\",\"")
+                                .append(target).append("\"]}");
+                    }
+                }
+                response.setStatusCode(200);
+                response.setEntity(new StringEntity("{\"status.code\":200,\"changes\":[" + changes + "]}",
+                        ContentType.APPLICATION_JSON));
+            });
+        }
+    };
+
+    @Before
+    public void reset() {
+        nodes.clear();
+        posts.set(0);
+        flakyFailures.set(0);
+    }
+
+    @Test
+    public void testDeleteInChunks() throws Exception {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            nodes.add("/content/n" + i);
+            nodes.add("/content/n" + i + "/child");
+            paths.add("/content/n" + i);
+        }
+        // already covered by its ancestor
+        paths.add("/content/n3/child");
+        // does not exist
+        paths.add("/content/none");
+
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        BulkPathResult result = c.bulkPathOperations().setChunkSize(100).delete(paths, 3);
+
+        assertTrue(result.isSuccessful());
+        assertEquals(3, posts.get());
+        assertEquals(251, result.getDone().size());
+        assertTrue(result.getDone().contains("/content/n3/child"));
+        assertEquals(Collections.singletonList("/content/none"), result.getMissing());
+        assertTrue(nodes.isEmpty());
+    }
+
+    @Test
+    public void testFailedChunkIsRetried() throws Exception {
+        nodes.addAll(Arrays.asList("/content/a", "/content/flaky", "/content/b", "/content/c"));
+        flakyFailures.set(1);
+
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        BulkPathResult result = c.bulkPathOperations().setChunkSize(2).setRetries(1)
+                .delete(Arrays.asList("/content/a", "/content/flaky", "/content/b", "/content/c"), 2);
+        assertTrue(result.isSuccessful());
+        assertEquals(4, result.getDone().size());
+        assertEquals(3, posts.get());
+
+        nodes.add("/content/flaky");
+        flakyFailures.set(Integer.MAX_VALUE);
+        result = c.bulkPathOperations().setRetries(1).delete(Collections.singletonList("/content/flaky"), 1);
+        assertFalse(result.isSuccessful());
+        assertEquals(Collections.singleton("/content/flaky"), result.getFailed().keySet());
+        assertTrue(nodes.contains("/content/flaky"));
+    }
+
+    @Test
+    public void testMove() throws Exception {
+        nodes.addAll(Arrays.asList("/content/a", "/content/a/child", "/content/b", "/content/c"));
+        Map<String, String> paths = new LinkedHashMap<>();
+        paths.put("/content/a", "/archive/");
+        paths.put("/content/b", "/archive/b");
+        paths.put("/content/c", "/archive/renamed");
+        paths.put("/content/none", "/archive/");
+
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        BulkPathResult result = c.movePaths(paths);
+
+        assertTrue(result.isSuccessful());
+        // one request for the names kept, one for the renamed path
+        assertEquals(2, posts.get());
+        assertEquals("/archive/a", result.getMoved().get("/content/a"));
+        assertEquals("/archive/renamed", result.getMoved().get("/content/c"));
+        assertEquals(Collections.singletonList("/content/none"), result.getMissing());
+        assertTrue(nodes.contains("/archive/a/child"));
+        assertTrue(nodes.contains("/archive/b"));
+        assertTrue(nodes.contains("/archive/renamed"));
+    }
+}
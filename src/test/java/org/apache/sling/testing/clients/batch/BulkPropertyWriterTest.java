@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.batch;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.apache.sling.testing.clients.HttpServerRule;
+import org.apache.sling.testing.clients.SlingClient;
+import org.apache.sling.testing.clients.util.SlingParameter;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class BulkPropertyWriterTest {
+
+    /**
+     * Property path to value of the fake repository
+     */
+    private static final Map<String, String> properties = new ConcurrentHashMap<>();
+
+    private static final AtomicInteger posts = new AtomicInteger();
+
+    @ClassRule
+    public static HttpServerRule httpServer = new HttpServerRule() {
+        @Override
+        protected void registerHandlers() throws IOException {
+            serverBootstrap.registerHandler("/", (request, response, context) -> {
+                posts.incrementAndGet();
+                String body = EntityUtils.toString(((HttpEntityEnclosingRequest) request).getEntity());
+                List<NameValuePair> params = URLEncodedUtils.parse(body, StandardCharsets.UTF_8);
+                if (params.stream().anyMatch(p -> p.getName().startsWith("content/fail/"))) {
+                    response.setStatusCode(500);
+                    return;
+                }
+                StringBuilder changes = new StringBuilder();
+                for (NameValuePair param : params) {
+                    String path = "/" + param.getName();
+                    if (path.endsWith("@TypeHint")) {
+                        continue;
+                    }
+                    String type = properties.containsKey(path) ? "modified" : "created";
+                    properties.merge(path, param.getValue(), (a, b) -> a + "," + b);
+                    changes.append(changes.length() > 0 ? "," : "")
+                            .append("{\"type\":\"").append(type).append("\",\"argument\":\"").append(path).append("\"}");
+                }
+                response.setStatusCode(200);
+                response.setEntity(new StringEntity("{\"status.code\":200,\"changes\":[" + changes + "]}",
+                        ContentType.APPLICATION_JSON));
+            });
+        }
+    };
+
+    @Before
+    public void reset() {
+        properties.clear();
+        posts.set(0);
+    }
+
+    @Test
+    public void testWritesInChunks() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        BulkPropertyWriter writer = c.bulkPropertyWriter().setChunkSize(100);
+        for (int i = 0; i < 250; i++) {
+            writer.setProperty("/content/n" + i, "title", "t" + i);
+        }
+        writer.setProperty("/content/n7/", "./text", "hello");
+        assertEquals(250, writer.size());
+
+        BulkWriteResult result = writer.execute(3);
+        assertTrue(result.isSuccessful());
+        assertEquals(3, posts.get());
+        assertEquals(250, result.getResults().size());
+        assertEquals("t249", properties.get("/content/n249/title"));
+        assertEquals("hello", properties.get("/content/n7/text"));
+
+        BulkWriteResult.NodeResult n7 = result.getResults().get(7);
+        assertEquals("/content/n7", n7.getPath());
+        assertEquals(Arrays.asList("created /content/n7/title", "created /content/n7/text"), n7.getChanges());
+    }
+
+    @Test
+    public void testParameters() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        c.bulkPropertyWriter()
+                .setPropertyArray("/content/a", "tags", Arrays.asList("x", "y"))
+                .setParameter("/content/b", new SlingParameter("count").value("3").typeHint("Long"))
+                .execute(1)
+                .throwIfFailed();
+        assertEquals(1, posts.get());
+        assertEquals("x,y", properties.get("/content/a/tags"));
+        assertEquals("3", properties.get("/content/b/count"));
+    }
+
+    @Test
+    public void testFailedChunk() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        BulkWriteResult result = c.bulkPropertyWriter()
+                .setChunkSize(2)
+                .setProperty("/content/a", "title", "A")
+                .setProperty("/content/b", "title", "B")
+                .setProperty("/content/fail", "title", "C")
+                .setProperty("/content/d", "title", "D")
+                .execute(2);
+
+        assertFalse(result.isSuccessful());
+        assertEquals(2, result.getFailed().size());
+        assertEquals("/content/fail", result.getFailed().get(0).getPath());
+        assertNotNull(result.getFailed().get(1).getException());
+        assertTrue(result.getResults().get(0).isSuccessful());
+        assertEquals(Arrays.asList("created /content/b/title"), result.getResults().get(1).getChanges());
+    }
+}
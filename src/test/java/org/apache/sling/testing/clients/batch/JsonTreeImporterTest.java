@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.batch;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.util.EntityUtils;
+import org.apache.sling.testing.clients.HttpServerRule;
+import org.apache.sling.testing.clients.SlingClient;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JsonTreeImporterTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Node path to title property of the fake repository
+     */
+    private static final Map<String, String> nodes = new ConcurrentHashMap<>();
+
+    private static final AtomicInteger imports = new AtomicInteger();
+
+    /**
+     * How many times the import of /content/tree/c1 still fails
+     */
+    private static final AtomicInteger c1Failures = new AtomicInteger();
+
+    @ClassRule
+    public static HttpServerRule httpServer = new HttpServerRule() {
+        @Override
+        protected void registerHandlers() throws IOException {
+            serverBootstrap.registerHandler("*", (request, response, context) -> {
+                imports.incrementAndGet();
+                String body = EntityUtils.toString(((HttpEntityEnclosingRequest) request).getEntity());
+                Map<String, String> parts = new HashMap<>();
+                for (NameValuePair param : URLEncodedUtils.parse(body, StandardCharsets.UTF_8)) {
+                    parts.put(param.getName(), param.getValue());
+                }
+
+                String parent = request.getRequestLine().getUri();
+                String path = ("/".equals(parent) ? "" : parent) + "/" + parts.get(":name");
+                if (!"/content".equals(parent) && !nodes.containsKey(parent)) {
+                    response.setStatusCode(500);
+                    return;
+                }
+                if (path.equals("/content/tree/c1") && c1Failures.getAndDecrement() > 0) {
+                    response.setStatusCode(500);
+                    return;
+                }
+                JsonNode content = MAPPER.readTree(parts.get(":content"));
+                if (nodes.containsKey(path) && "true".equals(parts.get(":replaceProperties"))) {
+                    // imported into the existing node, which keeps its properties
+                    storeChildren(path, content);
+                    response.setStatusCode(200);
+                    return;
+                }
+                if (nodes.containsKey(path) && !"true".equals(parts.get(":replace"))) {
+                    response.setStatusCode(409);
+                    return;
+                }
+                store(path, content);
+                response.setStatusCode(201);
+            });
+        }
+    };
+
+    private static void store(String path, JsonNode node) {
+        nodes.put(path, node.path("title").asText());
+        storeChildren(path, node);
+    }
+
+    private static void storeChildren(String path, JsonNode node) {
+        for (Iterator<Map.Entry<String, JsonNode>> it = node.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = it.next();
+            if (field.getValue().isObject()) {
+                store(path + "/" + field.getKey(), field.getValue());
+            }
+        }
+    }
+
+    /**
+     * A tree of 1 + 3 + 15 nodes: 3 children of 5 leaves each
+     */
+    private static ByteArrayInputStream tree() throws IOException {
+        ObjectNode root = MAPPER.createObjectNode().put("jcr:primaryType", "sling:Folder").put("title", "root");
+        for (int i = 0; i < 3; i++) {
+            ObjectNode child = root.putObject("c" + i).put("title", "c" + i);
+            for (int j = 0; j < 5; j++) {
+                child.putObject("l" + j).put("title", "l" + i + j).putArray("tags").add("a").add("b");
+            }
+        }
+        root.put("after", "the children");
+        return new ByteArrayInputStream(MAPPER.writeValueAsBytes(root));
+    }
+
+    @Before
+    public void reset() {
+        nodes.clear();
+        imports.set(0);
+        c1Failures.set(0);
+    }
+
+    @Test
+    public void testSingleChunk() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        JsonImportResult result = c.jsonTreeImporter().setChunkSize(100).importJson("/content/tree", tree(), 4);
+
+        assertTrue(result.isSuccessful());
+        assertEquals(1, imports.get());
+        assertEquals(19, result.getNodeCount());
+        assertEquals(19, result.getImportedNodeCount());
+        assertEquals(19, nodes.size());
+    }
+
+    @Test
+    public void testSkeletonAndChunks() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        JsonImportResult result = c.jsonTreeImporter().setChunkSize(6).importJson("/content/tree", tree(), 4);
+
+        assertTrue(result.isSuccessful());
+        // the root, then one chunk per child
+        assertEquals(4, imports.get());
+        assertEquals(3, result.getChunkCount());
+        assertEquals(19, result.getImportedNodeCount());
+        assertEquals(19, nodes.size());
+        assertEquals("root", nodes.get("/content/tree"));
+        assertEquals("l24", nodes.get("/content/tree/c2/l4"));
+        assertTrue(result.getNodesPerSecond() > 0);
+    }
+
+    @Test
+    public void testNestedSkeleton() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        JsonImportResult result = c.jsonTreeImporter().setChunkSize(3).importJson("/content/tree", tree(), 4);
+
+        assertTrue(result.isSuccessful());
+        // the root and its children in the skeleton, then the leaves of each child in chunks of 3 and 2
+        assertEquals(6, result.getChunkCount());
+        assertEquals(19, result.getNodeCount());
+        assertEquals(19, nodes.size());
+        assertEquals("c1", nodes.get("/content/tree/c1"));
+        assertEquals("l10", nodes.get("/content/tree/c1/l0"));
+    }
+
+    @Test
+    public void testGroupsSmallSiblings() throws Exception {
+        ObjectNode root = MAPPER.createObjectNode().put("title", "root");
+        for (int i = 0; i < 50; i++) {
+            root.putObject("l" + i).put("title", "l" + i);
+        }
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        JsonImportResult result = c.jsonTreeImporter().setChunkSize(10)
+                .importJson("/content/tree", new ByteArrayInputStream(MAPPER.writeValueAsBytes(root)), 4);
+
+        assertTrue(result.isSuccessful());
+        // the skeleton, then the leaves in chunks of 10
+        assertEquals(1 + 5, imports.get());
+        assertEquals(5, result.getChunkCount());
+        assertEquals(51, result.getImportedNodeCount());
+        assertEquals(51, nodes.size());
+        assertEquals("root", nodes.get("/content/tree"));
+        assertEquals("l49", nodes.get("/content/tree/l49"));
+    }
+
+    @Test
+    public void testFailedChunks() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        c1Failures.set(1);
+        JsonImportResult result = c.jsonTreeImporter().setChunkSize(6).setRetries(1)
+                .importJson("/content/tree", tree(), 2);
+        assertTrue(result.isSuccessful());
+        assertEquals(19, nodes.size());
+
+        nodes.clear();
+        c1Failures.set(Integer.MAX_VALUE);
+        result = c.jsonTreeImporter().setChunkSize(6).importJson("/content/tree", tree(), 2);
+        assertFalse(result.isSuccessful());
+        assertEquals(1, result.getFailed().size());
+        assertTrue(result.getFailed().containsKey("/content/tree/c1"));
+        assertEquals(13, result.getImportedNodeCount());
+        assertFalse(nodes.containsKey("/content/tree/c1"));
+    }
+}
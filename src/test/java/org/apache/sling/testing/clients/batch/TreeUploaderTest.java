@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.batch;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.apache.sling.testing.clients.HttpServerRule;
+import org.apache.sling.testing.clients.SlingClient;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TreeUploaderTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final DateTimeFormatter ECMA_DATE_FORMAT =
+            DateTimeFormatter.ofPattern("EEE MMM dd yyyy HH:mm:ss 'GMT'Z", Locale.US);
+
+    /**
+     * The nodes of the fake repository: folders have no jcr:content
+     */
+    private static final Map<String, ObjectNode> nodes = new ConcurrentHashMap<>();
+
+    private static final AtomicInteger uploads = new AtomicInteger();
+
+    /**
+     * The paths whose type was written, existing or not
+     */
+    private static final List<String> typed = new CopyOnWriteArrayList<>();
+
+    /**
+     * The properties written to a jcr:content, rejected like Oak does for nt:resource
+     */
+    private static final List<String> constraintViolations = new CopyOnWriteArrayList<>();
+
+    @ClassRule
+    public static HttpServerRule httpServer = new HttpServerRule() {
+        @Override
+        protected void registerHandlers() throws IOException {
+            serverBootstrap.registerHandler("*", (request, response, context) -> {
+                String uri = request.getRequestLine().getUri();
+                if ("GET".equals(request.getRequestLine().getMethod())) {
+                    String path = uri.replaceAll("(\\.2)?\\.json$", "");
+                    ObjectNode node = nodes.get(path);
+                    if (node == null) {
+                        response.setStatusCode(404);
+                        return;
+                    }
+                    ObjectNode json = node.deepCopy();
+                    for (Map.Entry<String, ObjectNode> child : nodes.entrySet()) {
+                        String name = child.getKey().substring(child.getKey().lastIndexOf('/') + 1);
+                        if (child.getKey().equals(path + "/" + name)) {
+                            json.set(name, child.getValue());
+                        }
+                    }
+                    response.setStatusCode(200);
+                    response.setEntity(new StringEntity(json.toString(), ContentType.APPLICATION_JSON));
+                    return;
+                }
+
+                String contentType = request.getFirstHeader("Content-Type").getValue();
+                byte[] body = EntityUtils.toByteArray(((HttpEntityEnclosingRequest) request).getEntity());
+                if (contentType.startsWith("multipart/form-data")) {
+                    uploads.incrementAndGet();
+                    String boundary = "--" + contentType.substring(contentType.indexOf("boundary=") + 9);
+                    for (String part : new String(body, StandardCharsets.ISO_8859_1).split(boundary)) {
+                        int filename = part.indexOf("filename=\"");
+                        if (filename < 0) {
+                            continue;
+                        }
+                        String name = part.substring(filename + 10, part.indexOf('"', filename + 10));
+                        int size = part.length() - part.indexOf("\r\n\r\n") - 6;
+                        ObjectNode file = MAPPER.createObjectNode().put("jcr:primaryType", "nt:file");
+                        file.putObject("jcr:content")
+                                .put("jcr:primaryType", "nt:resource")
+                                .put("jcr:lastModified", ZonedDateTime.now().format(ECMA_DATE_FORMAT))
+                                .put(":jcr:data", size);
+                        nodes.put(uri + "/" + name, file);
+                    }
+                } else {
+                    String base = uri.endsWith("/") ? uri : uri + "/";
+                    List<NameValuePair> params = URLEncodedUtils.parse(new String(body, StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+                    for (NameValuePair param : params) {
+                        if ((base + param.getName()).contains("/jcr:content/")) {
+                            constraintViolations.add(base + param.getName());
+                            response.setStatusCode(500);
+                            return;
+                        }
+                    }
+                    for (NameValuePair param : params) {
+                        String name = param.getName();
+                        if (name.endsWith("/jcr:primaryType")) {
+                            typed.add(base + name.substring(0, name.length() - "/jcr:primaryType".length()));
+                            nodes.putIfAbsent(base + name.substring(0, name.length() - "/jcr:primaryType".length()),
+                                    MAPPER.createObjectNode().put("jcr:primaryType", param.getValue()));
+                        }
+                    }
+                }
+                response.setStatusCode(200);
+                response.setEntity(new StringEntity("{\"changes\":[]}", ContentType.APPLICATION_JSON));
+            });
+        }
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path localDir;
+
+    @Before
+    public void setUp() throws IOException {
+        nodes.clear();
+        nodes.put("/content", MAPPER.createObjectNode().put("jcr:primaryType", "sling:Folder"));
+        uploads.set(0);
+        typed.clear();
+        constraintViolations.clear();
+
+        localDir = folder.newFolder("assets").toPath();
+        Files.createDirectories(localDir.resolve("sub/deep"));
+        Files.createDirectories(localDir.resolve("empty"));
+        Files.write(localDir.resolve("a.txt"), "aaaa".getBytes(StandardCharsets.UTF_8));
+        Files.write(localDir.resolve("sub/b.txt"), "bbbbbbbb".getBytes(StandardCharsets.UTF_8));
+        Files.write(localDir.resolve("sub/deep/c.txt"), "c".getBytes(StandardCharsets.UTF_8));
+        // modified well before they are uploaded, the remote dates have a precision of one second
+        for (String file : Arrays.asList("a.txt", "sub/b.txt", "sub/deep/c.txt")) {
+            touch(localDir.resolve(file), -60);
+        }
+    }
+
+    private static void touch(Path file, int offsetSeconds) throws IOException {
+        Files.setLastModifiedTime(file,
+                FileTime.fromMillis(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(offsetSeconds)));
+    }
+
+    @Test
+    public void testUploadsTree() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        TreeUploadResult result = c.uploadTree(localDir, "/content/assets");
+
+        assertTrue(result.isSuccessful());
+        assertEquals(4, result.getFolderCount());
+        assertEquals(Arrays.asList("/content/assets/a.txt", "/content/assets/sub/b.txt",
+                "/content/assets/sub/deep/c.txt"), result.getUploaded());
+        assertEquals(13, result.getUploadedBytes());
+        assertEquals(3, uploads.get());
+        assertTrue(result.getFilesPerSecond() > 0);
+        assertTrue(result.getBytesPerSecond() > 0);
+
+        assertEquals("sling:OrderedFolder", nodes.get("/content/assets/sub/deep").path("jcr:primaryType").asText());
+        assertTrue(nodes.containsKey("/content/assets/empty"));
+    }
+
+    @Test
+    public void testSkipsUnchangedFiles() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        c.uploadTree(localDir, "/content/assets");
+        uploads.set(0);
+
+        TreeUploadResult result = c.uploadTree(localDir, "/content/assets");
+        assertEquals(3, result.getSkipped().size());
+        assertEquals(0, result.getUploaded().size());
+        assertEquals(0, uploads.get());
+
+        // same size, modified after the upload
+        Files.write(localDir.resolve("sub/b.txt"), "BBBBBBBB".getBytes(StandardCharsets.UTF_8));
+        touch(localDir.resolve("sub/b.txt"), 60);
+        result = c.uploadTree(localDir, "/content/assets");
+        assertEquals(Arrays.asList("/content/assets/sub/b.txt"), result.getUploaded());
+        assertEquals(2, result.getSkipped().size());
+        assertEquals(1, uploads.get());
+
+        // everything, when not skipping
+        result = c.treeUploader().setSkipUnchanged(false).upload(localDir, "/content/assets", 2);
+        assertEquals(3, result.getUploaded().size());
+        assertEquals(4, uploads.get());
+    }
+
+    @Test
+    public void testKeepsExistingFoldersWhenNotSkipping() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        nodes.put("/content/assets", MAPPER.createObjectNode().put("jcr:primaryType", "sling:Folder"));
+        nodes.put("/content/assets/sub", MAPPER.createObjectNode().put("jcr:primaryType", "nt:folder"));
+
+        TreeUploadResult result = c.treeUploader().setSkipUnchanged(false).upload(localDir, "/content/assets", 2);
+        assertTrue(result.isSuccessful());
+        assertEquals(Arrays.asList("/content/assets/empty", "/content/assets/sub/deep"), typed);
+    }
+
+    @Test
+    public void testWritesNothingToTheUploadedResources() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        TreeUploadResult result = c.treeUploader().upload(localDir, "/content/assets", 2).throwIfFailed();
+        assertEquals(3, result.getUploaded().size());
+
+        // the jcr:content of the uploaded files is an nt:resource, it does not accept any other property
+        assertEquals(Arrays.asList(), constraintViolations);
+        result = c.treeUploader().upload(localDir, "/content/assets", 2).throwIfFailed();
+        assertEquals(3, result.getSkipped().size());
+    }
+}
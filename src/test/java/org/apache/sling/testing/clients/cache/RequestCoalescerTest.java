@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.Header;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHeader;
+import org.apache.sling.testing.clients.ContentCapturePolicy;
+import org.apache.sling.testing.clients.HttpServerRule;
+import org.apache.sling.testing.clients.SlingClient;
+import org.apache.sling.testing.clients.SlingHttpResponse;
+import org.apache.sling.testing.clients.util.FormEntityBuilder;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RequestCoalescerTest {
+    private static final String SLOW_PATH = "/test/coalesce/slow";
+    private static final int THREADS = 8;
+
+    private static final AtomicInteger calls = new AtomicInteger();
+
+    private static volatile RequestCoalescer coalescer;
+
+    private static volatile int expectedWaiters;
+
+    @ClassRule
+    public static HttpServerRule httpServer = new HttpServerRule() {
+        @Override
+        protected void registerHandlers() throws IOException {
+            serverBootstrap.registerHandler(SLOW_PATH, (request, response, context) -> {
+                calls.incrementAndGet();
+                // hold the response until the other callers are waiting for it
+                long deadline = System.currentTimeMillis() + 2000;
+                while (coalescer != null && coalescer.getCoalescedCount() < expectedWaiters
+                        && System.currentTimeMillis() < deadline) {
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                response.setEntity(new StringEntity("bundle " + calls.get()));
+            });
+        }
+    };
+
+    @Before
+    public void reset() {
+        calls.set(0);
+        coalescer = new RequestCoalescer();
+        expectedWaiters = 0;
+    }
+
+    @Test
+    public void testConcurrentGetsAreCoalesced() throws Exception {
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setRequestCoalescer(coalescer)
+                .build();
+        expectedWaiters = THREADS - 1;
+
+        List<CompletableFuture<SlingHttpResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(c.doGetAsync(SLOW_PATH, 200));
+        }
+        for (CompletableFuture<SlingHttpResponse> future : futures) {
+            assertEquals("bundle 1", future.get().getContent());
+        }
+        assertEquals(1, calls.get());
+        assertEquals(1, coalescer.getExecutedCount());
+        assertEquals(THREADS - 1, coalescer.getCoalescedCount());
+        assertEquals(0, coalescer.getInFlightCount());
+
+        // nothing is cached
+        assertEquals("bundle 2", c.doGet(SLOW_PATH, 200).getContent());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testDifferentHeadersAreNotCoalesced() throws Exception {
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setRequestCoalescer(coalescer)
+                .build();
+        List<Header> json = Collections.<Header>singletonList(new BasicHeader("Accept", "application/json"));
+        List<Header> html = Collections.<Header>singletonList(new BasicHeader("Accept", "text/html"));
+
+        CompletableFuture<SlingHttpResponse> first = c.doGetAsync(SLOW_PATH, null, json, 200);
+        CompletableFuture<SlingHttpResponse> second = c.doGetAsync(SLOW_PATH, null, html, 200);
+        first.get();
+        second.get();
+        assertEquals(2, calls.get());
+        assertEquals(2, coalescer.getExecutedCount());
+        assertEquals(0, coalescer.getCoalescedCount());
+    }
+
+    @Test
+    public void testPostsAreNotCoalesced() throws Exception {
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setRequestCoalescer(coalescer)
+                .build();
+        CompletableFuture<SlingHttpResponse> first = c.doPostAsync(SLOW_PATH, FormEntityBuilder.create().build(), 200);
+        CompletableFuture<SlingHttpResponse> second = c.doPostAsync(SLOW_PATH, FormEntityBuilder.create().build(), 200);
+        first.get();
+        second.get();
+        assertEquals(2, calls.get());
+        assertEquals(0, coalescer.getExecutedCount());
+    }
+
+    @Test
+    public void testLargeContentsAreNotShared() throws Exception {
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setRequestCoalescer(coalescer)
+                .setContentCapturePolicy(ContentCapturePolicy.spillToDisk(4))
+                .build();
+        expectedWaiters = THREADS - 1;
+
+        List<CompletableFuture<SlingHttpResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(c.doGetAsync(SLOW_PATH, 200));
+        }
+        for (CompletableFuture<SlingHttpResponse> future : futures) {
+            SlingHttpResponse response = future.get();
+            assertTrue(response.isContentSpilled());
+            assertTrue(response.getContent().startsWith("bundle "));
+            response.close();
+        }
+        // the waiters executed their own request instead of sharing a copy in memory
+        assertEquals(THREADS, calls.get());
+        assertEquals(THREADS, coalescer.getExecutedCount());
+        assertEquals(THREADS - 1, coalescer.getCoalescedCount());
+        assertEquals(0, coalescer.getInFlightCount());
+    }
+}
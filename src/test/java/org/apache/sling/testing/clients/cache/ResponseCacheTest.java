@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.cache;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.Header;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHeader;
+import org.apache.sling.testing.clients.HttpServerRule;
+import org.apache.sling.testing.clients.SlingClient;
+import org.apache.sling.testing.clients.util.FormEntityBuilder;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ResponseCacheTest {
+    private static final String ETAG_PATH = "/test/cache/etag";
+    private static final String TTL_PATH = "/test/cache/ttl";
+    private static final String NO_STORE_PATH = "/test/cache/nostore";
+    private static final String PAGE_PATH = "/test/cache/page/*";
+    private static final String VARY_PATH = "/test/cache/vary";
+    private static final String VARY_ALL_PATH = "/test/cache/varyall";
+    private static final String ETAG = "\"v1\"";
+
+    private static final AtomicInteger etagFull = new AtomicInteger();
+    private static final AtomicInteger etagNotModified = new AtomicInteger();
+    private static final AtomicInteger ttlCalls = new AtomicInteger();
+    private static final AtomicInteger noStoreCalls = new AtomicInteger();
+    private static final AtomicInteger varyCalls = new AtomicInteger();
+
+    @ClassRule
+    public static HttpServerRule httpServer = new HttpServerRule() {
+        @Override
+        protected void registerHandlers() throws IOException {
+            serverBootstrap.registerHandler(ETAG_PATH, (request, response, context) -> {
+                if (!"GET".equals(request.getRequestLine().getMethod())) {
+                    return;
+                }
+                Header ifNoneMatch = request.getFirstHeader("If-None-Match");
+                response.setHeader("ETag", ETAG);
+                if (ifNoneMatch != null && ETAG.equals(ifNoneMatch.getValue())) {
+                    etagNotModified.incrementAndGet();
+                    response.setStatusCode(304);
+                } else {
+                    etagFull.incrementAndGet();
+                    response.setEntity(new StringEntity("bundles"));
+                }
+            });
+            serverBootstrap.registerHandler(TTL_PATH, (request, response, context) -> {
+                ttlCalls.incrementAndGet();
+                response.setEntity(new StringEntity("ttl"));
+            });
+            serverBootstrap.registerHandler(NO_STORE_PATH, (request, response, context) -> {
+                noStoreCalls.incrementAndGet();
+                response.setHeader("Cache-Control", "no-store");
+                response.setEntity(new StringEntity("secret"));
+            });
+            serverBootstrap.registerHandler(PAGE_PATH, (request, response, context) -> {
+                response.setEntity(new StringEntity("0123456789"));
+            });
+            serverBootstrap.registerHandler(VARY_PATH, (request, response, context) -> {
+                varyCalls.incrementAndGet();
+                Header mode = request.getFirstHeader("X-Mode");
+                Header language = request.getFirstHeader("Accept-Language");
+                Header cookie = request.getFirstHeader("Cookie");
+                response.setHeader("Vary", "X-Mode");
+                response.setEntity(new StringEntity((mode != null ? mode.getValue() : "-")
+                        + " " + (language != null ? language.getValue() : "-")
+                        + " " + (cookie != null ? cookie.getValue() : "-")));
+            });
+            serverBootstrap.registerHandler(VARY_ALL_PATH, (request, response, context) -> {
+                varyCalls.incrementAndGet();
+                response.setHeader("Vary", "*");
+                response.setEntity(new StringEntity("any"));
+            });
+        }
+    };
+
+    @Before
+    public void reset() {
+        etagFull.set(0);
+        etagNotModified.set(0);
+        ttlCalls.set(0);
+        noStoreCalls.set(0);
+        varyCalls.set(0);
+    }
+
+    @Test
+    public void testRevalidatesWithETag() throws Exception {
+        ResponseCache cache = new ResponseCache(10, 1024, 0);
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setResponseCache(cache)
+                .build();
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("bundles", c.doGet(ETAG_PATH, 200).getContent());
+        }
+        assertEquals(1, etagFull.get());
+        assertEquals(2, etagNotModified.get());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2, cache.getRevalidationCount());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(2 * "bundles".length(), cache.getSavedBytes());
+        assertEquals(0, c.getPoolStats().getLeased());
+    }
+
+    @Test
+    public void testCachedResponseKeepsHeaders() throws Exception {
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setResponseCache(new ResponseCache(10, 1024, 0))
+                .build();
+
+        c.doGet(ETAG_PATH, 200);
+        assertEquals(ETAG, c.doGet(ETAG_PATH, 200).getFirstHeader("ETag").getValue());
+    }
+
+    @Test
+    public void testTtlWithoutValidators() throws Exception {
+        ResponseCache cache = new ResponseCache(10, 1024, 60000);
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setResponseCache(cache)
+                .build();
+
+        assertEquals("ttl", c.doGet(TTL_PATH, 200).getContent());
+        assertEquals("ttl", c.doGet(TTL_PATH, 200).getContent());
+        assertEquals(1, ttlCalls.get());
+        assertEquals(1, cache.getHitCount());
+
+        // a different user does not share the entry
+        SlingClient other = c.adaptTo(SlingClient.class);
+        SlingClient admin = SlingClient.Builder.create(httpServer.getURI(), "admin", "admin")
+                .setResponseCache(cache)
+                .build();
+        admin.doGet(TTL_PATH, 200);
+        assertEquals(2, ttlCalls.get());
+        other.doGet(TTL_PATH, 200);
+        assertEquals(2, ttlCalls.get());
+    }
+
+    @Test
+    public void testExpiredTtl() throws Exception {
+        ResponseCache cache = new ResponseCache(10, 1024, 0);
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setResponseCache(cache)
+                .build();
+
+        c.doGet(TTL_PATH, 200);
+        c.doGet(TTL_PATH, 200);
+        assertEquals(2, ttlCalls.get());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testNoStore() throws Exception {
+        ResponseCache cache = new ResponseCache(10, 1024, 60000);
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setResponseCache(cache)
+                .build();
+
+        c.doGet(NO_STORE_PATH, 200);
+        c.doGet(NO_STORE_PATH, 200);
+        assertEquals(2, noStoreCalls.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testEvictionBounds() throws Exception {
+        ResponseCache cache = new ResponseCache(3, 25, 60000);
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setResponseCache(cache)
+                .build();
+
+        c.doGet("/test/cache/page/1", 200);
+        c.doGet("/test/cache/page/2", 200);
+        assertEquals(2, cache.size());
+        assertEquals(20, cache.getSizeInBytes());
+
+        // exceeds the bytes limit
+        c.doGet("/test/cache/page/3", 200);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+
+        // larger than the cache, served but not stored
+        ResponseCache tiny = new ResponseCache(3, 5, 60000);
+        SlingClient t = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setResponseCache(tiny)
+                .build();
+        assertEquals("0123456789", t.doGet("/test/cache/page/1", 200).getContent());
+        assertEquals(0, tiny.size());
+    }
+
+    @Test
+    public void testUnsafeMethodInvalidates() throws Exception {
+        ResponseCache cache = new ResponseCache(10, 1024, 60000);
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setResponseCache(cache)
+                .build();
+
+        c.doGet(TTL_PATH, 200);
+        assertEquals(1, cache.size());
+        c.doPost(ETAG_PATH, FormEntityBuilder.create().addParameter("a", "b").build(), 200);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testKeyedByVaryingHeadersAndCookies() throws Exception {
+        ResponseCache cache = new ResponseCache(10, 1024, 60000);
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setResponseCache(cache)
+                .build();
+
+        assertEquals("- de -", get(c, "Accept-Language", "de"));
+        assertEquals("- fr -", get(c, "Accept-Language", "fr"));
+        assertEquals("- de -", get(c, "Accept-Language", "de"));
+        assertEquals(2, varyCalls.get());
+
+        // the sudo cookie is added by the http client, not by the caller
+        c.impersonate("bob");
+        assertEquals("- de sling.sudo=bob", get(c, "Accept-Language", "de"));
+        c.endImpersonation();
+        assertEquals(3, varyCalls.get());
+    }
+
+    @Test
+    public void testHonoursVary() throws Exception {
+        ResponseCache cache = new ResponseCache(10, 1024, 60000);
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setResponseCache(cache)
+                .build();
+
+        assertEquals("a - -", get(c, "X-Mode", "a"));
+        assertEquals("a - -", get(c, "X-Mode", "a"));
+        assertEquals(1, varyCalls.get());
+        assertEquals("b - -", get(c, "X-Mode", "b"));
+        assertEquals(2, varyCalls.get());
+        assertEquals(1, cache.size());
+
+        c.doGet(VARY_ALL_PATH, 200);
+        c.doGet(VARY_ALL_PATH, 200);
+        assertEquals(4, varyCalls.get());
+        assertEquals(1, cache.size());
+    }
+
+    private static String get(SlingClient c, String header, String value) throws Exception {
+        return c.doGet(VARY_PATH, null, Collections.singletonList(new BasicHeader(header, value)), 200).getContent();
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.instance;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.entity.StringEntity;
+import org.apache.sling.testing.clients.CircuitBreaker;
+import org.apache.sling.testing.clients.HttpServerRule;
+import org.apache.sling.testing.clients.interceptors.RateLimitInterceptor;
+import org.apache.sling.testing.clients.util.FormEntityBuilder;
+import org.apache.sling.testing.clients.util.RetryBudget;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LoadBalancedSlingClientTest {
+    private static final String NAME_PATH = "/test/lb/name";
+    private static final String FLAKY_PATH = "/test/lb/flaky";
+    private static final String SLOW_PATH = "/test/lb/slow";
+
+    private static final AtomicInteger postsA = new AtomicInteger();
+    private static final AtomicInteger postsB = new AtomicInteger();
+
+    @ClassRule
+    public static HttpServerRule serverA = new HttpServerRule() {
+        @Override
+        protected void registerHandlers() throws IOException {
+            serverBootstrap.registerHandler(NAME_PATH, (request, response, context) -> {
+                if ("POST".equals(request.getRequestLine().getMethod())) {
+                    postsA.incrementAndGet();
+                }
+                response.setEntity(new StringEntity("A"));
+            });
+            serverBootstrap.registerHandler(FLAKY_PATH, (request, response, context) -> {
+                response.setEntity(new StringEntity("A"));
+            });
+            serverBootstrap.registerHandler(SLOW_PATH, (request, response, context) -> {
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                response.setEntity(new StringEntity("A"));
+            });
+        }
+    };
+
+    @ClassRule
+    public static HttpServerRule serverB = new HttpServerRule() {
+        @Override
+        protected void registerHandlers() throws IOException {
+            serverBootstrap.registerHandler(NAME_PATH, (request, response, context) -> {
+                if ("POST".equals(request.getRequestLine().getMethod())) {
+                    postsB.incrementAndGet();
+                }
+                response.setEntity(new StringEntity("B"));
+            });
+            serverBootstrap.registerHandler(FLAKY_PATH, (request, response, context) -> {
+                response.setStatusCode(500);
+                response.setEntity(new StringEntity("B"));
+            });
+            serverBootstrap.registerHandler(SLOW_PATH, (request, response, context) -> {
+                response.setEntity(new StringEntity("B"));
+            });
+        }
+    };
+
+    private static List<InstanceConfiguration> instances() {
+        return Arrays.asList(new InstanceConfiguration(serverA.getURI(), "publish"),
+                new InstanceConfiguration(serverB.getURI(), "publish"));
+    }
+
+    @Test
+    public void testRoundRobin() throws Exception {
+        LoadBalancedSlingClient c = LoadBalancedSlingClient.Builder.create(instances(), "user", "pass").build();
+        assertEquals(2, c.getMembers().size());
+
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < 10; i++) {
+            String content = c.doGet(NAME_PATH, 200).getContent();
+            if ("A".equals(content)) {
+                a++;
+            } else {
+                b++;
+            }
+        }
+        assertEquals(5, a);
+        assertEquals(5, b);
+        assertEquals(5, c.getMembers().get(1).getRequestCount());
+    }
+
+    @Test
+    public void testWritesGoToFirstInstance() throws Exception {
+        LoadBalancedSlingClient c = LoadBalancedSlingClient.Builder.create(instances(), "user", "pass").build();
+        postsA.set(0);
+        postsB.set(0);
+        for (int i = 0; i < 4; i++) {
+            c.doPost(NAME_PATH, FormEntityBuilder.create().addParameter("a", "b").build(), 200);
+        }
+        assertEquals(4, postsA.get());
+        assertEquals(0, postsB.get());
+    }
+
+    @Test
+    public void testEjection() throws Exception {
+        LoadBalancedSlingClient c = LoadBalancedSlingClient.Builder.create(instances(), "user", "pass")
+                .setEjection(2, 60000)
+                .build();
+
+        int errors = 0;
+        for (int i = 0; i < 10; i++) {
+            // 500 is expected, so it is not retried
+            if (c.doGet(FLAKY_PATH, 200, 500).getStatusLine().getStatusCode() == 500) {
+                errors++;
+            }
+        }
+        assertEquals(2, errors);
+        assertTrue(c.getMembers().get(1).isEjected());
+        assertFalse(c.getMembers().get(0).isEjected());
+        assertEquals(2, c.getMembers().get(1).getFailureCount());
+    }
+
+    @Test
+    public void testLatencyStrategies() throws Exception {
+        for (LoadBalancingStrategy strategy : Arrays.asList(LoadBalancingStrategy.leastOutstanding(),
+                LoadBalancingStrategy.ewmaLatency())) {
+            LoadBalancedSlingClient c = LoadBalancedSlingClient.Builder.create(instances(), "user", "pass")
+                    .setStrategy(strategy)
+                    .build();
+            for (int i = 0; i < 20; i++) {
+                c.doGet(NAME_PATH, 200);
+            }
+            assertEquals(20, c.getMembers().get(0).getRequestCount() + c.getMembers().get(1).getRequestCount());
+            assertTrue(c.getMembers().get(0).getLatencyEwmaNanos() > 0
+                    || c.getMembers().get(1).getLatencyEwmaNanos() > 0);
+            assertEquals(0, c.getMembers().get(0).getOutstanding());
+        }
+    }
+
+    @Test
+    public void testAsyncRequestsAreBalanced() throws Exception {
+        LoadBalancedSlingClient c = LoadBalancedSlingClient.Builder.create(instances(), "user", "pass").build();
+        c.doGetAsync(NAME_PATH, 200).get();
+        c.doGetAsync(NAME_PATH, 200).get();
+        assertEquals(1, c.getMembers().get(0).getRequestCount());
+        assertEquals(1, c.getMembers().get(1).getRequestCount());
+    }
+
+    @Test
+    public void testAsyncRequestsKeepTheirContext() throws Exception {
+        AtomicInteger reservations = new AtomicInteger();
+        RateLimitInterceptor rateLimiter = new RateLimitInterceptor(1000, 100, 0, 1) {
+            @Override
+            public long reserve(HttpHost host) {
+                reservations.incrementAndGet();
+                return super.reserve(host);
+            }
+        };
+        LoadBalancedSlingClient c = LoadBalancedSlingClient.Builder.create(instances(), "user", "pass")
+                .setRateLimiter(rateLimiter)
+                .build();
+        c.doGetAsync(NAME_PATH, 200).get();
+        c.doGetAsync(NAME_PATH, 200).get();
+        // the token reserved by the async request is not reserved again by the interceptor
+        assertEquals(2, reservations.get());
+
+        c.doGet(NAME_PATH, 200);
+        assertEquals(3, reservations.get());
+    }
+
+    @Test
+    public void testHedging() throws Exception {
+        HedgingPolicy hedging = new HedgingPolicy(90, 0, 5, null);
+        // the first instance is always the primary one, the hedge goes to the other
+        LoadBalancedSlingClient c = LoadBalancedSlingClient.Builder.create(instances(), "user", "pass")
+                .setStrategy(candidates -> candidates.get(0))
+                .setHedging(hedging)
+                .build();
+        for (int i = 0; i < 5; i++) {
+            c.doGet(NAME_PATH, 200);
+        }
+        assertTrue(hedging.getDelayNanos() > 0);
+        assertEquals(0, hedging.getHedgeCount());
+
+        long start = System.nanoTime();
+        assertEquals("B", c.doGet(SLOW_PATH, 200).getContent());
+        assertTrue(System.nanoTime() - start < 900_000_000L);
+        assertEquals(1, hedging.getHedgeCount());
+        assertEquals(1, hedging.getHedgeWonCount());
+
+        // the aborted request is not a failure of the instance
+        assertEquals(0, c.getMembers().get(0).getFailureCount());
+        assertFalse(c.getMembers().get(0).isEjected());
+    }
+
+    @Test
+    public void testHedgeLoserGivesBackTheProbe() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0);
+        HedgingPolicy hedging = new HedgingPolicy(90, 0, 5, null);
+        LoadBalancedSlingClient c = LoadBalancedSlingClient.Builder.create(instances(), "user", "pass")
+                .setStrategy(candidates -> candidates.get(0))
+                .setHedging(hedging)
+                .setCircuitBreaker(breaker)
+                .build();
+        for (int i = 0; i < 5; i++) {
+            c.doGet(NAME_PATH, 200);
+        }
+        HttpHost hostA = URIUtils.extractHost(serverA.getURI());
+        breaker.onFailure(hostA);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(hostA));
+
+        // the slow request to A is the probe, it loses against its hedge and is aborted
+        assertEquals("B", c.doGet(SLOW_PATH, 200).getContent());
+        assertEquals(1, hedging.getHedgeWonCount());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (breaker.getState(hostA) == CircuitBreaker.State.HALF_OPEN && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(hostA));
+
+        // the next request is the new probe
+        assertEquals("A", c.doGet(NAME_PATH, 200).getContent());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(hostA));
+    }
+
+    @Test
+    public void testHedgingBudget() throws Exception {
+        RetryBudget budget = new RetryBudget(0, 0);
+        HedgingPolicy hedging = new HedgingPolicy(90, 0, 5, budget);
+        LoadBalancedSlingClient c = LoadBalancedSlingClient.Builder.create(instances(), "user", "pass")
+                .setStrategy(candidates -> candidates.get(0))
+                .setHedging(hedging)
+                .build();
+        for (int i = 0; i < 5; i++) {
+            c.doGet(NAME_PATH, 200);
+        }
+
+        assertEquals("A", c.doGet(SLOW_PATH, 200).getContent());
+        assertEquals(0, hedging.getHedgeCount());
+        assertEquals(1, budget.getRejectedCount());
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.interceptors;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.entity.StringEntity;
+import org.apache.sling.testing.clients.HttpServerRule;
+import org.apache.sling.testing.clients.SlingClient;
+import org.apache.sling.testing.clients.SlingHttpResponse;
+import org.apache.sling.testing.clients.metrics.LatencyHistogram;
+import org.apache.sling.testing.clients.metrics.RequestMetrics;
+import org.apache.sling.testing.clients.metrics.RequestMetricsInterceptor;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimitInterceptorTest {
+    private static final String PATH = "/test/ratelimit";
+
+    @ClassRule
+    public static HttpServerRule httpServer = new HttpServerRule() {
+        @Override
+        protected void registerHandlers() throws IOException {
+            serverBootstrap.registerHandler(PATH, (request, response, context) -> {
+                response.setEntity(new StringEntity("ok"));
+            });
+        }
+    };
+
+    @Test
+    public void testBurstThenRate() {
+        TokenBucket bucket = new TokenBucket(10, 3);
+        assertEquals(0, bucket.reserve());
+        assertEquals(0, bucket.reserve());
+        assertEquals(0, bucket.reserve());
+
+        // the next reservations are spaced by 100ms, in order
+        long first = bucket.reserve();
+        long second = bucket.reserve();
+        assertTrue(first > TimeUnit.MILLISECONDS.toNanos(80));
+        assertTrue(second - first > TimeUnit.MILLISECONDS.toNanos(90));
+    }
+
+    @Test
+    public void testPerHostLimit() {
+        RateLimitInterceptor limiter = new RateLimitInterceptor(0, 1, 1, 1);
+        HttpHost a = new HttpHost("a", 80);
+        HttpHost b = new HttpHost("b", 80);
+        assertEquals(0, limiter.reserve(a));
+        assertEquals(0, limiter.reserve(b));
+        assertTrue(limiter.reserve(a) > TimeUnit.MILLISECONDS.toNanos(500));
+        // no global limit
+        assertEquals(0, limiter.reserve(null));
+    }
+
+    @Test
+    public void testWaitIsNotCountedInMetrics() throws Exception {
+        RequestMetrics metrics = new RequestMetrics();
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .addInterceptorFirst(new RequestMetricsInterceptor(metrics))
+                .setRateLimiter(new RateLimitInterceptor(2, 1, 0, 1))
+                .build();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            c.doGet(PATH, 200);
+        }
+        assertTrue(System.nanoTime() - start > TimeUnit.MILLISECONDS.toNanos(900));
+        LatencyHistogram latency = metrics.getTimings("GET", PATH).getLatency();
+        assertEquals(3, latency.getCount());
+        assertTrue("max latency: " + latency.getMax(), latency.getMax() < TimeUnit.MILLISECONDS.toMicros(400));
+    }
+
+    @Test
+    public void testClientIsLimited() throws Exception {
+        RateLimitInterceptor limiter = new RateLimitInterceptor(20, 1, 0, 1);
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setRateLimiter(limiter)
+                .build();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            c.doGet(PATH, 200);
+        }
+        // 1 immediate request, then 4 at 50ms intervals
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(190));
+    }
+
+    @Test
+    public void testAsyncRequestsAreScheduled() throws Exception {
+        RateLimitInterceptor limiter = new RateLimitInterceptor(20, 1, 0, 1);
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .setRateLimiter(limiter)
+                .build();
+
+        long start = System.nanoTime();
+        List<CompletableFuture<SlingHttpResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(c.doGetAsync(PATH, 200));
+        }
+        // returns immediately, the requests wait for their token without blocking the caller
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(150));
+        for (CompletableFuture<SlingHttpResponse> future : futures) {
+            assertEquals("ok", future.get(10, TimeUnit.SECONDS).getContent());
+        }
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(190));
+    }
+}
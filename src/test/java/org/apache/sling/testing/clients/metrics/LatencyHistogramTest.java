@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testEmpty() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMin());
+        assertEquals(0, h.getMax());
+        assertEquals(0, h.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            h.record(i);
+        }
+        assertEquals(100, h.getCount());
+        assertEquals(1, h.getMin());
+        assertEquals(100, h.getMax());
+        assertEquals(50, h.getValueAtPercentile(50));
+        assertEquals(95, h.getValueAtPercentile(95));
+        assertEquals(100, h.getValueAtPercentile(100));
+        assertEquals(50.5, h.getMean(), 0.001);
+    }
+
+    @Test
+    public void testRelativePrecision() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 100000; i++) {
+            h.record(i * 10L);
+        }
+        assertWithinPrecision(500000, h.getValueAtPercentile(50));
+        assertWithinPrecision(990000, h.getValueAtPercentile(99));
+        assertEquals(1000000, h.getMax());
+    }
+
+    @Test
+    public void testBucketsAreContiguous() {
+        int previous = LatencyHistogram.bucketIndex(0);
+        for (long v = 1; v < 1 << 20; v++) {
+            int index = LatencyHistogram.bucketIndex(v);
+            assertTrue(index == previous || index == previous + 1);
+            assertTrue(LatencyHistogram.highestEquivalentValue(index) >= v);
+            previous = index;
+        }
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(Long.MAX_VALUE);
+        assertEquals(LatencyHistogram.MAX_VALUE, h.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testReset() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(1000);
+        h.reset();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getValueAtPercentile(50));
+    }
+
+    private static void assertWithinPrecision(long expected, long actual) {
+        assertTrue("expected ~" + expected + " but was " + actual, Math.abs(expected - actual) <= expected / 64 + 1);
+    }
+}
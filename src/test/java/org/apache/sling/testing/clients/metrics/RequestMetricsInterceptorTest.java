@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.metrics;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.entity.StringEntity;
+import org.apache.sling.testing.clients.HttpServerRule;
+import org.apache.sling.testing.clients.SlingClient;
+import org.apache.sling.testing.clients.util.FormEntityBuilder;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class RequestMetricsInterceptorTest {
+    private static final String BUNDLES_PATH = "/system/console/bundles/*";
+    private static final String NODES_PATH = "/content/*";
+
+    @ClassRule
+    public static HttpServerRule httpServer = new HttpServerRule() {
+        @Override
+        protected void registerHandlers() throws IOException {
+            serverBootstrap.registerHandler(BUNDLES_PATH, (request, response, context) -> {
+                response.setEntity(new StringEntity("{}"));
+            });
+            serverBootstrap.registerHandler(NODES_PATH, (request, response, context) -> {
+                response.setEntity(new StringEntity("OK"));
+            });
+        }
+    };
+
+    @Test
+    public void testMetricsAreAggregatedByTemplate() throws Exception {
+        RequestMetrics metrics = new RequestMetrics();
+        metrics.getNormalizer().addTemplate("/system/console/bundles/{bsn}.json");
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .addInterceptorFirst(new RequestMetricsInterceptor(metrics))
+                .build();
+
+        c.doGet("/system/console/bundles/org.apache.sling.api.json", 200);
+        c.doGet("/system/console/bundles/org.apache.sling.engine.json", 200);
+        c.doGet("/content/123/page.html", 200);
+        c.doPost("/content/123/page.html", FormEntityBuilder.create().build(), 200);
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(3, snapshot.getEntries().size());
+
+        MetricsSnapshot.Entry bundles = snapshot.getEntry("GET", "/system/console/bundles/{bsn}.json");
+        assertNotNull(bundles);
+        assertEquals(2, bundles.getCount());
+        assertTrue(bundles.getLatency().getMax() >= bundles.getTimeToFirstByte().getMax());
+        assertEquals(1, snapshot.getEntry("GET", "/content/{id}/page.html").getCount());
+        assertEquals(1, snapshot.getEntry("POST", "/content/{id}/page.html").getCount());
+    }
+
+    @Test
+    public void testExport() throws Exception {
+        RequestMetrics metrics = new RequestMetrics();
+        SlingClient c = SlingClient.Builder.create(httpServer.getURI(), "user", "pass")
+                .addInterceptorFirst(new RequestMetricsInterceptor(metrics))
+                .build();
+        c.doGet("/content/a", 200);
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        JsonNode json = new ObjectMapper().readTree(snapshot.toJson());
+        assertEquals(1, json.size());
+        assertEquals("/content/a", json.get(0).get("path").asText());
+        assertEquals(1, json.get(0).get("count").asLong());
+        assertTrue(json.get(0).get("latency").has("p99"));
+
+        String[] lines = snapshot.toCsv().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("method,path,count,latency_p50"));
+        assertTrue(lines[1].startsWith("GET,/content/a,1,"));
+    }
+
+    @Test
+    public void testNormalizer() {
+        PathTemplateNormalizer normalizer = new PathTemplateNormalizer()
+                .addTemplate("/bin/querybuilder.json")
+                .addTemplate("/home/users/{hash}/{name}");
+        assertEquals("/bin/querybuilder.json", normalizer.normalize("/bin/querybuilder.json?path=/content"));
+        assertEquals("/home/users/{hash}/{name}", normalizer.normalize("/home/users/a/admin"));
+        assertEquals("/home/users/a/admin/profile", normalizer.normalize("/home/users/a/admin/profile"));
+        assertEquals("/content/{id}/{id}.json",
+                normalizer.normalize("/content/42/3f2504e0-4f89-11d3-9a0c-0305e82c3301.json"));
+        assertEquals("/", normalizer.normalize(""));
+    }
+
+    @Test
+    public void testNormalizerCache() {
+        PathTemplateNormalizer normalizer = new PathTemplateNormalizer();
+        for (int i = 0; i < 100; i++) {
+            assertEquals("/bin/querybuilder.json", normalizer.normalize("/bin/querybuilder.json?offset=" + i));
+        }
+        assertEquals(1, normalizer.getCachedCount());
+
+        for (int i = 0; i < PathTemplateNormalizer.MAX_CACHED_PATHS + 100; i++) {
+            normalizer.normalize("/content/page" + i);
+        }
+        assertEquals(PathTemplateNormalizer.MAX_CACHED_PATHS, normalizer.getCachedCount());
+        assertEquals("/content/page-new", normalizer.normalize("/content/page-new"));
+        assertEquals(PathTemplateNormalizer.MAX_CACHED_PATHS, normalizer.getCachedCount());
+        assertEquals("/bin/querybuilder.json", normalizer.normalize("/bin/querybuilder.json?offset=1"));
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.tree;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.apache.sling.testing.clients.HttpServerRule;
+import org.apache.sling.testing.clients.SlingClient;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TreeSyncTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final Pattern SLICE = Pattern.compile("^(.*)\\.(\\d+)\\.json$");
+
+    private static final String FIXTURE = "{\"jcr:primaryType\":\"sling:Folder\","
+            + "\"a\":{\"jcr:primaryType\":\"nt:unstructured\",\"title\":\"A\",\"count\":5,\"enabled\":true,"
+            + "\"ratio\":1.5,\"tags\":[\"x\",\"y\"]},"
+            + "\"b\":{\"jcr:primaryType\":\"nt:unstructured\",\"c\":{\"jcr:primaryType\":\"nt:unstructured\",\"title\":\"C\"}},"
+            + "\"c\":{\"jcr:primaryType\":\"nt:unstructured\",\"d\":{\"jcr:primaryType\":\"nt:unstructured\","
+            + "\"e\":{\"jcr:primaryType\":\"nt:unstructured\"}}}}";
+
+    /**
+     * The nodes of the fake repository, with their properties only
+     */
+    private static final Map<String, ObjectNode> nodes = new ConcurrentSkipListMap<>();
+
+    /**
+     * The operation of every POST: delete, import or write
+     */
+    private static final List<String> posts = new CopyOnWriteArrayList<>();
+
+    @ClassRule
+    public static HttpServerRule httpServer = new HttpServerRule() {
+        @Override
+        protected void registerHandlers() throws IOException {
+            serverBootstrap.registerHandler("*", (request, response, context) -> {
+                String uri = request.getRequestLine().getUri();
+                if ("GET".equals(request.getRequestLine().getMethod())) {
+                    Matcher slice = SLICE.matcher(uri);
+                    if (!slice.matches() || !nodes.containsKey(slice.group(1))) {
+                        response.setStatusCode(404);
+                        return;
+                    }
+                    response.setStatusCode(200);
+                    response.setEntity(new StringEntity(render(slice.group(1), Integer.parseInt(slice.group(2))).toString(),
+                            ContentType.APPLICATION_JSON));
+                    return;
+                }
+
+                String body = EntityUtils.toString(((HttpEntityEnclosingRequest) request).getEntity(), StandardCharsets.UTF_8);
+                Map<String, List<String>> params = new LinkedHashMap<>();
+                for (NameValuePair param : URLEncodedUtils.parse(body, StandardCharsets.UTF_8)) {
+                    params.computeIfAbsent(param.getName(), k -> new ArrayList<>()).add(param.getValue());
+                }
+                String operation = params.containsKey(":operation") ? params.get(":operation").get(0) : "write";
+                posts.add(operation);
+                if ("delete".equals(operation)) {
+                    StringBuilder changes = new StringBuilder();
+                    for (String path : params.get(":applyTo")) {
+                        removeTree(path);
+                        changes.append(changes.length() > 0 ? "," : "")
+                                .append("{\"type\":\"deleted\",\"argument\":\"").append(path).append("\"}");
+                    }
+                    response.setEntity(new StringEntity("{\"changes\":[" + changes + "]}", ContentType.APPLICATION_JSON));
+                } else if ("import".equals(operation)) {
+                    String path = uri + "/" + params.get(":name").get(0);
+                    removeTree(path);
+                    addTree(path, MAPPER.readTree(params.get(":content").get(0)));
+                    response.setStatusCode(201);
+                    return;
+                } else {
+                    write(params);
+                    response.setEntity(new StringEntity("{\"changes\":[]}", ContentType.APPLICATION_JSON));
+                }
+                response.setStatusCode(200);
+            });
+        }
+    };
+
+    private static ObjectNode render(String path, int depth) {
+        ObjectNode json = nodes.get(path).deepCopy();
+        if (depth > 0) {
+            for (String child : nodes.keySet()) {
+                if (child.startsWith(path + "/") && child.indexOf('/', path.length() + 1) < 0) {
+                    json.set(child.substring(path.length() + 1), render(child, depth - 1));
+                }
+            }
+        }
+        return json;
+    }
+
+    private static void addTree(String path, JsonNode json) {
+        ObjectNode properties = MAPPER.createObjectNode();
+        nodes.put(path, properties);
+        for (Map.Entry<String, JsonNode> field : (Iterable<Map.Entry<String, JsonNode>>) json::fields) {
+            if (field.getValue().isObject()) {
+                addTree(path + "/" + field.getKey(), field.getValue());
+            } else {
+                properties.set(field.getKey(), field.getValue());
+            }
+        }
+    }
+
+    private static void removeTree(String path) {
+        nodes.keySet().removeIf(node -> node.equals(path) || node.startsWith(path + "/"));
+    }
+
+    /**
+     * Writes the properties like the Sling POST servlet, the parameter names being relative to the root
+     */
+    private static void write(Map<String, List<String>> params) {
+        for (Map.Entry<String, List<String>> param : params.entrySet()) {
+            String name = "/" + param.getKey();
+            if (name.contains("@")) {
+                continue;
+            }
+            ObjectNode node = nodes.get(name.substring(0, name.lastIndexOf('/')));
+            String property = name.substring(name.lastIndexOf('/') + 1);
+            if (params.containsKey(param.getKey() + "@Delete")) {
+                node.remove(property);
+                continue;
+            }
+            List<String> typeHint = params.get(param.getKey() + "@TypeHint");
+            String type = typeHint != null ? typeHint.get(0) : "String";
+            if (type.endsWith("[]")) {
+                ArrayNode array = node.putArray(property);
+                param.getValue().forEach(value -> array.add(convert(value, type.substring(0, type.length() - 2))));
+            } else {
+                node.set(property, convert(param.getValue().get(0), type));
+            }
+        }
+    }
+
+    private static JsonNode convert(String value, String type) {
+        switch (type) {
+            case "Long":
+                return MAPPER.getNodeFactory().numberNode(Long.parseLong(value));
+            case "Double":
+                return MAPPER.getNodeFactory().numberNode(Double.parseDouble(value));
+            case "Boolean":
+                return MAPPER.getNodeFactory().booleanNode(Boolean.parseBoolean(value));
+            default:
+                return MAPPER.getNodeFactory().textNode(value);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        nodes.clear();
+        nodes.put("/content", MAPPER.createObjectNode().put("jcr:primaryType", "sling:Folder"));
+        posts.clear();
+    }
+
+    @Test
+    public void testImportsMissingTree() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        TreeSyncResult result = c.treeSync().sync("/content/fix", MAPPER.readTree(FIXTURE), 4);
+
+        assertTrue(result.isSuccessful());
+        assertNull(result.getWalk());
+        assertEquals(Collections.singletonList("/content/fix"), result.getCreated());
+        assertEquals(Collections.singletonList("import"), posts);
+        assertEquals(8, nodes.size());
+        assertEquals(5, nodes.get("/content/fix/a").path("count").asInt());
+    }
+
+    @Test
+    public void testSendsNothingForUnchangedTree() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        c.treeSync().sync("/content/fix", MAPPER.readTree(FIXTURE), 4);
+        posts.clear();
+        // set by the repository, not compared
+        nodes.get("/content/fix/a").put("jcr:created", "2020-01-01T00:00:00.000Z");
+
+        TreeSyncResult result = c.treeSync().sync("/content/fix", MAPPER.readTree(FIXTURE), 4);
+        assertTrue(result.isUnchanged());
+        assertEquals(7, result.getUnchangedCount());
+        assertEquals(Collections.emptyList(), posts);
+        // the nodes of the last level of the slices have no children
+        assertEquals(4, result.getWalk().getRequestCount());
+    }
+
+    @Test
+    public void testAppliesMinimalDelta() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        c.treeSync().sync("/content/fix", MAPPER.readTree(FIXTURE), 4);
+        posts.clear();
+
+        nodes.get("/content/fix/a").put("title", "changed").put("count", 6).put("jcr:created", "2020");
+        nodes.get("/content/fix/b").put("jcr:primaryType", "sling:Folder");
+        removeTree("/content/fix/c/d");
+        nodes.put("/content/fix/extra", MAPPER.createObjectNode().put("jcr:primaryType", "nt:unstructured"));
+        nodes.put("/content/fix/extra/x", MAPPER.createObjectNode().put("jcr:primaryType", "nt:unstructured"));
+
+        TreeSyncResult result = c.treeSync().sync("/content/fix", MAPPER.readTree(FIXTURE), 4);
+        assertTrue(result.isSuccessful());
+        assertEquals(new HashSet<>(Arrays.asList("/content/fix/b", "/content/fix/extra")),
+                new HashSet<>(result.getDeleted()));
+        assertEquals(Arrays.asList("/content/fix/b", "/content/fix/c/d"), result.getCreated());
+        assertEquals(Collections.singletonMap("/content/fix/a", Arrays.asList("count", "title")), result.getUpdated());
+        assertEquals(Arrays.asList("delete", "import", "import", "write"), sorted(posts));
+
+        ObjectNode a = nodes.get("/content/fix/a");
+        assertEquals("A", a.path("title").asText());
+        assertTrue(a.path("count").isIntegralNumber());
+        assertEquals(5, a.path("count").asInt());
+        assertEquals("2020", a.path("jcr:created").asText());
+        assertEquals("nt:unstructured", nodes.get("/content/fix/b").path("jcr:primaryType").asText());
+        assertTrue(nodes.containsKey("/content/fix/b/c"));
+        assertTrue(nodes.containsKey("/content/fix/c/d/e"));
+        assertFalse(nodes.containsKey("/content/fix/extra"));
+
+        // and nothing left to do
+        posts.clear();
+        assertTrue(c.treeSync().sync("/content/fix", MAPPER.readTree(FIXTURE), 4).isUnchanged());
+        assertEquals(Collections.emptyList(), posts);
+    }
+
+    @Test
+    public void testWritesChangedTypesAndNulls() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        c.treeSync().sync("/content/fix", MAPPER.readTree(FIXTURE), 4);
+
+        ObjectNode fixture = (ObjectNode) MAPPER.readTree(FIXTURE);
+        ((ObjectNode) fixture.get("a")).put("enabled", false).put("ratio", 2.5).putNull("title")
+                .putArray("tags").add(1).add(2);
+        TreeSyncResult result = c.treeSync().sync("/content/fix", fixture, 4);
+
+        assertEquals(Arrays.asList("enabled", "ratio", "tags", "title"), result.getUpdated().get("/content/fix/a"));
+        ObjectNode a = nodes.get("/content/fix/a");
+        assertFalse(a.has("title"));
+        assertFalse(a.path("enabled").asBoolean(true));
+        assertEquals(2.5, a.path("ratio").asDouble(), 0);
+        assertEquals("[1,2]", a.path("tags").toString());
+        assertTrue(c.treeSync().sync("/content/fix", fixture, 4).isUnchanged());
+    }
+
+    @Test
+    public void testKeepsRemoteOnlyNodes() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        c.treeSync().sync("/content/fix", MAPPER.readTree(FIXTURE), 4);
+        nodes.put("/content/fix/extra", MAPPER.createObjectNode().put("jcr:primaryType", "nt:unstructured"));
+        posts.clear();
+
+        TreeSyncResult result = c.treeSync().setDeleteRemoteOnly(false)
+                .sync("/content/fix", MAPPER.readTree(FIXTURE), 4);
+        assertTrue(result.isUnchanged());
+        assertTrue(nodes.containsKey("/content/fix/extra"));
+        assertEquals(Collections.emptyList(), posts);
+    }
+
+    @Test
+    public void testKeepsProtectedNodes() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        c.treeSync().sync("/content/fix", MAPPER.readTree(FIXTURE), 4);
+        nodes.put("/content/fix/rep:policy", MAPPER.createObjectNode().put("jcr:primaryType", "rep:ACL"));
+        nodes.put("/content/fix/rep:policy/allow", MAPPER.createObjectNode().put("jcr:primaryType", "rep:GrantACE"));
+        nodes.put("/content/fix/a/oak:index", MAPPER.createObjectNode().put("jcr:primaryType", "nt:unstructured"));
+        posts.clear();
+
+        TreeSyncResult result = c.treeSync().sync("/content/fix", MAPPER.readTree(FIXTURE), 4);
+        assertTrue(result.isUnchanged());
+        assertTrue(nodes.containsKey("/content/fix/rep:policy/allow"));
+        assertTrue(nodes.containsKey("/content/fix/a/oak:index"));
+        assertEquals(Collections.emptyList(), posts);
+    }
+
+    private static List<String> sorted(List<String> list) {
+        List<String> sorted = new ArrayList<>(list);
+        Collections.sort(sorted);
+        return sorted;
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.tree;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.sling.testing.clients.ClientException;
+import org.apache.sling.testing.clients.HttpServerRule;
+import org.apache.sling.testing.clients.SlingClient;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TreeWalkerTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final Pattern SLICE = Pattern.compile("^(.*)\\.(\\d+)\\.json$");
+
+    /**
+     * The nodes of the fake repository, sorted so the children are rendered in a stable order
+     */
+    private static final Map<String, ObjectNode> nodes = new ConcurrentSkipListMap<>();
+
+    private static final List<String> requested = new CopyOnWriteArrayList<>();
+
+    private static final AtomicInteger inFlight = new AtomicInteger();
+
+    private static final AtomicInteger maxInFlight = new AtomicInteger();
+
+    private static volatile long delayMillis;
+
+    @ClassRule
+    public static HttpServerRule httpServer = new HttpServerRule() {
+        @Override
+        protected void registerHandlers() throws IOException {
+            serverBootstrap.registerHandler("*", (request, response, context) -> {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(delayMillis);
+                    Matcher slice = SLICE.matcher(request.getRequestLine().getUri());
+                    if (!slice.matches() || !nodes.containsKey(slice.group(1))) {
+                        response.setStatusCode(404);
+                        return;
+                    }
+                    requested.add(slice.group(1));
+                    ObjectNode json = render(slice.group(1), Integer.parseInt(slice.group(2)));
+                    response.setStatusCode(200);
+                    response.setEntity(new StringEntity(json.toString(), ContentType.APPLICATION_JSON));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            });
+        }
+    };
+
+    private static ObjectNode render(String path, int depth) {
+        ObjectNode json = nodes.get(path).deepCopy();
+        if (depth > 0) {
+            for (String child : nodes.keySet()) {
+                if (child.startsWith(path + "/") && child.indexOf('/', path.length() + 1) < 0) {
+                    json.set(child.substring(path.length() + 1), render(child, depth - 1));
+                }
+            }
+        }
+        return json;
+    }
+
+    /**
+     * Adds a full binary tree of the given number of levels below the root
+     */
+    private static void addTree(String path, int levels) {
+        nodes.put(path, MAPPER.createObjectNode().put("jcr:primaryType", "nt:unstructured").put("level", levels));
+        if (levels > 0) {
+            addTree(path + "/a", levels - 1);
+            addTree(path + "/b", levels - 1);
+        }
+    }
+
+    private static int depth(String path) {
+        return path.split("/").length;
+    }
+
+    @Before
+    public void setUp() {
+        nodes.clear();
+        requested.clear();
+        maxInFlight.set(0);
+        delayMillis = 0;
+        // levels 0 to 4 below /t: 31 nodes, 15 of them with children
+        addTree("/t", 4);
+    }
+
+    @Test
+    public void testVisitsAllNodes() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        Set<String> visited = new HashSet<>();
+        TreeWalkResult result = c.walkTree("/t", (path, properties) -> {
+            assertTrue("visited twice: " + path, visited.add(path));
+            assertEquals(2, properties.size());
+            assertEquals(6 - depth(path), properties.path("level").asInt());
+        });
+
+        assertEquals(nodes.keySet(), visited);
+        assertEquals(31, result.getVisitedCount());
+        // one slice per node having children, the leaves are known from the lookahead level
+        assertEquals(15, result.getRequestCount());
+        assertEquals(15, requested.size());
+    }
+
+    @Test
+    public void testReadsDeeperSlices() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        List<String> visited = new ArrayList<>();
+        TreeWalkResult result = c.treeWalker().setSliceDepth(3)
+                .walk("/t/", (path, properties) -> visited.add(path), 1);
+
+        assertEquals(31, visited.size());
+        // the root, then the 4 nodes of level 2
+        assertEquals(5, result.getRequestCount());
+        // the levels 0 to 2 come from the root slice, breadth-first
+        for (int i = 1; i < 7; i++) {
+            assertTrue(visited.get(i) + " visited after " + visited.get(i - 1),
+                    depth(visited.get(i - 1)) <= depth(visited.get(i)));
+        }
+        assertEquals(Arrays.asList("/t", "/t/a/a", "/t/a/b", "/t/b/a", "/t/b/b"), requested);
+    }
+
+    @Test
+    public void testPrunesSubtrees() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        List<String> visited = new ArrayList<>();
+        TreeWalkResult result = c.treeWalker()
+                .setFilter((path, properties) -> !path.equals("/t/a") && properties.path("level").asInt() > 0)
+                .walk("/t", (path, properties) -> visited.add(path), 4);
+
+        for (String path : visited) {
+            assertFalse(path, path.startsWith("/t/a"));
+        }
+        // /t, then /t/b and its descendants but the 8 leaves
+        assertEquals(1 + 1 + 2 + 4, result.getVisitedCount());
+        assertEquals(1 + 8, result.getPrunedCount());
+        for (String path : requested) {
+            assertFalse(path, path.startsWith("/t/a"));
+        }
+    }
+
+    @Test
+    public void testBoundsConcurrentRequests() throws Exception {
+        nodes.clear();
+        addTree("/t", 6);
+        delayMillis = 20;
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        TreeWalkResult result = c.treeWalker().walk("/t", (path, properties) -> { }, 3);
+
+        assertEquals(127, result.getVisitedCount());
+        assertEquals(63, result.getRequestCount());
+        assertTrue("max in flight: " + maxInFlight.get(), maxInFlight.get() <= 3);
+        assertEquals(3, maxInFlight.get());
+    }
+
+    @Test
+    public void testFailsOnMissingSlice() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        try {
+            c.walkTree("/missing", (path, properties) -> fail("nothing to visit"));
+            fail("the walk should fail");
+        } catch (ClientException e) {
+            assertEquals(404, e.getHttpStatusCode());
+        }
+    }
+
+    @Test
+    public void testStopsOnVisitorException() throws Exception {
+        SlingClient c = new SlingClient(httpServer.getURI(), "user", "pass");
+        AtomicInteger count = new AtomicInteger();
+        try {
+            c.walkTree("/t", (path, properties) -> {
+                if (count.incrementAndGet() == 3) {
+                    throw new ClientException("stop");
+                }
+            });
+            fail("the walk should stop");
+        } catch (ClientException e) {
+            assertEquals("stop", e.getMessage());
+            assertEquals(3, count.get());
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.testing.clients.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ContentMatcherTest {
+
+    @Test
+    public void testOverlappingStrings() {
+        ContentMatcher matcher = ContentMatcher.forStrings("he", "she", "his", "hers", "ushers", "");
+        ContentMatcher.Result result = matcher.match("ushers");
+        assertEquals(Collections.singletonList("his"), result.getMissingStrings());
+        assertFalse(result.isMatched());
+        assertTrue(ContentMatcher.forStrings("he", "she", "hers").match("ahishers").isMatched());
+    }
+
+    @Test
+    public void testLines() {
+        ContentMatcher matcher = ContentMatcher.forRegexps("^b$", "^$", "c");
+        assertTrue(matcher.match("a\r\nb\r\n\r\nc").isMatched());
+        // \r\n is a single line terminator and there is no line after the last one
+        ContentMatcher.Result result = matcher.match("a\r\nb\r\nc\n");
+        assertEquals(Collections.singletonList(".*^$.*"), result.getUnmatchedPatterns());
+        assertFalse(ContentMatcher.forRegexps("^$").match("").isMatched());
+    }
+
+    @Test
+    public void testCached() {
+        assertSame(ContentMatcher.forStrings("a", "b"), ContentMatcher.forStrings("a", "b"));
+        assertFalse(ContentMatcher.forStrings("a", "b") == ContentMatcher.forRegexps("a", "b"));
+    }
+
+    @Test
+    public void testSameResultsAsSeparateScans() throws IOException {
+        Random random = new Random(42);
+        String alphabet = "abc\n\r";
+        for (int round = 0; round < 500; round++) {
+            String content = randomString(random, alphabet, random.nextInt(60));
+            List<String> strings = new ArrayList<>();
+            List<String> regexps = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                strings.add(randomString(random, "abc\n", 1 + random.nextInt(4)));
+                regexps.add(randomString(random, "abc", 1 + random.nextInt(3)) + (random.nextBoolean() ? "$" : ""));
+            }
+
+            List<String> missingStrings = new ArrayList<>();
+            for (String s : strings) {
+                if (!content.contains(s)) {
+                    missingStrings.add(s);
+                }
+            }
+            List<String> unmatched = new ArrayList<>();
+            for (String r : regexps) {
+                Pattern p = Pattern.compile(".*" + r + ".*");
+                boolean matched = false;
+                try (Scanner scanner = new Scanner(content)) {
+                    while (scanner.hasNextLine() && !matched) {
+                        matched = p.matcher(scanner.nextLine()).matches();
+                    }
+                }
+                if (!matched) {
+                    unmatched.add(p.pattern());
+                }
+            }
+
+            ContentMatcher matcher = ContentMatcher.of(strings, regexps);
+            ContentMatcher.Result result = matcher.match(content);
+            assertEquals(content, missingStrings, result.getMissingStrings());
+            assertEquals(content, unmatched, result.getUnmatchedPatterns());
+
+            // one char at a time, so everything spans the reads
+            result = matcher.match(new OneCharReader(content));
+            assertEquals(content, missingStrings, result.getMissingStrings());
+            assertEquals(content, unmatched, result.getUnmatchedPatterns());
+        }
+    }
+
+    @Test
+    public void testStopsReadingWhenAllFound() throws IOException {
+        StringReader reader = new StringReader("start\n" + new String(new char[100000]).replace('\0', 'x'));
+        assertTrue(ContentMatcher.of(Arrays.asList("start"), Arrays.asList("st")).match(reader).isMatched());
+        // the rest of the content was not read
+        assertTrue(reader.read() != -1);
+    }
+
+    private static String randomString(Random random, String alphabet, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+
+    private static final class OneCharReader extends Reader {
+        private final String content;
+        private int pos;
+
+        private OneCharReader(String content) {
+            this.content = content;
+        }
+
+        @Override
+        public int read(char[] buffer, int off, int len) {
+            if (pos >= content.length()) {
+                return -1;
+            }
+            buffer[off] = content.charAt(pos++);
+            return 1;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}